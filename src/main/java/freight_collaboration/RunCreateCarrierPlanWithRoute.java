@@ -1,10 +1,10 @@
 package freight_collaboration;
 
+import network.io.BinaryNetworkReader;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
-import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.freight.carriers.CarrierPlanWriter;
 import org.matsim.freight.carriers.Carriers;
@@ -20,10 +20,8 @@ class RunCreateCarrierPlanWithRoute {
     Network network;
 
     public static void main(String[] args) {
-        Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-        new MatsimNetworkReader(scenario.getNetwork()).readFile("../../data/raw/test/freightCollaboration/grid9x9.xml");
         RunCreateCarrierPlanWithRoute runCreateCarrierPlanWithRoute = new RunCreateCarrierPlanWithRoute();
-        runCreateCarrierPlanWithRoute.network = scenario.getNetwork();
+        runCreateCarrierPlanWithRoute.network = BinaryNetworkReader.readNetwork("../../data/raw/test/freightCollaboration/grid9x9.xml");
         runCreateCarrierPlanWithRoute.generateAndWriteCarrierPlanWithRoutes(
                 "../../data/raw/test/freightCollaboration/carrierPlanWithoutRoute.xml",
                 "../../data/raw/test/freightCollaboration/vehicleTypes.xml");
@@ -1,12 +1,19 @@
 package freight_emission;
 
+import network.tools.LinkChainMerger;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.contrib.emissions.HbefaRoadTypeMapping;
 
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
 
 public class MultiModalNetwork2HbefaMapping extends HbefaRoadTypeMapping {
+    private static final String HIGHWAY = "highway";
+    private static final String DEFAULT_HBEFA_TYPE = "URB/Access/30";
     Map<String, String> detailedHbefaMap = new HashMap<>();
 
     public MultiModalNetwork2HbefaMapping() {
@@ -30,12 +37,40 @@ public class MultiModalNetwork2HbefaMapping extends HbefaRoadTypeMapping {
     }
 
     private String getHighwayType(Link link) {
-        return link.getAttributes().getAttribute("highway").toString();
+        Object highway = link.getAttributes().getAttribute(HIGHWAY);
+        return highway != null ? highway.toString() : "unknown";
     }
 
     @Override
     public String determineHebfaType(Link link) {
-        return this.detailedHbefaMap.getOrDefault(getHighwayType(link), "URB/Access/30");
+        return this.detailedHbefaMap.getOrDefault(getHighwayType(link), DEFAULT_HBEFA_TYPE);
+    }
+
+    /**
+     * The merge policy of the {@link LinkChainMerger} (e.g., by the chain link predicate/consumer of the
+     * MultiModalNetworkOptimizer.Builder) which keeps the HBEFA road types: two links are only merged if they have the
+     * same link stats and the same HBEFA road type.
+     */
+    public BiPredicate<Link, Link> sameHbefaRoadTypePredicate() {
+        BiPredicate<Link, Link> sameLinkStats = LinkChainMerger.sameLinkStatsPredicate();
+        return (link1, link2) -> sameLinkStats.test(link1, link2) && determineHebfaType(link1).equals(determineHebfaType(link2));
+    }
+
+    /**
+     * The attribute consumer to use with {@link #sameHbefaRoadTypePredicate()}: the highway type of a merged link is
+     * that of its longest link (instead of the concatenation of the different highway types, e.g., "primary_primary_link",
+     * which would be mapped to the default road type), so that it is mapped to the same HBEFA road type.
+     */
+    public BiConsumer<List<Link>, Link> hbefaChainAttrConsumer() {
+        BiConsumer<List<Link>, Link> defaultConsumer = LinkChainMerger.defaultChainAttrConsumer();
+        return (links, mergedLink) -> {
+            defaultConsumer.accept(links, mergedLink);
+            Link longestLink = links.stream().max(Comparator.comparingDouble(Link::getLength)).orElseThrow();
+            Object highway = longestLink.getAttributes().getAttribute(HIGHWAY);
+            if (highway != null) {
+                mergedLink.getAttributes().putAttribute(HIGHWAY, highway);
+            }
+        };
     }
 
     public void addHbefaMapPairs(Map<String, String> mapPair) {
@@ -1,15 +1,13 @@
 package freight_emission;
 
-import org.matsim.api.core.v01.Scenario;
+import network.io.BinaryNetworkReader;
+import network.io.ParallelGzip;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.NetworkWriter;
-import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
-import org.matsim.core.network.io.MatsimNetworkReader;
-import org.matsim.core.scenario.ScenarioUtils;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -20,14 +18,13 @@ class RunAddHbefaRoadType2Network {
 
     void run(String path){
         // Read the raw network
-        Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-        new MatsimNetworkReader(scenario.getNetwork()).readFile(path);
-        network = scenario.getNetwork();
+        network = BinaryNetworkReader.readNetwork(path);
 
         // Add the HBEFA road type to the network
         hbefaRoadTypeMapping.addHbefaMappings(network);
     }
 
+     // A copy of the links allowing the mode (not a ModeFilteredNetwork, as the carrier code searches it for the nearest links)
      static Network deriveSubNetwork(Network network, String mode) {
         Network subNetwork = NetworkUtils.createNetwork();
         TransportModeNetworkFilter filter = new TransportModeNetworkFilter(network);
@@ -46,7 +43,7 @@ class RunAddHbefaRoadType2Network {
     }
 
     void outputNetwork(String path){
-        new NetworkWriter(network).write(path);
+        ParallelGzip.writeNetwork(path, new NetworkWriter(network));
     }
 
     public static void main(String[] args) {
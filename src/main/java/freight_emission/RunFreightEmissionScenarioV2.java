@@ -2,6 +2,7 @@ package freight_emission;
 
 import com.google.inject.Provider;
 import jakarta.inject.Inject;
+import network.io.BinaryNetworkReader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
@@ -17,7 +18,6 @@ import org.matsim.core.controler.Controler;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.controler.events.IterationEndsEvent;
 import org.matsim.core.controler.listener.IterationEndsListener;
-import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.replanning.GenericPlanStrategyImpl;
 import org.matsim.core.replanning.selectors.ExpBetaPlanChanger;
 import org.matsim.core.replanning.selectors.KeepSelected;
@@ -53,9 +53,7 @@ public class RunFreightEmissionScenarioV2 {
         logger.info("Starting the generation of the freight emission scenario");
         // Read the network
         logger.info("Reading the network");
-        Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-        new MatsimNetworkReader(scenario.getNetwork()).readFile(inputNetworkPath);
-        Network network = scenario.getNetwork();
+        Network network = BinaryNetworkReader.readNetwork(inputNetworkPath);
 
         for (int i = 300; i < NUM_ITERATIONS; i++) {
             logger.info("Generating the carrier plan for iteration {}", i);
@@ -113,9 +111,7 @@ public class RunFreightEmissionScenarioV2 {
                 vehicleType = FreightVehicleTypeFactory.createDefaultVan("Van");
                 hbefaKeyWord = "LCV";
                 configInputNetworkPath = "../../diffusedGemeenteLeuvenWithHbefaType.xml.gz";
-                Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-                new MatsimNetworkReader(scenario.getNetwork()).readFile("../../data/intermediate/test/freightEmissions/diffusedGemeenteLeuvenWithHbefaType.xml.gz");
-                network = scenario.getNetwork();
+                network = BinaryNetworkReader.readNetwork("../../data/intermediate/test/freightEmissions/diffusedGemeenteLeuvenWithHbefaType.xml.gz");
                 break;
             case VAN:
                 outputScenarioDir = "../../data/intermediate/test/freightEmissions/scenarioVan/";
@@ -135,9 +131,7 @@ public class RunFreightEmissionScenarioV2 {
                 vehicleType.getCapacity().setOther(2000);  // 2t
                 hbefaKeyWord = "LCV";
                 configInputNetworkPath = "../../diffusedGemeenteLeuvenWithHbefaType.xml.gz";
-                Scenario scenario_basic_2t = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-                new MatsimNetworkReader(scenario_basic_2t.getNetwork()).readFile("../../data/intermediate/test/freightEmissions/diffusedGemeenteLeuvenWithHbefaType.xml.gz");
-                network = scenario_basic_2t.getNetwork();
+                network = BinaryNetworkReader.readNetwork("../../data/intermediate/test/freightEmissions/diffusedGemeenteLeuvenWithHbefaType.xml.gz");
                 break;
             case SA_BASIC_4t:
                 outputScenarioDir = "../../data/intermediate/test/freightEmissions/scenarioBasicSA4t/";
@@ -145,9 +139,7 @@ public class RunFreightEmissionScenarioV2 {
                 vehicleType.getCapacity().setOther(4000);  // 4t
                 hbefaKeyWord = "LCV";
                 configInputNetworkPath = "../../diffusedGemeenteLeuvenWithHbefaType.xml.gz";
-                Scenario scenario_basic_4t = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-                new MatsimNetworkReader(scenario_basic_4t.getNetwork()).readFile("../../data/intermediate/test/freightEmissions/diffusedGemeenteLeuvenWithHbefaType.xml.gz");
-                network = scenario_basic_4t.getNetwork();
+                network = BinaryNetworkReader.readNetwork("../../data/intermediate/test/freightEmissions/diffusedGemeenteLeuvenWithHbefaType.xml.gz");
                 break;
             case SA_VAN_2t:
                 outputScenarioDir = "../../data/intermediate/test/freightEmissions/scenarioVanSA2t/";
@@ -23,7 +23,7 @@ public class ConnectedNetworkParamSet extends ReflectiveConfigGroup implements M
             The method to process the network, which should be one of the following:
             \t\t\t\t1. `reduce`: remove the isolated nodes/links, and only keep the largest connected subnetwork;
             \t\t\t\t2. `insert`: connect all the isolated nodes/links to the nearest node/link;
-            \t\t\t\t3. `adapt_mode`: adapt and add TransMode for some links to make the (sub)network strongly connected. (e.g., add a bike mode for the car-tagged links)""")
+            \t\t\t\t3. `adapt_mode`: remove a TransMode from the links outside the largest strongly connected component of this mode, while keeping the links for the other modes.""")
 
     public String METHOD;
 
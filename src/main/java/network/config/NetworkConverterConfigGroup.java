@@ -54,6 +54,80 @@ public class NetworkConverterConfigGroup extends ReflectiveConfigGroup {
     @Parameter
     public String OUTPUT_GEOJSON_FILE;
 
+    @Parameter
+    @Comment("The number of decimals of the coordinates in the GeoJSON output; a negative value means the full precision.")
+    public int OUTPUT_GEOJSON_PRECISION = 6;
+    @Parameter
+    @Comment("If true, the GeoJSON output is newline-delimited (one feature per line) instead of a FeatureCollection.")
+    public boolean OUTPUT_GEOJSON_NEWLINE_DELIMITED;
+
+    @Parameter
+    @Comment("Fill in the file paths if you want to output the network in the FlatGeobuf (*.fgb) or GeoParquet (*.parquet) format, which have a spatial index for fast bbox reads.")
+    public String OUTPUT_FLATGEOBUF_FILE;
+    @Parameter
+    public String OUTPUT_GEOPARQUET_FILE;
+
+    @Parameter
+    @Comment("Fill in the file path if you want to output the network as vector tiles in the MBTiles (*.mbtiles) format, to view it at any scale in a browser or GIS.")
+    public String OUTPUT_MBTILES_FILE;
+    @Parameter
+    @Comment("The zoom range of the vector tiles in the MBTiles output; the minor links are only drawn at the higher zooms.")
+    public int OUTPUT_MBTILES_MIN_ZOOM = 4;
+    @Parameter
+    public int OUTPUT_MBTILES_MAX_ZOOM = 14;
+
+    @Parameter
+    @Comment("Fill in the file path if you want to output the network in the compact binary format (*.bin) as well, which can be loaded much faster than the MATSim xml.")
+    public String OUTPUT_BINARY_NETWORK_FILE;
+
+    @Parameter
+    @Comment("The number of threads to compress each gzip output (*.gz) in parallel; 0 means an even share of the OUTPUT_THREADS.")
+    public int OUTPUT_COMPRESSION_THREADS;
+
+    @Parameter
+    @Comment("The number of threads to write the outputs, which are shared by the output formats that are written concurrently (and by their compression or tiling); 0 means using all the available processors.")
+    public int OUTPUT_THREADS;
+
+    @Parameter
+    @Comment("Fill in a directory to save checkpoints after the read, build and clean stages of the conversion (NA: no checkpoints).")
+    public String CHECKPOINT_DIRECTORY;
+
+    @Parameter
+    @Comment("If true, the conversion skips the stages with a checkpoint in the CHECKPOINT_DIRECTORY, as long as the input file and the config are unchanged.")
+    public boolean RESUME_FROM_CHECKPOINT;
+
+    @Parameter
+    @Comment("If true, the ways of an OSM file are converted one at a time while the file is read, instead of reading all the ways first (less memory for large files).")
+    public boolean STREAMING_CONVERSION;
+
+    @Parameter
+    @Comment("The number of worker threads of the streaming conversion; 0 means all the available processors but one (for the reader).")
+    public int STREAMING_WORKERS;
+
+    @Parameter
+    @Comment("If true, the nodes and ways of an OSM file are read into a columnar store of primitive arrays instead of node and link objects, and the ways are converted one at a time from the store (less memory for large files). The streaming conversion takes precedence if both are set.")
+    public boolean COLUMNAR_GRAPH_STORE;
+
+    @Parameter
+    @Comment("If true, the coordinates of the OSM nodes are stored as fixed-point integers (1e-7 degree, the precision of OSM) until the MATSim network is built, which roughly halves their memory.")
+    public boolean FIXED_POINT_COORDINATES;
+
+    @Parameter
+    @Comment("If true, each feature of a shapefile/GeoJSON file is converted into a single link that is only split at the intersections, instead of a link per segment.")
+    public boolean MERGE_FEATURE_SEGMENTS;
+
+    @Parameter
+    @Comment("Fill in a file to store the locations of the OSM nodes in a disk-backed index instead of the memory (only the nodes that are referenced by the ways are held in memory), which is reused by later runs on the same input file (NA: no index).")
+    public String NODE_LOCATION_INDEX_FILE;
+
+    @Parameter
+    @Comment("Fill in a GeoTIFF DEM file to set the elevation of the network nodes, which is used for the link length (NA: no elevation).")
+    public String ELEVATION_DEM_FILE;
+
+    @Parameter
+    @Comment("The maximum number of decoded DEM tiles that are cached when setting the elevation.")
+    public int ELEVATION_TILE_CACHE_SIZE = 64;
+
 //    @Parameter
 //    @Comment("If true, the network will be processed to be strongly connected, which means that each node/link can be reached from any other node/link.")
 //    public boolean CONNECTED_NETWORK;
@@ -116,6 +190,26 @@ public class NetworkConverterConfigGroup extends ReflectiveConfigGroup {
         config.ONEWAY = false;
         config.OUTPUT_SHP_FILE = "NA";
         config.OUTPUT_GEOJSON_FILE = "NA";
+        config.OUTPUT_GEOJSON_PRECISION = 6;
+        config.OUTPUT_GEOJSON_NEWLINE_DELIMITED = false;
+        config.OUTPUT_FLATGEOBUF_FILE = "NA";
+        config.OUTPUT_GEOPARQUET_FILE = "NA";
+        config.OUTPUT_MBTILES_FILE = "NA";
+        config.OUTPUT_MBTILES_MIN_ZOOM = 4;
+        config.OUTPUT_MBTILES_MAX_ZOOM = 14;
+        config.OUTPUT_BINARY_NETWORK_FILE = "NA";
+        config.OUTPUT_COMPRESSION_THREADS = 0;
+        config.OUTPUT_THREADS = 0;
+        config.CHECKPOINT_DIRECTORY = "NA";
+        config.RESUME_FROM_CHECKPOINT = false;
+        config.STREAMING_CONVERSION = false;
+        config.STREAMING_WORKERS = 0;
+        config.COLUMNAR_GRAPH_STORE = false;
+        config.FIXED_POINT_COORDINATES = false;
+        config.MERGE_FEATURE_SEGMENTS = false;
+        config.NODE_LOCATION_INDEX_FILE = "NA";
+        config.ELEVATION_DEM_FILE = "NA";
+        config.ELEVATION_TILE_CACHE_SIZE = 64;
         config.ONEWAY_KEY_VALUE_PAIR.put("oneway", "yes");
 
         // Add a default mode parameter set
@@ -0,0 +1,337 @@
+package network.core;
+
+import network.config.NetworkConverterConfigGroup;
+import network.io.BinaryNetworkReader;
+import network.io.BinaryNetworkWriter;
+import network.io.BinaryRawNetworkReader;
+import network.io.BinaryRawNetworkWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.ConfigGroup;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Checkpoints of the {@link NetworkConverter} after its (expensive) stages, so that a crashed or preempted conversion
+ * can be resumed from the last completed stage, and a conversion with a changed config only re-runs the affected stages.
+ * <p>
+ * Each stage depends on the config parameters listed in {@link Stage}. The key of a stage is the hash of the key of
+ * the previous stage (or of the input network file(s) for the first stage) and the values of its own parameters, so
+ * that a changed parameter invalidates the checkpoints of its stage and of all the later stages, but not the earlier
+ * ones. A checkpoint is only used if its key matches the current run.
+ */
+final class ConversionCheckpoints {
+    private static final Logger LOG = LogManager.getLogger(ConversionCheckpoints.class);
+
+    /**
+     * The stages of the conversion and the config parameters that each stage depends on. A parameter of a parameter
+     * set is named as "setType.PARAM" (or "setType[MODE_NAME].PARAM" for a specific mode), and "setType.*" stands for
+     * all the parameters of the set.
+     */
+    enum Stage {
+        // The raw nodes and links from the reader; the OsmReader uses the pt mapping and the reserved fields for the relations
+        READ("read.raw", "FILE_TYPE", "INPUT_CRS", "FIXED_POINT_COORDINATES", "modeParamSet[pt].KEY_VALUE_MAPPING", "linkAttrParamSet.RESERVED_LINK_FIELDS"),
+        // The split nodes of the raw links, which only depend on the raw geometry (not on the modes or the attributes)
+        SPLIT("split_positions.bin", "KEEP_DETAILED_LINK"),
+        // The MATSim network after matching the modes, processing the oneway links and deriving the link attributes
+        BUILD("build.bin", "KEEP_UNDEFINED_LINK", "ONEWAY", "ONEWAY_KEY_VALUE_PAIR", "ELEVATION_DEM_FILE", "modeParamSet.*", "linkAttrParamSet.*"),
+        // The final MATSim network after the connectivity cleaning and the CRS transformation
+        CLEAN("clean.bin", "INPUT_CRS", "OUTPUT_CRS", "connectedNetworkParamSet.*");
+
+        private final String fileName;
+        private final List<String> dependencies;
+
+        Stage(String fileName, String... dependencies) {
+            this.fileName = fileName;
+            this.dependencies = List.of(dependencies);
+        }
+
+        boolean dependsOn(String param) {
+            // Strip the mode qualifier, e.g., "modeParamSet[car].LANES" -> "modeParamSet.LANES"
+            String unqualifiedParam = param.replaceFirst("\\[[^]]*]", "");
+            for (String dependency : this.dependencies) {
+                if (dependency.equals(param) || dependency.equals(unqualifiedParam)) {
+                    return true;
+                }
+                if (dependency.endsWith(".*") && unqualifiedParam.startsWith(dependency.substring(0, dependency.length() - 1))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // The stages from which the conversion can be resumed, from the last to the first
+    private static final List<Stage> RESUMABLE_STAGES = List.of(Stage.CLEAN, Stage.BUILD, Stage.READ);
+
+    // The parameters that only affect the output or the checkpoints, but not the converted network
+    private static final Set<String> IGNORED_PARAMS = Set.of("INPUT_NETWORK_FILE", "OUTPUT_NETWORK_FILE",
+            "OUTPUT_SHP_FILE", "OUTPUT_GEOJSON_FILE", "OUTPUT_GEOJSON_PRECISION",
+            "OUTPUT_GEOJSON_NEWLINE_DELIMITED", "OUTPUT_FLATGEOBUF_FILE", "OUTPUT_GEOPARQUET_FILE",
+            "OUTPUT_MBTILES_FILE", "OUTPUT_MBTILES_MIN_ZOOM", "OUTPUT_MBTILES_MAX_ZOOM",
+            "OUTPUT_BINARY_NETWORK_FILE", "OUTPUT_COMPRESSION_THREADS", "OUTPUT_THREADS",
+            "CHECKPOINT_DIRECTORY", "RESUME_FROM_CHECKPOINT", "STREAMING_CONVERSION", "STREAMING_WORKERS",
+            "COLUMNAR_GRAPH_STORE",
+            "NODE_LOCATION_INDEX_FILE", "ELEVATION_TILE_CACHE_SIZE");
+
+    // The parameters that name an input file, which invalidate the stages that use it when the file is replaced
+    private static final Set<String> FILE_PARAMS = Set.of("ELEVATION_DEM_FILE");
+
+    private final Path directory;
+    private final NetworkConverterConfigGroup config;
+    private final boolean fixedPointCoordinates;
+    // Computed at the first use, since hashing the input file is expensive
+    private Map<Stage, String> keys = null;
+
+    ConversionCheckpoints(NetworkConverterConfigGroup config) {
+        this.directory = Path.of(config.CHECKPOINT_DIRECTORY);
+        this.config = config;
+        this.fixedPointCoordinates = config.FIXED_POINT_COORDINATES;
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create the checkpoint directory: " + this.directory, e);
+        }
+    }
+
+    // Get the key of the stage; the keys are only computed when a checkpoint is first checked or saved
+    private String getKey(Stage stage) {
+        if (this.keys == null) {
+            long startTime = System.currentTimeMillis();
+            this.keys = computeStageKeys(hashInput(this.config.INPUT_NETWORK_FILE), collectParams(this.config));
+            LOG.info("The checkpoint keys have been computed in {} ms.", System.currentTimeMillis() - startTime);
+        }
+        return this.keys.get(stage);
+    }
+
+    // Get the last stage with a valid checkpoint, or null if there is none
+    Stage getLastCompletedStage() {
+        for (Stage stage : RESUMABLE_STAGES) {
+            if (isValid(stage)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+
+    void saveRawNetwork(Map<String, NetworkElement.Node> rawNodes, Map<String, NetworkElement.Link> rawLinks) {
+        save(Stage.READ, file -> new BinaryRawNetworkWriter(rawNodes, rawLinks).write(file));
+    }
+
+    void loadRawNetwork(Map<String, NetworkElement.Node> rawNodes, Map<String, NetworkElement.Link> rawLinks) {
+        LOG.info("Resuming from the checkpoint of the stage {}", Stage.READ);
+        new BinaryRawNetworkReader(rawNodes, rawLinks).setFixedPointCoordinates(this.fixedPointCoordinates)
+                .read(getFile(Stage.READ).toString());
+    }
+
+    void saveNetwork(Stage stage, Network network) {
+        save(stage, file -> new BinaryNetworkWriter(network).write(file));
+    }
+
+    void loadNetwork(Stage stage, Network network) {
+        LOG.info("Resuming from the checkpoint of the stage {}", stage);
+        new BinaryNetworkReader(network).read(getFile(stage).toString());
+    }
+
+    /*
+    The split nodes (i.e., the positions of the composed nodes where a raw link is split) are a cache rather than a
+    checkpoint: the cached links are reused, and the links that are newly included (e.g., by a changed mode mapping)
+    are split and added to the cache.
+     */
+    void saveSplitNodes(Map<String, int[]> splitNodes) {
+        save(Stage.SPLIT, file -> {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+                out.writeInt(splitNodes.size());
+                for (Map.Entry<String, int[]> entry : splitNodes.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (int position : entry.getValue()) {
+                        out.writeInt(position);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    boolean loadSplitNodes(Map<String, int[]> splitNodes) {
+        if (!isValid(Stage.SPLIT)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(getFile(Stage.SPLIT).toFile()), 1 << 16))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String linkId = in.readUTF();
+                int[] positions = new int[in.readInt()];
+                for (int j = 0; j < positions.length; j++) {
+                    positions[j] = in.readInt();
+                }
+                splitNodes.put(linkId, positions);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read the split nodes cache: {}", e.getMessage());
+            splitNodes.clear();
+            return false;
+        }
+        LOG.info("Reusing the split nodes of {} links from the cache", splitNodes.size());
+        return true;
+    }
+
+    private boolean isValid(Stage stage) {
+        Path keyFile = getKeyFile(stage);
+        if (!Files.exists(getFile(stage)) || !Files.exists(keyFile)) {
+            return false;
+        }
+        try {
+            return Files.readString(keyFile, StandardCharsets.UTF_8).trim().equals(getKey(stage));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Write the checkpoint to a temporary file first, so that an interrupted write never leaves a valid-looking checkpoint
+    private void save(Stage stage, Consumer<String> writer) {
+        Path file = getFile(stage);
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            String key = getKey(stage);
+            Files.deleteIfExists(getKeyFile(stage));
+            writer.accept(tmpFile.toString());
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.writeString(getKeyFile(stage), key, StandardCharsets.UTF_8);
+            LOG.info("The checkpoint of the stage {} has been saved to {}", stage, file);
+        } catch (IOException | RuntimeException e) {
+            // A checkpoint is optional, so that a failure should not stop the conversion
+            LOG.warn("Failed to save the checkpoint of the stage {}: {}", stage, e.getMessage());
+        }
+    }
+
+    private Path getFile(Stage stage) {
+        return this.directory.resolve(stage.fileName);
+    }
+
+    private Path getKeyFile(Stage stage) {
+        return this.directory.resolve(stage.fileName + ".key");
+    }
+
+    /*
+    Chain the keys of the stages: each key hashes the previous key and the parameters of the stage. The parameters that
+    are not listed for any stage are assigned to the first stage, so that an unknown parameter invalidates everything.
+     */
+    static Map<Stage, String> computeStageKeys(String inputHash, SortedMap<String, String> params) {
+        Map<Stage, StringBuilder> stageParams = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            stageParams.put(stage, new StringBuilder());
+        }
+        params.forEach((name, value) -> {
+            boolean assigned = false;
+            for (Stage stage : Stage.values()) {
+                if (stage.dependsOn(name)) {
+                    stageParams.get(stage).append(name).append('=').append(value).append('\n');
+                    assigned = true;
+                }
+            }
+            if (!assigned) {
+                stageParams.get(Stage.READ).append(name).append('=').append(value).append('\n');
+            }
+        });
+        Map<Stage, String> keys = new EnumMap<>(Stage.class);
+        String previousKey = inputHash;
+        for (Stage stage : Stage.values()) {
+            previousKey = hash(previousKey + '\n' + stageParams.get(stage));
+            keys.put(stage, previousKey);
+        }
+        return keys;
+    }
+
+    /*
+    Collect the (qualified) names and values of the parameters and parameter sets of the config, sorted by name. The
+    value of a parameter that names an input file (other than the input network file) also includes the size and the
+    modification time of the file, so that a file that is replaced at the same path invalidates the stages that use it.
+     */
+    static SortedMap<String, String> collectParams(NetworkConverterConfigGroup config) {
+        SortedMap<String, String> params = new TreeMap<>();
+        config.getParams().forEach((name, value) -> {
+            if (!IGNORED_PARAMS.contains(name)) {
+                params.put(name, FILE_PARAMS.contains(name) ? describeFile(value) : value);
+            }
+        });
+        config.getParameterSets().forEach((type, sets) -> {
+            for (ConfigGroup set : sets) {
+                Map<String, String> setParams = set.getParams();
+                String qualifier = setParams.containsKey("MODE_NAME") ? "[" + setParams.get("MODE_NAME") + "]" : "";
+                setParams.forEach((name, value) ->
+                        // The order of the parameter sets does not matter, so that the values of duplicates are sorted
+                        params.merge(type + qualifier + "." + name, String.valueOf(value),
+                                (a, b) -> a.compareTo(b) <= 0 ? a + "|" + b : b + "|" + a));
+            }
+        });
+        return params;
+    }
+
+    // Describe a file by its path, size and modification time; a missing (or unset) file is described by its path only
+    static String describeFile(String file) {
+        if (file == null) {
+            return "null";
+        }
+        try {
+            Path path = Path.of(file);
+            if (!Files.isRegularFile(path)) {
+                return file;
+            }
+            return file + "|" + Files.size(path) + "|" + Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException | InvalidPathException e) {
+            return file;
+        }
+    }
+
+    // Hash the content of the input file; for a shapefile, the sidecar files (e.g., *.dbf, *.prj) are hashed as well
+    static String hashInput(String inputFile) {
+        File file = new File(inputFile);
+        List<File> files = new ArrayList<>();
+        files.add(file);
+        String name = file.getName();
+        if (name.toLowerCase().endsWith(".shp")) {
+            String baseName = name.substring(0, name.length() - 4);
+            File[] siblings = file.getAbsoluteFile().getParentFile().listFiles((dir, sibling) ->
+                    !sibling.equals(name) && sibling.startsWith(baseName + "."));
+            if (siblings != null) {
+                Arrays.sort(siblings);
+                files.addAll(Arrays.asList(siblings));
+            }
+        }
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[1 << 16];
+        for (File f : files) {
+            try (InputStream in = new DigestInputStream(Files.newInputStream(f.toPath()), digest)) {
+                while (in.read(buffer) != -1) {
+                    // The digest is updated while reading
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to hash the input network file: " + f, e);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String hash(String string) {
+        return HexFormat.of().formatHex(createDigest().digest(string.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package network.core;
 
 import network.config.NetworkConverterConfigGroup;
+import network.gis.Network2FlatGeobuf;
 import network.gis.Network2GeoJson;
+import network.gis.Network2GeoParquet;
+import network.gis.Network2MBTiles;
 import network.gis.Network2Shp;
+import network.io.BinaryNetworkWriter;
+import network.io.ParallelGzip;
+import network.readers.FeatureAttributes;
 import network.readers.GeoJsonReader;
 import network.readers.OsmReader;
 import network.readers.Reader;
 import network.readers.ShpReader;
+import network.tools.DemElevationSampler;
+import network.tools.SinglePassMultiModalNetworkCleaner;
 import network.tools.Utils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -22,20 +31,24 @@ import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class NetworkConverter {
 
     Logger LOG = LogManager.getLogger(NetworkConverter.class);
+    // The capacity of the queue between the reader and the workers in the streaming conversion
+    private static final int STREAMING_QUEUE_CAPACITY = 4096;
+    // Marks the end of the ways for the workers in the streaming conversion
+    private static final NetworkElement.Link END_OF_STREAM = new NetworkElement.Link("END_OF_STREAM", null, null);
     private final Reader reader;
     private final NetworkConverterConfigGroup config;
 
     private final Map<String, NetworkElement.Node> interimNodes = new HashMap<>();
     private final Map<String, NetworkElement.Link> interimLinks = new HashMap<>();
+    // The positions of the composed nodes where each raw link is split at the intersections (raw link id -> positions)
+    private final Map<String, int[]> splitNodeCache = new HashMap<>();
     private final Set<TransMode> configuredTransModes = new HashSet<>();
     private final Network network = NetworkUtils.createNetwork();
 
@@ -59,17 +72,85 @@ public final class NetworkConverter {
         // Initialize the configuredTransModes
         config.getModeParamSets().forEach((mode, modeParamSet) ->
             configuredTransModes.add(modeParamSet.getTransMode()));
+        if (this.config.STREAMING_CONVERSION && !(reader instanceof OsmReader)) {
+            LOG.warn("The streaming conversion is only supported for the OSM file, the file type {} is read at once.", this.config.FILE_TYPE);
+        }
+        if (this.config.COLUMNAR_GRAPH_STORE && !(reader instanceof OsmReader)) {
+            LOG.warn("The columnar graph store is only supported for the OSM file, the file type {} is read into objects.", this.config.FILE_TYPE);
+        }
     }
 
     public void convert() {
         LOG.info("Start converting the input network file to MATSim network...");
 
-        // Read the input network file
-        LOG.info("Reading the input network file: {}", config.INPUT_NETWORK_FILE);
-        reader.read(config.INPUT_NETWORK_FILE);
+        // Checkpoints are optional; with RESUME_FROM_CHECKPOINT, the stages that have a valid checkpoint are skipped
+        ConversionCheckpoints checkpoints = null;
+        ConversionCheckpoints.Stage completedStage = null;
+        if (this.config.CHECKPOINT_DIRECTORY != null && !this.config.CHECKPOINT_DIRECTORY.isEmpty() && !this.config.CHECKPOINT_DIRECTORY.equals("NA")) {
+            checkpoints = new ConversionCheckpoints(this.config);
+            if (this.config.RESUME_FROM_CHECKPOINT) {
+                completedStage = checkpoints.getLastCompletedStage();
+            }
+        }
 
-        // Process the link by a for-loop
-        Map<String, Integer> nodeRefCount = countNodeRef();
+        if (completedStage == ConversionCheckpoints.Stage.CLEAN) {
+            checkpoints.loadNetwork(ConversionCheckpoints.Stage.CLEAN, network);
+            return;
+        }
+        if (completedStage == ConversionCheckpoints.Stage.BUILD) {
+            checkpoints.loadNetwork(ConversionCheckpoints.Stage.BUILD, network);
+        } else if (completedStage == null && this.config.STREAMING_CONVERSION && reader instanceof OsmReader osmReader) {
+            // The raw links are never held together in the streaming conversion, so there is no checkpoint of the read stage
+            streamNetwork(osmReader);
+            if (checkpoints != null) {
+                checkpoints.saveNetwork(ConversionCheckpoints.Stage.BUILD, network);
+            }
+        } else if (completedStage == null && reader instanceof OsmReader osmReader && osmReader.getGraphStore() != null) {
+            // The raw links are only created one at a time from the store, so there is no checkpoint of the read stage
+            LOG.info("Reading the input network file into the columnar graph store: {}", config.INPUT_NETWORK_FILE);
+            reader.read(config.INPUT_NETWORK_FILE);
+            buildNetworkFromStore(osmReader.getGraphStore(), osmReader.isFixedPointCoordinates());
+            if (checkpoints != null) {
+                checkpoints.saveNetwork(ConversionCheckpoints.Stage.BUILD, network);
+            }
+        } else {
+            if (completedStage == ConversionCheckpoints.Stage.READ) {
+                checkpoints.loadRawNetwork(reader.getRawNodes(), reader.getRawLinks());
+            } else {
+                // Read the input network file
+                LOG.info("Reading the input network file: {}", config.INPUT_NETWORK_FILE);
+                reader.read(config.INPUT_NETWORK_FILE);
+                if (checkpoints != null) {
+                    checkpoints.saveRawNetwork(reader.getRawNodes(), reader.getRawLinks());
+                }
+            }
+            // Reuse the split nodes of the raw links, e.g., if only the mode or attribute config has been changed
+            if (checkpoints != null && this.config.RESUME_FROM_CHECKPOINT && !this.config.KEEP_DETAILED_LINK) {
+                checkpoints.loadSplitNodes(splitNodeCache);
+            }
+            boolean splitNodeCacheUpdated = buildNetwork();
+            if (checkpoints != null) {
+                if (splitNodeCacheUpdated) {
+                    checkpoints.saveSplitNodes(splitNodeCache);
+                }
+                checkpoints.saveNetwork(ConversionCheckpoints.Stage.BUILD, network);
+            }
+        }
+
+        cleanNetwork();
+        if (checkpoints != null) {
+            checkpoints.saveNetwork(ConversionCheckpoints.Stage.CLEAN, network);
+        }
+    }
+
+    /*
+    Match the modes of the raw links, split them and add the resulting nodes and links to the MATSim network.
+    Return true if the split nodes of any link have been added to the splitNodeCache.
+     */
+    private boolean buildNetwork() {
+        // The node reference count is only needed for the links that are split at the intersections and not cached
+        Map<String, Integer> nodeRefCount = null;
+        boolean splitNodeCacheUpdated = false;
 
         for (NetworkElement.Link link : reader.getRawLinks().values()) {
             // match the TransMode of the link
@@ -80,25 +161,153 @@ public final class NetworkConverter {
             }
             // Process the oneway attribute of the link
             NetworkElement.Link reversedLink = processOneway(link);
-            // Split the link and store the interim nodes and links
+            // Get the composed nodes where the link is split
+            List<NetworkElement.Node> splitNodes;
             if (config.KEEP_DETAILED_LINK){
                 // Split link at each composed node
-                splitLinkAtComposedNodes(link);
-                if (reversedLink != null){
-                    splitLinkAtComposedNodes(reversedLink);
-                }
+                splitNodes = link.getComposedNodes();
             } else {
                 // Only split the link at the intersections
-                splitLinkAtIntersections(link, nodeRefCount);
-                if (reversedLink != null){
-                    splitLinkAtIntersections(reversedLink, nodeRefCount);
+                int[] splitPositions = splitNodeCache.get(link.getId());
+                if (splitPositions == null) {
+                    if (nodeRefCount == null) {
+                        nodeRefCount = countNodeRef();
+                    }
+                    splitPositions = getIntersectionPositions(link, nodeRefCount);
+                    splitNodeCache.put(link.getId(), splitPositions);
+                    splitNodeCacheUpdated = true;
                 }
+                splitNodes = getComposedNodesAt(link, splitPositions);
+            }
+            // Split the link and store the interim nodes and links
+            splitLinks(link, reversedLink, splitNodes);
+        }
+        addInterimElements();
+        return splitNodeCacheUpdated;
+    }
+
+    /*
+    Build the network from the columnar graph store of the OSM reader: the raw links are created from the store one at
+    a time and passed through the same per-link pipeline as in buildNetwork, so that only the split links (and their
+    nodes) are held as objects. The intersections are counted on the node indices of the store.
+     */
+    private void buildNetworkFromStore(NetworkGraphStore store, boolean fixedPointCoordinates) {
+        int[] composedNodeRefCounts = config.KEEP_DETAILED_LINK ? null : store.countComposedNodeRefs();
+        NetworkElement.Node[] nodeCache = new NetworkElement.Node[store.getNodeCount()];
+        for (int i = 0; i < store.getLinkCount(); i++) {
+            NetworkElement.Link link = store.getRawLink(i, nodeCache, fixedPointCoordinates);
+            matchLinkMode(link);
+            if (link.getAllowedModes().isEmpty()) {
+                continue;
+            }
+            NetworkElement.Link reversedLink = processOneway(link);
+            List<NetworkElement.Node> splitNodes = config.KEEP_DETAILED_LINK
+                    ? link.getComposedNodes()
+                    : getComposedNodesAt(link, store.getIntersectionPositions(i, composedNodeRefCounts));
+            splitLinks(link, reversedLink, splitNodes);
+        }
+        addInterimElements();
+    }
+
+    /*
+    Stream the ways of the OSM file through the per-link pipeline (i.e., match the modes, process the oneway attribute
+    and split the link) in the worker threads, so that the raw links are never held in memory together. Only the node
+    reference count from the pre-pass of the reader is kept to split the links at the intersections.
+     */
+    private void streamNetwork(OsmReader osmReader) {
+        LOG.info("Streaming the input network file: {}", config.INPUT_NETWORK_FILE);
+        // The pre-pass also collects the pt relations, which come after the ways in the file
+        Map<String, Integer> nodeRefCount = osmReader.prepareStreaming(config.INPUT_NETWORK_FILE);
+
+        // One processor is left to the reader
+        int numberOfWorkers = this.config.STREAMING_WORKERS > 0
+                ? this.config.STREAMING_WORKERS
+                : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        BlockingQueue<NetworkElement.Link> queue = new ArrayBlockingQueue<>(STREAMING_QUEUE_CAPACITY);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfWorkers);
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < numberOfWorkers; i++) {
+                workers.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        for (NetworkElement.Link link = queue.take(); link != END_OF_STREAM; link = queue.take()) {
+                            // After a failure, the remaining links are only drained, so that the reader is not blocked
+                            if (failure.get() == null) {
+                                try {
+                                    processStreamedLink(link, nodeRefCount);
+                                } catch (RuntimeException e) {
+                                    failure.compareAndSet(null, e);
+                                }
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("The streaming conversion has been interrupted", e);
+                    }
+                }, executor));
+            }
+            try {
+                osmReader.stream(config.INPUT_NETWORK_FILE, link -> putToQueue(queue, link));
+            } finally {
+                for (int i = 0; i < numberOfWorkers; i++) {
+                    putToQueue(queue, END_OF_STREAM);
+                }
+            }
+            CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to convert the network: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException("Failed to convert the network: " + failure.get().getMessage(), failure.get());
+        }
+        addInterimElements();
+    }
+
+    private static void putToQueue(BlockingQueue<NetworkElement.Link> queue, NetworkElement.Link link) {
+        try {
+            queue.put(link);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("The streaming conversion has been interrupted", e);
+        }
+    }
+
+    // The per-link pipeline of the streaming conversion, which is called by the worker threads
+    private void processStreamedLink(NetworkElement.Link link, Map<String, Integer> nodeRefCount) {
+        matchLinkMode(link);
+        if (link.getAllowedModes().isEmpty()) {
+            return;
+        }
+        NetworkElement.Link reversedLink = processOneway(link);
+        List<NetworkElement.Node> splitNodes = config.KEEP_DETAILED_LINK
+                ? link.getComposedNodes()
+                : getComposedNodesAt(link, getIntersectionPositions(link, nodeRefCount));
+        // The interim nodes and links (and the related links of the nodes) are shared by the workers
+        synchronized (interimLinks) {
+            splitLinks(link, reversedLink, splitNodes);
+        }
+    }
+
+    private void addInterimElements() {
+        // Set the elevation of the interim nodes (i.e., only the nodes of the network) from the DEM
+        if (this.config.ELEVATION_DEM_FILE != null && !this.config.ELEVATION_DEM_FILE.isEmpty() && !this.config.ELEVATION_DEM_FILE.equals("NA")) {
+            LOG.info("Setting the elevation of the nodes from the DEM: {}", this.config.ELEVATION_DEM_FILE);
+            try (DemElevationSampler sampler = new DemElevationSampler(this.config.ELEVATION_DEM_FILE, this.config.INPUT_CRS,
+                    this.config.ELEVATION_TILE_CACHE_SIZE)) {
+                sampler.setElevation(interimNodes.values());
             }
         }
         Map<String, Node> addedNodes = new HashMap<>();
 //        Map<String, Link> addedLinks = new HashMap<>();
-        // Add the interim nodes and links to the MATSim network
-        interimLinks.forEach((linkId, link) -> {
+        // Add the interim nodes and links to the MATSim network in the order of the link ids, so that the network does
+        // not depend on the order in which the links have been split (e.g., by the workers of the streaming conversion)
+        String[] linkIds = interimLinks.keySet().toArray(new String[0]);
+        Arrays.parallelSort(linkIds);
+        for (String linkId : linkIds) {
+            NetworkElement.Link link = interimLinks.get(linkId);
             Node fromNode;
             if (!addedNodes.containsKey(link.getFromNode().getId())){
                 fromNode = NetworkUtils.createNode(Id.createNodeId(link.getFromNode().getId()), link.getFromNode().getCoord());
@@ -140,8 +349,11 @@ public final class NetworkConverter {
             // Add the reserved link attributes
             this.config.getLinkAttrParamSet().RESERVED_LINK_FIELDS.forEach(field ->
                     matsimLink.getAttributes().putAttribute(field, link.getKeyValuePairs().getOrDefault(field, "NA")));
-        });
+        }
+    }
 
+    // Make the network (strongly) connected and transform it into the output CRS
+    private void cleanNetwork() {
         // Process the connected network
         processConnectedNetwork(network);
 
@@ -194,7 +406,6 @@ public final class NetworkConverter {
             reversedLink = new NetworkElement.Link(link.getId()+"_r", link.getToNode(), link.getFromNode());
             reversedLink.addAllowedModes(reversedLinkModes);
             // filter out the oneway key-value pairs of unsupported modes
-            Map<String, String> reversedLinkKeyValuePairs = new HashMap<>(link.getKeyValuePairs());
             Set<String> unsupportedModesOnewayKeys = new HashSet<>();
             for (TransMode.Mode mode : reversedLinkUnsupportedModes){
                 TransMode currentTransMode = configuredTransModes.stream().filter(transMode -> transMode.getMode().name.equals(mode.name)).findFirst().orElse(null);
@@ -203,9 +414,16 @@ public final class NetworkConverter {
                     unsupportedModesOnewayKeys.addAll(onewayKeyValueMapping.keySet());
                 }
             }
-            reversedLinkKeyValuePairs.keySet().removeAll(unsupportedModesOnewayKeys);
-            reversedLink.setKeyValuePairs(reversedLinkKeyValuePairs);
-            reversedLink.addComposedNodes(Utils.reverseLinkedHashMap(link.getComposedNodes()));
+            if (unsupportedModesOnewayKeys.stream().noneMatch(link.getKeyValuePairs()::containsKey)) {
+                // Nothing to filter out, so the key-value pairs are shared instead of copied
+                reversedLink.shareKeyValuePairs(link);
+            } else {
+                Map<String, String> reversedLinkKeyValuePairs = new HashMap<>(link.getKeyValuePairs());
+                reversedLinkKeyValuePairs.keySet().removeAll(unsupportedModesOnewayKeys);
+                reversedLink.setKeyValuePairs(reversedLinkKeyValuePairs);
+            }
+            // Share the composed nodes of the link in reverse order, instead of copying them
+            reversedLink.setReversedComposedNodes(link);
             return reversedLink;
         } else {
             return null;
@@ -214,85 +432,84 @@ public final class NetworkConverter {
 
     // Count the node occurrence in the links
     private Map<String, Integer> countNodeRef() {
+        // The merged features of a shapefile/GeoJSON file often meet the other features at their ends (e.g., a T-junction),
+        // so the end nodes are counted as well
+        boolean countEndNodes = this.config.MERGE_FEATURE_SEGMENTS && !(reader instanceof OsmReader);
         // Create a map to store the reference count of each node
         Map<String, Integer> nodeRefCount = new HashMap<>();
         for (NetworkElement.Link link : reader.getRawLinks().values()) {
-            link.getComposedNodes().forEach((nodeId, node) -> {
-//                String nodeStringId = node.toString();
-                nodeRefCount.put(nodeId, nodeRefCount.getOrDefault(nodeId, 0) + 1);
-            });
+            for (NetworkElement.Node node : link.getComposedNodes()) {
+                nodeRefCount.merge(node.getId(), 1, Integer::sum);
+            }
+            if (countEndNodes) {
+                nodeRefCount.merge(link.getFromNode().getId(), 1, Integer::sum);
+                nodeRefCount.merge(link.getToNode().getId(), 1, Integer::sum);
+            }
         }
         return nodeRefCount;
     }
 
-    // Split the link at the intersection(s)
-    private void splitLinkAtIntersections(NetworkElement.Link link, Map<String, Integer> nodeRefCount) {
-        final NetworkElement.Node[] fromNode = {link.getFromNode()};
-        final NetworkElement.Node endNode = link.getToNode();
-        // Set an index to count the number of new links
-        AtomicInteger idx = new AtomicInteger(0);
-        if (!link.getComposedNodes().isEmpty()) {
-            link.getComposedNodes().forEach((nodeId, node) -> {
-                // If the node is connected to more than one link, split the link
-                if (nodeRefCount.get(nodeId) > 1) {
-                    // Create a new link
-                    NetworkElement.Link newLink = new NetworkElement.Link(link.getId()+"_"+ idx, fromNode[0], node);
-                    newLink.setKeyValuePairs(link.getKeyValuePairs());
-                    newLink.addAllowedModes(link.getAllowedModes());
-                    interimLinks.put(newLink.getId(), newLink);
-                    // Update the related link info
-                    fromNode[0].addRelatedLink(newLink);
-                    node.addRelatedLink(newLink);
-                    interimNodes.put(fromNode[0].getId(), fromNode[0]);
-                    interimNodes.put(node.getId(), node);
-                    idx.getAndIncrement();
-                    fromNode[0] = node;
-                }
-            });
+    // Get the positions of the composed nodes of the link at the intersection(s), i.e., the nodes that are shared with other links
+    private int[] getIntersectionPositions(NetworkElement.Link link, Map<String, Integer> nodeRefCount) {
+        List<NetworkElement.Node> composedNodes = link.getComposedNodes();
+        int[] positions = new int[composedNodes.size()];
+        int count = 0;
+        for (int i = 0; i < composedNodes.size(); i++) {
+            // If the node is connected to more than one link (or visited twice by this link), split the link
+            if (nodeRefCount.get(composedNodes.get(i).getId()) > 1) {
+                positions[count++] = i;
+            }
         }
-        // Create the last/only link
-        NetworkElement.Link lastLink = new NetworkElement.Link(link.getId()+"_"+ idx, fromNode[0], endNode);
-        fromNode[0].addRelatedLink(lastLink);
-        endNode.addRelatedLink(lastLink);
-        lastLink.setKeyValuePairs(link.getKeyValuePairs());
-        lastLink.addAllowedModes(link.getAllowedModes());
+        return Arrays.copyOf(positions, count);
+    }
 
-        interimNodes.put(fromNode[0].getId(), fromNode[0]);
-        interimNodes.put(endNode.getId(), endNode);
-        interimLinks.put(lastLink.getId(), lastLink);
+    private static List<NetworkElement.Node> getComposedNodesAt(NetworkElement.Link link, int[] positions) {
+        List<NetworkElement.Node> nodes = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            nodes.add(link.getComposedNodes().get(position));
+        }
+        return nodes;
+    }
+
+    // Split the link and its reversed link (if any) at the same composed nodes
+    private void splitLinks(NetworkElement.Link link, NetworkElement.Link reversedLink, List<NetworkElement.Node> splitNodes) {
+        splitLink(link, splitNodes);
+        if (reversedLink != null){
+            List<NetworkElement.Node> reversedSplitNodes = new ArrayList<>(splitNodes);
+            Collections.reverse(reversedSplitNodes);
+            splitLink(reversedLink, reversedSplitNodes);
+        }
     }
 
-    // Split the link at all the composed nodes
-    private void splitLinkAtComposedNodes(NetworkElement.Link link) {
-        final NetworkElement.Node[] fromNode = {link.getFromNode()};
+    // Split the link at the given composed nodes (in order)
+    private void splitLink(NetworkElement.Link link, List<NetworkElement.Node> splitNodes) {
+        NetworkElement.Node fromNode = link.getFromNode();
         final NetworkElement.Node endNode = link.getToNode();
         // Set an index to count the number of new links
-        AtomicInteger idx = new AtomicInteger(0);
-        if (!link.getComposedNodes().isEmpty()) {
-            link.getComposedNodes().forEach((nodeId, node) -> {
-                // Create a new link
-                NetworkElement.Link newLink = new NetworkElement.Link(link.getId()+"_"+idx, fromNode[0], node);
-                newLink.setKeyValuePairs(link.getKeyValuePairs());
-                newLink.addAllowedModes(link.getAllowedModes());
-                // Update the related link info
-                fromNode[0].addRelatedLink(newLink);
-                node.addRelatedLink(newLink);
-                interimNodes.put(fromNode[0].getId(), fromNode[0]);
-                interimNodes.put(node.getId(), node);
-                interimLinks.put(newLink.getId(), newLink);
-                // Update the index and fromNode
-                idx.getAndIncrement();
-                fromNode[0] = node;
-            });
+        int idx = 0;
+        for (NetworkElement.Node node : splitNodes) {
+            // Create a new link
+            NetworkElement.Link newLink = new NetworkElement.Link(link.getId()+"_"+idx, fromNode, node);
+            newLink.shareKeyValuePairs(link);
+            newLink.addAllowedModes(link.getAllowedModes());
+            // Update the related link info
+            fromNode.addRelatedLink(newLink);
+            node.addRelatedLink(newLink);
+            interimNodes.put(fromNode.getId(), fromNode);
+            interimNodes.put(node.getId(), node);
+            interimLinks.put(newLink.getId(), newLink);
+            // Update the index and fromNode
+            idx++;
+            fromNode = node;
         }
         // Create the last/only link
-        NetworkElement.Link lastLink = new NetworkElement.Link(link.getId()+"_"+ idx, fromNode[0], endNode);
-        fromNode[0].addRelatedLink(lastLink);
+        NetworkElement.Link lastLink = new NetworkElement.Link(link.getId()+"_"+ idx, fromNode, endNode);
+        fromNode.addRelatedLink(lastLink);
         endNode.addRelatedLink(lastLink);
-        lastLink.setKeyValuePairs(link.getKeyValuePairs());
+        lastLink.shareKeyValuePairs(link);
         lastLink.addAllowedModes(link.getAllowedModes());
 
-        interimNodes.put(fromNode[0].getId(), fromNode[0]);
+        interimNodes.put(fromNode.getId(), fromNode);
         interimNodes.put(endNode.getId(), endNode);
         interimLinks.put(lastLink.getId(), lastLink);
     }
@@ -324,29 +541,24 @@ public final class NetworkConverter {
 
         // Match the LinkAttrParamSet based on the key-value pairs
         this.config.getLinkAttrParamSet().getParams().forEach((param, field) -> {
-            // if the key-value pairs contain the field, get the value
-            if (link.getKeyValuePairs().containsKey(field)
-                    && link.getKeyValuePairs().get(field) != null
-                    && !link.getKeyValuePairs().get(field).trim().isEmpty()
-                    && !link.getKeyValuePairs().get(field).equals("LENGTH_FIELD")) {
-                try {
-                    linkAttr.put(param, Double.parseDouble(link.getKeyValuePairs().get(field)));
-                } catch (NumberFormatException e){
-                    // raise an error if the value is not a number
-                    throw new NumberFormatException("The value of the field: " + field + " is not a number for link: " + link.getId() + "!");
-//                    linkAttr.put(param, maxDefaultAttr.get(param));
-                }
+            // if the key-value pairs contain the field, get the value (a numeric attribute of a feature is used as it is)
+            Double value = getLinkAttrValue(link, field);
+            if (value != null) {
+                linkAttr.put(param, value);
             } else {  // if the field is not found in the key-value pairs, use the default value
                 if (param.equals("LENGTH_FIELD")){
                     double length;
                     // if the field is length, calculate the length based on the coordinates of the fromNode and toNode
-                    if (link.getFromNode().getCoord().hasZ()){
-                        length = Utils.calculateDistWithElevation(link.getFromNode().getCoord(), link.getToNode().getCoord());
+                    Coord fromCoord = link.getFromNode().getCoord();
+                    Coord toCoord = link.getToNode().getCoord();
+                    // Nodes outside the DEM (if any) have no elevation
+                    if (fromCoord.hasZ() && toCoord.hasZ()){
+                        length = Utils.calculateDistWithElevation(fromCoord, toCoord);
                     } else {
-                        try {length = Utils.calculateHaversineDist(link.getFromNode().getCoord(), link.getToNode().getCoord());}
+                        try {length = Utils.calculateHaversineDist(fromCoord, toCoord);}
                         catch (IllegalArgumentException e){
                             // calculate the Euclidean length
-                            length = NetworkUtils.getEuclideanDistance(link.getFromNode().getCoord(), link.getToNode().getCoord());
+                            length = NetworkUtils.getEuclideanDistance(fromCoord, toCoord);
                         }
                     }
                     linkAttr.put(param, length >0 ? length : 1);
@@ -359,6 +571,30 @@ public final class NetworkConverter {
         return linkAttr;
     }
 
+    /*
+    Get the value of the field from the key-value pairs of the link, or null if it is missing, empty (also NaN) or
+    "LENGTH_FIELD" (i.e., the default value is used). A numeric attribute of a feature is used without the string conversion
+     */
+    private static Double getLinkAttrValue(NetworkElement.Link link, String field) {
+        if (link.getKeyValuePairs() instanceof FeatureAttributes attributes) {
+            Number number = attributes.getNumber(field);
+            if (number != null) {
+                return number.doubleValue();
+            }
+        }
+        String value = link.getKeyValuePairs().get(field);
+        if (value == null || value.trim().isEmpty() || value.equals("LENGTH_FIELD")) {
+            return null;
+        }
+        try {
+            double number = Double.parseDouble(value);
+            return Double.isFinite(number) ? number : null;
+        } catch (NumberFormatException e){
+            // raise an error if the value is not a number
+            throw new NumberFormatException("The value of the field: " + field + " is not a number for link: " + link.getId() + "!");
+        }
+    }
+
     private void processConnectedNetwork(Network network){
         // Process the connected network
         if (config.getConnectedNetworkParamSet().STRONGLY_CONNECTED) {
@@ -376,12 +612,24 @@ public final class NetworkConverter {
                     // Remove the disconnected nodes and links
                     break;
                 case "adapt_mode":
-                    // Remove the nodes and links that are isolated based on the threshold
+                    // Remove the mode (instead of the link) from the links outside the largest component of this mode
+                    adaptModesForConnectivity(network);
                     break;
             }
         }
     }
 
+    /*
+    Make each configured mode strongly connected by removing it from the allowed modes of the links that are outside
+    its largest strongly connected component. The links (and nodes) are kept for the other modes, and only removed
+    if they do not allow any mode anymore.
+     */
+    private void adaptModesForConnectivity(Network network){
+        Set<String> modes = new HashSet<>();
+        config.getConnectedNetworkParamSet().MODE.forEach(mode -> modes.add(mode.name));
+        new SinglePassMultiModalNetworkCleaner(network).run(modes);
+    }
+
     private void checkOrConvertUnit(Map<String, Double> linkAttr){
         assert this.config.getLinkAttrParamSet().INPUT_PARAM_UNIT != null;
         assert !this.config.getLinkAttrParamSet().INPUT_PARAM_UNIT.isEmpty();
@@ -399,23 +647,100 @@ public final class NetworkConverter {
         return this.network;
     }
 
+    /**
+     * Write the network in all the requested output formats. The formats are written concurrently, as they only read
+     * the network. The shapefile and the GeoJSON file are streamed from the links, so that their features are not held in memory.
+     * The OUTPUT_THREADS are shared by the formats: the pool runs at most one thread per format, and the rest are split
+     * evenly among the formats for their own parallel work (the gzip compression and the MBTiles tiling).
+     */
     public void writeNetwork(){
-        new NetworkWriter(this.network).write(this.config.OUTPUT_NETWORK_FILE);
-
-        if (this.config.OUTPUT_SHP_FILE != null && !this.config.OUTPUT_SHP_FILE.isEmpty() && !this.config.OUTPUT_SHP_FILE.equals("NA")){
-            LOG.info("Output the network to a shapefile: {}", this.config.OUTPUT_SHP_FILE);
-            Network2Shp network2Shp = new Network2Shp(this.config.OUTPUT_CRS, this.network);
-            network2Shp.write(this.config.OUTPUT_SHP_FILE);
-            LOG.info("The shapefile has been written successfully!");
+        boolean writeShp = isOutputRequested(this.config.OUTPUT_SHP_FILE);
+        boolean writeGeoJson = isOutputRequested(this.config.OUTPUT_GEOJSON_FILE);
+        boolean writeFlatGeobuf = isOutputRequested(this.config.OUTPUT_FLATGEOBUF_FILE);
+        boolean writeGeoParquet = isOutputRequested(this.config.OUTPUT_GEOPARQUET_FILE);
+        boolean writeMBTiles = isOutputRequested(this.config.OUTPUT_MBTILES_FILE);
+        boolean writeBinary = isOutputRequested(this.config.OUTPUT_BINARY_NETWORK_FILE);
+
+        int outputThreads = this.config.OUTPUT_THREADS > 0 ? this.config.OUTPUT_THREADS : Runtime.getRuntime().availableProcessors();
+        int numberOfOutputs = 1;
+        for (boolean writeOutput : new boolean[]{writeShp, writeGeoJson, writeFlatGeobuf, writeGeoParquet, writeMBTiles, writeBinary}) {
+            numberOfOutputs += writeOutput ? 1 : 0;
         }
+        int poolSize = Math.min(numberOfOutputs, outputThreads);
+        int threadsPerOutput = Math.max(1, outputThreads / poolSize);
+        int compressionThreads = this.config.OUTPUT_COMPRESSION_THREADS > 0 ? this.config.OUTPUT_COMPRESSION_THREADS : threadsPerOutput;
+
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        List<CompletableFuture<Void>> outputs = new ArrayList<>();
+        try {
+            outputs.add(CompletableFuture.runAsync(() -> {
+                ParallelGzip.writeNetwork(this.config.OUTPUT_NETWORK_FILE, new NetworkWriter(this.network), compressionThreads);
+                LOG.info("The MATSim network has been written to {}", this.config.OUTPUT_NETWORK_FILE);
+            }, executor));
+
+            if (writeShp) {
+                // The links are streamed into the shapefile writer, without holding all the features in memory
+                outputs.add(CompletableFuture.runAsync(() -> {
+                    LOG.info("Output the network to a shapefile: {}", this.config.OUTPUT_SHP_FILE);
+                    new Network2Shp(this.config.OUTPUT_CRS, this.network).write(this.config.OUTPUT_SHP_FILE);
+                    LOG.info("The shapefile has been written successfully!");
+                }, executor));
+            }
+            if (writeGeoJson) {
+                outputs.add(CompletableFuture.runAsync(() -> {
+                    LOG.info("Output the network to a GeoJSON file: {}", this.config.OUTPUT_GEOJSON_FILE);
+                    new Network2GeoJson(this.config.OUTPUT_CRS, this.network)
+                            .setPrecision(this.config.OUTPUT_GEOJSON_PRECISION)
+                            .setNewlineDelimited(this.config.OUTPUT_GEOJSON_NEWLINE_DELIMITED)
+                            .setCompressionThreads(compressionThreads)
+                            .write(this.config.OUTPUT_GEOJSON_FILE);
+                    LOG.info("The GeoJSON file has been written successfully!");
+                }, executor));
+            }
 
-        if (this.config.OUTPUT_GEOJSON_FILE != null && !this.config.OUTPUT_GEOJSON_FILE.isEmpty() && !this.config.OUTPUT_GEOJSON_FILE.equals("NA")){
-            LOG.info("Output the network to a GeoJSON file: {}", this.config.OUTPUT_GEOJSON_FILE);
-            Network2GeoJson network2GeoJson = new Network2GeoJson(this.config.OUTPUT_CRS, this.network);
-            network2GeoJson.write(this.config.OUTPUT_GEOJSON_FILE);
-            LOG.info("The GeoJSON file has been written successfully!");
+            if (writeFlatGeobuf) {
+                outputs.add(CompletableFuture.runAsync(() -> {
+                    LOG.info("Output the network to a FlatGeobuf file: {}", this.config.OUTPUT_FLATGEOBUF_FILE);
+                    new Network2FlatGeobuf(this.config.OUTPUT_CRS, this.network).write(this.config.OUTPUT_FLATGEOBUF_FILE);
+                    LOG.info("The FlatGeobuf file has been written successfully!");
+                }, executor));
+            }
+            if (writeGeoParquet) {
+                outputs.add(CompletableFuture.runAsync(() -> {
+                    LOG.info("Output the network to a GeoParquet file: {}", this.config.OUTPUT_GEOPARQUET_FILE);
+                    new Network2GeoParquet(this.config.OUTPUT_CRS, this.network).write(this.config.OUTPUT_GEOPARQUET_FILE);
+                    LOG.info("The GeoParquet file has been written successfully!");
+                }, executor));
+            }
+            if (writeMBTiles) {
+                outputs.add(CompletableFuture.runAsync(() -> {
+                    LOG.info("Output the network to a MBTiles file: {}", this.config.OUTPUT_MBTILES_FILE);
+                    new Network2MBTiles(this.config.OUTPUT_CRS, this.network)
+                            .setZoomRange(this.config.OUTPUT_MBTILES_MIN_ZOOM, this.config.OUTPUT_MBTILES_MAX_ZOOM)
+                            .setNumberOfThreads(threadsPerOutput)
+                            .write(this.config.OUTPUT_MBTILES_FILE);
+                    LOG.info("The MBTiles file has been written successfully!");
+                }, executor));
+            }
+
+            if (writeBinary) {
+                outputs.add(CompletableFuture.runAsync(() -> {
+                    LOG.info("Output the network to a binary network file: {}", this.config.OUTPUT_BINARY_NETWORK_FILE);
+                    new BinaryNetworkWriter(this.network).write(this.config.OUTPUT_BINARY_NETWORK_FILE);
+                }, executor));
+            }
+
+            CompletableFuture.allOf(outputs.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to write the network: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdown();
         }
     }
 
+    private static boolean isOutputRequested(String file) {
+        return file != null && !file.isEmpty() && !file.equals("NA");
+    }
+
 }
 
@@ -16,6 +16,8 @@ import static network.tools.Utils.id2String;
 
 public final class NetworkElement {
 
+    private static final Node[] NO_NODES = new Node[0];
+
     public interface Element{
         String getType();
         String getId();
@@ -25,7 +27,7 @@ public final class NetworkElement {
     public static class Node implements Element{
 
         private final String id;
-        private final Coord coord;
+        private Coord coord;
         private final Map<String, Link> relatedLinks = new HashMap<>(); // links that are connected to this node
 
 
@@ -50,6 +52,12 @@ public final class NetworkElement {
             }
         }
 
+        // For the subclasses that store the coordinate in another way
+        private <T> Node(T id){
+            this.id = id2String(id);
+            this.coord = null;
+        }
+
         @Override
         public String getType(){
             return "Node";
@@ -64,6 +72,28 @@ public final class NetworkElement {
             return this.coord;
         }
 
+        // Get the x, y (and z) of the node without creating a Coord
+        public double getX(){
+            return this.coord.getX();
+        }
+
+        public double getY(){
+            return this.coord.getY();
+        }
+
+        public boolean hasZ(){
+            return this.coord.hasZ();
+        }
+
+        public double getZ(){
+            return this.coord.getZ();
+        }
+
+        // Set the elevation of the node, e.g., from a DEM
+        public void setElevation(double z){
+            this.coord = new Coord(this.coord.getX(), this.coord.getY(), z);
+        }
+
         public Map<String, Link> getRelatedLinks(){
             return this.relatedLinks;
         }
@@ -83,11 +113,10 @@ public final class NetworkElement {
             if(obj == this){
                 return true;
             }
-            if(obj == null || obj.getClass() != this.getClass()){
+            if(!(obj instanceof Node node)){
                 return false;
             }
 
-            Node node = (Node)obj;
             return node.getId().equals(this.getId());
         }
 
@@ -97,16 +126,99 @@ public final class NetworkElement {
         }
     }
 
+    /**
+     * A node with a fixed-point coordinate: the longitude and latitude are stored as int32 in 1e-7 degree (i.e., the
+     * precision of OSM), and the elevation as int32 in millimetre, which roughly halves the memory of the coordinate.
+     * The Coord is only created on demand, e.g., when building the MATSim network. Only for WGS84 coordinates.
+     */
+    public static final class FixedPointNode extends Node{
+        private static final double DEGREE_SCALE = 1e7;
+        private static final double ELEVATION_SCALE = 1e3;
+        // Marks a node without elevation
+        private static final int NO_ELEVATION = Integer.MIN_VALUE;
+
+        private final int lon;
+        private final int lat;
+        private int elevation;
+
+        public <T> FixedPointNode(T id, double lon, double lat){
+            super(id);
+            this.lon = toFixedPoint(lon, DEGREE_SCALE);
+            this.lat = toFixedPoint(lat, DEGREE_SCALE);
+            this.elevation = NO_ELEVATION;
+        }
+
+        public <T> FixedPointNode(T id, double lon, double lat, double elevation){
+            super(id);
+            this.lon = toFixedPoint(lon, DEGREE_SCALE);
+            this.lat = toFixedPoint(lat, DEGREE_SCALE);
+            this.elevation = toFixedPoint(elevation, ELEVATION_SCALE);
+        }
+
+        private static int toFixedPoint(double value, double scale){
+            long fixedPoint = Math.round(value * scale);
+            if (Double.isNaN(value) || fixedPoint <= NO_ELEVATION || fixedPoint > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The coordinate " + value + " cannot be stored as a fixed-point number.");
+            }
+            return (int) fixedPoint;
+        }
+
+        @Override
+        public Coord getCoord(){
+            return hasZ() ? new Coord(getX(), getY(), getZ()) : new Coord(getX(), getY());
+        }
+
+        @Override
+        public double getX(){
+            return this.lon / DEGREE_SCALE;
+        }
+
+        @Override
+        public double getY(){
+            return this.lat / DEGREE_SCALE;
+        }
+
+        @Override
+        public boolean hasZ(){
+            return this.elevation != NO_ELEVATION;
+        }
+
+        @Override
+        public double getZ(){
+            if (!hasZ()) {
+                throw new IllegalStateException("The node " + getId() + " has no elevation.");
+            }
+            return this.elevation / ELEVATION_SCALE;
+        }
+
+        @Override
+        public void setElevation(double z){
+            this.elevation = toFixedPoint(z, ELEVATION_SCALE);
+        }
+    }
+
 
     public static class Link implements Element{
 
         private final String id;
         private final Node fromNode;
         private final Node toNode;
-        // the link can be composed of multiple nodes, where the nodes are stored in order
-        private final LinkedHashMap<String, Node> composedNodes = new LinkedHashMap<>();
+        /*
+        the link can be composed of multiple nodes, where the nodes are stored in order in a compact array (a node can
+        occur more than once, e.g., in a closed way). The array can be shared with the reversed link of a oneway link,
+        in which case it is read in reverse order, and it is copied before it is modified (copy-on-write).
+         */
+        private Node[] composedNodes = NO_NODES;
+        private int composedNodeCount = 0;
+        private boolean composedNodesReversed = false;
+        private boolean composedNodesShared = false;
         private final Set<TransMode.Mode> allowedModes = new HashSet<>(); // allowed modes for this link
-        private final Map<String, String> keyValuePairs = new HashMap<>(); // key-value pairs for this link
+        /*
+        key-value pairs for this link; the map can be shared with other links (e.g., the links split from a raw link) or
+        be a read-only view (e.g., of the attributes of a feature), in which case it is copied before it is modified
+         */
+        private Map<String, String> keyValuePairs = new HashMap<>();
+        private boolean keyValuePairsShared = false;
 
 
         public String getType(){
@@ -125,8 +237,25 @@ public final class NetworkElement {
             return this.toNode;
         }
 
-        public LinkedHashMap<String, Node> getComposedNodes(){
-            return this.composedNodes;
+        // Get the composed nodes in order, as a view of the compact array
+        public List<Node> getComposedNodes(){
+            return new AbstractList<>() {
+                @Override
+                public Node get(int index) {
+                    Objects.checkIndex(index, composedNodeCount);
+                    return composedNodes[composedNodesReversed ? composedNodeCount - 1 - index : index];
+                }
+
+                @Override
+                public int size() {
+                    return composedNodeCount;
+                }
+
+                @Override
+                public void clear() {
+                    clearComposedNodes();
+                }
+            };
         }
 
         public Set<TransMode.Mode> getAllowedModes(){
@@ -141,11 +270,45 @@ public final class NetworkElement {
         }
 
         public void addComposedNode(Node node){
-            this.composedNodes.put(node.getId(), node);
+            ensureOwnComposedNodes(this.composedNodeCount + 1);
+            this.composedNodes[this.composedNodeCount++] = node;
         }
 
-        public void addComposedNodes(LinkedHashMap<String, Node> nodes){
-            this.composedNodes.putAll(nodes);
+        public void addComposedNodes(Collection<Node> nodes){
+            ensureOwnComposedNodes(this.composedNodeCount + nodes.size());
+            for (Node node : nodes) {
+                this.composedNodes[this.composedNodeCount++] = node;
+            }
+        }
+
+        // Set the composed nodes as the reversed ones of the other link, without copying them (e.g., for a reversed oneway link)
+        public void setReversedComposedNodes(Link link){
+            this.composedNodes = link.composedNodes;
+            this.composedNodeCount = link.composedNodeCount;
+            this.composedNodesReversed = !link.composedNodesReversed;
+            this.composedNodesShared = true;
+            link.composedNodesShared = true;
+        }
+
+        public void clearComposedNodes(){
+            this.composedNodes = NO_NODES;
+            this.composedNodeCount = 0;
+            this.composedNodesReversed = false;
+            this.composedNodesShared = false;
+        }
+
+        // Make sure that the array is not shared, is in the forward order, and has the capacity
+        private void ensureOwnComposedNodes(int capacity){
+            if (!this.composedNodesShared && !this.composedNodesReversed && capacity <= this.composedNodes.length) {
+                return;
+            }
+            Node[] nodes = new Node[Math.max(capacity, this.composedNodeCount + (this.composedNodeCount >> 1) + 1)];
+            for (int i = 0; i < this.composedNodeCount; i++) {
+                nodes[i] = this.composedNodes[this.composedNodesReversed ? this.composedNodeCount - 1 - i : i];
+            }
+            this.composedNodes = nodes;
+            this.composedNodesReversed = false;
+            this.composedNodesShared = false;
         }
 
         public void addAllowedMode(TransMode.Mode mode){
@@ -156,18 +319,41 @@ public final class NetworkElement {
             this.allowedModes.addAll(modes);
         }
 
+        // Get the key-value pairs, which should be modified through addKeyValuePair(s) (the map may be shared)
         public Map<String, String> getKeyValuePairs(){
             return this.keyValuePairs;
         }
 
         public void addKeyValuePair(String key, String value){
+            ensureOwnKeyValuePairs();
             this.keyValuePairs.put(key, value);
         }
 
         public void setKeyValuePairs(Map<String, String> keyValuePairs){
+            ensureOwnKeyValuePairs();
             this.keyValuePairs.putAll(keyValuePairs);
         }
 
+        // Use the (read-only) map as the key-value pairs without copying it, e.g., a lazy view of the attributes of a feature
+        public void shareKeyValuePairs(Map<String, String> keyValuePairs){
+            this.keyValuePairs = keyValuePairs;
+            this.keyValuePairsShared = true;
+        }
+
+        // Share the key-value pairs of the other link without copying them, e.g., for the links split from a raw link
+        public void shareKeyValuePairs(Link link){
+            this.keyValuePairs = link.keyValuePairs;
+            this.keyValuePairsShared = true;
+            link.keyValuePairsShared = true;
+        }
+
+        private void ensureOwnKeyValuePairs(){
+            if (this.keyValuePairsShared) {
+                this.keyValuePairs = new HashMap<>(this.keyValuePairs);
+                this.keyValuePairsShared = false;
+            }
+        }
+
         @Override
         public boolean equals(Object obj){
             if(obj == this){
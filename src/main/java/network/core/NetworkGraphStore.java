@@ -0,0 +1,485 @@
+package network.core;
+
+import org.matsim.api.core.v01.Coord;
+
+import java.util.*;
+
+/**
+ * A columnar (structure-of-arrays) store of the raw OSM network, as a compact alternative to the object-based
+ * {@link NetworkElement.Node} and {@link NetworkElement.Link} for large networks (see the COLUMNAR_GRAPH_STORE option).
+ * <p>
+ * The nodes and links are indexed by int and their fields are stored in primitive arrays: the OSM ids and coordinates
+ * of the nodes, the OSM ids and from/to node indices of the links, the composed nodes of the links (CSR layout), a
+ * bitmask of the allowed {@link TransMode.Mode}s (by ordinal), and the id of the (deduplicated) tag set of the links.
+ * The related links of the nodes are derived on demand as a CSR adjacency.
+ * <p>
+ * The ids are looked up by binary search as long as they are added in ascending order, which is the order of the
+ * elements in a sorted PBF file; otherwise, a hash index of the ids is built at the first lookup and kept up to date.
+ * <p>
+ * The elements are accessed by index, through the flyweight views {@link NodeView} and {@link LinkView}, or as raw
+ * elements that are created one link at a time by {@link #getRawLink}.
+ *
+ * @see NetworkElement
+ */
+public final class NetworkGraphStore {
+
+    public static final int NO_NODE = -1;
+    public static final int NO_LINK = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int[] NO_COMPOSED_NODES = new int[0];
+
+    static {
+        if (TransMode.Mode.values().length > Long.SIZE) {
+            throw new IllegalStateException("The mode bitmask supports at most 64 modes.");
+        }
+    }
+
+    // Node columns
+    private int nodeCount = 0;
+    private long[] nodeIds = new long[INITIAL_CAPACITY];
+    private double[] nodeX = new double[INITIAL_CAPACITY];
+    private double[] nodeY = new double[INITIAL_CAPACITY];
+    private final IdIndex nodeIndex = new IdIndex();
+
+    // Link columns
+    private int linkCount = 0;
+    private long[] linkIds = new long[INITIAL_CAPACITY];
+    private int[] linkFrom = new int[INITIAL_CAPACITY];
+    private int[] linkTo = new int[INITIAL_CAPACITY];
+    private long[] linkModeMasks = new long[INITIAL_CAPACITY];
+    private int[] linkTagSets = new int[INITIAL_CAPACITY];
+    // The composed nodes of link i are composedNodes[composedOffsets[i], composedOffsets[i + 1])
+    private int[] composedOffsets = new int[INITIAL_CAPACITY + 1];
+    private int[] composedNodes = new int[INITIAL_CAPACITY];
+    private final IdIndex linkIndex = new IdIndex();
+
+    // The distinct tag sets, which are shared (read-only) by the links
+    private final List<Map<String, String>> tagSets = new ArrayList<>();
+    private final Map<Map<String, String>, Integer> tagSetIndices = new HashMap<>();
+
+    // Built on demand, and reset when the topology changes
+    private int[] adjacencyOffsets;
+    private int[] adjacentLinks;
+
+    // Add a node and return its index
+    public int addNode(long id, double x, double y) {
+        if (this.nodeCount == this.nodeIds.length) {
+            int capacity = grow(this.nodeCount);
+            this.nodeIds = Arrays.copyOf(this.nodeIds, capacity);
+            this.nodeX = Arrays.copyOf(this.nodeX, capacity);
+            this.nodeY = Arrays.copyOf(this.nodeY, capacity);
+        }
+        int idx = this.nodeCount++;
+        this.nodeIds[idx] = id;
+        this.nodeX[idx] = x;
+        this.nodeY[idx] = y;
+        this.nodeIndex.add(this.nodeIds, idx);
+        this.adjacencyOffsets = null;
+        return idx;
+    }
+
+    // Add a link and return its index; the from/to and composed nodes can be NO_NODE (e.g., if missing in an OSM extract)
+    public int addLink(long id, int fromNode, int toNode, int[] composedNodeIndices, int composedNodeCount,
+                       long modeMask, Map<String, String> tags) {
+        if (this.linkCount == this.linkIds.length) {
+            int capacity = grow(this.linkCount);
+            this.linkIds = Arrays.copyOf(this.linkIds, capacity);
+            this.linkFrom = Arrays.copyOf(this.linkFrom, capacity);
+            this.linkTo = Arrays.copyOf(this.linkTo, capacity);
+            this.linkModeMasks = Arrays.copyOf(this.linkModeMasks, capacity);
+            this.linkTagSets = Arrays.copyOf(this.linkTagSets, capacity);
+            this.composedOffsets = Arrays.copyOf(this.composedOffsets, capacity + 1);
+        }
+        int composedStart = this.composedOffsets[this.linkCount];
+        int composedEnd = composedStart + composedNodeCount;
+        if (composedEnd > this.composedNodes.length) {
+            this.composedNodes = Arrays.copyOf(this.composedNodes, Math.max(grow(this.composedNodes.length), composedEnd));
+        }
+        System.arraycopy(composedNodeIndices, 0, this.composedNodes, composedStart, composedNodeCount);
+
+        int idx = this.linkCount++;
+        this.linkIds[idx] = id;
+        this.linkFrom[idx] = fromNode;
+        this.linkTo[idx] = toNode;
+        this.linkModeMasks[idx] = modeMask;
+        this.linkTagSets[idx] = internTagSet(tags);
+        this.composedOffsets[idx + 1] = composedEnd;
+        this.linkIndex.add(this.linkIds, idx);
+        this.adjacencyOffsets = null;
+        return idx;
+    }
+
+    private int internTagSet(Map<String, String> tags) {
+        Integer idx = this.tagSetIndices.get(tags);
+        if (idx == null) {
+            Map<String, String> tagSet = Collections.unmodifiableMap(new HashMap<>(tags));
+            idx = this.tagSets.size();
+            this.tagSets.add(tagSet);
+            this.tagSetIndices.put(tagSet, idx);
+        }
+        return idx;
+    }
+
+    private static int grow(int capacity) {
+        return Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1));
+    }
+
+    public static long toModeMask(Set<TransMode.Mode> modes) {
+        long mask = 0L;
+        for (TransMode.Mode mode : modes) {
+            mask |= 1L << mode.ordinal();
+        }
+        return mask;
+    }
+
+    public static Set<TransMode.Mode> toModes(long mask) {
+        Set<TransMode.Mode> modes = EnumSet.noneOf(TransMode.Mode.class);
+        for (TransMode.Mode mode : TransMode.Mode.values()) {
+            if ((mask & (1L << mode.ordinal())) != 0) {
+                modes.add(mode);
+            }
+        }
+        return modes;
+    }
+
+    // Getters for the columns (by index)
+
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    public int getLinkCount() {
+        return this.linkCount;
+    }
+
+    public long getNodeId(int node) {
+        return this.nodeIds[node];
+    }
+
+    public double getX(int node) {
+        return this.nodeX[node];
+    }
+
+    public double getY(int node) {
+        return this.nodeY[node];
+    }
+
+    public long getLinkId(int link) {
+        return this.linkIds[link];
+    }
+
+    public int getFromNode(int link) {
+        return this.linkFrom[link];
+    }
+
+    public int getToNode(int link) {
+        return this.linkTo[link];
+    }
+
+    public int getComposedNodeCount(int link) {
+        return this.composedOffsets[link + 1] - this.composedOffsets[link];
+    }
+
+    public int getComposedNode(int link, int i) {
+        return this.composedNodes[this.composedOffsets[link] + i];
+    }
+
+    public long getModeMask(int link) {
+        return this.linkModeMasks[link];
+    }
+
+    public void addAllowedModes(int link, Set<TransMode.Mode> modes) {
+        this.linkModeMasks[link] |= toModeMask(modes);
+    }
+
+    public Map<String, String> getTags(int link) {
+        return this.tagSets.get(this.linkTagSets[link]);
+    }
+
+    // Add (or replace) the tags of a link, e.g., the reserved tags of a pt relation; the tag sets are never modified in place
+    public void addTags(int link, Map<String, String> tags) {
+        Map<String, String> linkTags = new HashMap<>(getTags(link));
+        linkTags.putAll(tags);
+        this.linkTagSets[link] = internTagSet(linkTags);
+    }
+
+    public int getTagSetCount() {
+        return this.tagSets.size();
+    }
+
+    // Get the index of the node with the id, or NO_NODE if there is none
+    public int getNodeIndex(long id) {
+        return this.nodeIndex.get(this.nodeIds, this.nodeCount, id, NO_NODE);
+    }
+
+    // Get the index of the link with the id, or NO_LINK if there is none
+    public int getLinkIndex(long id) {
+        return this.linkIndex.get(this.linkIds, this.linkCount, id, NO_LINK);
+    }
+
+    /**
+     * Count the references of each node as a composed node of the links (a node that is visited twice by a link is
+     * counted twice), indexed by the node index. A composed node with a count above one is an intersection.
+     */
+    public int[] countComposedNodeRefs() {
+        int[] counts = new int[this.nodeCount];
+        int end = this.composedOffsets[this.linkCount];
+        for (int i = 0; i < end; i++) {
+            if (this.composedNodes[i] != NO_NODE) {
+                counts[this.composedNodes[i]]++;
+            }
+        }
+        return counts;
+    }
+
+    // Get the positions of the composed nodes of the link that are intersections, by the counts of countComposedNodeRefs
+    public int[] getIntersectionPositions(int link, int[] composedNodeRefCounts) {
+        int start = this.composedOffsets[link];
+        int[] positions = new int[this.composedOffsets[link + 1] - start];
+        int count = 0;
+        for (int i = 0; i < positions.length; i++) {
+            int node = this.composedNodes[start + i];
+            if (node != NO_NODE && composedNodeRefCounts[node] > 1) {
+                positions[count++] = i;
+            }
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Create the raw link of the given index, with the same ids, nodes, modes and (shared, read-only) tags as the
+     * {@link network.readers.OsmReader} would create. The nodes are created once through the cache (indexed by the node
+     * index), so that the raw links of the store share their nodes as the raw links of the reader do.
+     *
+     * @param fixedPointCoordinates whether the nodes are created as {@link NetworkElement.FixedPointNode}s
+     */
+    public NetworkElement.Link getRawLink(int link, NetworkElement.Node[] nodeCache, boolean fixedPointCoordinates) {
+        NetworkElement.Link rawLink = new NetworkElement.Link(this.linkIds[link],
+                getRawNode(this.linkFrom[link], nodeCache, fixedPointCoordinates),
+                getRawNode(this.linkTo[link], nodeCache, fixedPointCoordinates));
+        int count = getComposedNodeCount(link);
+        for (int i = 0; i < count; i++) {
+            rawLink.addComposedNode(getRawNode(getComposedNode(link, i), nodeCache, fixedPointCoordinates));
+        }
+        rawLink.addAllowedModes(toModes(this.linkModeMasks[link]));
+        rawLink.shareKeyValuePairs(getTags(link));
+        return rawLink;
+    }
+
+    private NetworkElement.Node getRawNode(int node, NetworkElement.Node[] nodeCache, boolean fixedPointCoordinates) {
+        if (node == NO_NODE) {
+            return null;
+        }
+        if (nodeCache[node] == null) {
+            nodeCache[node] = fixedPointCoordinates
+                    ? new NetworkElement.FixedPointNode(this.nodeIds[node], this.nodeX[node], this.nodeY[node])
+                    : new NetworkElement.Node(this.nodeIds[node], this.nodeX[node], this.nodeY[node]);
+        }
+        return nodeCache[node];
+    }
+
+    // The related links of a node are the links that start or end at it (in the order of the link indices)
+    public int getRelatedLinkCount(int node) {
+        ensureAdjacency();
+        return this.adjacencyOffsets[node + 1] - this.adjacencyOffsets[node];
+    }
+
+    public int getRelatedLink(int node, int i) {
+        ensureAdjacency();
+        return this.adjacentLinks[this.adjacencyOffsets[node] + i];
+    }
+
+    private void ensureAdjacency() {
+        if (this.adjacencyOffsets != null) {
+            return;
+        }
+        int[] offsets = new int[this.nodeCount + 1];
+        for (int link = 0; link < this.linkCount; link++) {
+            int from = this.linkFrom[link];
+            int to = this.linkTo[link];
+            if (from != NO_NODE) {
+                offsets[from + 1]++;
+            }
+            if (to != NO_NODE && to != from) {
+                offsets[to + 1]++;
+            }
+        }
+        for (int node = 0; node < this.nodeCount; node++) {
+            offsets[node + 1] += offsets[node];
+        }
+        int[] links = new int[offsets[this.nodeCount]];
+        int[] positions = Arrays.copyOf(offsets, this.nodeCount);
+        for (int link = 0; link < this.linkCount; link++) {
+            int from = this.linkFrom[link];
+            int to = this.linkTo[link];
+            if (from != NO_NODE) {
+                links[positions[from]++] = link;
+            }
+            if (to != NO_NODE && to != from) {
+                links[positions[to]++] = link;
+            }
+        }
+        this.adjacentLinks = links;
+        this.adjacencyOffsets = offsets;
+    }
+
+    /*
+    The lookup of the ids of a column: a binary search while the ids are in ascending order, and a hash index (id ->
+    index) from the first lookup after an id has been added out of order.
+     */
+    private static final class IdIndex {
+        private boolean ascending = true;
+        private Map<Long, Integer> hashIndex = null;
+
+        void add(long[] ids, int idx) {
+            if (this.hashIndex != null) {
+                this.hashIndex.put(ids[idx], idx);
+            } else if (idx > 0 && ids[idx] <= ids[idx - 1]) {
+                this.ascending = false;
+            }
+        }
+
+        int get(long[] ids, int count, long id, int missing) {
+            if (this.ascending) {
+                int idx = Arrays.binarySearch(ids, 0, count, id);
+                return idx >= 0 ? idx : missing;
+            }
+            if (this.hashIndex == null) {
+                this.hashIndex = new HashMap<>((int) (count / 0.75) + 1);
+                for (int i = 0; i < count; i++) {
+                    this.hashIndex.putIfAbsent(ids[i], i);
+                }
+            }
+            return this.hashIndex.getOrDefault(id, missing);
+        }
+    }
+
+    // Flyweight views
+
+    public NodeView getNode(int node) {
+        return new NodeView(node);
+    }
+
+    public LinkView getLink(int link) {
+        return new LinkView(link);
+    }
+
+    public final class NodeView implements NetworkElement.Element {
+        private final int index;
+
+        private NodeView(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return this.index;
+        }
+
+        @Override
+        public String getType() {
+            return "Node";
+        }
+
+        @Override
+        public String getId() {
+            return String.valueOf(nodeIds[this.index]);
+        }
+
+        public Coord getCoord() {
+            return new Coord(nodeX[this.index], nodeY[this.index]);
+        }
+
+        public List<LinkView> getRelatedLinks() {
+            int count = getRelatedLinkCount(this.index);
+            List<LinkView> relatedLinks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                relatedLinks.add(new LinkView(getRelatedLink(this.index, i)));
+            }
+            return relatedLinks;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof NodeView other && other.index == this.index && other.getStore() == getStore();
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(this.index);
+        }
+
+        private NetworkGraphStore getStore() {
+            return NetworkGraphStore.this;
+        }
+    }
+
+    public final class LinkView implements NetworkElement.Element {
+        private final int index;
+
+        private LinkView(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return this.index;
+        }
+
+        @Override
+        public String getType() {
+            return "Link";
+        }
+
+        @Override
+        public String getId() {
+            return String.valueOf(linkIds[this.index]);
+        }
+
+        public NodeView getFromNode() {
+            return linkFrom[this.index] == NO_NODE ? null : new NodeView(linkFrom[this.index]);
+        }
+
+        public NodeView getToNode() {
+            return linkTo[this.index] == NO_NODE ? null : new NodeView(linkTo[this.index]);
+        }
+
+        // The composed nodes in order (a read-only view); a missing node is null
+        public List<NodeView> getComposedNodes() {
+            return new AbstractList<>() {
+                @Override
+                public NodeView get(int i) {
+                    Objects.checkIndex(i, size());
+                    int node = getComposedNode(index, i);
+                    return node == NO_NODE ? null : new NodeView(node);
+                }
+
+                @Override
+                public int size() {
+                    return getComposedNodeCount(index);
+                }
+            };
+        }
+
+        // A snapshot of the allowed modes; use NetworkGraphStore.addAllowedModes to change them
+        public Set<TransMode.Mode> getAllowedModes() {
+            return toModes(linkModeMasks[this.index]);
+        }
+
+        public Map<String, String> getKeyValuePairs() {
+            return getTags(this.index);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof LinkView other && other.index == this.index && other.getStore() == getStore();
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(this.index);
+        }
+
+        private NetworkGraphStore getStore() {
+            return NetworkGraphStore.this;
+        }
+    }
+}
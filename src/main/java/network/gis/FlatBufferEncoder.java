@@ -0,0 +1,247 @@
+package network.gis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A minimal FlatBuffers encoder for the tables of the FlatGeobuf format ({@link Network2FlatGeobuf}), without the
+ * FlatBuffers library. A table is described by its fields ({@link Table}), and the buffer is written front to back:
+ * the vtable, then the table (its scalars inline, aligned to their size), then the strings, vectors and sub-tables
+ * which are referenced by the forward offsets of the table. All the values are little-endian, and aligned relative to
+ * the start of the buffer.
+ *
+ * @author Xander
+ */
+final class FlatBufferEncoder {
+
+    private byte[] buffer = new byte[1024];
+    private int size = 0;
+
+    /**
+     * A table with its fields by slot (i.e., the order of the fields in the schema).
+     */
+    static final class Table {
+        private final List<Field> fields = new ArrayList<>();
+
+        Table addByte(int slot, int value) {
+            this.fields.add(new Field(slot, 1, value, null));
+            return this;
+        }
+
+        Table addBoolean(int slot, boolean value) {
+            return addByte(slot, value ? 1 : 0);
+        }
+
+        Table addShort(int slot, int value) {
+            this.fields.add(new Field(slot, 2, value, null));
+            return this;
+        }
+
+        Table addInt(int slot, int value) {
+            this.fields.add(new Field(slot, 4, value, null));
+            return this;
+        }
+
+        Table addLong(int slot, long value) {
+            this.fields.add(new Field(slot, 8, value, null));
+            return this;
+        }
+
+        Table addString(int slot, String value) {
+            return addBytes(slot, value.getBytes(StandardCharsets.UTF_8), true);
+        }
+
+        // A vector of ubytes, e.g., the properties of a feature
+        Table addBytes(int slot, byte[] value) {
+            return addBytes(slot, value, false);
+        }
+
+        private Table addBytes(int slot, byte[] value, boolean string) {
+            this.fields.add(new Field(slot, 0, string ? 1 : 0, value));
+            return this;
+        }
+
+        Table addDoubles(int slot, double[] values) {
+            this.fields.add(new Field(slot, 0, 0, values));
+            return this;
+        }
+
+        Table addTable(int slot, Table table) {
+            this.fields.add(new Field(slot, 0, 0, table));
+            return this;
+        }
+
+        Table addTables(int slot, List<Table> tables) {
+            this.fields.add(new Field(slot, 0, 0, tables));
+            return this;
+        }
+    }
+
+    // A scalar field (with its size and value), or an offset field (with its referenced object)
+    private record Field(int slot, int size, long value, Object object) {
+        int inlineSize() {
+            return this.object == null ? this.size : 4;
+        }
+    }
+
+    /**
+     * Encode the root table into a new buffer, prefixed by its size (uint32) as in FlatGeobuf.
+     */
+    byte[] encodeSizePrefixed(Table root) {
+        this.size = 0;
+        putInt(0);
+        int start = this.size;
+        // The offset of the root table
+        putInt(0);
+        int table = writeTable(root);
+        putIntAt(start, table - start);
+        align(8, 0, start);
+        putIntAt(0, this.size - start);
+        return Arrays.copyOf(this.buffer, this.size);
+    }
+
+    private int writeTable(Table table) {
+        // The buffer of the object starts after the size prefix, so that the alignment is relative to it
+        int base = 4;
+        List<Field> fields = new ArrayList<>(table.fields);
+        // The larger scalars first, to reduce the padding
+        fields.sort((f1, f2) -> Integer.compare(f2.inlineSize(), f1.inlineSize()));
+        int numSlots = fields.stream().mapToInt(Field::slot).max().orElse(-1) + 1;
+
+        align(2, 0, base);
+        int vtable = this.size;
+        ensureCapacity(4 + 2 * numSlots);
+        this.size += 4 + 2 * numSlots;
+        align(4, 0, base);
+        int tableStart = this.size;
+        putInt(0);
+        int[] positions = new int[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            align(field.inlineSize(), 0, base);
+            positions[i] = this.size;
+            if (field.object != null) {
+                putInt(0);
+            } else {
+                switch (field.size) {
+                    case 1 -> putByte((int) field.value);
+                    case 2 -> putShort((int) field.value);
+                    case 4 -> putInt((int) field.value);
+                    default -> putLong(field.value);
+                }
+            }
+        }
+        // The vtable: its size, the size of the table, and the offset of each field (0 if the field is absent)
+        Arrays.fill(this.buffer, vtable, vtable + 4 + 2 * numSlots, (byte) 0);
+        putShortAt(vtable, 4 + 2 * numSlots);
+        putShortAt(vtable + 2, this.size - tableStart);
+        for (int i = 0; i < fields.size(); i++) {
+            putShortAt(vtable + 4 + 2 * fields.get(i).slot, positions[i] - tableStart);
+        }
+        putIntAt(tableStart, tableStart - vtable);
+
+        // The referenced objects, after the table
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            if (field.object != null) {
+                int object = writeObject(field);
+                putIntAt(positions[i], object - positions[i]);
+            }
+        }
+        return tableStart;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int writeObject(Field field) {
+        int base = 4;
+        if (field.object instanceof byte[] bytes) {
+            align(4, 0, base);
+            int position = this.size;
+            putInt(bytes.length);
+            ensureCapacity(bytes.length + 1);
+            System.arraycopy(bytes, 0, this.buffer, this.size, bytes.length);
+            this.size += bytes.length;
+            if (field.value == 1) {
+                // The null terminator of a string
+                putByte(0);
+            }
+            return position;
+        } else if (field.object instanceof double[] values) {
+            // The elements (after the length) are aligned to 8 bytes
+            align(8, 4, base);
+            int position = this.size;
+            putInt(values.length);
+            for (double value : values) {
+                putLong(Double.doubleToRawLongBits(value));
+            }
+            return position;
+        } else if (field.object instanceof Table table) {
+            return writeTable(table);
+        } else {
+            List<Table> tables = (List<Table>) field.object;
+            align(4, 0, base);
+            int position = this.size;
+            putInt(tables.size());
+            int elements = this.size;
+            for (int i = 0; i < tables.size(); i++) {
+                putInt(0);
+            }
+            for (int i = 0; i < tables.size(); i++) {
+                int element = elements + 4 * i;
+                int table = writeTable(tables.get(i));
+                putIntAt(element, table - element);
+            }
+            return position;
+        }
+    }
+
+    // Pad the buffer with zeros until (size + offset - base) is a multiple of the alignment
+    private void align(int alignment, int offset, int base) {
+        while ((this.size + offset - base) % alignment != 0) {
+            putByte(0);
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (this.size + length > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.size + length));
+        }
+    }
+
+    private void putByte(int value) {
+        ensureCapacity(1);
+        this.buffer[this.size++] = (byte) value;
+    }
+
+    private void putShort(int value) {
+        ensureCapacity(2);
+        putShortAt(this.size, value);
+        this.size += 2;
+    }
+
+    private void putInt(int value) {
+        ensureCapacity(4);
+        putIntAt(this.size, value);
+        this.size += 4;
+    }
+
+    private void putLong(long value) {
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            this.buffer[this.size++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private void putShortAt(int position, int value) {
+        this.buffer[position] = (byte) value;
+        this.buffer[position + 1] = (byte) (value >>> 8);
+    }
+
+    private void putIntAt(int position, int value) {
+        for (int i = 0; i < 4; i++) {
+            this.buffer[position + i] = (byte) (value >>> (8 * i));
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package network.gis;
+
+import network.gis.FlatBufferEncoder.Table;
+import network.gis.SpatialLinkTable.ColumnType;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write the network to a FlatGeobuf file (*.fgb), with the packed Hilbert R-tree index of the links, so that a bbox of
+ * the network (e.g., a city out of a country network) can be read without scanning the whole file in QGIS/GDAL/Python.
+ * <p>
+ * The links are written in the order of the Hilbert value of their bounding box, with the same fields as the other
+ * outputs (see {@link Network2SimpleFeatures}) as typed columns: the allowed modes are a JSON array, and the type of
+ * each link attribute is derived from its values (see {@link SpatialLinkTable}). The features are encoded twice (once
+ * to get their offsets for the index, and once to write them), so that they are never held in memory all together.
+ *
+ * @author Xander
+ */
+public class Network2FlatGeobuf {
+
+    private static final byte[] MAGIC_BYTES = {0x66, 0x67, 0x62, 0x03, 0x66, 0x67, 0x62, 0x00};
+    private static final int INDEX_NODE_SIZE = 16;
+    // The geometry and column types of the FlatGeobuf schema
+    private static final int GEOMETRY_TYPE_LINE_STRING = 2;
+    private static final int COLUMN_TYPE_BOOL = 2;
+    private static final int COLUMN_TYPE_LONG = 7;
+    private static final int COLUMN_TYPE_DOUBLE = 10;
+    private static final int COLUMN_TYPE_STRING = 11;
+    private static final int COLUMN_TYPE_JSON = 12;
+    // The number of the fixed columns before the link attributes: linkId, capacity, freespeed, length, lanes, modes
+    private static final int FIXED_COLUMNS = 6;
+
+    private final String crsCode;
+    private final Network network;
+
+    public Network2FlatGeobuf(String crsCode, Network network) {
+        this.crsCode = crsCode;
+        this.network = network;
+    }
+
+    public void write(String file) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the FlatGeobuf file: " + file, e);
+        }
+    }
+
+    void write(OutputStream out) throws IOException {
+        SpatialLinkTable table = new SpatialLinkTable(this.network);
+        Link[] links = table.getLinks();
+        FlatBufferEncoder encoder = new FlatBufferEncoder();
+        PropertyBuffer properties = new PropertyBuffer();
+
+        out.write(MAGIC_BYTES);
+        out.write(encoder.encodeSizePrefixed(createHeader(table)));
+        if (links.length == 0) {
+            return;
+        }
+
+        // The offset of each feature in the feature section
+        long[] offsets = new long[links.length];
+        long offset = 0;
+        for (int i = 0; i < links.length; i++) {
+            offsets[i] = offset;
+            offset += encoder.encodeSizePrefixed(createFeature(links[i], table, properties)).length;
+        }
+        writeIndex(out, links, offsets, table.getExtent());
+        for (Link link : links) {
+            out.write(encoder.encodeSizePrefixed(createFeature(link, table, properties)));
+        }
+    }
+
+    private Table createHeader(SpatialLinkTable table) {
+        List<Table> columns = new ArrayList<>();
+        columns.add(createColumn("linkId", COLUMN_TYPE_STRING, false));
+        columns.add(createColumn("capacity", COLUMN_TYPE_DOUBLE, false));
+        columns.add(createColumn("freespeed", COLUMN_TYPE_DOUBLE, false));
+        columns.add(createColumn("length", COLUMN_TYPE_DOUBLE, false));
+        columns.add(createColumn("lanes", COLUMN_TYPE_DOUBLE, false));
+        columns.add(createColumn("modes", COLUMN_TYPE_JSON, false));
+        for (int i = 0; i < table.getAttrKeys().size(); i++) {
+            int type = switch (table.getAttrTypes().get(i)) {
+                case LONG -> COLUMN_TYPE_LONG;
+                case DOUBLE -> COLUMN_TYPE_DOUBLE;
+                case BOOLEAN -> COLUMN_TYPE_BOOL;
+                case STRING -> COLUMN_TYPE_STRING;
+            };
+            columns.add(createColumn(table.getAttrKeys().get(i), type, true));
+        }
+
+        // Header: name (0), envelope (1), geometry_type (2), columns (7), features_count (8), index_node_size (9), crs (10)
+        Table header = new Table()
+                .addString(0, this.network.getName() != null ? this.network.getName() : "network")
+                .addByte(2, GEOMETRY_TYPE_LINE_STRING)
+                .addTables(7, columns)
+                .addLong(8, table.size())
+                .addShort(9, INDEX_NODE_SIZE);
+        if (table.size() > 0) {
+            header.addDoubles(1, table.getExtent().clone());
+        }
+        int epsgCode = SpatialLinkTable.getEpsgCode(this.crsCode);
+        if (epsgCode > 0) {
+            // Crs: org (0), code (1)
+            header.addTable(10, new Table().addString(0, "EPSG").addInt(1, epsgCode));
+        }
+        return header;
+    }
+
+    // Column: name (0), type (1), nullable (7)
+    private static Table createColumn(String name, int type, boolean nullable) {
+        return new Table().addString(0, name).addByte(1, type).addBoolean(7, nullable);
+    }
+
+    // Feature: geometry (0), properties (1); Geometry: xy (1), as the type is given by the header
+    private static Table createFeature(Link link, SpatialLinkTable table, PropertyBuffer properties) {
+        Coord from = link.getFromNode().getCoord();
+        Coord to = link.getToNode().getCoord();
+        Table geometry = new Table().addDoubles(1, new double[]{from.getX(), from.getY(), to.getX(), to.getY()});
+
+        properties.reset();
+        properties.putString(0, link.getId().toString());
+        properties.putDouble(1, link.getCapacity());
+        properties.putDouble(2, link.getFreespeed());
+        properties.putDouble(3, link.getLength());
+        properties.putDouble(4, link.getNumberOfLanes());
+        properties.putString(5, toJsonArray(link));
+        for (int i = 0; i < table.getAttrKeys().size(); i++) {
+            ColumnType type = table.getAttrTypes().get(i);
+            Object value = SpatialLinkTable.getValue(link, table.getAttrKeys().get(i), type);
+            if (value == null) {
+                continue;
+            }
+            int column = FIXED_COLUMNS + i;
+            switch (type) {
+                case LONG -> properties.putLong(column, (Long) value);
+                case DOUBLE -> properties.putDouble(column, (Double) value);
+                case BOOLEAN -> properties.putBoolean(column, (Boolean) value);
+                case STRING -> properties.putString(column, (String) value);
+            }
+        }
+        return new Table().addTable(0, geometry).addBytes(1, properties.toByteArray());
+    }
+
+    private static String toJsonArray(Link link) {
+        StringBuilder sb = new StringBuilder("[");
+        for (String mode : link.getAllowedModes()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append('"').append(mode.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Write the packed Hilbert R-tree of the links (in the Hilbert order), with the nodes of each level from the root to
+     * the leaves. Each node is its bounds (minX, minY, maxX, maxY) and an offset: the offset of the feature for a leaf,
+     * or the index of the first child node otherwise.
+     */
+    private static void writeIndex(OutputStream out, Link[] links, long[] offsets, double[] extent) throws IOException {
+        // The number of nodes per level, from the leaves to the root
+        List<Integer> levelNumNodes = new ArrayList<>();
+        int n = links.length;
+        int numNodes = n;
+        levelNumNodes.add(n);
+        do {
+            n = (n + INDEX_NODE_SIZE - 1) / INDEX_NODE_SIZE;
+            numNodes += n;
+            levelNumNodes.add(n);
+        } while (n != 1);
+        // The index of the first node per level, from the leaves (at the end) to the root (at the start)
+        int[] levelOffsets = new int[levelNumNodes.size()];
+        n = numNodes;
+        for (int level = 0; level < levelNumNodes.size(); level++) {
+            levelOffsets[level] = n - levelNumNodes.get(level);
+            n -= levelNumNodes.get(level);
+        }
+
+        double[] bounds = new double[4 * numNodes];
+        long[] nodeOffsets = new long[numNodes];
+        double[] linkBounds = new double[4];
+        for (int i = 0; i < links.length; i++) {
+            int node = levelOffsets[0] + i;
+            SpatialLinkTable.getBounds(links[i], linkBounds);
+            System.arraycopy(linkBounds, 0, bounds, 4 * node, 4);
+            nodeOffsets[node] = offsets[i];
+        }
+        for (int level = 0; level < levelNumNodes.size() - 1; level++) {
+            int position = levelOffsets[level];
+            int end = position + levelNumNodes.get(level);
+            int parent = levelOffsets[level + 1];
+            while (position < end) {
+                nodeOffsets[parent] = position;
+                bounds[4 * parent] = Double.POSITIVE_INFINITY;
+                bounds[4 * parent + 1] = Double.POSITIVE_INFINITY;
+                bounds[4 * parent + 2] = Double.NEGATIVE_INFINITY;
+                bounds[4 * parent + 3] = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < INDEX_NODE_SIZE && position < end; j++, position++) {
+                    bounds[4 * parent] = Math.min(bounds[4 * parent], bounds[4 * position]);
+                    bounds[4 * parent + 1] = Math.min(bounds[4 * parent + 1], bounds[4 * position + 1]);
+                    bounds[4 * parent + 2] = Math.max(bounds[4 * parent + 2], bounds[4 * position + 2]);
+                    bounds[4 * parent + 3] = Math.max(bounds[4 * parent + 3], bounds[4 * position + 3]);
+                }
+                parent++;
+            }
+        }
+
+        byte[] node = new byte[40];
+        for (int i = 0; i < numNodes; i++) {
+            for (int j = 0; j < 4; j++) {
+                putLong(node, 8 * j, Double.doubleToRawLongBits(bounds[4 * i + j]));
+            }
+            putLong(node, 32, nodeOffsets[i]);
+            out.write(node);
+        }
+    }
+
+    private static void putLong(byte[] bytes, int position, long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[position + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    /**
+     * The properties of a feature: the index of each column (uint16) followed by its value (little-endian), where a
+     * string is its length (uint32) followed by its UTF-8 bytes.
+     */
+    private static final class PropertyBuffer extends ByteArrayOutputStream {
+
+        void putColumn(int column) {
+            write(column);
+            write(column >>> 8);
+        }
+
+        void putString(int column, String value) {
+            putColumn(column);
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void putDouble(int column, double value) {
+            putColumn(column);
+            putLong(Double.doubleToRawLongBits(value));
+        }
+
+        void putLong(int column, long value) {
+            putColumn(column);
+            putLong(value);
+        }
+
+        void putBoolean(int column, boolean value) {
+            putColumn(column);
+            write(value ? 1 : 0);
+        }
+
+        private void putInt(int value) {
+            for (int i = 0; i < 4; i++) {
+                write(value >>> (8 * i));
+            }
+        }
+
+        private void putLong(long value) {
+            for (int i = 0; i < 8; i++) {
+                write((int) (value >>> (8 * i)));
+            }
+        }
+    }
+}
@@ -1,26 +1,63 @@
 package network.gis;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import network.io.ParallelGzip;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.geojson.feature.FeatureJSON;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.opengis.feature.simple.SimpleFeature;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.Map;
 
+/**
+ * Write the network to a GeoJSON file. The links are streamed straight into a Jackson JsonGenerator (without
+ * converting them into SimpleFeatures), with a configurable precision of the coordinates. The output is compressed if
+ * the file name ends with ".gz", and can be newline-delimited (one feature per line, without the FeatureCollection).
+ */
 public class Network2GeoJson {
 
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int MAX_PRECISION = 15;
+
     private final String crsCode;
     private final Network network;
+    // The number of decimals of the coordinates; a negative value means the full precision
+    private int precision = 6;
+    private boolean newlineDelimited = false;
+    // The number of threads to compress a *.gz output; a non-positive value means using all available processors
+    private int compressionThreads = 0;
 
     public Network2GeoJson(String crsCode, Network network) {
         this.crsCode = crsCode;
         this.network = network;
     }
 
+    public Network2GeoJson setPrecision(int precision) {
+        if (precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("The precision of the coordinates should be at most " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        return this;
+    }
+
+    public Network2GeoJson setNewlineDelimited(boolean newlineDelimited) {
+        this.newlineDelimited = newlineDelimited;
+        return this;
+    }
+
+    public Network2GeoJson setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+        return this;
+    }
 
     // Method to write SimpleFeatureCollection to GeoJSON
     void writeGeoJSON(SimpleFeatureCollection featureCollection, String outputFilePath) throws IOException {
@@ -28,7 +65,7 @@ public class Network2GeoJson {
         FeatureJSON featureJSON = new FeatureJSON();
 
         // Create a FileWriter to write the output to a GeoJSON file
-        try (FileWriter writer = new FileWriter(new File(outputFilePath))) {
+        try (Writer writer = new BufferedWriter(new FileWriter(new File(outputFilePath)))) {
             // Write the feature collection to the GeoJSON file
             featureJSON.writeFeatureCollection(featureCollection, writer);
         }
@@ -43,23 +80,22 @@ public class Network2GeoJson {
         featureCollection.addAll(features);
 
         // Write the entire feature collection to a GeoJSON file
-        try (FileWriter writer = new FileWriter(outputFilePath)) {
+        try (Writer writer = new OutputStreamWriter(ParallelGzip.createOutputStream(outputFilePath, this.compressionThreads), StandardCharsets.UTF_8)) {
             featureJSON.writeFeatureCollection(featureCollection, writer);
         }
-
-//        // Create a FileWriter to write the output to a GeoJSON file
-//        try (FileWriter writer = new FileWriter(new File(outputFilePath))) {
-//            // Write the feature collection to the GeoJSON file
-//            for (SimpleFeature feature : features) {
-//                featureJSON.writeFeature(feature, writer);
-//            }
-//        }
     }
 
     public void write(String file) {
-        // Write the network to a GeoJSON file
-        Network2SimpleFeatures network2SimpleFeatures = new Network2SimpleFeatures(this.crsCode, this.network);
-        Collection<SimpleFeature> features = network2SimpleFeatures.convertToSimpleFeatures();
+        // Stream the links of the network into the GeoJSON file
+        try (OutputStream out = ParallelGzip.createOutputStream(file, this.compressionThreads)) {
+            write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the GeoJSON file: " + file, e);
+        }
+    }
+
+    // Write the features that have been converted from the network (e.g., to share them with other writers)
+    public void write(String file, Collection<SimpleFeature> features) {
         try {
             writeGeoJson(features, file);
         } catch (IOException e) {
@@ -67,4 +103,118 @@ public class Network2GeoJson {
         }
     }
 
+    void write(OutputStream out) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            StringBuilder number = new StringBuilder(32);
+            if (this.newlineDelimited) {
+                // One feature per line
+                generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+                for (Link link : this.network.getLinks().values()) {
+                    writeFeature(generator, link, number);
+                }
+                generator.writeRaw('\n');
+            } else {
+                generator.writeStartObject();
+                generator.writeStringField("type", "FeatureCollection");
+                generator.writeArrayFieldStart("features");
+                for (Link link : this.network.getLinks().values()) {
+                    writeFeature(generator, link, number);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        }
+    }
+
+    // Write a link as a feature with the same properties as the SimpleFeatures (see Network2SimpleFeatures)
+    private void writeFeature(JsonGenerator generator, Link link, StringBuilder number) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "Feature");
+        generator.writeStringField("id", link.getId().toString());
+
+        generator.writeObjectFieldStart("geometry");
+        generator.writeStringField("type", "LineString");
+        generator.writeArrayFieldStart("coordinates");
+        writeCoord(generator, link.getFromNode().getCoord(), number);
+        writeCoord(generator, link.getToNode().getCoord(), number);
+        generator.writeEndArray();
+        generator.writeEndObject();
+
+        generator.writeObjectFieldStart("properties");
+        generator.writeStringField("linkId", link.getId().toString());
+        generator.writeNumberField("capacity", link.getCapacity());
+        generator.writeNumberField("freespeed", link.getFreespeed());
+        generator.writeNumberField("length", link.getLength());
+        generator.writeNumberField("lanes", link.getNumberOfLanes());
+        generator.writeStringField("modes", String.join(", ", link.getAllowedModes()));
+        for (Map.Entry<String, Object> attr : link.getAttributes().getAsMap().entrySet()) {
+            Object value = attr.getValue();
+            if (value == null) {
+                generator.writeNullField(attr.getKey());
+            } else {
+                generator.writeStringField(attr.getKey(), value.toString());
+            }
+        }
+        generator.writeEndObject();
+
+        generator.writeEndObject();
+    }
+
+    private void writeCoord(JsonGenerator generator, Coord coord, StringBuilder number) throws IOException {
+        generator.writeStartArray();
+        writeCoordinate(generator, coord.getX(), number);
+        writeCoordinate(generator, coord.getY(), number);
+        generator.writeEndArray();
+    }
+
+    private void writeCoordinate(JsonGenerator generator, double value, StringBuilder number) throws IOException {
+        if (this.precision < 0 || !Double.isFinite(value)) {
+            generator.writeNumber(value);
+            return;
+        }
+        number.setLength(0);
+        if (!formatCoordinate(value, this.precision, number)) {
+            generator.writeNumber(value);
+            return;
+        }
+        generator.writeNumber(number.toString());
+    }
+
+    /**
+     * Format the value with at most the given number of decimals (without the trailing zeros), e.g., 1.23 for
+     * 1.2300004 with 6 decimals. Return false if the value is too large to be formatted as a fixed-point number.
+     */
+    static boolean formatCoordinate(double value, int precision, StringBuilder sb) {
+        long scale = 1;
+        for (int i = 0; i < precision; i++) {
+            scale *= 10;
+        }
+        double scaled = Math.abs(value) * scale;
+        if (scaled >= 9e15) {
+            return false;
+        }
+        long rounded = Math.round(scaled);
+        long integerPart = rounded / scale;
+        long fractionPart = rounded % scale;
+        if (value < 0 && rounded != 0) {
+            sb.append('-');
+        }
+        sb.append(integerPart);
+        if (fractionPart != 0) {
+            // Strip the trailing zeros of the decimals
+            int decimals = precision;
+            while (fractionPart % 10 == 0) {
+                fractionPart /= 10;
+                decimals--;
+            }
+            sb.append('.');
+            String digits = Long.toString(fractionPart);
+            for (int i = digits.length(); i < decimals; i++) {
+                sb.append('0');
+            }
+            sb.append(digits);
+        }
+        return true;
+    }
+
 }
@@ -0,0 +1,530 @@
+package network.gis;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import network.gis.SpatialLinkTable.ColumnType;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Write the network to a GeoParquet file (*.parquet, GeoParquet 1.1), without the Parquet/Hadoop libraries. The links
+ * are sorted by the Hilbert value of their bounding box (see {@link SpatialLinkTable}) and split into row groups, so
+ * that each row group covers a compact area. With the bbox covering column (xmin, ymin, xmax, ymax) and its min/max
+ * statistics per row group, a bbox of the network (e.g., a city out of a country network) is read without scanning the
+ * other row groups in GDAL, GeoPandas or DuckDB.
+ * <p>
+ * The columns are the WKB geometry, the bbox, the same fields as the other outputs (see {@link Network2SimpleFeatures})
+ * with the allowed modes as a list of strings, and the link attributes as typed optional columns. Each column chunk is
+ * one PLAIN-encoded data page, compressed with gzip by default.
+ *
+ * @author Xander
+ */
+public class Network2GeoParquet {
+
+    private static final byte[] MAGIC_BYTES = {'P', 'A', 'R', '1'};
+    private static final String CREATED_BY = "matsim-network-converter";
+    // The physical types of the Parquet schema
+    private static final int TYPE_BOOLEAN = 0;
+    private static final int TYPE_INT64 = 2;
+    private static final int TYPE_DOUBLE = 5;
+    private static final int TYPE_BYTE_ARRAY = 6;
+    // The repetition types, converted types, encodings and compression codecs
+    private static final int REQUIRED = 0;
+    private static final int OPTIONAL = 1;
+    private static final int REPEATED = 2;
+    private static final int CONVERTED_TYPE_UTF8 = 0;
+    private static final int CONVERTED_TYPE_LIST = 3;
+    private static final int ENCODING_PLAIN = 0;
+    private static final int ENCODING_RLE = 3;
+    private static final int CODEC_UNCOMPRESSED = 0;
+    private static final int CODEC_GZIP = 2;
+
+    private enum Kind {GEOMETRY, XMIN, YMIN, XMAX, YMAX, LINK_ID, CAPACITY, FREESPEED, LENGTH, LANES, MODES, ATTRIBUTE}
+
+    // A leaf column of the schema, with its path and its max repetition/definition levels
+    private record Leaf(Kind kind, String[] path, int type, int maxRepetition, int maxDefinition, int attrIndex) {
+    }
+
+    private final String crsCode;
+    private final Network network;
+    private int rowGroupSize = 32_768;
+    private boolean compressed = true;
+
+    public Network2GeoParquet(String crsCode, Network network) {
+        this.crsCode = crsCode;
+        this.network = network;
+    }
+
+    // The max number of links per row group; smaller row groups make the bbox reads more selective
+    public Network2GeoParquet setRowGroupSize(int rowGroupSize) {
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("The row group size should be positive: " + rowGroupSize);
+        }
+        this.rowGroupSize = rowGroupSize;
+        return this;
+    }
+
+    public Network2GeoParquet setCompressed(boolean compressed) {
+        this.compressed = compressed;
+        return this;
+    }
+
+    public void write(String file) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the GeoParquet file: " + file, e);
+        }
+    }
+
+    void write(OutputStream outputStream) throws IOException {
+        SpatialLinkTable table = new SpatialLinkTable(this.network);
+        Link[] links = table.getLinks();
+        List<Leaf> leaves = createLeaves(table);
+        CountingOutputStream out = new CountingOutputStream(outputStream);
+        out.write(MAGIC_BYTES);
+
+        // The metadata of each row group, which are written into the footer
+        List<byte[]> rowGroups = new ArrayList<>();
+        for (int from = 0; from < links.length; from += this.rowGroupSize) {
+            int to = Math.min(from + this.rowGroupSize, links.length);
+            rowGroups.add(writeRowGroup(out, table, leaves, from, to));
+        }
+
+        byte[] footer = createFileMetaData(table, leaves, rowGroups);
+        out.write(footer);
+        LittleEndianBuffer length = new LittleEndianBuffer();
+        length.putInt(footer.length);
+        length.writeTo(out);
+        out.write(MAGIC_BYTES);
+        out.flush();
+    }
+
+    private static List<Leaf> createLeaves(SpatialLinkTable table) {
+        List<Leaf> leaves = new ArrayList<>();
+        leaves.add(new Leaf(Kind.GEOMETRY, new String[]{"geometry"}, TYPE_BYTE_ARRAY, 0, 0, -1));
+        leaves.add(new Leaf(Kind.XMIN, new String[]{"bbox", "xmin"}, TYPE_DOUBLE, 0, 0, -1));
+        leaves.add(new Leaf(Kind.YMIN, new String[]{"bbox", "ymin"}, TYPE_DOUBLE, 0, 0, -1));
+        leaves.add(new Leaf(Kind.XMAX, new String[]{"bbox", "xmax"}, TYPE_DOUBLE, 0, 0, -1));
+        leaves.add(new Leaf(Kind.YMAX, new String[]{"bbox", "ymax"}, TYPE_DOUBLE, 0, 0, -1));
+        leaves.add(new Leaf(Kind.LINK_ID, new String[]{"linkId"}, TYPE_BYTE_ARRAY, 0, 0, -1));
+        leaves.add(new Leaf(Kind.CAPACITY, new String[]{"capacity"}, TYPE_DOUBLE, 0, 0, -1));
+        leaves.add(new Leaf(Kind.FREESPEED, new String[]{"freespeed"}, TYPE_DOUBLE, 0, 0, -1));
+        leaves.add(new Leaf(Kind.LENGTH, new String[]{"length"}, TYPE_DOUBLE, 0, 0, -1));
+        leaves.add(new Leaf(Kind.LANES, new String[]{"lanes"}, TYPE_DOUBLE, 0, 0, -1));
+        // A list of strings: required group modes (LIST) { repeated group list { required binary element (UTF8) } }
+        leaves.add(new Leaf(Kind.MODES, new String[]{"modes", "list", "element"}, TYPE_BYTE_ARRAY, 1, 1, -1));
+        for (int i = 0; i < table.getAttrKeys().size(); i++) {
+            leaves.add(new Leaf(Kind.ATTRIBUTE, new String[]{table.getAttrKeys().get(i)},
+                    getPhysicalType(table.getAttrTypes().get(i)), 0, 1, i));
+        }
+        return leaves;
+    }
+
+    private static int getPhysicalType(ColumnType type) {
+        return switch (type) {
+            case LONG -> TYPE_INT64;
+            case DOUBLE -> TYPE_DOUBLE;
+            case BOOLEAN -> TYPE_BOOLEAN;
+            case STRING -> TYPE_BYTE_ARRAY;
+        };
+    }
+
+    // Write the column chunks of the links [from, to), and return the metadata (RowGroup) of the row group
+    private byte[] writeRowGroup(CountingOutputStream out, SpatialLinkTable table, List<Leaf> leaves, int from, int to)
+            throws IOException {
+        long rowGroupOffset = out.getCount();
+        long totalUncompressedSize = 0;
+        ThriftCompactWriter rowGroup = new ThriftCompactWriter();
+        // RowGroup.columns (1)
+        rowGroup.beginListField(1, ThriftCompactWriter.TYPE_STRUCT, leaves.size());
+        for (Leaf leaf : leaves) {
+            long chunkOffset = out.getCount();
+            ColumnPage page = encodeColumn(leaf, table, from, to);
+            byte[] data = page.data.toByteArray();
+            byte[] compressedData = this.compressed ? gzip(data) : data;
+            // PageHeader: type (1, DATA_PAGE), uncompressed_page_size (2), compressed_page_size (3), data_page_header (5)
+            byte[] pageHeader = new ThriftCompactWriter()
+                    .writeI32Field(1, 0)
+                    .writeI32Field(2, data.length)
+                    .writeI32Field(3, compressedData.length)
+                    .beginStructField(5)
+                    // DataPageHeader: num_values (1), encoding (2), definition_level_encoding (3), repetition_level_encoding (4)
+                    .writeI32Field(1, page.numValues)
+                    .writeI32Field(2, ENCODING_PLAIN)
+                    .writeI32Field(3, ENCODING_RLE)
+                    .writeI32Field(4, ENCODING_RLE)
+                    .endStruct()
+                    .endStruct()
+                    .toByteArray();
+            out.write(pageHeader);
+            out.write(compressedData);
+            totalUncompressedSize += pageHeader.length + data.length;
+
+            // ColumnChunk: file_offset (2), meta_data (3)
+            rowGroup.beginStruct().writeI64Field(2, chunkOffset).beginStructField(3);
+            // ColumnMetaData: type (1), encodings (2), path_in_schema (3), codec (4), num_values (5),
+            // total_uncompressed_size (6), total_compressed_size (7), data_page_offset (9), statistics (12)
+            rowGroup.writeI32Field(1, leaf.type)
+                    .beginListField(2, ThriftCompactWriter.TYPE_I32, 2).writeI32(ENCODING_PLAIN).writeI32(ENCODING_RLE)
+                    .beginListField(3, ThriftCompactWriter.TYPE_BINARY, leaf.path.length);
+            for (String name : leaf.path) {
+                rowGroup.writeString(name);
+            }
+            rowGroup.writeI32Field(4, this.compressed ? CODEC_GZIP : CODEC_UNCOMPRESSED)
+                    .writeI64Field(5, page.numValues)
+                    .writeI64Field(6, pageHeader.length + data.length)
+                    .writeI64Field(7, pageHeader.length + compressedData.length)
+                    .writeI64Field(9, chunkOffset);
+            if (page.hasStatistics()) {
+                // Statistics: null_count (3), max_value (5), min_value (6)
+                rowGroup.beginStructField(12)
+                        .writeI64Field(3, page.nullCount)
+                        .writeBinaryField(5, toBytes(page.max))
+                        .writeBinaryField(6, toBytes(page.min))
+                        .endStruct();
+            }
+            rowGroup.endStruct().endStruct();
+        }
+        // RowGroup: total_byte_size (2), num_rows (3), file_offset (5), total_compressed_size (6)
+        return rowGroup.writeI64Field(2, totalUncompressedSize)
+                .writeI64Field(3, to - from)
+                .writeI64Field(5, rowGroupOffset)
+                .writeI64Field(6, out.getCount() - rowGroupOffset)
+                .endStruct()
+                .toByteArray();
+    }
+
+    // The levels and values of a data page of a column
+    private static final class ColumnPage {
+        final LittleEndianBuffer data = new LittleEndianBuffer();
+        int numValues = 0;
+        long nullCount = 0;
+        // The statistics of a double column
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        boolean doubleColumn = false;
+
+        void putDouble(double value) {
+            this.data.putLong(Double.doubleToRawLongBits(value));
+            this.min = Math.min(this.min, value);
+            this.max = Math.max(this.max, value);
+            this.doubleColumn = true;
+        }
+
+        boolean hasStatistics() {
+            return this.doubleColumn && !Double.isNaN(this.min) && !Double.isNaN(this.max);
+        }
+    }
+
+    private static ColumnPage encodeColumn(Leaf leaf, SpatialLinkTable table, int from, int to) {
+        Link[] links = table.getLinks();
+        ColumnPage page = new ColumnPage();
+        double[] bounds = new double[4];
+        switch (leaf.kind) {
+            case MODES -> {
+                // The repetition and definition levels, then the values
+                List<byte[]> values = new ArrayList<>();
+                int[] repetitionLevels = new int[16];
+                int[] definitionLevels = new int[16];
+                int count = 0;
+                for (int i = from; i < to; i++) {
+                    boolean first = true;
+                    for (String mode : links[i].getAllowedModes()) {
+                        if (count == repetitionLevels.length) {
+                            repetitionLevels = Arrays.copyOf(repetitionLevels, 2 * count);
+                            definitionLevels = Arrays.copyOf(definitionLevels, 2 * count);
+                        }
+                        repetitionLevels[count] = first ? 0 : 1;
+                        definitionLevels[count++] = 1;
+                        values.add(mode.getBytes(StandardCharsets.UTF_8));
+                        first = false;
+                    }
+                    if (first) {
+                        // An empty list
+                        if (count == repetitionLevels.length) {
+                            repetitionLevels = Arrays.copyOf(repetitionLevels, 2 * count);
+                            definitionLevels = Arrays.copyOf(definitionLevels, 2 * count);
+                        }
+                        repetitionLevels[count] = 0;
+                        definitionLevels[count++] = 0;
+                    }
+                }
+                page.data.putLevels(repetitionLevels, count);
+                page.data.putLevels(definitionLevels, count);
+                values.forEach(page.data::putBinary);
+                page.numValues = count;
+            }
+            case ATTRIBUTE -> {
+                String key = table.getAttrKeys().get(leaf.attrIndex);
+                ColumnType type = table.getAttrTypes().get(leaf.attrIndex);
+                Object[] values = new Object[to - from];
+                int[] definitionLevels = new int[to - from];
+                for (int i = from; i < to; i++) {
+                    values[i - from] = SpatialLinkTable.getValue(links[i], key, type);
+                    definitionLevels[i - from] = values[i - from] != null ? 1 : 0;
+                }
+                page.data.putLevels(definitionLevels, definitionLevels.length);
+                int bits = 0;
+                int numBits = 0;
+                for (Object value : values) {
+                    if (value == null) {
+                        page.nullCount++;
+                        continue;
+                    }
+                    switch (type) {
+                        case LONG -> page.data.putLong((Long) value);
+                        case DOUBLE -> page.putDouble((Double) value);
+                        case STRING -> page.data.putBinary(((String) value).getBytes(StandardCharsets.UTF_8));
+                        case BOOLEAN -> {
+                            // Bit-packed, from the least significant bit
+                            bits |= ((Boolean) value ? 1 : 0) << numBits;
+                            if (++numBits == 8) {
+                                page.data.write(bits);
+                                bits = 0;
+                                numBits = 0;
+                            }
+                        }
+                    }
+                }
+                if (numBits > 0) {
+                    page.data.write(bits);
+                }
+                page.numValues = to - from;
+            }
+            default -> {
+                for (int i = from; i < to; i++) {
+                    Link link = links[i];
+                    switch (leaf.kind) {
+                        case GEOMETRY -> page.data.putBinary(toWkb(link));
+                        case XMIN, YMIN, XMAX, YMAX -> {
+                            SpatialLinkTable.getBounds(link, bounds);
+                            page.putDouble(bounds[leaf.kind.ordinal() - Kind.XMIN.ordinal()]);
+                        }
+                        case LINK_ID -> page.data.putBinary(link.getId().toString().getBytes(StandardCharsets.UTF_8));
+                        case CAPACITY -> page.putDouble(link.getCapacity());
+                        case FREESPEED -> page.putDouble(link.getFreespeed());
+                        case LENGTH -> page.putDouble(link.getLength());
+                        case LANES -> page.putDouble(link.getNumberOfLanes());
+                        default -> throw new IllegalStateException("Unexpected column: " + leaf.kind);
+                    }
+                }
+                page.numValues = to - from;
+            }
+        }
+        return page;
+    }
+
+    // The WKB of the (straight) link, in little-endian
+    private static byte[] toWkb(Link link) {
+        Coord from = link.getFromNode().getCoord();
+        Coord to = link.getToNode().getCoord();
+        LittleEndianBuffer wkb = new LittleEndianBuffer();
+        wkb.write(1);
+        // LineString with 2 points
+        wkb.putInt(2);
+        wkb.putInt(2);
+        for (double value : new double[]{from.getX(), from.getY(), to.getX(), to.getY()}) {
+            wkb.putLong(Double.doubleToRawLongBits(value));
+        }
+        return wkb.toByteArray();
+    }
+
+    private byte[] createFileMetaData(SpatialLinkTable table, List<Leaf> leaves, List<byte[]> rowGroups) throws IOException {
+        ThriftCompactWriter metaData = new ThriftCompactWriter();
+        // FileMetaData: version (1), schema (2), num_rows (3), row_groups (4), key_value_metadata (5), created_by (6)
+        metaData.writeI32Field(1, 1);
+        // The schema in depth-first order: the root, geometry, bbox (with its 4 children), the 5 fields, modes (with
+        // its 2 levels) and the attributes
+        int attributes = table.getAttrKeys().size();
+        metaData.beginListField(2, ThriftCompactWriter.TYPE_STRUCT, 15 + attributes);
+        int topLevelColumns = 8 + attributes;
+        // SchemaElement: type (1), repetition_type (3), name (4), num_children (5), converted_type (6), logicalType (10)
+        metaData.beginStruct().writeStringField(4, "schema").writeI32Field(5, topLevelColumns).endStruct();
+        addPrimitive(metaData, "geometry", TYPE_BYTE_ARRAY, REQUIRED, false);
+        metaData.beginStruct().writeI32Field(3, REQUIRED).writeStringField(4, "bbox").writeI32Field(5, 4).endStruct();
+        for (String name : new String[]{"xmin", "ymin", "xmax", "ymax"}) {
+            addPrimitive(metaData, name, TYPE_DOUBLE, REQUIRED, false);
+        }
+        addPrimitive(metaData, "linkId", TYPE_BYTE_ARRAY, REQUIRED, true);
+        for (String name : new String[]{"capacity", "freespeed", "length", "lanes"}) {
+            addPrimitive(metaData, name, TYPE_DOUBLE, REQUIRED, false);
+        }
+        metaData.beginStruct().writeI32Field(3, REQUIRED).writeStringField(4, "modes").writeI32Field(5, 1)
+                .writeI32Field(6, CONVERTED_TYPE_LIST)
+                // LogicalType: LIST (3)
+                .beginStructField(10).beginStructField(3).endStruct().endStruct()
+                .endStruct();
+        metaData.beginStruct().writeI32Field(3, REPEATED).writeStringField(4, "list").writeI32Field(5, 1).endStruct();
+        addPrimitive(metaData, "element", TYPE_BYTE_ARRAY, REQUIRED, true);
+        for (int i = 0; i < attributes; i++) {
+            ColumnType type = table.getAttrTypes().get(i);
+            addPrimitive(metaData, table.getAttrKeys().get(i), getPhysicalType(type), OPTIONAL, type == ColumnType.STRING);
+        }
+
+        metaData.writeI64Field(3, table.size());
+        metaData.beginListField(4, ThriftCompactWriter.TYPE_STRUCT, rowGroups.size());
+        // The row groups are complete structs, which are appended as they are
+        rowGroups.forEach(metaData::writeStruct);
+        // KeyValue: key (1), value (2)
+        return metaData.beginListField(5, ThriftCompactWriter.TYPE_STRUCT, 1)
+                .beginStruct().writeStringField(1, "geo").writeStringField(2, createGeoMetadata(table)).endStruct()
+                .writeStringField(6, CREATED_BY)
+                .endStruct()
+                .toByteArray();
+    }
+
+    private static void addPrimitive(ThriftCompactWriter metaData, String name, int type, int repetition, boolean string) {
+        metaData.beginStruct().writeI32Field(1, type).writeI32Field(3, repetition).writeStringField(4, name);
+        if (string) {
+            // LogicalType: STRING (1)
+            metaData.writeI32Field(6, CONVERTED_TYPE_UTF8).beginStructField(10).beginStructField(1).endStruct().endStruct();
+        }
+        metaData.endStruct();
+    }
+
+    // The GeoParquet metadata of the geometry column, with the bbox covering
+    private String createGeoMetadata(SpatialLinkTable table) throws IOException {
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(json)) {
+            generator.writeStartObject();
+            generator.writeStringField("version", "1.1.0");
+            generator.writeStringField("primary_column", "geometry");
+            generator.writeObjectFieldStart("columns");
+            generator.writeObjectFieldStart("geometry");
+            generator.writeStringField("encoding", "WKB");
+            generator.writeArrayFieldStart("geometry_types");
+            generator.writeString("LineString");
+            generator.writeEndArray();
+            if (table.size() > 0) {
+                generator.writeArrayFieldStart("bbox");
+                for (double value : table.getExtent()) {
+                    generator.writeNumber(value);
+                }
+                generator.writeEndArray();
+            }
+            // Without a crs, the CRS is OGC:CRS84 (i.e., EPSG:4326 in the longitude/latitude order)
+            int epsgCode = SpatialLinkTable.getEpsgCode(this.crsCode);
+            if (epsgCode != 4326) {
+                generator.writeFieldName("crs");
+                if (epsgCode > 0) {
+                    // A PROJJSON identifier of the EPSG code
+                    generator.writeStartObject();
+                    generator.writeObjectFieldStart("id");
+                    generator.writeStringField("authority", "EPSG");
+                    generator.writeNumberField("code", epsgCode);
+                    generator.writeEndObject();
+                    generator.writeEndObject();
+                } else {
+                    // An unknown CRS
+                    generator.writeNull();
+                }
+            }
+            generator.writeObjectFieldStart("covering");
+            generator.writeObjectFieldStart("bbox");
+            for (String name : new String[]{"xmin", "ymin", "xmax", "ymax"}) {
+                generator.writeArrayFieldStart(name);
+                generator.writeString("bbox");
+                generator.writeString(name);
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        return json.toString();
+    }
+
+    private static byte[] toBytes(double value) {
+        LittleEndianBuffer buffer = new LittleEndianBuffer();
+        buffer.putLong(Double.doubleToRawLongBits(value));
+        return buffer.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class LittleEndianBuffer extends ByteArrayOutputStream {
+
+        void putInt(int value) {
+            for (int i = 0; i < 4; i++) {
+                write(value >>> (8 * i));
+            }
+        }
+
+        void putLong(long value) {
+            for (int i = 0; i < 8; i++) {
+                write((int) (value >>> (8 * i)));
+            }
+        }
+
+        // A BYTE_ARRAY value: its length (int32) followed by its bytes
+        void putBinary(byte[] value) {
+            putInt(value.length);
+            write(value, 0, value.length);
+        }
+
+        // The levels (of bit width 1) in the RLE/bit-packing hybrid encoding, as runs of the same level, prefixed by
+        // their length (int32)
+        void putLevels(int[] levels, int count) {
+            LittleEndianBuffer runs = new LittleEndianBuffer();
+            int i = 0;
+            while (i < count) {
+                int j = i;
+                while (j < count && levels[j] == levels[i]) {
+                    j++;
+                }
+                // The header of a RLE run (its length shifted by 1), then its value in 1 byte
+                long header = (long) (j - i) << 1;
+                while ((header & ~0x7FL) != 0) {
+                    runs.write((int) ((header & 0x7F) | 0x80));
+                    header >>>= 7;
+                }
+                runs.write((int) header);
+                runs.write(levels[i]);
+                i = j;
+            }
+            putInt(runs.size());
+            write(runs.buf, 0, runs.size());
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+
+        long getCount() {
+            return this.count;
+        }
+    }
+}
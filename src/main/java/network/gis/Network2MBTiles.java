@@ -0,0 +1,388 @@
+package network.gis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Export the network as Mapbox Vector Tiles into a MBTiles file (SQLite), to inspect a converted network in a browser
+ * or GIS at any scale. The tiles of each zoom level in the zoom range are generated in parallel, with one layer
+ * "links" whose features have the link id, allowed modes, freespeed, capacity, HBEFA road type and highway type:
+ * 1. A link is only drawn from the min zoom of its highway type (or of its freespeed, without a highway type), so that
+ * the minor links are dropped at the low zooms; all the links are drawn at the max zoom;
+ * 2. The geometry is simplified per zoom: the links are snapped to the grid of the tile (4096 x 4096), the links that
+ * collapse to a point are dropped, and the links with the same snapped geometry (e.g., the two directions of a road)
+ * are drawn once below the max zoom.
+ *
+ * @author Xander
+ */
+public class Network2MBTiles {
+    private static final Logger LOG = LogManager.getLogger(Network2MBTiles.class);
+
+    static final String LAYER_NAME = "links";
+    private static final int EXTENT = 4096;
+    // The buffer around a tile (in the tile space), so that the lines are not cut at the tile borders
+    private static final int BUFFER = 64;
+    // The number of tiles encoded in parallel, and inserted into the database, per batch
+    private static final int BATCH_SIZE = 1024;
+    private static final double MAX_LATITUDE = 85.05112878;
+    private static final String HIGHWAY = "highway";
+    private static final String HBEFA_ROAD_TYPE = "hbefa_road_type";
+    private static final String[] PROPERTY_KEYS = {"id", "modes", "freespeed", "capacity", HBEFA_ROAD_TYPE, HIGHWAY};
+    // The min zoom of the highway types; the other highway types are drawn from the zoom 13
+    private static final Map<String, Integer> HIGHWAY_MIN_ZOOMS = Map.ofEntries(
+            Map.entry("motorway", 0), Map.entry("motorway_link", 9),
+            Map.entry("trunk", 0), Map.entry("trunk_link", 9),
+            Map.entry("primary", 7), Map.entry("primary_link", 10),
+            Map.entry("secondary", 9), Map.entry("secondary_link", 11),
+            Map.entry("tertiary", 10), Map.entry("tertiary_link", 12),
+            Map.entry("unclassified", 11), Map.entry("residential", 12), Map.entry("living_street", 12));
+    private static final int DEFAULT_MIN_ZOOM = 13;
+
+    @FunctionalInterface
+    interface TileWriter {
+        void write(int zoom, int x, int y, byte[] tile) throws SQLException;
+    }
+
+    private final String crsCode;
+    private final Network network;
+    private int minZoom = 4;
+    private int maxZoom = 14;
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+    // The links, with their projected points (in Web Mercator, normalized to [0, 1]) and their min zoom
+    private Link[] links;
+    private double[] points;
+    private int[] linkMinZooms;
+
+    public Network2MBTiles(String crsCode, Network network) {
+        this.crsCode = crsCode;
+        this.network = network;
+    }
+
+    public Network2MBTiles setZoomRange(int minZoom, int maxZoom) {
+        if (minZoom < 0 || maxZoom > 22 || minZoom > maxZoom) {
+            throw new IllegalArgumentException("Invalid zoom range: " + minZoom + " - " + maxZoom);
+        }
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        return this;
+    }
+
+    public Network2MBTiles setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads > 0 ? numberOfThreads : Runtime.getRuntime().availableProcessors();
+        return this;
+    }
+
+    public void write(String file) {
+        try {
+            Files.deleteIfExists(Path.of(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete the existing MBTiles file: " + file, e);
+        }
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA synchronous = OFF");
+                statement.execute("PRAGMA journal_mode = OFF");
+                statement.execute("CREATE TABLE metadata (name TEXT, value TEXT)");
+                statement.execute("CREATE TABLE tiles (zoom_level INTEGER, tile_column INTEGER, tile_row INTEGER, tile_data BLOB)");
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO tiles (zoom_level, tile_column, tile_row, tile_data) VALUES (?, ?, ?, ?)")) {
+                // The tiles are inserted in batches, so that only one batch of encoded tiles is held in memory
+                int[] batchCount = {0};
+                generateTiles((zoom, x, y, tile) -> {
+                    insert.setInt(1, zoom);
+                    insert.setInt(2, x);
+                    // The rows of MBTiles are numbered from the bottom (TMS)
+                    insert.setInt(3, (1 << zoom) - 1 - y);
+                    insert.setBytes(4, tile);
+                    insert.addBatch();
+                    if (++batchCount[0] == BATCH_SIZE) {
+                        insert.executeBatch();
+                        batchCount[0] = 0;
+                    }
+                });
+                insert.executeBatch();
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO metadata (name, value) VALUES (?, ?)")) {
+                for (Map.Entry<String, String> entry : createMetadata().entrySet()) {
+                    insert.setString(1, entry.getKey());
+                    insert.setString(2, entry.getValue());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE UNIQUE INDEX tile_index ON tiles (zoom_level, tile_column, tile_row)");
+                statement.execute("CREATE UNIQUE INDEX name ON metadata (name)");
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to write the MBTiles file: " + file, e);
+        }
+    }
+
+    /**
+     * Generate the gzip-compressed tiles of all the zoom levels, which are encoded in parallel (in batches) and passed
+     * to the writer in one thread.
+     */
+    void generateTiles(TileWriter writer) throws SQLException {
+        prepareLinks();
+        ExecutorService executor = Executors.newFixedThreadPool(this.numberOfThreads);
+        try {
+            for (int zoom = this.minZoom; zoom <= this.maxZoom; zoom++) {
+                long startTime = System.currentTimeMillis();
+                Map<Long, int[]> tiles = assignLinksToTiles(zoom);
+                List<Long> tileKeys = new ArrayList<>(tiles.keySet());
+                Collections.sort(tileKeys);
+                int numberOfTiles = 0;
+                for (int from = 0; from < tileKeys.size(); from += BATCH_SIZE) {
+                    List<Future<byte[]>> futures = new ArrayList<>();
+                    List<Long> batch = tileKeys.subList(from, Math.min(from + BATCH_SIZE, tileKeys.size()));
+                    for (long tileKey : batch) {
+                        int z = zoom;
+                        futures.add(executor.submit(() -> encodeTile(z, (int) (tileKey >>> 32), (int) tileKey, tiles.get(tileKey))));
+                    }
+                    for (int i = 0; i < batch.size(); i++) {
+                        byte[] tile = futures.get(i).get();
+                        if (tile != null) {
+                            writer.write(zoom, (int) (batch.get(i) >>> 32), (int) (long) batch.get(i), tile);
+                            numberOfTiles++;
+                        }
+                    }
+                }
+                LOG.info("Generated {} tiles at zoom {} in {} ms.", numberOfTiles, zoom, System.currentTimeMillis() - startTime);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while generating the vector tiles", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to generate the vector tiles", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Project the nodes into Web Mercator once, and get the min zoom of each link
+    private void prepareLinks() {
+        CoordinateTransformation transformation = SpatialLinkTable.getEpsgCode(this.crsCode) == 4326 ? null :
+                TransformationFactory.getCoordinateTransformation(this.crsCode, TransformationFactory.WGS84);
+        double[] nodePoints = new double[2 * Id.getNumberOfIds(Node.class)];
+        for (Node node : this.network.getNodes().values()) {
+            Coord coord = transformation == null ? node.getCoord() : transformation.transform(node.getCoord());
+            double latitude = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, coord.getY()));
+            double sinLatitude = Math.sin(Math.toRadians(latitude));
+            nodePoints[2 * node.getId().index()] = (coord.getX() + 180) / 360;
+            nodePoints[2 * node.getId().index() + 1] = 0.5 - Math.log((1 + sinLatitude) / (1 - sinLatitude)) / (4 * Math.PI);
+        }
+        this.links = this.network.getLinks().values().toArray(new Link[0]);
+        this.points = new double[4 * this.links.length];
+        this.linkMinZooms = new int[this.links.length];
+        for (int i = 0; i < this.links.length; i++) {
+            Link link = this.links[i];
+            System.arraycopy(nodePoints, 2 * link.getFromNode().getId().index(), this.points, 4 * i, 2);
+            System.arraycopy(nodePoints, 2 * link.getToNode().getId().index(), this.points, 4 * i + 2, 2);
+            this.linkMinZooms[i] = Math.min(getMinZoom(link), this.maxZoom);
+        }
+    }
+
+    static int getMinZoom(Link link) {
+        Object highway = link.getAttributes().getAttribute(HIGHWAY);
+        if (highway != null) {
+            return HIGHWAY_MIN_ZOOMS.getOrDefault(highway.toString(), DEFAULT_MIN_ZOOM);
+        }
+        // Without a highway type, by the freespeed: 80 km/h or more, 50 km/h or more, and the others
+        if (link.getFreespeed() >= 80 / 3.6 - 0.01) {
+            return 0;
+        } else if (link.getFreespeed() >= 50 / 3.6 - 0.01) {
+            return 9;
+        }
+        return 12;
+    }
+
+    // Get the indices of the links of each tile (by its key x << 32 | y), including the links within the buffer
+    private Map<Long, int[]> assignLinksToTiles(int zoom) {
+        Map<Long, int[]> tiles = new HashMap<>();
+        int numberOfTiles = 1 << zoom;
+        double buffer = (double) BUFFER / EXTENT;
+        for (int i = 0; i < this.links.length; i++) {
+            if (this.linkMinZooms[i] > zoom) {
+                continue;
+            }
+            double x0 = this.points[4 * i] * numberOfTiles;
+            double y0 = this.points[4 * i + 1] * numberOfTiles;
+            double x1 = this.points[4 * i + 2] * numberOfTiles;
+            double y1 = this.points[4 * i + 3] * numberOfTiles;
+            int minX = Math.max(0, (int) Math.floor(Math.min(x0, x1) - buffer));
+            int maxX = Math.min(numberOfTiles - 1, (int) Math.floor(Math.max(x0, x1) + buffer));
+            int minY = Math.max(0, (int) Math.floor(Math.min(y0, y1) - buffer));
+            int maxY = Math.min(numberOfTiles - 1, (int) Math.floor(Math.max(y0, y1) + buffer));
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    // The first element is the number of links of the tile
+                    int[] tileLinks = tiles.computeIfAbsent(((long) x << 32) | y, k -> new int[5]);
+                    if (tileLinks[0] + 1 == tileLinks.length) {
+                        tileLinks = Arrays.copyOf(tileLinks, 2 * tileLinks.length);
+                        tiles.put(((long) x << 32) | y, tileLinks);
+                    }
+                    tileLinks[++tileLinks[0]] = i;
+                }
+            }
+        }
+        return tiles;
+    }
+
+    // Encode the links of the tile into a gzip-compressed vector tile, or null if the tile is empty after the simplification
+    private byte[] encodeTile(int zoom, int tileX, int tileY, int[] tileLinks) throws IOException {
+        int numberOfTiles = 1 << zoom;
+        VectorTileEncoder encoder = new VectorTileEncoder(LAYER_NAME, EXTENT);
+        Set<Long> drawnSegments = new HashSet<>();
+        double[] segment = new double[4];
+        Object[] properties = new Object[PROPERTY_KEYS.length];
+        for (int k = 1; k <= tileLinks[0]; k++) {
+            int i = tileLinks[k];
+            // The points in the tile space
+            segment[0] = (this.points[4 * i] * numberOfTiles - tileX) * EXTENT;
+            segment[1] = (this.points[4 * i + 1] * numberOfTiles - tileY) * EXTENT;
+            segment[2] = (this.points[4 * i + 2] * numberOfTiles - tileX) * EXTENT;
+            segment[3] = (this.points[4 * i + 3] * numberOfTiles - tileY) * EXTENT;
+            if (!clip(segment, -BUFFER, EXTENT + BUFFER)) {
+                continue;
+            }
+            int x0 = (int) Math.round(segment[0]);
+            int y0 = (int) Math.round(segment[1]);
+            int x1 = (int) Math.round(segment[2]);
+            int y1 = (int) Math.round(segment[3]);
+            if (x0 == x1 && y0 == y1) {
+                // The link collapses to a point at this zoom
+                continue;
+            }
+            if (zoom < this.maxZoom && !drawnSegments.add(getSegmentKey(x0, y0, x1, y1))) {
+                // The same snapped geometry has been drawn (e.g., by the opposite link)
+                continue;
+            }
+            Link link = this.links[i];
+            properties[0] = link.getId().toString();
+            properties[1] = String.join(",", link.getAllowedModes());
+            properties[2] = link.getFreespeed();
+            properties[3] = link.getCapacity();
+            properties[4] = link.getAttributes().getAttribute(HBEFA_ROAD_TYPE);
+            properties[5] = link.getAttributes().getAttribute(HIGHWAY);
+            encoder.addLineString(i, x0, y0, x1, y1, PROPERTY_KEYS, properties);
+        }
+        if (encoder.getNumberOfFeatures() == 0) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(encoder.encode());
+        }
+        return out.toByteArray();
+    }
+
+    // The key of the undirected snapped segment, with each coordinate (within the buffer) in 16 bits
+    private static long getSegmentKey(int x0, int y0, int x1, int y1) {
+        if (x0 > x1 || (x0 == x1 && y0 > y1)) {
+            return getSegmentKey(x1, y1, x0, y0);
+        }
+        return ((long) (x0 + BUFFER) << 48) | ((long) (y0 + BUFFER) << 32) | ((long) (x1 + BUFFER) << 16) | (y1 + BUFFER);
+    }
+
+    /**
+     * Clip the segment (x0, y0, x1, y1) to the square [min, max] x [min, max] (Liang-Barsky), in place; return false if
+     * the segment is outside the square.
+     */
+    static boolean clip(double[] segment, double min, double max) {
+        double dx = segment[2] - segment[0];
+        double dy = segment[3] - segment[1];
+        double t0 = 0;
+        double t1 = 1;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {segment[0] - min, max - segment[0], segment[1] - min, max - segment[1]};
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return false;
+                }
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) {
+                    t0 = Math.max(t0, t);
+                } else {
+                    t1 = Math.min(t1, t);
+                }
+            }
+        }
+        if (t0 > t1) {
+            return false;
+        }
+        double x0 = segment[0];
+        double y0 = segment[1];
+        segment[0] = x0 + t0 * dx;
+        segment[1] = y0 + t0 * dy;
+        segment[2] = x0 + t1 * dx;
+        segment[3] = y0 + t1 * dy;
+        return true;
+    }
+
+    private Map<String, String> createMetadata() {
+        // The bounds in longitude/latitude, from the projected points
+        double minX = 1;
+        double minY = 1;
+        double maxX = 0;
+        double maxY = 0;
+        for (int i = 0; i < this.points.length; i += 2) {
+            minX = Math.min(minX, this.points[i]);
+            maxX = Math.max(maxX, this.points[i]);
+            minY = Math.min(minY, this.points[i + 1]);
+            maxY = Math.max(maxY, this.points[i + 1]);
+        }
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("name", this.network.getName() != null ? this.network.getName() : "network");
+        metadata.put("format", "pbf");
+        metadata.put("type", "overlay");
+        metadata.put("version", "1");
+        metadata.put("description", "The links of the converted MATSim network");
+        metadata.put("minzoom", String.valueOf(this.minZoom));
+        metadata.put("maxzoom", String.valueOf(this.maxZoom));
+        if (this.points.length > 0) {
+            double west = toLongitude(minX);
+            double east = toLongitude(maxX);
+            double south = toLatitude(maxY);
+            double north = toLatitude(minY);
+            metadata.put("bounds", west + "," + south + "," + east + "," + north);
+            metadata.put("center", (west + east) / 2 + "," + (south + north) / 2 + "," + this.minZoom);
+        }
+        metadata.put("json", "{\"vector_layers\":[{\"id\":\"" + LAYER_NAME + "\",\"fields\":{\"id\":\"String\","
+                + "\"modes\":\"String\",\"freespeed\":\"Number\",\"capacity\":\"Number\",\"" + HBEFA_ROAD_TYPE
+                + "\":\"String\",\"" + HIGHWAY + "\":\"String\"},\"minzoom\":" + this.minZoom + ",\"maxzoom\":"
+                + this.maxZoom + "}]}");
+        return metadata;
+    }
+
+    private static double toLongitude(double x) {
+        return x * 360 - 180;
+    }
+
+    private static double toLatitude(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+    }
+}
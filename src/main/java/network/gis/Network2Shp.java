@@ -4,79 +4,159 @@ import org.geotools.data.FeatureWriter;
 import org.geotools.data.Transaction;
 import org.geotools.data.shapefile.ShapefileDataStore;
 import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.locationtech.jts.geom.Geometry;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.api.internal.MatsimSomeWriter;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
+/**
+ * Write the network to a shapefile, streaming the links into the shapefile writer (without holding all the features
+ * in memory). As the .shp and .dbf files of a shapefile are limited to 2 GB, the output is split automatically into
+ * multiple shapefiles if needed: the first one is the given file, and the next ones are suffixed by "_2", "_3", etc.
+ */
 public class Network2Shp implements MatsimSomeWriter {
 
+    // The max size of the .shp and .dbf files (2 GB)
+    private static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+    // The sizes of the headers of the .shp file, of a .shp record and of the content of a polyline record (without its parts and points)
+    private static final int SHP_HEADER_SIZE = 100;
+    private static final int SHP_RECORD_HEADER_SIZE = 8;
+    private static final int SHP_POLYLINE_CONTENT_SIZE = 44;
+
     private final String crsCode;
     private final Network network;
+    // The max number of features per shapefile, in addition to the size limit (only for testing)
+    private long maxFeaturesPerFile = Long.MAX_VALUE;
 
     public Network2Shp(String crsCode, Network network) {
         this.crsCode = crsCode;
         this.network = network;
     }
 
-    public void write(String file) {
-        // Write the network to a shapefile using MATSim's GeoFileWriter (which is based on GeoTools)
-        Network2SimpleFeatures network2SimpleFeatures = new Network2SimpleFeatures(this.crsCode, this.network);
-        Collection<SimpleFeature> features = network2SimpleFeatures.convertToSimpleFeatures();
+    void setMaxFeaturesPerFile(long maxFeaturesPerFile) {
+        this.maxFeaturesPerFile = maxFeaturesPerFile;
+    }
 
+    public void write(String file) {
+        // Stream the links of the network into the shapefile writer, converting them one by one
 //        GeoFileWriter.writeGeometries(features, file);  // The GeoFileWriter does not work properly
-        write(file, features);
+        Network2SimpleFeatures network2SimpleFeatures = new Network2SimpleFeatures(this.crsCode, this.network);
+        write(file, network2SimpleFeatures.getFeatureType(), network2SimpleFeatures.featureIterator());
     }
 
-    private void write(String filePath, Collection<SimpleFeature> features) {
+    // Write the features that have been converted from the network (e.g., to share them with other writers)
+    public void write(String filePath, Collection<SimpleFeature> features) {
         if (features == null || features.isEmpty()) {
             throw new IllegalArgumentException("The features collection is null or empty. Nothing to write.");
         }
+        write(filePath, features.iterator().next().getFeatureType(), features.iterator());
+    }
 
+    private void write(String filePath, SimpleFeatureType featureType, Iterator<SimpleFeature> features) {
         try {
-            // Create the shapefile
-            File file = new File(filePath);
-            ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
-
-            Map<String, Serializable> params = new HashMap<>();
-            params.put("url", file.toURI().toURL());
-            params.put("create spatial index", Boolean.TRUE);
+            int part = 1;
+            // The feature which did not fit into the previous shapefile
+            SimpleFeature pending = null;
+            do {
+                String partPath = part == 1 ? filePath : getPartPath(filePath, part);
+                pending = writePart(partPath, featureType, pending, features);
+                System.out.println("Shapefile written successfully to " + partPath);
+                part++;
+            } while (pending != null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException("Error writing Shapefile: " + e.getMessage());
+        }
+    }
 
-            // Create the Shapefile DataStore
-            ShapefileDataStore dataStore = (ShapefileDataStore) dataStoreFactory.createNewDataStore(params);
+    // Write the features into one shapefile until it is full; return the feature which did not fit, or null if all are written
+    private SimpleFeature writePart(String filePath, SimpleFeatureType featureType, SimpleFeature first,
+                                    Iterator<SimpleFeature> features) throws IOException {
+        // Create the shapefile
+        File file = new File(filePath);
+        ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
 
-            // Get the feature type from the first feature in the collection
-            SimpleFeatureType featureType = features.iterator().next().getFeatureType();
+        Map<String, Serializable> params = new HashMap<>();
+        params.put("url", file.toURI().toURL());
+        params.put("create spatial index", Boolean.TRUE);
 
+        // Create the Shapefile DataStore
+        ShapefileDataStore dataStore = (ShapefileDataStore) dataStoreFactory.createNewDataStore(params);
+        try {
             // Define the schema
             dataStore.createSchema(featureType);
 
             // Set charset to UTF-8 for attribute encoding
             dataStore.setCharset(StandardCharsets.UTF_8);
 
+            // The .dbf records have a fixed length, given by the header which is written with the schema
+            DbaseFileHeader dbfHeader = readDbfHeader(filePath);
+            long dbfSize = dbfHeader.getHeaderLength();
+            long shpSize = SHP_HEADER_SIZE;
+            long count = 0;
+
             // Write features to the shapefile
             try (FeatureWriter<SimpleFeatureType, SimpleFeature> writer =
                          dataStore.getFeatureWriterAppend(dataStore.getTypeNames()[0], Transaction.AUTO_COMMIT)) {
-                for (SimpleFeature feature : features) {
+                SimpleFeature feature = first != null ? first : (features.hasNext() ? features.next() : null);
+                while (feature != null) {
+                    long recordSize = getShpRecordSize((Geometry) feature.getDefaultGeometry());
+                    if (count > 0 && (count >= this.maxFeaturesPerFile || shpSize + recordSize > MAX_FILE_SIZE
+                            || dbfSize + dbfHeader.getRecordLength() + 1 > MAX_FILE_SIZE)) {
+                        // Continue with the next shapefile
+                        return feature;
+                    }
                     SimpleFeature toWrite = writer.next();
                     toWrite.setAttributes(feature.getAttributes());
                     writer.write();
+                    shpSize += recordSize;
+                    dbfSize += dbfHeader.getRecordLength();
+                    count++;
+                    feature = features.hasNext() ? features.next() : null;
                 }
             }
+            return null;
+        } finally {
+            dataStore.dispose();
+        }
+    }
 
-            System.out.println("Shapefile written successfully to " + filePath);
+    private static DbaseFileHeader readDbfHeader(String shpPath) throws IOException {
+        String dbfPath = shpPath.substring(0, shpPath.length() - ".shp".length()) + ".dbf";
+        try (FileChannel channel = FileChannel.open(new File(dbfPath).toPath(), StandardOpenOption.READ)) {
+            DbaseFileHeader header = new DbaseFileHeader();
+            header.readHeader(channel);
+            return header;
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException("Error writing Shapefile: " + e.getMessage());
+    // The size of a polyline record in the .shp file
+    private static long getShpRecordSize(Geometry geometry) {
+        if (geometry == null) {
+            // A null shape record (only the shape type)
+            return SHP_RECORD_HEADER_SIZE + 4;
         }
+        return SHP_RECORD_HEADER_SIZE + SHP_POLYLINE_CONTENT_SIZE + 4L * geometry.getNumGeometries()
+                + 16L * geometry.getNumPoints();
+    }
+
+    // Get the path of the n-th shapefile, e.g., "network_2.shp"
+    static String getPartPath(String filePath, int part) {
+        int extension = filePath.toLowerCase().endsWith(".shp") ? filePath.length() - ".shp".length() : filePath.length();
+        return filePath.substring(0, extension) + "_" + part + ".shp";
     }
 
 }
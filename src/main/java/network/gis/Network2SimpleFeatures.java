@@ -13,40 +13,66 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Set;
+import java.util.*;
 
-class Network2SimpleFeatures {
+/**
+ * Convert the links of a MATSim network into SimpleFeatures, which can be shared by the GIS writers
+ * (e.g., {@link Network2Shp} and {@link Network2GeoJson}) to convert the network only once.
+ */
+public class Network2SimpleFeatures {
 
     private final String crsCode;
     private final Network network;
+    // The link attributes fields, which are those of the first link
+    private List<String> attrKeys = null;
+    private SimpleFeatureType featureType = null;
+    private final GeometryFactory geometryFactory = new GeometryFactory();
 
     public Network2SimpleFeatures(String crsCode, Network network) {
         this.crsCode = crsCode;
         this.network = network;
     }
 
-    Collection<SimpleFeature> convertToSimpleFeatures() {
+    public Collection<SimpleFeature> convertToSimpleFeatures() {
         // Convert the MATSim network to a collection of SimpleFeatures
-        Collection<SimpleFeature> features = new ArrayList<>();
-        // Get the link attributes fields
-        Link iterLink = this.network.getLinks().values().iterator().next();
-        Set<String> attrKeys = iterLink.getAttributes().getAsMap().keySet();
-        // Create the SimpleFeatureType
-        SimpleFeatureType featureType = createFeatureType(attrKeys);
-        // Create the GeometryFactory
-        GeometryFactory geometryFactory = new GeometryFactory();
-        // Create SimpleFeatures from MATSim Links
-        for (Link link : this.network.getLinks().values()) {
-            SimpleFeature feature = createFeatureFromLink(link, featureType, geometryFactory);
-            features.add(feature);
-        }
+        Collection<SimpleFeature> features = new ArrayList<>(this.network.getLinks().size());
+        featureIterator().forEachRemaining(features::add);
         return features;
     }
 
+    /**
+     * Convert the links into SimpleFeatures one by one while iterating (with one reused SimpleFeatureBuilder), so that
+     * the features can be streamed into a writer without holding all of them in memory.
+     */
+    public Iterator<SimpleFeature> featureIterator() {
+        SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(getFeatureType());
+        Iterator<? extends Link> links = this.network.getLinks().values().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return links.hasNext();
+            }
+
+            @Override
+            public SimpleFeature next() {
+                return createFeatureFromLink(links.next(), featureBuilder);
+            }
+        };
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        if (this.featureType == null) {
+            // Get the link attributes fields
+            Iterator<? extends Link> links = this.network.getLinks().values().iterator();
+            this.attrKeys = links.hasNext() ? new ArrayList<>(links.next().getAttributes().getAsMap().keySet()) : List.of();
+            // Create the SimpleFeatureType
+            this.featureType = createFeatureType(this.attrKeys);
+        }
+        return this.featureType;
+    }
+
     // Define the schema for SimpleFeatures
-    private SimpleFeatureType createFeatureType(Set<String> attrKeys) {
+    private SimpleFeatureType createFeatureType(List<String> attrKeys) {
         SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
         typeBuilder.setName("NetworkLink");
         // Set the CRS of the shapefile
@@ -71,10 +97,8 @@ class Network2SimpleFeatures {
         return typeBuilder.buildFeatureType();
     }
 
-    // Create SimpleFeature from MATSim Link
-    private SimpleFeature createFeatureFromLink(Link link, SimpleFeatureType featureType, GeometryFactory geometryFactory) {
-        SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
-
+    // Create SimpleFeature from MATSim Link; the builder is reset after building each feature, and thus reused
+    private SimpleFeature createFeatureFromLink(Link link, SimpleFeatureBuilder featureBuilder) {
         // Create LineString from link's start and end nodes
         Node fromNode = link.getFromNode();
         Node toNode = link.getToNode();
@@ -82,7 +106,7 @@ class Network2SimpleFeatures {
                 new Coordinate(fromNode.getCoord().getX(), fromNode.getCoord().getY()),
                 new Coordinate(toNode.getCoord().getX(), toNode.getCoord().getY())
         };
-        LineString lineString = geometryFactory.createLineString(coordinates);
+        LineString lineString = this.geometryFactory.createLineString(coordinates);
 
         // Convert allowed modes set to a comma-separated string
         String allowedModes = String.join(", ", link.getAllowedModes());
@@ -95,9 +119,10 @@ class Network2SimpleFeatures {
         featureBuilder.add(link.getLength());                    // Length
         featureBuilder.add(link.getNumberOfLanes());             // Number of lanes
         featureBuilder.add(allowedModes);              // Allowed modes
-        // Add the link attributes fields
-        for (String attrKey : link.getAttributes().getAsMap().keySet()) {
-            featureBuilder.add(link.getAttributes().getAttribute(attrKey).toString());
+        // Add the link attributes fields, in the order of the schema (null if the link does not have the attribute)
+        for (String attrKey : this.attrKeys) {
+            Object value = link.getAttributes().getAttribute(attrKey);
+            featureBuilder.add(value != null ? value.toString() : null);
         }
         return featureBuilder.buildFeature(link.getId().toString());
     }
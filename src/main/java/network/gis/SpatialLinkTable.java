@@ -0,0 +1,178 @@
+package network.gis;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.util.*;
+
+/**
+ * The links of a network in a spatial order, with the typed columns of their attributes, shared by the columnar
+ * writers ({@link Network2FlatGeobuf} and {@link Network2GeoParquet}):
+ * 1. The links are sorted by the Hilbert value of the centre of their bounding box (within the extent of the network),
+ * so that the links close to each other are also close in the file;
+ * 2. The type of each attribute column is derived from the values of all the links: LONG if all the values are
+ * integers, DOUBLE if all the values are numbers, BOOLEAN if all the values are booleans, and STRING otherwise.
+ *
+ * @author Xander
+ */
+final class SpatialLinkTable {
+
+    enum ColumnType {LONG, DOUBLE, BOOLEAN, STRING}
+
+    // The max coordinate of the Hilbert curve (a grid of 2^16 x 2^16 cells)
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    private final Link[] links;
+    // The extent of the network: minX, minY, maxX, maxY
+    private final double[] extent = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+    private final List<String> attrKeys = new ArrayList<>();
+    private final List<ColumnType> attrTypes = new ArrayList<>();
+
+    SpatialLinkTable(Network network) {
+        this.links = network.getLinks().values().toArray(new Link[0]);
+        Map<String, ColumnType> types = new LinkedHashMap<>();
+        for (Link link : this.links) {
+            expand(this.extent, link);
+            for (Map.Entry<String, Object> attr : link.getAttributes().getAsMap().entrySet()) {
+                if (attr.getValue() != null) {
+                    types.merge(attr.getKey(), getColumnType(attr.getValue()), SpatialLinkTable::mergeColumnTypes);
+                }
+            }
+        }
+        types.forEach((key, type) -> {
+            this.attrKeys.add(key);
+            this.attrTypes.add(type);
+        });
+        sortByHilbertValue();
+    }
+
+    private void sortByHilbertValue() {
+        double width = this.extent[2] - this.extent[0];
+        double height = this.extent[3] - this.extent[1];
+        long[] keys = new long[this.links.length];
+        double[] bounds = new double[4];
+        for (int i = 0; i < this.links.length; i++) {
+            getBounds(this.links[i], bounds);
+            int x = width > 0 ? (int) Math.floor(HILBERT_MAX * ((bounds[0] + bounds[2]) / 2 - this.extent[0]) / width) : 0;
+            int y = height > 0 ? (int) Math.floor(HILBERT_MAX * ((bounds[1] + bounds[3]) / 2 - this.extent[1]) / height) : 0;
+            // The Hilbert value in the high bits, and the position of the link in the low bits (the sign bit is
+            // flipped to sort the unsigned Hilbert values)
+            keys[i] = ((hilbert(x, y) << 32) | i) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(keys);
+        Link[] sorted = new Link[this.links.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = this.links[(int) keys[i]];
+        }
+        System.arraycopy(sorted, 0, this.links, 0, sorted.length);
+    }
+
+    // The distance of the cell (x, y) along the Hilbert curve
+    static long hilbert(int x, int y) {
+        int n = HILBERT_MAX + 1;
+        long d = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // Rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    private static ColumnType getColumnType(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ColumnType.LONG;
+        } else if (value instanceof Number) {
+            return ColumnType.DOUBLE;
+        } else if (value instanceof Boolean) {
+            return ColumnType.BOOLEAN;
+        }
+        return ColumnType.STRING;
+    }
+
+    private static ColumnType mergeColumnTypes(ColumnType type1, ColumnType type2) {
+        if (type1 == type2) {
+            return type1;
+        }
+        boolean numbers = type1 != ColumnType.BOOLEAN && type1 != ColumnType.STRING
+                && type2 != ColumnType.BOOLEAN && type2 != ColumnType.STRING;
+        return numbers ? ColumnType.DOUBLE : ColumnType.STRING;
+    }
+
+    // Get the bounds of the (straight) link: minX, minY, maxX, maxY
+    static void getBounds(Link link, double[] bounds) {
+        Coord from = link.getFromNode().getCoord();
+        Coord to = link.getToNode().getCoord();
+        bounds[0] = Math.min(from.getX(), to.getX());
+        bounds[1] = Math.min(from.getY(), to.getY());
+        bounds[2] = Math.max(from.getX(), to.getX());
+        bounds[3] = Math.max(from.getY(), to.getY());
+    }
+
+    private static void expand(double[] extent, Link link) {
+        for (Coord coord : new Coord[]{link.getFromNode().getCoord(), link.getToNode().getCoord()}) {
+            extent[0] = Math.min(extent[0], coord.getX());
+            extent[1] = Math.min(extent[1], coord.getY());
+            extent[2] = Math.max(extent[2], coord.getX());
+            extent[3] = Math.max(extent[3], coord.getY());
+        }
+    }
+
+    // Get the value of the attribute as the type of its column, or null if the link does not have the attribute
+    static Object getValue(Link link, String key, ColumnType type) {
+        Object value = link.getAttributes().getAttribute(key);
+        if (value == null) {
+            return null;
+        }
+        return switch (type) {
+            case LONG -> ((Number) value).longValue();
+            case DOUBLE -> ((Number) value).doubleValue();
+            case BOOLEAN -> value;
+            case STRING -> value.toString();
+        };
+    }
+
+    // The EPSG code of a CRS code like "EPSG:4326", or -1 if it is not an EPSG code
+    static int getEpsgCode(String crsCode) {
+        if (crsCode != null && crsCode.toUpperCase().startsWith("EPSG:")) {
+            try {
+                return Integer.parseInt(crsCode.substring("EPSG:".length()).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    Link[] getLinks() {
+        return this.links;
+    }
+
+    int size() {
+        return this.links.length;
+    }
+
+    double[] getExtent() {
+        return this.extent;
+    }
+
+    List<String> getAttrKeys() {
+        return this.attrKeys;
+    }
+
+    List<ColumnType> getAttrTypes() {
+        return this.attrTypes;
+    }
+}
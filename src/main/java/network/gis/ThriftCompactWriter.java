@@ -0,0 +1,133 @@
+package network.gis;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A minimal writer of the Thrift compact protocol, for the metadata of the Parquet files ({@link Network2GeoParquet})
+ * without the Thrift/Parquet libraries. The fields of a struct are written in the order of their ids, and a struct is
+ * closed by {@link #endStruct()}.
+ *
+ * @author Xander
+ */
+final class ThriftCompactWriter {
+
+    // The types of the compact protocol
+    static final int TYPE_I32 = 5;
+    static final int TYPE_I64 = 6;
+    static final int TYPE_BINARY = 8;
+    static final int TYPE_LIST = 9;
+    static final int TYPE_STRUCT = 12;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final Deque<Integer> lastFieldIds = new ArrayDeque<>();
+    private int lastFieldId = 0;
+
+    ThriftCompactWriter writeI32Field(int fieldId, int value) {
+        writeFieldHeader(fieldId, TYPE_I32);
+        writeVarint(zigzag(value));
+        return this;
+    }
+
+    ThriftCompactWriter writeI64Field(int fieldId, long value) {
+        writeFieldHeader(fieldId, TYPE_I64);
+        writeVarint(zigzag(value));
+        return this;
+    }
+
+    ThriftCompactWriter writeBinaryField(int fieldId, byte[] value) {
+        writeFieldHeader(fieldId, TYPE_BINARY);
+        writeBinary(value);
+        return this;
+    }
+
+    ThriftCompactWriter writeStringField(int fieldId, String value) {
+        return writeBinaryField(fieldId, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Start a struct field, whose fields are written next until endStruct()
+    ThriftCompactWriter beginStructField(int fieldId) {
+        writeFieldHeader(fieldId, TYPE_STRUCT);
+        return beginStruct();
+    }
+
+    // Start a struct as an element of a list
+    ThriftCompactWriter beginStruct() {
+        this.lastFieldIds.push(this.lastFieldId);
+        this.lastFieldId = 0;
+        return this;
+    }
+
+    ThriftCompactWriter endStruct() {
+        // The stop field
+        this.out.write(0);
+        this.lastFieldId = this.lastFieldIds.isEmpty() ? 0 : this.lastFieldIds.pop();
+        return this;
+    }
+
+    // Start a list field, whose elements are written next (e.g., with beginStruct() or writeI32())
+    ThriftCompactWriter beginListField(int fieldId, int elementType, int size) {
+        writeFieldHeader(fieldId, TYPE_LIST);
+        if (size < 15) {
+            this.out.write((size << 4) | elementType);
+        } else {
+            this.out.write(0xF0 | elementType);
+            writeVarint(size);
+        }
+        return this;
+    }
+
+    ThriftCompactWriter writeI32(int value) {
+        writeVarint(zigzag(value));
+        return this;
+    }
+
+    ThriftCompactWriter writeString(String value) {
+        writeBinary(value.getBytes(StandardCharsets.UTF_8));
+        return this;
+    }
+
+    // Write a struct which has been encoded by another writer (e.g., as an element of a list)
+    ThriftCompactWriter writeStruct(byte[] struct) {
+        this.out.write(struct, 0, struct.length);
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return this.out.toByteArray();
+    }
+
+    private void writeFieldHeader(int fieldId, int type) {
+        int delta = fieldId - this.lastFieldId;
+        if (delta > 0 && delta <= 15) {
+            this.out.write((delta << 4) | type);
+        } else {
+            this.out.write(type);
+            writeVarint(zigzag(fieldId));
+        }
+        this.lastFieldId = fieldId;
+    }
+
+    private void writeBinary(byte[] value) {
+        writeVarint(value.length);
+        this.out.write(value, 0, value.length);
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            this.out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.out.write((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+}
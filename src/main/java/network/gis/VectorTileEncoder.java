@@ -0,0 +1,147 @@
+package network.gis;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal encoder of a Mapbox Vector Tile (MVT 2.1) with one layer of line strings, for {@link Network2MBTiles},
+ * without the protobuf library. The coordinates are given in the tile space (0 to the extent), and the property
+ * keys and values are deduplicated within the layer.
+ *
+ * @author Xander
+ */
+final class VectorTileEncoder {
+
+    // The protobuf wire types
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    // The geometry type and commands of MVT
+    private static final int GEOMETRY_TYPE_LINE_STRING = 2;
+    private static final int COMMAND_MOVE_TO = 1;
+    private static final int COMMAND_LINE_TO = 2;
+
+    private final String layerName;
+    private final int extent;
+    private final ByteArrayOutputStream features = new ByteArrayOutputStream();
+    private final Map<String, Integer> keys = new HashMap<>();
+    private final List<String> keyList = new ArrayList<>();
+    private final Map<Object, Integer> values = new HashMap<>();
+    private final List<Object> valueList = new ArrayList<>();
+    private int numberOfFeatures = 0;
+
+    VectorTileEncoder(String layerName, int extent) {
+        this.layerName = layerName;
+        this.extent = extent;
+    }
+
+    /**
+     * Add a line string of two points, with its properties (a null value is skipped). The values should be strings or
+     * numbers, where a number is encoded as a double.
+     */
+    void addLineString(long id, int x0, int y0, int x1, int y1, String[] propertyKeys, Object[] propertyValues) {
+        ByteArrayOutputStream tags = new ByteArrayOutputStream();
+        for (int i = 0; i < propertyKeys.length; i++) {
+            if (propertyValues[i] == null) {
+                continue;
+            }
+            Object value = propertyValues[i] instanceof Number number ? (Object) number.doubleValue() : propertyValues[i].toString();
+            writeVarint(tags, this.keys.computeIfAbsent(propertyKeys[i], key -> {
+                this.keyList.add(key);
+                return this.keyList.size() - 1;
+            }));
+            writeVarint(tags, this.values.computeIfAbsent(value, v -> {
+                this.valueList.add(v);
+                return this.valueList.size() - 1;
+            }));
+        }
+
+        // A MoveTo to the first point, then a LineTo to the second point (relative to the first one)
+        ByteArrayOutputStream geometry = new ByteArrayOutputStream();
+        writeVarint(geometry, command(COMMAND_MOVE_TO, 1));
+        writeVarint(geometry, zigzag(x0));
+        writeVarint(geometry, zigzag(y0));
+        writeVarint(geometry, command(COMMAND_LINE_TO, 1));
+        writeVarint(geometry, zigzag(x1 - x0));
+        writeVarint(geometry, zigzag(y1 - y0));
+
+        // Feature: id (1), tags (2), type (3), geometry (4)
+        ByteArrayOutputStream feature = new ByteArrayOutputStream();
+        writeTag(feature, 1, VARINT);
+        writeVarint(feature, id);
+        writeBytes(feature, 2, tags.toByteArray());
+        writeTag(feature, 3, VARINT);
+        writeVarint(feature, GEOMETRY_TYPE_LINE_STRING);
+        writeBytes(feature, 4, geometry.toByteArray());
+        writeBytes(this.features, 2, feature.toByteArray());
+        this.numberOfFeatures++;
+    }
+
+    int getNumberOfFeatures() {
+        return this.numberOfFeatures;
+    }
+
+    // Encode the tile with its only layer
+    byte[] encode() {
+        // Layer: name (1), features (2), keys (3), values (4), extent (5), version (15)
+        ByteArrayOutputStream layer = new ByteArrayOutputStream();
+        writeBytes(layer, 1, this.layerName.getBytes(StandardCharsets.UTF_8));
+        layer.writeBytes(this.features.toByteArray());
+        for (String key : this.keyList) {
+            writeBytes(layer, 3, key.getBytes(StandardCharsets.UTF_8));
+        }
+        for (Object value : this.valueList) {
+            // Value: string_value (1) or double_value (3)
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            if (value instanceof Double number) {
+                writeTag(encoded, 3, FIXED64);
+                long bits = Double.doubleToRawLongBits(number);
+                for (int i = 0; i < 8; i++) {
+                    encoded.write((int) (bits >>> (8 * i)));
+                }
+            } else {
+                writeBytes(encoded, 1, value.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            writeBytes(layer, 4, encoded.toByteArray());
+        }
+        writeTag(layer, 5, VARINT);
+        writeVarint(layer, this.extent);
+        writeTag(layer, 15, VARINT);
+        writeVarint(layer, 2);
+
+        // Tile: layers (3)
+        ByteArrayOutputStream tile = new ByteArrayOutputStream();
+        writeBytes(tile, 3, layer.toByteArray());
+        return tile.toByteArray();
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static void writeTag(ByteArrayOutputStream out, int field, int wireType) {
+        writeVarint(out, ((long) field << 3) | wireType);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int field, byte[] bytes) {
+        writeTag(out, field, LENGTH_DELIMITED);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
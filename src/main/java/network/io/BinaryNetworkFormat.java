@@ -0,0 +1,85 @@
+package network.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout of the compact binary network format, shared by {@link BinaryNetworkWriter} and {@link BinaryNetworkReader}.
+ * <p>
+ * The file starts with a fixed-size header (magic number, version, counts, the size and modification time of the
+ * source network file if the file is a binary cache of it, and the offset/length of each section),
+ * followed by the sections. Each section is a column of primitives (e.g., all the x-coordinates of the nodes),
+ * so that it can be memory-mapped and read in bulk. All the strings (ids, modes, attribute keys and string values)
+ * are dictionary-encoded in the {@link Section#STRINGS} section, and the distinct allowed-mode sets are stored once
+ * in the {@link Section#MODE_SETS} section.
+ */
+final class BinaryNetworkFormat {
+
+    static final int MAGIC = 0x4D4E4246;  // "MNBF"
+    static final int VERSION = 3;
+
+    enum Section {
+        STRINGS,
+        NETWORK,
+        NODE_IDS,
+        NODE_X,
+        NODE_Y,
+        NODE_Z,
+        LINK_IDS,
+        LINK_FROM,
+        LINK_TO,
+        LINK_LENGTH,
+        LINK_FREESPEED,
+        LINK_CAPACITY,
+        LINK_LANES,
+        LINK_MODE_SET,
+        MODE_SETS,
+        NODE_ATTRIBUTES,
+        LINK_ATTRIBUTES,
+        NETWORK_ATTRIBUTES
+    }
+
+    // magic, version, nodeCount, linkCount, hasZ, sourceLength, sourceLastModified; then (offset, length) per section
+    static final int HEADER_SIZE = 5 * Integer.BYTES + 2 * Long.BYTES + Section.values().length * 2 * Long.BYTES;
+    // The offset of sourceLength and sourceLastModified in the header
+    static final int SOURCE_OFFSET = 5 * Integer.BYTES;
+    // The sourceLength and sourceLastModified of a file that is not a cache
+    static final long NO_SOURCE = -1;
+
+    // The types of the attribute values
+    static final byte TYPE_STRING = 0;
+    static final byte TYPE_DOUBLE = 1;
+    static final byte TYPE_INTEGER = 2;
+    static final byte TYPE_LONG = 3;
+    static final byte TYPE_BOOLEAN = 4;
+
+    static final int NO_STRING = -1;
+
+    private BinaryNetworkFormat() {
+    }
+
+    // A dictionary to encode each distinct string only once
+    static final class StringDictionary {
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int encode(String string) {
+            if (string == null) {
+                return NO_STRING;
+            }
+            Integer idx = this.indices.get(string);
+            if (idx == null) {
+                idx = this.strings.size();
+                this.indices.put(string, idx);
+                this.strings.add(string);
+            }
+            return idx;
+        }
+
+        List<String> getStrings() {
+            return this.strings;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package network.io;
+
+import network.io.BinaryNetworkFormat.Section;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.utils.objectattributes.attributable.Attributable;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static network.io.BinaryNetworkFormat.*;
+
+/**
+ * Read a network in the compact binary format (see {@link BinaryNetworkFormat}) into a MATSim network.
+ * The sections of the file are memory-mapped and decoded column by column.
+ */
+public final class BinaryNetworkReader {
+    private static final Logger LOG = LogManager.getLogger(BinaryNetworkReader.class);
+    public static final String BINARY_NETWORK_SUFFIX = ".bin";
+
+    private final Network network;
+
+    public BinaryNetworkReader(Network network) {
+        this.network = network;
+    }
+
+    public void read(String file) {
+        long startTime = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.READ)) {
+            read(channel);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read the binary network file: " + file, e);
+        }
+        LOG.info("The binary network file {} has been read in {} ms.", file, System.currentTimeMillis() - startTime);
+    }
+
+    private void read(FileChannel channel) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IllegalArgumentException("The file is not a binary network file.");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary network version: " + version);
+        }
+        int nodeCount = header.getInt();
+        int linkCount = header.getInt();
+        boolean hasZ = header.getInt() == 1;
+        // The size and modification time of the source network file, which are only checked by isCacheOf
+        header.getLong();
+        header.getLong();
+        long[] sectionOffsets = new long[Section.values().length];
+        long[] sectionLengths = new long[Section.values().length];
+        for (int i = 0; i < sectionOffsets.length; i++) {
+            sectionOffsets[i] = header.getLong();
+            sectionLengths[i] = header.getLong();
+        }
+        SectionMapper sections = section -> {
+            if (sectionLengths[section.ordinal()] > Integer.MAX_VALUE) {
+                throw new IllegalStateException("The section " + section + " is too large to be mapped.");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, sectionOffsets[section.ordinal()], sectionLengths[section.ordinal()]);
+        };
+
+        String[] strings = decodeStrings(sections.map(Section.STRINGS));
+
+        // Network-level parameters
+        ByteBuffer networkSection = sections.map(Section.NETWORK);
+        int nameIdx = networkSection.getInt();
+        if (nameIdx != NO_STRING) {
+            this.network.setName(strings[nameIdx]);
+        }
+        this.network.setCapacityPeriod(networkSection.getDouble());
+        this.network.setEffectiveLaneWidth(networkSection.getDouble());
+        this.network.setEffectiveCellSize(networkSection.getDouble());
+
+        // Nodes
+        NetworkFactory factory = this.network.getFactory();
+        IntBuffer nodeIds = sections.map(Section.NODE_IDS).asIntBuffer();
+        DoubleBuffer xs = sections.map(Section.NODE_X).asDoubleBuffer();
+        DoubleBuffer ys = sections.map(Section.NODE_Y).asDoubleBuffer();
+        DoubleBuffer zs = hasZ ? sections.map(Section.NODE_Z).asDoubleBuffer() : null;
+        Node[] nodes = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            Coord coord;
+            double z = zs == null ? Double.NaN : zs.get(i);
+            if (Double.isNaN(z)) {
+                coord = new Coord(xs.get(i), ys.get(i));
+            } else {
+                coord = new Coord(xs.get(i), ys.get(i), z);
+            }
+            nodes[i] = factory.createNode(Id.createNodeId(strings[nodeIds.get(i)]), coord);
+            this.network.addNode(nodes[i]);
+        }
+
+        // Mode sets, which are shared by the links
+        ByteBuffer modeSetSection = sections.map(Section.MODE_SETS);
+        int modeSetCount = modeSetSection.getInt();
+        List<Set<String>> modeSets = new ArrayList<>(modeSetCount);
+        for (int i = 0; i < modeSetCount; i++) {
+            int size = modeSetSection.getInt();
+            Set<String> modeSet = new HashSet<>();
+            for (int j = 0; j < size; j++) {
+                modeSet.add(strings[modeSetSection.getInt()]);
+            }
+            modeSets.add(Set.copyOf(modeSet));
+        }
+
+        // Links
+        IntBuffer linkIds = sections.map(Section.LINK_IDS).asIntBuffer();
+        IntBuffer fromNodes = sections.map(Section.LINK_FROM).asIntBuffer();
+        IntBuffer toNodes = sections.map(Section.LINK_TO).asIntBuffer();
+        DoubleBuffer lengths = sections.map(Section.LINK_LENGTH).asDoubleBuffer();
+        DoubleBuffer freespeeds = sections.map(Section.LINK_FREESPEED).asDoubleBuffer();
+        DoubleBuffer capacities = sections.map(Section.LINK_CAPACITY).asDoubleBuffer();
+        DoubleBuffer lanes = sections.map(Section.LINK_LANES).asDoubleBuffer();
+        IntBuffer linkModeSets = sections.map(Section.LINK_MODE_SET).asIntBuffer();
+        Link[] links = new Link[linkCount];
+        for (int i = 0; i < linkCount; i++) {
+            Link link = factory.createLink(Id.createLinkId(strings[linkIds.get(i)]), nodes[fromNodes.get(i)], nodes[toNodes.get(i)]);
+            link.setLength(lengths.get(i));
+            link.setFreespeed(freespeeds.get(i));
+            link.setCapacity(capacities.get(i));
+            link.setNumberOfLanes(lanes.get(i));
+            link.setAllowedModes(modeSets.get(linkModeSets.get(i)));
+            this.network.addLink(link);
+            links[i] = link;
+        }
+
+        // Attributes
+        decodeAttributes(sections.map(Section.NODE_ATTRIBUTES), nodes, strings);
+        decodeAttributes(sections.map(Section.LINK_ATTRIBUTES), links, strings);
+        decodeAttributes(sections.map(Section.NETWORK_ATTRIBUTES), new Attributable[]{this.network}, strings);
+    }
+
+    private static String[] decodeStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        int[] byteOffsets = new int[count + 1];
+        buffer.asIntBuffer().get(byteOffsets);
+        buffer.position(buffer.position() + Integer.BYTES * (count + 1));
+        byte[] bytes = new byte[byteOffsets[count]];
+        buffer.get(bytes);
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = new String(bytes, byteOffsets[i], byteOffsets[i + 1] - byteOffsets[i], StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static void decodeAttributes(ByteBuffer buffer, Attributable[] elements, String[] strings) {
+        int totalAttributes = buffer.getInt();
+        int[] offsets = new int[elements.length + 1];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + Integer.BYTES * offsets.length);
+        int[] keys = new int[totalAttributes];
+        buffer.asIntBuffer().get(keys);
+        buffer.position(buffer.position() + Integer.BYTES * keys.length);
+        byte[] types = new byte[totalAttributes];
+        buffer.get(types);
+        long[] values = new long[totalAttributes];
+        buffer.asLongBuffer().get(values);
+
+        for (int i = 0; i < elements.length; i++) {
+            Attributes attributes = elements[i].getAttributes();
+            for (int pos = offsets[i]; pos < offsets[i + 1]; pos++) {
+                Object value = switch (types[pos]) {
+                    case TYPE_DOUBLE -> Double.longBitsToDouble(values[pos]);
+                    case TYPE_INTEGER -> (int) values[pos];
+                    case TYPE_LONG -> values[pos];
+                    case TYPE_BOOLEAN -> values[pos] == 1;
+                    default -> values[pos] == NO_STRING ? null : strings[(int) values[pos]];
+                };
+                if (value != null) {
+                    attributes.putAttribute(strings[keys[pos]], value);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface SectionMapper {
+        ByteBuffer map(Section section) throws IOException;
+    }
+
+    /*
+    Get the path of the binary cache of a MATSim network file, e.g., "network.xml.gz" -> "network.xml.gz.bin". The full
+    file name is kept, so that, e.g., "network.xml" and "network.xml.gz" in the same directory have their own caches.
+     */
+    public static String getBinaryCachePath(String networkFile) {
+        return networkFile + BINARY_NETWORK_SUFFIX;
+    }
+
+    /**
+     * Read a network file, which can be either a binary network file or a MATSim network (xml or xml.gz) file.
+     * For the latter, a binary cache is written next to it at the first read, and it is used instead of the MATSim
+     * network file as long as the size and the modification time of the network file match the ones recorded in the
+     * cache. The cache is written to a temporary file first and then moved, so that an interrupted write never leaves a
+     * truncated cache behind; an unreadable cache (e.g., of an older version) is replaced.
+     */
+    public static Network readNetwork(String networkFile) {
+        Network network = NetworkUtils.createNetwork();
+        if (networkFile.endsWith(BINARY_NETWORK_SUFFIX)) {
+            new BinaryNetworkReader(network).read(networkFile);
+            return network;
+        }
+        File cacheFile = new File(getBinaryCachePath(networkFile));
+        long sourceLength;
+        long sourceLastModified;
+        try {
+            sourceLength = Files.size(Path.of(networkFile));
+            sourceLastModified = Files.getLastModifiedTime(Path.of(networkFile)).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the network file: " + networkFile, e);
+        }
+        if (cacheFile.exists() && isCacheOf(cacheFile.toPath(), sourceLength, sourceLastModified)) {
+            try {
+                new BinaryNetworkReader(network).read(cacheFile.getPath());
+                return network;
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to read the binary cache {}, read the network file instead: {}", cacheFile, e.getMessage());
+                network = NetworkUtils.createNetwork();
+            }
+        }
+        new MatsimNetworkReader(network).readFile(networkFile);
+        writeBinaryCache(network, cacheFile.toPath(), sourceLength, sourceLastModified);
+        return network;
+    }
+
+    // Check whether the file is a binary cache of the current version of a source file with the given size and modification time
+    static boolean isCacheOf(Path cacheFile, long sourceLength, long sourceLastModified) {
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(SOURCE_OFFSET + 2 * Long.BYTES);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // Read until the header is complete
+            }
+            header.flip();
+            return header.getInt() == MAGIC && header.getInt() == VERSION
+                    && header.getLong(SOURCE_OFFSET) == sourceLength
+                    && header.getLong(SOURCE_OFFSET + Long.BYTES) == sourceLastModified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void writeBinaryCache(Network network, Path cacheFile, long sourceLength, long sourceLastModified) {
+        Path tempFile = null;
+        try {
+            Path directory = cacheFile.toAbsolutePath().getParent();
+            tempFile = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+            new BinaryNetworkWriter(network).setSource(sourceLength, sourceLastModified).write(tempFile.toString());
+            Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            // The cache is optional, e.g., the directory of the network file might be read-only
+            LOG.warn("Failed to write the binary cache {}: {}", cacheFile, e.getMessage());
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignored) {
+                    // The temporary file is left behind, but it is never read
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,271 @@
+package network.io;
+
+import network.io.BinaryNetworkFormat.Section;
+import network.io.BinaryNetworkFormat.StringDictionary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.api.internal.MatsimSomeWriter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static network.io.BinaryNetworkFormat.*;
+
+/**
+ * Write a MATSim network into the compact binary format (see {@link BinaryNetworkFormat}),
+ * which can be loaded much faster than the MATSim xml(.gz) format by {@link BinaryNetworkReader}.
+ * <p>
+ * Note: the attribute values of type String, Double, Integer, Long and Boolean are kept as they are;
+ * the values of other types are stored as their String representation.
+ */
+public final class BinaryNetworkWriter implements MatsimSomeWriter {
+    private static final Logger LOG = LogManager.getLogger(BinaryNetworkWriter.class);
+
+    private final Network network;
+    private long sourceLength = NO_SOURCE;
+    private long sourceLastModified = NO_SOURCE;
+
+    public BinaryNetworkWriter(Network network) {
+        this.network = network;
+    }
+
+    // Record the size and modification time of the source network file, if the file is a binary cache of it
+    BinaryNetworkWriter setSource(long sourceLength, long sourceLastModified) {
+        this.sourceLength = sourceLength;
+        this.sourceLastModified = sourceLastModified;
+        return this;
+    }
+
+    public void write(String file) {
+        long startTime = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(channel);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write the binary network file: " + file, e);
+        }
+        LOG.info("The binary network file {} has been written in {} ms.", file, System.currentTimeMillis() - startTime);
+    }
+
+    private void write(FileChannel channel) throws IOException {
+        StringDictionary strings = new StringDictionary();
+
+        // Node columns
+        Node[] nodes = this.network.getNodes().values().toArray(new Node[0]);
+        Map<Id<Node>, Integer> nodeIndices = new HashMap<>((int) (nodes.length / 0.75) + 1);
+        int[] nodeIds = new int[nodes.length];
+        double[] xs = new double[nodes.length];
+        double[] ys = new double[nodes.length];
+        double[] zs = new double[nodes.length];
+        boolean hasZ = false;
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[i];
+            nodeIndices.put(node.getId(), i);
+            nodeIds[i] = strings.encode(node.getId().toString());
+            xs[i] = node.getCoord().getX();
+            ys[i] = node.getCoord().getY();
+            if (node.getCoord().hasZ()) {
+                zs[i] = node.getCoord().getZ();
+                hasZ = true;
+            } else {
+                zs[i] = Double.NaN;
+            }
+        }
+
+        // Link columns
+        Link[] links = this.network.getLinks().values().toArray(new Link[0]);
+        int[] linkIds = new int[links.length];
+        int[] fromNodes = new int[links.length];
+        int[] toNodes = new int[links.length];
+        double[] lengths = new double[links.length];
+        double[] freespeeds = new double[links.length];
+        double[] capacities = new double[links.length];
+        double[] lanes = new double[links.length];
+        int[] linkModeSets = new int[links.length];
+        Map<Set<String>, Integer> modeSetIndices = new HashMap<>();
+        List<Set<String>> modeSets = new ArrayList<>();
+        for (int i = 0; i < links.length; i++) {
+            Link link = links[i];
+            linkIds[i] = strings.encode(link.getId().toString());
+            fromNodes[i] = nodeIndices.get(link.getFromNode().getId());
+            toNodes[i] = nodeIndices.get(link.getToNode().getId());
+            lengths[i] = link.getLength();
+            freespeeds[i] = link.getFreespeed();
+            capacities[i] = link.getCapacity();
+            lanes[i] = link.getNumberOfLanes();
+            Integer modeSetIdx = modeSetIndices.get(link.getAllowedModes());
+            if (modeSetIdx == null) {
+                modeSetIdx = modeSets.size();
+                Set<String> modeSet = new TreeSet<>(link.getAllowedModes());
+                modeSetIndices.put(modeSet, modeSetIdx);
+                modeSets.add(modeSet);
+            }
+            linkModeSets[i] = modeSetIdx;
+        }
+
+        // Encode the dictionary-based sections before writing the strings, as they add strings to the dictionary
+        ByteBuffer networkSection = ByteBuffer.allocate(Integer.BYTES + 3 * Double.BYTES);
+        networkSection.putInt(strings.encode(this.network.getName()));
+        networkSection.putDouble(this.network.getCapacityPeriod());
+        networkSection.putDouble(this.network.getEffectiveLaneWidth());
+        networkSection.putDouble(this.network.getEffectiveCellSize());
+        ByteBuffer modeSetSection = encodeModeSets(modeSets, strings);
+        ByteBuffer nodeAttributes = encodeAttributes(Arrays.stream(nodes).map(Node::getAttributes).toList(), strings);
+        ByteBuffer linkAttributes = encodeAttributes(Arrays.stream(links).map(Link::getAttributes).toList(), strings);
+        ByteBuffer networkAttributes = encodeAttributes(List.of(this.network.getAttributes()), strings);
+
+        Map<Section, ByteBuffer> sections = new EnumMap<>(Section.class);
+        sections.put(Section.STRINGS, encodeStrings(strings.getStrings()));
+        sections.put(Section.NETWORK, networkSection);
+        sections.put(Section.NODE_IDS, encode(nodeIds));
+        sections.put(Section.NODE_X, encode(xs));
+        sections.put(Section.NODE_Y, encode(ys));
+        sections.put(Section.NODE_Z, hasZ ? encode(zs) : ByteBuffer.allocate(0));
+        sections.put(Section.LINK_IDS, encode(linkIds));
+        sections.put(Section.LINK_FROM, encode(fromNodes));
+        sections.put(Section.LINK_TO, encode(toNodes));
+        sections.put(Section.LINK_LENGTH, encode(lengths));
+        sections.put(Section.LINK_FREESPEED, encode(freespeeds));
+        sections.put(Section.LINK_CAPACITY, encode(capacities));
+        sections.put(Section.LINK_LANES, encode(lanes));
+        sections.put(Section.LINK_MODE_SET, encode(linkModeSets));
+        sections.put(Section.MODE_SETS, modeSetSection);
+        sections.put(Section.NODE_ATTRIBUTES, nodeAttributes);
+        sections.put(Section.LINK_ATTRIBUTES, linkAttributes);
+        sections.put(Section.NETWORK_ATTRIBUTES, networkAttributes);
+
+        // Write the header and the sections
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(nodes.length).putInt(links.length).putInt(hasZ ? 1 : 0)
+                .putLong(this.sourceLength).putLong(this.sourceLastModified);
+        long offset = HEADER_SIZE;
+        for (Section section : Section.values()) {
+            long length = sections.get(section).flip().remaining();
+            header.putLong(offset).putLong(length);
+            offset += length;
+        }
+        writeFully(channel, header.flip());
+        for (Section section : Section.values()) {
+            writeFully(channel, sections.get(section));
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer encode(int[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        return buffer.position(buffer.capacity());
+    }
+
+    private static ByteBuffer encode(double[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Double.BYTES);
+        buffer.asDoubleBuffer().put(values);
+        return buffer.position(buffer.capacity());
+    }
+
+    // [count][byte offsets (count+1)][UTF-8 bytes]
+    private static ByteBuffer encodeStrings(List<String> strings) {
+        byte[][] encoded = new byte[strings.size()][];
+        int totalBytes = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            totalBytes += encoded[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * (encoded.length + 2) + totalBytes);
+        buffer.putInt(encoded.length);
+        int byteOffset = 0;
+        buffer.putInt(byteOffset);
+        for (byte[] bytes : encoded) {
+            byteOffset += bytes.length;
+            buffer.putInt(byteOffset);
+        }
+        for (byte[] bytes : encoded) {
+            buffer.put(bytes);
+        }
+        return buffer;
+    }
+
+    // [count][for each set: size, string indices of the modes]
+    private static ByteBuffer encodeModeSets(List<Set<String>> modeSets, StringDictionary strings) {
+        int size = Integer.BYTES;
+        for (Set<String> modeSet : modeSets) {
+            size += Integer.BYTES * (modeSet.size() + 1);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(modeSets.size());
+        for (Set<String> modeSet : modeSets) {
+            buffer.putInt(modeSet.size());
+            modeSet.forEach(mode -> buffer.putInt(strings.encode(mode)));
+        }
+        return buffer;
+    }
+
+    // [total attribute count][offsets per element (count+1)][keys][types][values]
+    private static ByteBuffer encodeAttributes(List<Attributes> attributesList, StringDictionary strings) {
+        int totalAttributes = 0;
+        for (Attributes attributes : attributesList) {
+            totalAttributes += attributes.size();
+        }
+        int[] offsets = new int[attributesList.size() + 1];
+        int[] keys = new int[totalAttributes];
+        byte[] types = new byte[totalAttributes];
+        long[] values = new long[totalAttributes];
+        int pos = 0;
+        for (int i = 0; i < attributesList.size(); i++) {
+            offsets[i] = pos;
+            for (Map.Entry<String, Object> entry : attributesList.get(i).getAsMap().entrySet()) {
+                keys[pos] = strings.encode(entry.getKey());
+                Object value = entry.getValue();
+                if (value instanceof Double d) {
+                    types[pos] = TYPE_DOUBLE;
+                    values[pos] = Double.doubleToRawLongBits(d);
+                } else if (value instanceof Integer integer) {
+                    types[pos] = TYPE_INTEGER;
+                    values[pos] = integer;
+                } else if (value instanceof Long l) {
+                    types[pos] = TYPE_LONG;
+                    values[pos] = l;
+                } else if (value instanceof Boolean b) {
+                    types[pos] = TYPE_BOOLEAN;
+                    values[pos] = b ? 1 : 0;
+                } else {
+                    types[pos] = TYPE_STRING;
+                    values[pos] = strings.encode(value == null ? null : value.toString());
+                }
+                pos++;
+            }
+        }
+        offsets[attributesList.size()] = pos;
+
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * (1 + offsets.length + keys.length)
+                + types.length + Long.BYTES * values.length);
+        buffer.putInt(totalAttributes);
+        for (int offset : offsets) {
+            buffer.putInt(offset);
+        }
+        for (int key : keys) {
+            buffer.putInt(key);
+        }
+        buffer.put(types);
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+        return buffer;
+    }
+
+}
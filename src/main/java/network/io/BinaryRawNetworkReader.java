@@ -0,0 +1,119 @@
+package network.io;
+
+import network.core.NetworkElement;
+import network.core.TransMode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static network.io.BinaryRawNetworkWriter.*;
+
+/**
+ * Read the raw nodes and links written by {@link BinaryRawNetworkWriter}.
+ */
+public final class BinaryRawNetworkReader {
+    private static final Logger LOG = LogManager.getLogger(BinaryRawNetworkReader.class);
+
+    private final Map<String, NetworkElement.Node> rawNodes;
+    private final Map<String, NetworkElement.Link> rawLinks;
+    // If true, the nodes are read as NetworkElement.FixedPointNode
+    private boolean fixedPointCoordinates = false;
+
+    public BinaryRawNetworkReader(Map<String, NetworkElement.Node> rawNodes, Map<String, NetworkElement.Link> rawLinks) {
+        this.rawNodes = rawNodes;
+        this.rawLinks = rawLinks;
+    }
+
+    public BinaryRawNetworkReader setFixedPointCoordinates(boolean fixedPointCoordinates) {
+        this.fixedPointCoordinates = fixedPointCoordinates;
+        return this;
+    }
+
+    public void read(String file) {
+        long startTime = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            read(in);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read the binary raw network file: " + file, e);
+        }
+        LOG.info("The binary raw network file {} has been read in {} ms.", file, System.currentTimeMillis() - startTime);
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IllegalArgumentException("The file is not a binary raw network file.");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary raw network version: " + version);
+        }
+
+        // Nodes
+        int nodeCount = in.readInt();
+        NetworkElement.Node[] nodes = new NetworkElement.Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            String id = in.readUTF();
+            double x = in.readDouble();
+            double y = in.readDouble();
+            if (this.fixedPointCoordinates) {
+                nodes[i] = in.readBoolean()
+                        ? new NetworkElement.FixedPointNode(id, x, y, in.readDouble())
+                        : new NetworkElement.FixedPointNode(id, x, y);
+            } else {
+                nodes[i] = in.readBoolean()
+                        ? new NetworkElement.Node(id, x, y, in.readDouble())
+                        : new NetworkElement.Node(id, x, y);
+            }
+            this.rawNodes.put(id, nodes[i]);
+        }
+
+        // Links
+        TransMode.Mode[] modes = TransMode.Mode.values();
+        List<String> strings = new ArrayList<>();
+        int linkCount = in.readInt();
+        for (int i = 0; i < linkCount; i++) {
+            String id = in.readUTF();
+            NetworkElement.Node fromNode = getNode(nodes, in.readInt());
+            NetworkElement.Node toNode = getNode(nodes, in.readInt());
+            NetworkElement.Link link = new NetworkElement.Link(id, fromNode, toNode);
+            int composedNodeCount = in.readInt();
+            for (int j = 0; j < composedNodeCount; j++) {
+                link.addComposedNode(nodes[in.readInt()]);
+            }
+            int modeCount = in.readByte();
+            for (int j = 0; j < modeCount; j++) {
+                link.addAllowedMode(modes[in.readByte()]);
+            }
+            int keyValueCount = in.readInt();
+            for (int j = 0; j < keyValueCount; j++) {
+                String key = readString(in, strings);
+                link.addKeyValuePair(key, readString(in, strings));
+            }
+            this.rawLinks.put(id, link);
+        }
+    }
+
+    private static NetworkElement.Node getNode(NetworkElement.Node[] nodes, int idx) {
+        return idx == NO_NODE ? null : nodes[idx];
+    }
+
+    private static String readString(DataInputStream in, List<String> strings) throws IOException {
+        int idx = in.readInt();
+        if (idx == NO_STRING) {
+            return null;
+        }
+        if (idx < strings.size()) {
+            return strings.get(idx);
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        String string = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(string);
+        return string;
+    }
+}
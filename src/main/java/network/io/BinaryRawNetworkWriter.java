@@ -0,0 +1,122 @@
+package network.io;
+
+import network.core.NetworkElement;
+import network.core.TransMode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Write the raw nodes and links of a {@link network.readers.Reader} into a compact binary file, which can be read back
+ * by {@link BinaryRawNetworkReader} much faster than re-reading the input network file (e.g., for checkpoints).
+ * <p>
+ * The file is a stream of: magic number, version, the nodes (id, coordinate), and the links (id, from/to/composed
+ * node indices, allowed modes, key-value pairs). The strings of the key-value pairs are dictionary-encoded on the fly:
+ * a string is written in full at its first occurrence, and as its index afterwards.
+ */
+public final class BinaryRawNetworkWriter {
+    private static final Logger LOG = LogManager.getLogger(BinaryRawNetworkWriter.class);
+
+    static final int MAGIC = 0x4D524157;  // "MRAW"
+    static final int VERSION = 1;
+    static final int NO_NODE = -1;
+    static final int NO_STRING = -1;
+
+    private final Map<String, NetworkElement.Node> rawNodes;
+    private final Map<String, NetworkElement.Link> rawLinks;
+
+    public BinaryRawNetworkWriter(Map<String, NetworkElement.Node> rawNodes, Map<String, NetworkElement.Link> rawLinks) {
+        this.rawNodes = rawNodes;
+        this.rawLinks = rawLinks;
+    }
+
+    public void write(String file) {
+        long startTime = System.currentTimeMillis();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            write(out);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write the binary raw network file: " + file, e);
+        }
+        LOG.info("The binary raw network file {} has been written in {} ms.", file, System.currentTimeMillis() - startTime);
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        // Nodes
+        Map<String, Integer> nodeIndices = new HashMap<>((int) (this.rawNodes.size() / 0.75) + 1);
+        out.writeInt(this.rawNodes.size());
+        for (NetworkElement.Node node : this.rawNodes.values()) {
+            nodeIndices.put(node.getId(), nodeIndices.size());
+            out.writeUTF(node.getId());
+            out.writeDouble(node.getX());
+            out.writeDouble(node.getY());
+            out.writeBoolean(node.hasZ());
+            if (node.hasZ()) {
+                out.writeDouble(node.getZ());
+            }
+        }
+
+        // Links
+        Map<String, Integer> strings = new HashMap<>();
+        out.writeInt(this.rawLinks.size());
+        for (NetworkElement.Link link : this.rawLinks.values()) {
+            out.writeUTF(link.getId());
+            out.writeInt(getNodeIndex(link.getFromNode(), nodeIndices));
+            out.writeInt(getNodeIndex(link.getToNode(), nodeIndices));
+            out.writeInt(link.getComposedNodes().size());
+            for (NetworkElement.Node node : link.getComposedNodes()) {
+                out.writeInt(getNodeIndex(node, nodeIndices));
+            }
+            out.writeByte(link.getAllowedModes().size());
+            for (TransMode.Mode mode : link.getAllowedModes()) {
+                out.writeByte(mode.ordinal());
+            }
+            out.writeInt(link.getKeyValuePairs().size());
+            for (Map.Entry<String, String> entry : link.getKeyValuePairs().entrySet()) {
+                writeString(out, entry.getKey(), strings);
+                writeString(out, entry.getValue(), strings);
+            }
+        }
+    }
+
+    private static int getNodeIndex(NetworkElement.Node node, Map<String, Integer> nodeIndices) {
+        // The from/to node of a raw link can be missing, e.g., if the way refers to a node outside the OSM extract
+        if (node == null) {
+            return NO_NODE;
+        }
+        Integer idx = nodeIndices.get(node.getId());
+        if (idx == null) {
+            throw new IllegalStateException("The node " + node.getId() + " of a raw link is not one of the raw nodes.");
+        }
+        return idx;
+    }
+
+    // Write the index of the string; a new string is followed by its content
+    private static void writeString(DataOutputStream out, String string, Map<String, Integer> strings) throws IOException {
+        if (string == null) {
+            out.writeInt(NO_STRING);
+            return;
+        }
+        Integer idx = strings.get(string);
+        if (idx != null) {
+            out.writeInt(idx);
+            return;
+        }
+        out.writeInt(strings.size());
+        strings.put(string, strings.size());
+        writeLongUTF(out, string);
+    }
+
+    // DataOutputStream.writeUTF is limited to 64 KB, which might not be enough for some tag values
+    private static void writeLongUTF(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,186 @@
+package network.io;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A disk-backed location index of the OSM nodes: a dense array indexed by the node id, in which each node takes 8 bytes
+ * (the longitude and latitude as fixed-point int32 in 1e-7 degree), memory-mapped in segments. The file is sparse,
+ * so the unused ids do not take disk space, and the coordinates of the nodes that no way references are not held on
+ * the heap (the referenced nodes are still created by the reader, so its heap still grows with them).
+ * <p>
+ * The segments are unmapped when the index is closed, so that the file can be deleted or reused right away (a mapped
+ * file is locked on Windows until its mapping is released).
+ * <p>
+ * The index records the size and the modification time of the source file, and it is reused by a later run on the
+ * same file once it has been completed.
+ */
+public final class NodeLocationIndex implements AutoCloseable {
+    private static final Logger LOG = LogManager.getLogger(NodeLocationIndex.class);
+
+    static final int MAGIC = 0x4E4C4958; // "NLIX"
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+    private static final int COMPLETE_OFFSET = 24;
+    private static final int BYTES_PER_NODE = 8;
+    // Each segment maps 2^27 node ids (1 GiB)
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_SIZE = (1L << SEGMENT_SHIFT) * BYTES_PER_NODE;
+    private static final double DEGREE_SCALE = 1e7;
+    // The latitude is stored with an offset, so that the zeros of the sparse file mean a missing node
+    private static final int LATITUDE_OFFSET = 1_000_000_000;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final boolean complete;
+
+    public NodeLocationIndex(Path file, Path source) {
+        this.file = file;
+        try {
+            long sourceLength = Files.size(source);
+            long sourceLastModified = Files.getLastModifiedTime(source).toMillis();
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (isValid(sourceLength, sourceLastModified)) {
+                this.complete = true;
+                LOG.info("Reusing the node location index: {}", file);
+            } else {
+                // Start a new index
+                this.channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putLong(sourceLength).putLong(sourceLastModified).put((byte) 0);
+                header.rewind();
+                this.channel.write(header, 0);
+                this.complete = false;
+                LOG.info("Creating the node location index: {}", file);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open the node location index: " + file, e);
+        }
+    }
+
+    private boolean isValid(long sourceLength, long sourceLastModified) throws IOException {
+        if (this.channel.size() < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(COMPLETE_OFFSET + 1);
+        this.channel.read(header, 0);
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == VERSION && header.getLong() == sourceLength
+                && header.getLong() == sourceLastModified && header.get() == 1;
+    }
+
+    // Whether the index has been completed by a previous run on the same source file, i.e., the nodes need not be added
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    public void put(long id, double lon, double lat) {
+        MappedByteBuffer segment = getSegment(id, true);
+        int position = getPositionInSegment(id);
+        segment.putInt(position, (int) Math.round(lon * DEGREE_SCALE));
+        segment.putInt(position + 4, (int) Math.round(lat * DEGREE_SCALE) + LATITUDE_OFFSET);
+    }
+
+    public boolean contains(long id) {
+        MappedByteBuffer segment = getSegment(id, false);
+        return segment != null && segment.getInt(getPositionInSegment(id) + 4) != 0;
+    }
+
+    // Get the longitude of the node; only valid if the index contains the node
+    public double getLon(long id) {
+        return getSegment(id, false).getInt(getPositionInSegment(id)) / DEGREE_SCALE;
+    }
+
+    // Get the latitude of the node; only valid if the index contains the node
+    public double getLat(long id) {
+        return (getSegment(id, false).getInt(getPositionInSegment(id) + 4) - LATITUDE_OFFSET) / DEGREE_SCALE;
+    }
+
+    // Mark the index as complete, so that it can be reused by a later run on the same source file
+    public void markComplete() {
+        if (this.complete) {
+            return;
+        }
+        try {
+            this.segments.forEach(segment -> {
+                if (segment != null) {
+                    segment.force();
+                }
+            });
+            this.channel.write(ByteBuffer.wrap(new byte[]{1}), COMPLETE_OFFSET);
+            this.channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to complete the node location index: " + this.file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // The segments must not be used after they have been unmapped
+        this.segments.forEach(segment -> {
+            if (segment != null) {
+                unmap(segment);
+            }
+        });
+        this.segments.clear();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close the node location index: " + this.file, e);
+        }
+    }
+
+    // Release the mapping now instead of when the buffer is garbage-collected; there is no public API for it before Java 21
+    private static void unmap(MappedByteBuffer segment) {
+        try {
+            Field field = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            ((sun.misc.Unsafe) field.get(null)).invokeCleaner(segment);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Failed to unmap the node location index, it is released by the garbage collector: {}", e.toString());
+        }
+    }
+
+    private static int getPositionInSegment(long id) {
+        return (int) (id & ((1L << SEGMENT_SHIFT) - 1)) * BYTES_PER_NODE;
+    }
+
+    // Get the segment of the node id; a missing segment is only mapped (and the file extended) when writing
+    private MappedByteBuffer getSegment(long id, boolean write) {
+        if (id < 0) {
+            throw new IllegalArgumentException("The node location index does not support negative node ids: " + id);
+        }
+        int index = (int) (id >>> SEGMENT_SHIFT);
+        MappedByteBuffer segment = index < this.segments.size() ? this.segments.get(index) : null;
+        if (segment != null) {
+            return segment;
+        }
+        long start = HEADER_SIZE + index * SEGMENT_SIZE;
+        try {
+            if (!write && this.channel.size() <= start) {
+                return null;
+            }
+            segment = this.channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map the node location index: " + this.file, e);
+        }
+        while (this.segments.size() <= index) {
+            this.segments.add(null);
+        }
+        this.segments.set(index, segment);
+        return segment;
+    }
+}
@@ -0,0 +1,78 @@
+package network.io;
+
+import org.matsim.core.network.io.NetworkWriter;
+
+import java.io.*;
+
+/**
+ * The shared entry point to write gzip-compressed outputs (*.gz) with the {@link ParallelGzipOutputStream}.
+ * The number of compression threads is given per call, so that concurrent writers can share the processors; a
+ * non-positive number means using all available processors.
+ */
+public final class ParallelGzip {
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private ParallelGzip() {
+    }
+
+    // Open an output stream for the file, which is compressed in parallel (with all available processors) if the file name ends with ".gz"
+    public static OutputStream createOutputStream(String file) throws IOException {
+        return createOutputStream(file, 0);
+    }
+
+    // Open an output stream for the file, which is compressed in parallel if the file name ends with ".gz"
+    public static OutputStream createOutputStream(String file, int numberOfThreads) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        if (file.endsWith(GZIP_SUFFIX)) {
+            return new ParallelGzipOutputStream(out, numberOfThreads > 0 ? numberOfThreads : Runtime.getRuntime().availableProcessors());
+        }
+        return new BufferedOutputStream(out);
+    }
+
+    /**
+     * Write a file with a writer that accepts an output stream, which is compressed in parallel as it is written if the
+     * file name ends with ".gz", without an uncompressed copy on the disk. The stream is closed afterwards.
+     */
+    public static void writeStream(String file, int numberOfThreads, StreamWriter writer) {
+        try (OutputStream out = createOutputStream(file, numberOfThreads)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the file: " + file, e);
+        }
+    }
+
+    /**
+     * Write a MATSim network file with the NetworkWriter. If the file name ends with ".gz", the xml is streamed into
+     * the parallel compression by {@link NetworkWriter#writeStream(OutputStream)}; otherwise, the NetworkWriter writes
+     * the file itself.
+     */
+    public static void writeNetwork(String file, NetworkWriter writer, int numberOfThreads) {
+        if (!file.endsWith(GZIP_SUFFIX)) {
+            writer.write(file);
+            return;
+        }
+        // The writer closes the stream itself, which must not close the compressed file before the trailer
+        writeStream(file, numberOfThreads, out -> writer.writeStream(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }));
+    }
+
+    // Write a MATSim network file with the NetworkWriter, which is compressed with all available processors if needed
+    public static void writeNetwork(String file, NetworkWriter writer) {
+        writeNetwork(file, writer, 0);
+    }
+
+    @FunctionalInterface
+    public interface StreamWriter {
+        void write(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,152 @@
+package network.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A pigz-style gzip output stream, which splits the data into blocks and compresses the blocks in parallel.
+ * Each block is written as a complete gzip member, and the members are written in order, so that the output is a
+ * valid (multi-member) gzip file that can be read by any standard gzip reader (e.g., {@link java.util.zip.GZIPInputStream}).
+ * <p>
+ * Note: unlike pigz, the blocks do not share a dictionary, so the output is slightly larger than a single-member gzip.
+ */
+public final class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;  // 1 MiB
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+    private byte[] buffer;
+    private int count = 0;
+    private boolean anyBlockWritten = false;
+    private boolean closed = false;
+
+    public ParallelGzipOutputStream(OutputStream out, int numberOfThreads) {
+        this(out, numberOfThreads, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int numberOfThreads, int blockSize) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads should be at least 1, but got " + numberOfThreads);
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size should be positive, but got " + blockSize);
+        }
+        this.out = out;
+        this.blockSize = blockSize;
+        // Bound the number of blocks in memory, while keeping all the threads busy
+        this.maxPendingBlocks = numberOfThreads * 2;
+        this.executor = Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+            Thread thread = new Thread(runnable, "ParallelGzip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.buffer = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        this.buffer[this.count++] = (byte) b;
+        if (this.count == this.blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            int toCopy = Math.min(length, this.blockSize - this.count);
+            System.arraycopy(bytes, offset, this.buffer, this.count, toCopy);
+            this.count += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+            if (this.count == this.blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    // Flushing ends the current block, so that flushing too often makes the compression worse
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (this.count > 0) {
+            submitBlock();
+        }
+        while (!this.pendingBlocks.isEmpty()) {
+            writeNextBlock();
+        }
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        try {
+            // An empty input should still result in a valid gzip file
+            if (this.count > 0 || !this.anyBlockWritten) {
+                submitBlock();
+            }
+            while (!this.pendingBlocks.isEmpty()) {
+                writeNextBlock();
+            }
+            this.out.close();
+        } finally {
+            this.closed = true;
+            this.executor.shutdownNow();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] block = this.buffer;
+        final int length = this.count;
+        this.pendingBlocks.add(this.executor.submit(() -> compressBlock(block, length)));
+        this.anyBlockWritten = true;
+        this.buffer = new byte[this.blockSize];
+        this.count = 0;
+        while (this.pendingBlocks.size() >= this.maxPendingBlocks) {
+            writeNextBlock();
+        }
+    }
+
+    private void writeNextBlock() throws IOException {
+        try {
+            this.out.write(this.pendingBlocks.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing the data", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress the data", e.getCause());
+        }
+    }
+
+    private static byte[] compressBlock(byte[] block, int length) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024)) {
+            gzip.write(block, 0, length);
+        }
+        return compressed.toByteArray();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("The stream is closed.");
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package network.readers;
+
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import java.util.*;
+
+/**
+ * The (non-geometry) attributes of a SimpleFeature as the read-only key-value pairs of a link.
+ * <p>
+ * The attribute values are copied into a compact array, so that the links do not keep the feature (and its geometry)
+ * alive once it has been converted; the attribute names are shared by all the features of the same type. A value is
+ * only converted into a string when it is asked for (e.g., by the mode matching or the LinkAttrParamSet), and at most
+ * once, instead of converting all the attributes of all the features. A numeric attribute can be read with
+ * {@link #getNumber} without the string conversion. The attributes with a null value are treated as missing.
+ */
+public final class FeatureAttributes extends AbstractMap<String, String> {
+
+    private final SimpleFeatureType featureType;
+    // The index of the geometry attribute, which is not a key-value pair
+    private final int geometryIndex;
+    // The attribute values (by the attribute index; null for the geometry), which are replaced by their string once converted
+    private final Object[] values;
+
+    public FeatureAttributes(SimpleFeature feature) {
+        this.featureType = feature.getFeatureType();
+        GeometryDescriptor geometryDescriptor = this.featureType.getGeometryDescriptor();
+        this.geometryIndex = geometryDescriptor != null ? this.featureType.indexOf(geometryDescriptor.getLocalName())
+                : this.featureType.indexOf("the_geom");
+        this.values = new Object[this.featureType.getAttributeCount()];
+        for (int i = 0; i < this.values.length; i++) {
+            Object value = feature.getAttribute(i);
+            // The geometries are not copied (nor any other geometry attribute), so that they can be collected
+            if (i != this.geometryIndex && !(value instanceof Geometry)) {
+                this.values[i] = value;
+            }
+        }
+    }
+
+    // Get the index of the attribute, or -1 if it is not a key-value pair
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        int index = this.featureType.indexOf((String) key);
+        return index == this.geometryIndex ? -1 : index;
+    }
+
+    private String getValue(int index) {
+        Object value = this.values[index];
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        String string = value.toString();
+        this.values[index] = string;
+        return string;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : getValue(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int index = indexOf(key);
+        return index >= 0 && this.values[index] != null;
+    }
+
+    /**
+     * Get the attribute as a number if it is numeric (e.g., an integer or double field of a shapefile), without the
+     * string conversion; null if it is missing, empty (NaN or infinite) or not numeric.
+     */
+    public Number getNumber(String key) {
+        int index = indexOf(key);
+        if (index < 0 || !(this.values[index] instanceof Number number)) {
+            return null;
+        }
+        return Double.isFinite(number.doubleValue()) ? number : null;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int next = findNext(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.next < featureType.getAttributeCount();
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int index = this.next;
+                        this.next = findNext(index + 1);
+                        // The value is only converted when it is asked for
+                        return new Entry<>() {
+                            @Override
+                            public String getKey() {
+                                return featureType.getDescriptor(index).getLocalName();
+                            }
+
+                            @Override
+                            public String getValue() {
+                                return FeatureAttributes.this.getValue(index);
+                            }
+
+                            @Override
+                            public String setValue(String value) {
+                                throw new UnsupportedOperationException("The attributes of a feature are read-only.");
+                            }
+
+                            @Override
+                            public boolean equals(Object obj) {
+                                return obj instanceof Entry<?, ?> entry && Objects.equals(getKey(), entry.getKey())
+                                        && Objects.equals(getValue(), entry.getValue());
+                            }
+
+                            @Override
+                            public int hashCode() {
+                                return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (int i = findNext(0); i < featureType.getAttributeCount(); i = findNext(i + 1)) {
+                    size++;
+                }
+                return size;
+            }
+        };
+    }
+
+    // Find the index of the next attribute with a (non-null) value from the given index
+    private int findNext(int from) {
+        int index = from;
+        while (index < this.featureType.getAttributeCount()
+                && (index == this.geometryIndex || this.values[index] == null)) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -26,13 +26,17 @@ public final class GeoJsonReader extends Reader {
     private final Collection<SimpleFeature> features = new ArrayList<>();
     private SimpleFeatureCollection featureCollection;
     private final String CRS;
+    // If true, each feature is converted into a single raw link with the composed nodes, instead of a link per segment
+    private final boolean mergeSegments;
 
     public GeoJsonReader(String CRS){
         this.CRS = CRS;
+        this.mergeSegments = false;
     }
 
     public GeoJsonReader(NetworkConverterConfigGroup config){
         this.CRS = config.INPUT_CRS;
+        this.mergeSegments = config.MERGE_FEATURE_SEGMENTS;
     }
 
     // Method to load GeoJSON file
@@ -74,7 +78,7 @@ public final class GeoJsonReader extends Reader {
         processFeatureCollection();
 
         for (SimpleFeature feature : features) {
-            SimpleFeatureConverter.convert(feature, this.rawNodes, this.rawLinks, this.CRS);
+            SimpleFeatureConverter.convert(feature, this.rawNodes, this.rawLinks, this.CRS, this.mergeSegments);
         }
     }
 }
@@ -6,81 +6,255 @@ import de.topobyte.osm4j.core.model.util.OsmModelUtil;
 import de.topobyte.osm4j.pbf.seq.PbfReader;
 import network.config.NetworkConverterConfigGroup;
 import network.core.NetworkElement;
+import network.core.NetworkGraphStore;
 import network.core.TransMode;
+import network.io.NodeLocationIndex;
 import network.tools.Utils;
 import org.matsim.api.core.v01.TransportMode;
 
 import java.io.FileInputStream;
 import java.io.InputStream;
-import java.util.LinkedHashSet;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
- * This class is used to read the OSM file (.pbf format) and convert it to raw nodes and links.
+ * This class is used to read the OSM file (.pbf format) and convert it to raw nodes and links, or to a columnar
+ * {@link NetworkGraphStore} (see {@link #setColumnarGraphStore}).
  */
 public final class OsmReader extends Reader implements OsmHandler {
 
     private final Set<Map<String, String>> ptModeKeyValuePairs;
     private final Set<String> reservedKeyValues;
+    // If true, the coordinates of the nodes are stored as fixed-point integers (see NetworkElement.FixedPointNode)
+    private final boolean fixedPointCoordinates;
+    /*
+    If the file of the node location index is set, the locations of the nodes are stored in the disk-backed index
+    instead of the rawNodes, and only the nodes that are referenced by the ways are added to the rawNodes (or the graph
+    store). The heap thus still grows with the number of referenced nodes, but not with the unreferenced ones
+     */
+    private String nodeLocationIndexFile = null;
+    private NodeLocationIndex nodeLocationIndex = null;
+    /*
+    In the streaming mode, each way is passed to the wayConsumer once it is read, instead of being stored in the
+    rawLinks. The pt-related relations come after the ways in a PBF file, so they are collected by a pre-pass
+    (way id -> reserved key-value pairs of the pt relations) and applied to the ways when they are read.
+     */
+    private Consumer<NetworkElement.Link> wayConsumer = null;
+    private final Map<String, Map<String, String>> ptWayKeyValuePairs = new HashMap<>();
+    /*
+    If the columnar graph store is used, the nodes and ways are stored in it instead of the rawNodes and rawLinks. With
+    the node location index, only the nodes that are referenced by the ways are added to the store
+     */
+    private NetworkGraphStore graphStore = null;
+    private int[] wayNodeIndices = new int[64];
 
     public OsmReader(Set<Map<String, String>> ptModeKeyValuePairs, Set<String> reservedKeyValues) {
         this.ptModeKeyValuePairs = ptModeKeyValuePairs;
         this.reservedKeyValues = reservedKeyValues;
+        this.fixedPointCoordinates = false;
     }
 
     public OsmReader(NetworkConverterConfigGroup config) {
         this.ptModeKeyValuePairs = config.getModeParamSets().get(TransportMode.pt).KEY_VALUE_MAPPING;
         this.reservedKeyValues = config.getLinkAttrParamSet().RESERVED_LINK_FIELDS;
+        this.fixedPointCoordinates = config.FIXED_POINT_COORDINATES;
+        if (config.NODE_LOCATION_INDEX_FILE != null && !config.NODE_LOCATION_INDEX_FILE.isEmpty() && !config.NODE_LOCATION_INDEX_FILE.equals("NA")) {
+            this.nodeLocationIndexFile = config.NODE_LOCATION_INDEX_FILE;
+        }
+        if (config.COLUMNAR_GRAPH_STORE) {
+            this.graphStore = new NetworkGraphStore();
+        }
     }
 
     public OsmReader() {
         this.ptModeKeyValuePairs = null;
         this.reservedKeyValues = null;
+        this.fixedPointCoordinates = false;
+    }
+
+    // Set the file of the disk-backed node location index, which is reused if it has been completed for the same input file
+    public void setNodeLocationIndexFile(String nodeLocationIndexFile) {
+        this.nodeLocationIndexFile = nodeLocationIndexFile;
+    }
+
+    // Read the nodes and ways into a columnar graph store instead of the rawNodes and rawLinks
+    public void setColumnarGraphStore(boolean columnarGraphStore) {
+        this.graphStore = columnarGraphStore ? new NetworkGraphStore() : null;
+    }
+
+    // Get the columnar graph store, or null if the rawNodes and rawLinks are used
+    public NetworkGraphStore getGraphStore() {
+        return this.graphStore;
+    }
+
+    // Whether the coordinates of the nodes are stored as fixed-point integers (also for the raw links of the graph store)
+    public boolean isFixedPointCoordinates() {
+        return this.fixedPointCoordinates;
     }
 
     private void handleNode(OsmNode osmNode){
+        if (this.nodeLocationIndex != null) {
+            // A completed index is reused as it is
+            if (!this.nodeLocationIndex.isComplete()) {
+                this.nodeLocationIndex.put(osmNode.getId(), osmNode.getLongitude(), osmNode.getLatitude());
+            }
+            return;
+        }
+        if (this.graphStore != null && this.wayConsumer == null) {
+            this.graphStore.addNode(osmNode.getId(), osmNode.getLongitude(), osmNode.getLatitude());
+            return;
+        }
         // Convert the OsmNode to NetworkElement.Node
-        NetworkElement.Node rawNode = new NetworkElement.Node(osmNode.getId(), osmNode.getLongitude(), osmNode.getLatitude());
-        rawNodes.put(Utils.id2String(osmNode.getId()), rawNode);
+        rawNodes.put(Utils.id2String(osmNode.getId()), createNode(osmNode.getId(), osmNode.getLongitude(), osmNode.getLatitude()));
+    }
+
+    private NetworkElement.Node createNode(long id, double lon, double lat){
+        return this.fixedPointCoordinates
+                ? new NetworkElement.FixedPointNode(id, lon, lat)
+                : new NetworkElement.Node(id, lon, lat);
+    }
+
+    // Get the node of a way, which is taken from the node location index (only once per node) if it is used
+    private NetworkElement.Node getWayNode(long id){
+        if (this.nodeLocationIndex == null) {
+            return rawNodes.get(Utils.id2String(id));
+        }
+        return rawNodes.computeIfAbsent(Utils.id2String(id), nodeId -> this.nodeLocationIndex.contains(id)
+                ? createNode(id, this.nodeLocationIndex.getLon(id), this.nodeLocationIndex.getLat(id))
+                : null);
+    }
+
+    /**
+     * Check if the inner node reference at the position repeats the previous one (e.g., A-B-B-C) or the last one of the
+     * way (e.g., A-B-C-C), which would otherwise become a split point with a zero-length link.
+     */
+    static boolean isRepeatedNodeRef(OsmWay osmWay, int position) {
+        long nodeId = osmWay.getNodeId(position);
+        return nodeId == osmWay.getNodeId(position - 1)
+                || (position == osmWay.getNumberOfNodes() - 2 && nodeId == osmWay.getNodeId(position + 1));
+    }
+
+    // Get the index of a node of a way in the graph store, which is added from the node location index if it is used
+    private int getStoreWayNode(long id){
+        int node = this.graphStore.getNodeIndex(id);
+        if (node == NetworkGraphStore.NO_NODE && this.nodeLocationIndex != null && this.nodeLocationIndex.contains(id)) {
+            node = this.graphStore.addNode(id, this.nodeLocationIndex.getLon(id), this.nodeLocationIndex.getLat(id));
+        }
+        return node;
+    }
+
+    // Add the OsmWay to the graph store, with the same nodes as handleWay would add to the raw link
+    private void storeWay(OsmWay osmWay){
+        int numNodes = osmWay.getNumberOfNodes();
+        if (this.wayNodeIndices.length < numNodes) {
+            this.wayNodeIndices = new int[Math.max(numNodes, this.wayNodeIndices.length * 2)];
+        }
+        int composedNodeCount = 0;
+        for (int i = 1; i < numNodes - 1; i++) {
+            if (!isRepeatedNodeRef(osmWay, i)) {
+                this.wayNodeIndices[composedNodeCount++] = getStoreWayNode(osmWay.getNodeId(i));
+            }
+        }
+        this.graphStore.addLink(osmWay.getId(), getStoreWayNode(osmWay.getNodeId(0)),
+                getStoreWayNode(osmWay.getNodeId(numNodes - 1)), this.wayNodeIndices, composedNodeCount, 0L,
+                OsmModelUtil.getTagsAsMap(osmWay));
     }
 
     // Convert the OsmWay to NetworkElement.Link
     private void handleWay(OsmWay osmWay){
+        if (this.graphStore != null && this.wayConsumer == null) {
+            storeWay(osmWay);
+            return;
+        }
 
         Map<String, String> tagValuePairs = OsmModelUtil.getTagsAsMap(osmWay);
-        // Get all the node ids of the way
         int numNodes = osmWay.getNumberOfNodes();
-        Set<Long> nodeIds = new LinkedHashSet<>();
-        for(int i = 0; i < numNodes; i++){
-            nodeIds.add(osmWay.getNodeId(i));
-        }
         // Create the link
         NetworkElement.Link rawLink = new NetworkElement.Link(osmWay.getId(),
-                rawNodes.get(Utils.id2String(osmWay.getNodeId(0))), rawNodes.get(Utils.id2String(osmWay.getNodeId(numNodes-1))));
+                getWayNode(osmWay.getNodeId(0)), getWayNode(osmWay.getNodeId(numNodes-1)));
 
-        // Add the composed nodes to the link if there are more than 2 nodes
-        if (nodeIds.size() > 2) {
-            // filter out the first and last node
-            nodeIds.remove(osmWay.getNodeId(0));
-            nodeIds.remove(osmWay.getNodeId(numNodes - 1));
-            nodeIds.forEach(nodeId -> rawLink.addComposedNode(rawNodes.get(Utils.id2String(nodeId))));
+        // Add the nodes between the first and last node as the composed nodes, in order. A node that is visited
+        // twice (e.g., in a closed way or a roundabout) is kept at each position, but a consecutively repeated node
+        // reference (a data error) is only kept once
+        for (int i = 1; i < numNodes - 1; i++) {
+            if (!isRepeatedNodeRef(osmWay, i)) {
+                rawLink.addComposedNode(getWayNode(osmWay.getNodeId(i)));
+            }
         }
 
         rawLink.setKeyValuePairs(tagValuePairs);
-        rawLinks.put(Utils.id2String(osmWay.getId()), rawLink);
+        if (this.wayConsumer == null) {
+            rawLinks.put(Utils.id2String(osmWay.getId()), rawLink);
+            return;
+        }
+        // Apply the pt relations of the pre-pass, as the handleRelation does for the stored links
+        Map<String, String> ptKeyValuePairs = this.ptWayKeyValuePairs.get(rawLink.getId());
+        if (ptKeyValuePairs != null) {
+            rawLink.addAllowedMode(TransMode.Mode.PT);
+            ptKeyValuePairs.forEach(rawLink::addKeyValuePair);
+        }
+        this.wayConsumer.accept(rawLink);
     }
 
     // Process the OsmRelation (mainly for pt) and add the pt-related information to the rawLinks
     private void handleRelation(OsmRelation osmRelation) {
-        // If the ptModeKeyValuePairs is null (which means the PT mode is not defined), return directly
-        if (this.ptModeKeyValuePairs == null) {
+        // If the ptModeKeyValuePairs is null (which means the PT mode is not defined), return directly; in the streaming
+        // mode, the relations have been collected by the pre-pass
+        if (this.ptModeKeyValuePairs == null || this.wayConsumer != null) {
             return;
         }
         // Firstly, get the tags of the relation
         Map<String, String> tagValuePairs = OsmModelUtil.getTagsAsMap(osmRelation);
-        final boolean[] match = {false};
-        // Match the tag and PtKeyValuePairs, to judge if the relation is a pt-related one
+        // If the relation is a pt-related one, add the pt-related information to the rawLinks
+        if (matchPtRelation(tagValuePairs)) {
+            // Get the member ways
+            int numberMembers = osmRelation.getNumberOfMembers();
+            for (int i = 0; i < numberMembers; i++) {
+                if (osmRelation.getMember(i).getType().equals(EntityType.Way)) {
+                    long ptLinkId = osmRelation.getMember(i).getId();
+                    if (this.graphStore != null) {
+                        addStorePtWay(ptLinkId, tagValuePairs);
+                        continue;
+                    }
+                    NetworkElement.Link ptLink = rawLinks.get(Utils.id2String(ptLinkId));
+                    if (ptLink != null) {
+                        ptLink.addAllowedMode(TransMode.Mode.PT);
+                        // add related tag-values into the ptLink
+                        for (Map.Entry<String, String> entry : tagValuePairs.entrySet()) {
+                            if (this.reservedKeyValues.contains(entry.getKey())) {
+                                ptLink.addKeyValuePair(entry.getKey(), entry.getValue());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Add the pt mode and the reserved key-value pairs of a pt relation to a way of the graph store
+    private void addStorePtWay(long wayId, Map<String, String> tagValuePairs) {
+        int ptLink = this.graphStore.getLinkIndex(wayId);
+        if (ptLink == NetworkGraphStore.NO_LINK) {
+            return;
+        }
+        this.graphStore.addAllowedModes(ptLink, Set.of(TransMode.Mode.PT));
+        Map<String, String> reservedKeyValuePairs = new HashMap<>();
+        for (Map.Entry<String, String> entry : tagValuePairs.entrySet()) {
+            if (this.reservedKeyValues.contains(entry.getKey())) {
+                reservedKeyValuePairs.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!reservedKeyValuePairs.isEmpty()) {
+            this.graphStore.addTags(ptLink, reservedKeyValuePairs);
+        }
+    }
+
+    // Match the tags of the relation and the PtKeyValuePairs, to judge if the relation is a pt-related one
+    private boolean matchPtRelation(Map<String, String> tagValuePairs) {
+        boolean match = false;
         for (Map<String, String> ptModeKeyValue : this.ptModeKeyValuePairs) {
             // inner loop to check if the tagValuePairs contains the ptModeKeyValue
             for (Map.Entry<String, String> entry : ptModeKeyValue.entrySet()) {
@@ -88,65 +262,63 @@ public final class OsmReader extends Reader implements OsmHandler {
                 String value = entry.getValue().trim();
                 // if both key and value are "*"
                 if (key.equals("*") && value.equals("*")) {
-                    match[0] = true;
+                    match = true;
                     break;
                 } else if (key.equals("*")) {
                     if (tagValuePairs.containsValue(value)) {
-                        match[0] = true;
+                        match = true;
                     } else {
-                        match[0] = false;
+                        match = false;
                         break;
                     }
                 } else if (value.equals("*")) {
                     if (tagValuePairs.containsKey(key)) {
-                        match[0] = true;
+                        match = true;
                     } else {
-                        match[0] = false;
+                        match = false;
                         break;
                     }
                 } else {
                     if (tagValuePairs.containsKey(key) && tagValuePairs.get(key).equals(value)) {
-                        match[0] = true;
+                        match = true;
                     } else {
-                        match[0] = false;
+                        match = false;
                         break;
                     }
                 }
             }
             // if the link keyValuePairs match successfully with the mapping (any one of the keyValueMapping), break the loop
-            if (match[0]) {
+            if (match) {
                 break;
             }
         }
-        // If the relation is a pt-related one, add the pt-related information to the rawLinks
-        if (match[0]) {
-            // Get the member ways
-            int numberMembers = osmRelation.getNumberOfMembers();
-            for (int i = 0; i < numberMembers; i++) {
-                if (osmRelation.getMember(i).getType().equals(EntityType.Way)) {
-                    long ptLinkId = osmRelation.getMember(i).getId();
-                    NetworkElement.Link ptLink = rawLinks.get(Utils.id2String(ptLinkId));
-                    if (ptLink != null) {
-                        ptLink.addAllowedMode(TransMode.Mode.PT);
-                        // add related tag-values into the ptLink
-                        for (Map.Entry<String, String> entry : tagValuePairs.entrySet()) {
-                            if (this.reservedKeyValues.contains(entry.getKey())) {
-                                ptLink.addKeyValuePair(entry.getKey(), entry.getValue());
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        return match;
     }
 
     @Override
     public void read(String file) {
+        readNodesAndWays(file);
+    }
+
+    private void readNodesAndWays(String file) {
+        if (this.nodeLocationIndexFile == null) {
+            read(file, this);
+            return;
+        }
+        try (NodeLocationIndex index = new NodeLocationIndex(Path.of(this.nodeLocationIndexFile), Path.of(file))) {
+            this.nodeLocationIndex = index;
+            read(file, this);
+            index.markComplete();
+        } finally {
+            this.nodeLocationIndex = null;
+        }
+    }
 
+    private void read(String file, OsmHandler handler) {
         // Read the PBF file
         try (InputStream inputStream = new FileInputStream(file)) {
             PbfReader reader = new PbfReader(inputStream, false);
-            reader.setHandler(this);
+            reader.setHandler(handler);
             reader.read();
 
         } catch (Exception e) {
@@ -155,6 +327,83 @@ public final class OsmReader extends Reader implements OsmHandler {
         }
     }
 
+    /**
+     * The pre-pass of the streaming mode, which must be called before {@link #stream}: it only keeps the node
+     * references of the ways and the pt-related relations, but not the nodes and ways themselves.
+     *
+     * @return the reference count of the composed nodes of all the ways (node id -> count)
+     */
+    public Map<String, Integer> prepareStreaming(String file) {
+        Map<String, Integer> nodeRefCount = new HashMap<>();
+        this.ptWayKeyValuePairs.clear();
+        read(file, new OsmHandler() {
+            @Override
+            public void handle(OsmBounds osmBounds) {
+            }
+
+            @Override
+            public void handle(OsmNode osmNode) {
+            }
+
+            @Override
+            public void handle(OsmWay osmWay) {
+                for (int i = 1; i < osmWay.getNumberOfNodes() - 1; i++) {
+                    if (isRepeatedNodeRef(osmWay, i)) {
+                        continue;
+                    }
+                    nodeRefCount.merge(Utils.id2String(osmWay.getNodeId(i)), 1, Integer::sum);
+                }
+            }
+
+            @Override
+            public void handle(OsmRelation osmRelation) {
+                collectPtRelation(osmRelation);
+            }
+
+            @Override
+            public void complete() {
+            }
+        });
+        return nodeRefCount;
+    }
+
+    /**
+     * Read the OSM file in the streaming mode: each way is passed to the wayConsumer once it is read (with the pt-related
+     * information of the relations from the pre-pass), and the ways are not stored in the rawLinks. The nodes are still
+     * stored in the rawNodes, since all the nodes come before the ways in a PBF file.
+     */
+    public void stream(String file, Consumer<NetworkElement.Link> wayConsumer) {
+        this.wayConsumer = wayConsumer;
+        try {
+            readNodesAndWays(file);
+        } finally {
+            this.wayConsumer = null;
+            this.ptWayKeyValuePairs.clear();
+        }
+    }
+
+    // Collect the reserved key-value pairs of a pt-related relation for its member ways (pre-pass of the streaming mode)
+    private void collectPtRelation(OsmRelation osmRelation) {
+        if (this.ptModeKeyValuePairs == null) {
+            return;
+        }
+        Map<String, String> tagValuePairs = OsmModelUtil.getTagsAsMap(osmRelation);
+        if (!matchPtRelation(tagValuePairs)) {
+            return;
+        }
+        for (int i = 0; i < osmRelation.getNumberOfMembers(); i++) {
+            if (osmRelation.getMember(i).getType().equals(EntityType.Way)) {
+                Map<String, String> ptKeyValuePairs = this.ptWayKeyValuePairs.computeIfAbsent(
+                        Utils.id2String(osmRelation.getMember(i).getId()), id -> new HashMap<>());
+                for (Map.Entry<String, String> entry : tagValuePairs.entrySet()) {
+                    if (this.reservedKeyValues.contains(entry.getKey())) {
+                        ptKeyValuePairs.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+    }
+
     // Override the methods from OsmHandler
     @Override
     public void handle(OsmBounds osmBounds) {
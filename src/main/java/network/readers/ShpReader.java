@@ -11,13 +11,17 @@ public final class ShpReader extends Reader{
 
     private final GeoFileReader geoFileReader = new GeoFileReader();
     private final String CRS;
+    // If true, each feature is converted into a single raw link with the composed nodes, instead of a link per segment
+    private final boolean mergeSegments;
 
     public ShpReader(String CRS){
         this.CRS = CRS;
+        this.mergeSegments = false;
     }
 
     public ShpReader(NetworkConverterConfigGroup config){
         this.CRS = config.INPUT_CRS;
+        this.mergeSegments = config.MERGE_FEATURE_SEGMENTS;
     }
 
 
@@ -28,7 +32,7 @@ public final class ShpReader extends Reader{
         // Process the features (links) in the shapefile
         for (SimpleFeature feature : features) {
             // Convert the SimpleFeature to NetworkElement.Link
-            SimpleFeatureConverter.convert(feature, this.rawNodes, this.rawLinks, this.CRS);
+            SimpleFeatureConverter.convert(feature, this.rawNodes, this.rawLinks, this.CRS, this.mergeSegments);
         }
     }
 
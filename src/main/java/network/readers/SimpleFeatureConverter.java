@@ -10,14 +10,24 @@ import org.matsim.api.core.v01.Coord;
 import org.matsim.core.utils.geometry.CoordUtils;
 import org.opengis.feature.simple.SimpleFeature;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 class SimpleFeatureConverter {
 
     static void convert(SimpleFeature feature, Map<String, NetworkElement.Node> rawNodes, Map<String, NetworkElement.Link> rawLinks, String CRS) {
-        // Get the key-value pairs of the feature
-        Map<String, String> keyValuePairs = getKeyValuePairs(feature);
+        convert(feature, rawNodes, rawLinks, CRS, false);
+    }
+
+    /*
+    If mergeSegments is true, each (part of a) feature is converted into a single raw link with the composed nodes (as
+    the OsmReader does), instead of a raw link for each segment, so that the link is only split at the intersections
+     */
+    static void convert(SimpleFeature feature, Map<String, NetworkElement.Node> rawNodes, Map<String, NetworkElement.Link> rawLinks,
+                        String CRS, boolean mergeSegments) {
+        // Get the key-value pairs of the feature, which are only converted when they are asked for
+        Map<String, String> keyValuePairs = new FeatureAttributes(feature);
         // Get the geometry of the feature
         Geometry geometry = (Geometry) feature.getDefaultGeometry();
         // Remove the filename prefix from the feature ID
@@ -25,23 +35,12 @@ class SimpleFeatureConverter {
         // Here, we only consider the LineString and MultiLineString; the other types of geometry are not considered
         // TODO: Add the support for other types of geometry (e.g., Points)
         if (geometry instanceof MultiLineString || geometry instanceof LineString) {
-            handleLinks(geometry, featureId, keyValuePairs, rawNodes, rawLinks, CRS);
-        }
-    }
-
-    // Get the key-value pairs of the feature
-    static Map<String, String> getKeyValuePairs(SimpleFeature feature){
-        Map<String, String> KeyValuePairs = new HashMap<>();
-        for(int i = 0; i < feature.getAttributeCount(); i++){
-            String attributeName = feature.getFeatureType().getDescriptor(i).getLocalName();
-            Object attributeValue = feature.getAttribute(i);
-            if(attributeName.equals("the_geom")){
-                continue;
-            }else{
-                KeyValuePairs.put(attributeName, attributeValue.toString());
+            if (mergeSegments) {
+                handleMergedLinks(geometry, featureId, keyValuePairs, rawNodes, rawLinks, CRS);
+            } else {
+                handleLinks(geometry, featureId, keyValuePairs, rawNodes, rawLinks, CRS);
             }
         }
-        return KeyValuePairs;
     }
 
     static NetworkElement.Node getOrCreateNode(Coord coord, String method, Map<String, NetworkElement.Node> rawNodes){
@@ -74,36 +73,63 @@ class SimpleFeatureConverter {
         return rawNode;
     }
 
+    // Judge if the node is already in the rawNodes, based on the coordinate and the distance of this node to the existing nodes
+    static NetworkElement.Node getOrCreateNode(Coordinate coordinate, Map<String, NetworkElement.Node> rawNodes, String CRS){
+        if (Double.isNaN(coordinate.getZ())){
+            Coord coord = CoordUtils.createCoord(coordinate.getX(), coordinate.getY());
+            if (CRS.equals("EPSG:4326")){
+                return getOrCreateNode(coord, "haversine", rawNodes);
+            } else {
+                return getOrCreateNode(coord, "euclidean", rawNodes);
+            }
+        } else {
+            Coord coord = CoordUtils.createCoord(coordinate.getX(), coordinate.getY(), coordinate.getZ());
+            if (CRS.equals("EPSG:4326")){
+                return getOrCreateNode(coord, "elevation", rawNodes);
+            } else {
+                return getOrCreateNode(coord, "euclidean", rawNodes);
+            }
+        }
+    }
+
+    // Convert each part of the geometry into a single raw link, where the nodes between the first and last node are the composed nodes
+    static void handleMergedLinks(Geometry geometry, String featureId, Map<String, String> keyValuePairs,
+                                  Map<String, NetworkElement.Node> rawNodes, Map<String, NetworkElement.Link> rawLinks, String CRS){
+        int numParts = geometry.getNumGeometries();
+        for (int part = 0; part < numParts; part++) {
+            Coordinate[] coordinates = geometry.getGeometryN(part).getCoordinates();
+            // Skip the repeated (consecutive) nodes, e.g., the vertices closer than the threshold of getOrCreateNode
+            List<NetworkElement.Node> nodes = new ArrayList<>(coordinates.length);
+            for (Coordinate coordinate : coordinates) {
+                NetworkElement.Node rawNode = getOrCreateNode(coordinate, rawNodes, CRS);
+                if (nodes.isEmpty() || !nodes.get(nodes.size() - 1).equals(rawNode)) {
+                    nodes.add(rawNode);
+                }
+            }
+            if (nodes.size() < 2) {
+                continue;
+            }
+            // Keep the feature ID as the link ID, unless the feature has multiple parts
+            String linkId = numParts == 1 ? featureId : featureId + "_" + part;
+            NetworkElement.Link rawLink = new NetworkElement.Link(linkId, nodes.get(0), nodes.get(nodes.size() - 1));
+            rawLink.addComposedNodes(nodes.subList(1, nodes.size() - 1));
+            rawLink.shareKeyValuePairs(keyValuePairs);
+            rawLinks.put(rawLink.getId(), rawLink);
+        }
+    }
+
     static void handleLinks(Geometry geometry, String featureId, Map<String, String> keyValuePairs,
                             Map<String, NetworkElement.Node> rawNodes, Map<String, NetworkElement.Link> rawLinks, String CRS){
 
         Coordinate[] coordinates = geometry.getCoordinates();
         NetworkElement.Node previousNode = null;
         for (int i = 0; i < coordinates.length; i++) {
-            Coordinate coordinate = coordinates[i];
-            // Judge if the node is already in the rawNodes, based on the coordinate and the distance of this node to the existing nodes
-            NetworkElement.Node rawNode;
-            if (Double.isNaN(coordinate.getZ())){
-                Coord coord = CoordUtils.createCoord(coordinate.getX(), coordinate.getY());
-                if (CRS.equals("EPSG:4326")){
-                    rawNode = getOrCreateNode(coord, "haversine", rawNodes);
-                } else {
-                    rawNode = getOrCreateNode(coord, "euclidean", rawNodes);
-                }
-
-            } else {
-                Coord coord = CoordUtils.createCoord(coordinate.getX(), coordinate.getY(), coordinate.getZ());
-                if (CRS.equals("EPSG:4326")){
-                    rawNode = getOrCreateNode(coord, "elevation", rawNodes);
-                } else {
-                    rawNode = getOrCreateNode(coord, "euclidean", rawNodes);
-                }
-            }
+            NetworkElement.Node rawNode = getOrCreateNode(coordinates[i], rawNodes, CRS);
             // Create the link segment between the previous node and the current node
             // Here, we do not need to add the composed nodes to the link segment, as we have already split the link into multiple segments
             if (i != 0) {
                 NetworkElement.Link rawLink = new NetworkElement.Link(featureId + "_" + i, previousNode, rawNode);
-                rawLink.setKeyValuePairs(keyValuePairs);
+                rawLink.shareKeyValuePairs(keyValuePairs);
                 rawLinks.put(rawLink.getId(), rawLink);
             }
             previousNode = rawNode;
@@ -2,6 +2,7 @@ package network.run;
 
 import network.config.NetworkConverterConfigGroup;
 import network.core.NetworkConverter;
+import network.io.ParallelGzip;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.network.io.NetworkWriter;
 
@@ -17,7 +18,8 @@ class RunNetworkConversion {
         NetworkConverter networkConverter = new NetworkConverter(config);
         networkConverter.convert();
         Network network = networkConverter.getNetwork();
-        new NetworkWriter(network).write(config.OUTPUT_NETWORK_FILE);
+        ParallelGzip.writeNetwork(config.OUTPUT_NETWORK_FILE, new NetworkWriter(network),
+                config.OUTPUT_COMPRESSION_THREADS > 0 ? config.OUTPUT_COMPRESSION_THREADS : config.OUTPUT_THREADS);
 
     }
 }
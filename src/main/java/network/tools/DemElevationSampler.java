@@ -0,0 +1,183 @@
+package network.tools;
+
+import network.core.NetworkElement;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.geotools.coverage.GridSampleDimension;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.gce.geotiff.GeoTiffReader;
+import org.geotools.referencing.CRS;
+import org.opengis.metadata.spatial.PixelOrientation;
+import org.opengis.referencing.operation.MathTransform;
+
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.util.*;
+
+/**
+ * Sample the elevation of the nodes from a (local) GeoTIFF DEM with the bilinear interpolation.
+ * <p>
+ * The raster is read block by block: the decoded tiles of the image are kept in an LRU cache, and the nodes are
+ * processed in the order of their tiles, so that each tile is decoded (about) once instead of a random raster read
+ * for each node.
+ */
+public final class DemElevationSampler implements AutoCloseable {
+    private static final Logger LOG = LogManager.getLogger(DemElevationSampler.class);
+    // Marks a node outside the raster
+    private static final int NO_TILE = Integer.MAX_VALUE;
+
+    private final String demFile;
+    private final GeoTiffReader reader;
+    private final GridCoverage2D coverage;
+    private final RenderedImage image;
+    private final MathTransform nodeToDem;
+    private final MathTransform gridTransform;
+    private final double[] noDataValues;
+    private final Map<Long, Raster> tileCache;
+    private long decodedTiles = 0;
+
+    /**
+     * @param demFile the GeoTIFF file of the DEM
+     * @param nodeCrs the CRS of the node coordinates, e.g., "EPSG:4326"
+     * @param tileCacheSize the maximum number of decoded tiles in the cache
+     */
+    public DemElevationSampler(String demFile, String nodeCrs, int tileCacheSize) {
+        this.demFile = demFile;
+        try {
+            this.reader = new GeoTiffReader(new File(demFile));
+            this.coverage = this.reader.read(null);
+            this.image = this.coverage.getRenderedImage();
+            // Longitude first for the geographic CRS, as the node coordinates
+            this.nodeToDem = CRS.findMathTransform(CRS.decode(nodeCrs, true), this.coverage.getCoordinateReferenceSystem2D(), true);
+            // The continuous pixel coordinates, where the pixel (i, j) covers [i, i + 1) x [j, j + 1)
+            this.gridTransform = this.coverage.getGridGeometry().getCRSToGrid2D(PixelOrientation.UPPER_LEFT);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read the DEM file: " + demFile, e);
+        }
+        GridSampleDimension band = this.coverage.getSampleDimension(0);
+        this.noDataValues = band.getNoDataValues() != null ? band.getNoDataValues() : new double[0];
+        this.tileCache = new LinkedHashMap<>(Math.max(16, tileCacheSize * 2), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Raster> eldest) {
+                return size() > Math.max(1, tileCacheSize);
+            }
+        };
+    }
+
+    /**
+     * Set the elevation of the nodes from the DEM. The nodes outside the raster or on no-data cells are kept unchanged.
+     *
+     * @return the number of nodes whose elevation has been set
+     */
+    public int setElevation(Collection<NetworkElement.Node> nodes) {
+        long startTime = System.currentTimeMillis();
+        NetworkElement.Node[] nodeArray = nodes.toArray(new NetworkElement.Node[0]);
+        int n = nodeArray.length;
+        // Transform the node coordinates into the pixel coordinates
+        double[] pixels = new double[n * 2];
+        for (int i = 0; i < n; i++) {
+            pixels[i * 2] = nodeArray[i].getX();
+            pixels[i * 2 + 1] = nodeArray[i].getY();
+        }
+        try {
+            this.nodeToDem.transform(pixels, 0, pixels, 0, n);
+            this.gridTransform.transform(pixels, 0, pixels, 0, n);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to transform the nodes into the DEM: " + this.demFile, e);
+        }
+
+        // Sort the nodes by their tiles (row by row), with the node index in the lower 32 bits
+        int numTilesX = this.image.getNumXTiles();
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = ((long) getTileKey(pixels[i * 2], pixels[i * 2 + 1], numTilesX) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int count = 0;
+        for (long entry : order) {
+            if ((int) (entry >>> 32) == NO_TILE) {
+                // The rest of the nodes are outside the raster
+                break;
+            }
+            int i = (int) entry;
+            double elevation = sample(pixels[i * 2], pixels[i * 2 + 1]);
+            if (!Double.isNaN(elevation)) {
+                nodeArray[i].setElevation(elevation);
+                count++;
+            }
+        }
+        LOG.info("The elevation of {} out of {} nodes has been set in {} ms ({} tiles decoded).", count, n,
+                System.currentTimeMillis() - startTime, this.decodedTiles);
+        return count;
+    }
+
+    // Get the elevation at the continuous pixel coordinates with the bilinear interpolation, or NaN if there is no data
+    double sample(double px, double py) {
+        // The pixel values are at the centers of the pixels
+        double x = px - 0.5;
+        double y = py - 0.5;
+        int x0 = (int) Math.floor(x);
+        int y0 = (int) Math.floor(y);
+        double dx = x - x0;
+        double dy = y - y0;
+        // Clamp at the borders of the raster
+        int minX = this.image.getMinX();
+        int minY = this.image.getMinY();
+        int maxX = minX + this.image.getWidth() - 1;
+        int maxY = minY + this.image.getHeight() - 1;
+        int x1 = Math.min(Math.max(x0 + 1, minX), maxX);
+        int y1 = Math.min(Math.max(y0 + 1, minY), maxY);
+        x0 = Math.min(Math.max(x0, minX), maxX);
+        y0 = Math.min(Math.max(y0, minY), maxY);
+
+        double v00 = getValue(x0, y0);
+        double v10 = getValue(x1, y0);
+        double v01 = getValue(x0, y1);
+        double v11 = getValue(x1, y1);
+        if (Double.isNaN(v00) || Double.isNaN(v10) || Double.isNaN(v01) || Double.isNaN(v11)) {
+            // Use the nearest pixel next to a no-data cell
+            return getValue(dx < 0.5 ? x0 : x1, dy < 0.5 ? y0 : y1);
+        }
+        return (v00 * (1 - dx) + v10 * dx) * (1 - dy) + (v01 * (1 - dx) + v11 * dx) * dy;
+    }
+
+    // Get the value of the pixel, or NaN if it is a no-data cell
+    private double getValue(int x, int y) {
+        int tileX = Math.floorDiv(x - this.image.getTileGridXOffset(), this.image.getTileWidth());
+        int tileY = Math.floorDiv(y - this.image.getTileGridYOffset(), this.image.getTileHeight());
+        long key = ((long) tileX << 32) | (tileY & 0xFFFFFFFFL);
+        Raster tile = this.tileCache.get(key);
+        if (tile == null) {
+            tile = this.image.getTile(tileX, tileY);
+            this.tileCache.put(key, tile);
+            this.decodedTiles++;
+        }
+        double value = tile.getSampleDouble(x, y, 0);
+        for (double noDataValue : this.noDataValues) {
+            if (value == noDataValue) {
+                return Double.NaN;
+            }
+        }
+        return value;
+    }
+
+    // Get the (row-major) key of the tile of the pixel, or NO_TILE if the pixel is outside the raster
+    private int getTileKey(double px, double py, int numTilesX) {
+        if (Double.isNaN(px) || Double.isNaN(py) || px < this.image.getMinX() || py < this.image.getMinY()
+                || px >= this.image.getMinX() + this.image.getWidth() || py >= this.image.getMinY() + this.image.getHeight()) {
+            return NO_TILE;
+        }
+        int tileX = Math.floorDiv((int) px - this.image.getTileGridXOffset(), this.image.getTileWidth()) - this.image.getMinTileX();
+        int tileY = Math.floorDiv((int) py - this.image.getTileGridYOffset(), this.image.getTileHeight()) - this.image.getMinTileY();
+        return tileY * numTilesX + tileX;
+    }
+
+    @Override
+    public void close() {
+        this.tileCache.clear();
+        this.coverage.dispose(true);
+        this.reader.dispose();
+    }
+}
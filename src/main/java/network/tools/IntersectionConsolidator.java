@@ -0,0 +1,314 @@
+package network.tools;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.geotools.referencing.CRS;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.ProjectedCRS;
+
+import java.util.*;
+
+/**
+ * Consolidate the complex intersections (e.g., the junctions of dual carriageways in OSM), i.e., the clusters of
+ * nodes a few metres apart joined by tiny links, into one node per intersection:
+ * 1. The junction nodes (i.e., the nodes without exactly two neighbours, as the nodes within a chain of links are
+ * merged by the {@link LinkChainMerger}) within the radius of each other are clustered with a grid index;
+ * 2. Within a cluster, two nodes are only consolidated if they are joined in both directions by links allowing all the
+ * modes of the two nodes, so that the grade-separated crossings (which are not joined by a link) are kept apart. Each
+ * group is thus strongly connected for all the modes of its nodes, so collapsing it adds no connection (e.g., no
+ * U-turn across a junction of one-way carriageways). All the nodes of a group must be within the radius of each other,
+ * so that a run of short links is not chained into one large group;
+ * 3. Each group of consolidated nodes is collapsed into one node at their centroid: the links within the group are
+ * removed, and the other links are reconnected to the remaining node, so that the connectivity of each mode is kept.
+ * The length of each reconnected link is changed by as much as the distance to its moved end node.
+ * <p>
+ * The radius and the distances are in the units of the coordinates, so the network must be in a projected CRS (in
+ * metres); a geographic CRS (e.g., EPSG:4326) is rejected.
+ *
+ * @author Xander
+ */
+public final class IntersectionConsolidator {
+    private static final Logger LOG = LogManager.getLogger(IntersectionConsolidator.class);
+    private static final String CRS_ATTRIBUTE = "coordinateReferenceSystem";
+
+    private final Network network;
+    private final double radius;
+
+    private int consolidatedIntersections = 0;
+    private int removedLinks = 0;
+    private int removedNodes = 0;
+
+    // The CRS is taken from the attribute of the network (if any)
+    public IntersectionConsolidator(Network network, double radius) {
+        this(network, radius, (String) network.getAttributes().getAttribute(CRS_ATTRIBUTE));
+    }
+
+    public IntersectionConsolidator(Network network, double radius, String crs) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("The radius should be positive, but got " + radius);
+        }
+        checkProjectedCrs(crs);
+        this.network = network;
+        this.radius = radius;
+    }
+
+    // The distances are computed on the coordinates, which must be in a projected CRS
+    private static void checkProjectedCrs(String crs) {
+        if (crs == null || crs.isEmpty()) {
+            LOG.warn("The CRS of the network is unknown, its coordinates are assumed to be in metres of a projected CRS.");
+            return;
+        }
+        CoordinateReferenceSystem decoded;
+        try {
+            decoded = CRS.decode(crs, true);
+        } catch (FactoryException e) {
+            throw new IllegalArgumentException("Failed to decode the CRS of the network: " + crs, e);
+        }
+        if (!(decoded instanceof ProjectedCRS)) {
+            throw new IllegalArgumentException("The intersections can only be consolidated in a projected CRS (in metres), but got " + crs);
+        }
+    }
+
+    public void run() {
+        long startTime = System.currentTimeMillis();
+        // Index the junction nodes
+        List<Node> nodes = new ArrayList<>();
+        for (Node node : this.network.getNodes().values()) {
+            if (getNeighbours(node).size() != 2) {
+                nodes.add(node);
+            }
+        }
+        Map<Id<Node>, Integer> nodeIndices = new HashMap<>((int) (nodes.size() / 0.75) + 1);
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeIndices.put(nodes.get(i).getId(), i);
+        }
+
+        // Cluster the nodes within the radius with a grid index, where the cell size is the radius
+        int[] clusters = createUnionFind(nodes.size());
+        Map<Long, List<Integer>> grid = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            Coord coord = nodes.get(i).getCoord();
+            long cellX = (long) Math.floor(coord.getX() / this.radius);
+            long cellY = (long) Math.floor(coord.getY() / this.radius);
+            for (long dx = -1; dx <= 1; dx++) {
+                for (long dy = -1; dy <= 1; dy++) {
+                    List<Integer> cell = grid.get(getCellKey(cellX + dx, cellY + dy));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (int j : cell) {
+                        Coord other = nodes.get(j).getCoord();
+                        if (Math.hypot(coord.getX() - other.getX(), coord.getY() - other.getY()) <= this.radius) {
+                            union(clusters, i, j);
+                        }
+                    }
+                }
+            }
+            grid.computeIfAbsent(getCellKey(cellX, cellY), k -> new ArrayList<>()).add(i);
+        }
+
+        // Within a cluster, group the nodes joined in both directions by links allowing all the modes of the two nodes, as
+        // long as all the nodes of the merged group are within the radius of each other (the members are kept at the root
+        // of each group)
+        int[] groups = createUnionFind(nodes.size());
+        List<List<Integer>> groupMembers = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            groupMembers.add(new ArrayList<>(List.of(i)));
+        }
+        for (Link link : this.network.getLinks().values()) {
+            Integer from = nodeIndices.get(link.getFromNode().getId());
+            Integer to = nodeIndices.get(link.getToNode().getId());
+            if (from == null || to == null || from.equals(to) || find(clusters, from) != find(clusters, to)) {
+                continue;
+            }
+            int fromRoot = find(groups, from);
+            int toRoot = find(groups, to);
+            if (fromRoot == toRoot || !isJoinedBothWays(link)
+                    || !isWithinRadius(nodes, groupMembers.get(fromRoot), groupMembers.get(toRoot))) {
+                continue;
+            }
+            union(groups, fromRoot, toRoot);
+            int root = find(groups, fromRoot);
+            int other = root == fromRoot ? toRoot : fromRoot;
+            groupMembers.get(root).addAll(groupMembers.get(other));
+            groupMembers.set(other, null);
+        }
+
+        // Collapse each group into the first of its nodes
+        Map<Integer, List<Node>> members = new LinkedHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            members.computeIfAbsent(find(groups, i), k -> new ArrayList<>()).add(nodes.get(i));
+        }
+        for (List<Node> group : members.values()) {
+            if (group.size() > 1) {
+                collapse(group);
+            }
+        }
+        LOG.info("Consolidated {} intersections within {} m in {} ms: {} links and {} nodes are removed.",
+                this.consolidatedIntersections, this.radius, System.currentTimeMillis() - startTime, this.removedLinks, this.removedNodes);
+    }
+
+    // Check if the link and a reverse link both allow all the modes of the two nodes
+    private static boolean isJoinedBothWays(Link link) {
+        Set<String> modes = getModes(link.getFromNode());
+        modes.addAll(getModes(link.getToNode()));
+        if (!link.getAllowedModes().containsAll(modes)) {
+            return false;
+        }
+        for (Link reverseLink : link.getToNode().getOutLinks().values()) {
+            if (reverseLink.getToNode() == link.getFromNode() && reverseLink.getAllowedModes().containsAll(modes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Check if all the nodes of the two groups are within the radius of each other
+    private boolean isWithinRadius(List<Node> nodes, List<Integer> group1, List<Integer> group2) {
+        for (int i : group1) {
+            Coord coord = nodes.get(i).getCoord();
+            for (int j : group2) {
+                Coord other = nodes.get(j).getCoord();
+                if (Math.hypot(coord.getX() - other.getX(), coord.getY() - other.getY()) > this.radius) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void collapse(List<Node> group) {
+        Set<Id<Node>> groupNodeIds = new HashSet<>();
+        double sumX = 0;
+        double sumY = 0;
+        for (Node node : group) {
+            groupNodeIds.add(node.getId());
+            sumX += node.getCoord().getX();
+            sumY += node.getCoord().getY();
+        }
+        Node remainingNode = group.get(0);
+        Coord coord = remainingNode.getCoord();
+        Coord centroid = coord.hasZ() ? new Coord(sumX / group.size(), sumY / group.size(), coord.getZ())
+                : new Coord(sumX / group.size(), sumY / group.size());
+
+        for (Node node : group) {
+            // The coordinate of the node before it is moved to the centroid
+            Coord nodeCoord = node.getCoord();
+            List<Link> links = new ArrayList<>(node.getInLinks().values());
+            links.addAll(node.getOutLinks().values());
+            for (Link link : links) {
+                if (this.network.getLinks().get(link.getId()) != link) {
+                    // Already removed from the other node
+                    continue;
+                }
+                boolean fromInGroup = groupNodeIds.contains(link.getFromNode().getId());
+                boolean toInGroup = groupNodeIds.contains(link.getToNode().getId());
+                if (fromInGroup && toInGroup) {
+                    // A link within the intersection
+                    this.network.removeLink(link.getId());
+                    this.removedLinks++;
+                    continue;
+                }
+                // The end of the link in the group is moved to the centroid
+                Coord otherCoord = fromInGroup ? link.getToNode().getCoord() : link.getFromNode().getCoord();
+                link.setLength(getMovedLength(link.getLength(), nodeCoord, centroid, otherCoord));
+                if (node != remainingNode) {
+                    // Reconnect the link to the remaining node
+                    this.network.removeLink(link.getId());
+                    if (fromInGroup) {
+                        link.setFromNode(remainingNode);
+                    } else {
+                        link.setToNode(remainingNode);
+                    }
+                    this.network.addLink(link);
+                }
+            }
+        }
+        remainingNode.setCoord(centroid);
+        for (Node node : group) {
+            if (node != remainingNode) {
+                this.network.removeNode(node.getId());
+                this.removedNodes++;
+            }
+        }
+        this.consolidatedIntersections++;
+    }
+
+    /**
+     * Get the length of a link after one of its end nodes is moved, which changes by as much as the straight distance
+     * to the other end node, so that the detour of a curved link is kept; it is never shorter than the straight distance.
+     */
+    static double getMovedLength(double length, Coord oldCoord, Coord newCoord, Coord otherCoord) {
+        double oldDistance = Math.hypot(oldCoord.getX() - otherCoord.getX(), oldCoord.getY() - otherCoord.getY());
+        double newDistance = Math.hypot(newCoord.getX() - otherCoord.getX(), newCoord.getY() - otherCoord.getY());
+        return Math.max(length + newDistance - oldDistance, newDistance);
+    }
+
+    private static Set<Id<Node>> getNeighbours(Node node) {
+        Set<Id<Node>> neighbours = new HashSet<>();
+        node.getInLinks().values().forEach(link -> neighbours.add(link.getFromNode().getId()));
+        node.getOutLinks().values().forEach(link -> neighbours.add(link.getToNode().getId()));
+        neighbours.remove(node.getId());
+        return neighbours;
+    }
+
+    private static Set<String> getModes(Node node) {
+        Set<String> modes = new HashSet<>();
+        node.getInLinks().values().forEach(link -> modes.addAll(link.getAllowedModes()));
+        node.getOutLinks().values().forEach(link -> modes.addAll(link.getAllowedModes()));
+        return modes;
+    }
+
+    private static long getCellKey(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xFFFFFFFFL);
+    }
+
+    private static int[] createUnionFind(int size) {
+        int[] parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            parents[i] = i;
+        }
+        return parents;
+    }
+
+    private static int find(int[] parents, int i) {
+        int root = i;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        // Path compression
+        while (parents[i] != root) {
+            int next = parents[i];
+            parents[i] = root;
+            i = next;
+        }
+        return root;
+    }
+
+    private static void union(int[] parents, int i, int j) {
+        int rootI = find(parents, i);
+        int rootJ = find(parents, j);
+        if (rootI != rootJ) {
+            parents[Math.max(rootI, rootJ)] = Math.min(rootI, rootJ);
+        }
+    }
+
+    public int getConsolidatedIntersections() {
+        return this.consolidatedIntersections;
+    }
+
+    public int getRemovedLinks() {
+        return this.removedLinks;
+    }
+
+    public int getRemovedNodes() {
+        return this.removedNodes;
+    }
+
+}
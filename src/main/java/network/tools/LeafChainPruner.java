@@ -0,0 +1,149 @@
+package network.tools;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+import java.util.*;
+
+/**
+ * Prune the dead ends (e.g., driveways, service stubs and footpath leaves) of a network for routing, per mode:
+ * 1. A leaf chain of a mode starts at a node with only one neighbour (considering the links allowing the mode), and
+ * follows the nodes with two neighbours until a junction;
+ * 2. If the leaf chain is shorter than the pruning length of the mode, the mode is removed from its links;
+ * 3. The pruning is repeated from the junction if it becomes a leaf itself, until no leaf chain can be pruned.
+ * A leaf chain with a protected link (e.g., with a depot, receiver or shipment location) is kept. The links without any
+ * allowed mode (and the isolated nodes) are removed at the end.
+ *
+ * @author Xander
+ */
+public final class LeafChainPruner {
+    private static final Logger LOG = LogManager.getLogger(LeafChainPruner.class);
+
+    private final Network network;
+    private final Map<String, Double> pruningLengths;
+    private final Set<Id<Link>> protectedLinkIds;
+
+    private int adaptedLinks = 0;
+    private int removedLinks = 0;
+    private int removedNodes = 0;
+
+    /**
+     * @param pruningLengths the max length of the leaf chains to be pruned, per mode; the other modes are not pruned
+     * @param protectedLinkIds the links which should not be pruned
+     */
+    public LeafChainPruner(Network network, Map<String, Double> pruningLengths, Set<Id<Link>> protectedLinkIds) {
+        this.network = network;
+        this.pruningLengths = pruningLengths;
+        this.protectedLinkIds = protectedLinkIds;
+    }
+
+    public void run() {
+        long startTime = System.currentTimeMillis();
+        Map<Link, Set<String>> prunedModes = new HashMap<>();
+        this.pruningLengths.forEach((mode, pruningLength) -> {
+            Set<Link> prunedLinks = prune(mode, pruningLength);
+            prunedLinks.forEach(link -> prunedModes.computeIfAbsent(link, k -> new HashSet<>()).add(mode));
+            LOG.info("Pruned {} links of the leaf chains shorter than {} m for mode: {}", prunedLinks.size(), pruningLength, mode);
+        });
+
+        // Apply all the removals in one mutation pass
+        prunedModes.forEach((link, modes) -> {
+            Set<String> allowedModes = new HashSet<>(link.getAllowedModes());
+            allowedModes.removeAll(modes);
+            if (allowedModes.isEmpty()) {
+                this.network.removeLink(link.getId());
+                this.removedLinks++;
+            } else {
+                link.setAllowedModes(allowedModes);
+                this.adaptedLinks++;
+            }
+        });
+        List<Id<Node>> isolatedNodes = new ArrayList<>();
+        this.network.getNodes().values().forEach(node -> {
+            if (node.getInLinks().isEmpty() && node.getOutLinks().isEmpty()) {
+                isolatedNodes.add(node.getId());
+            }
+        });
+        isolatedNodes.forEach(this.network::removeNode);
+        this.removedNodes += isolatedNodes.size();
+        LOG.info("Pruned the leaf chains in {} ms: {} links are adapted, {} links and {} nodes are removed.",
+                System.currentTimeMillis() - startTime, this.adaptedLinks, this.removedLinks, this.removedNodes);
+    }
+
+    // Get the links of the leaf chains of the mode to be pruned
+    private Set<Link> prune(String mode, double pruningLength) {
+        Set<Link> prunedLinks = new HashSet<>();
+        Deque<Node> leaves = new ArrayDeque<>(this.network.getNodes().values());
+        while (!leaves.isEmpty()) {
+            Node leaf = leaves.poll();
+            Map<Node, List<Link>> neighbours = getNeighbours(leaf, mode, prunedLinks);
+            if (neighbours.size() != 1) {
+                continue;
+            }
+            // Follow the chain until a junction
+            List<Link> chainLinks = new ArrayList<>();
+            Set<Node> visited = new HashSet<>();
+            visited.add(leaf);
+            double length = 0;
+            Node previous = leaf;
+            Node current = neighbours.keySet().iterator().next();
+            List<Link> hopLinks = neighbours.get(current);
+            Node junction = null;
+            while (length < pruningLength) {
+                chainLinks.addAll(hopLinks);
+                length += hopLinks.stream().mapToDouble(Link::getLength).max().orElse(0);
+                Map<Node, List<Link>> next = getNeighbours(current, mode, prunedLinks);
+                if (next.size() != 2 || !visited.add(current)) {
+                    // A junction, or the other end of an isolated chain (which is not a dead end)
+                    junction = next.size() > 2 ? current : null;
+                    break;
+                }
+                next.remove(previous);
+                previous = current;
+                current = next.keySet().iterator().next();
+                hopLinks = next.get(current);
+            }
+            if (junction == null || length >= pruningLength
+                    || chainLinks.stream().anyMatch(link -> this.protectedLinkIds.contains(link.getId()))) {
+                continue;
+            }
+            prunedLinks.addAll(chainLinks);
+            // The junction may become a leaf
+            leaves.add(junction);
+        }
+        return prunedLinks;
+    }
+
+    // Get the neighbours of the node, with the (not pruned) links allowing the mode between the node and each neighbour
+    private static Map<Node, List<Link>> getNeighbours(Node node, String mode, Set<Link> prunedLinks) {
+        Map<Node, List<Link>> neighbours = new HashMap<>();
+        for (Link link : node.getOutLinks().values()) {
+            if (link.getToNode() != node && link.getAllowedModes().contains(mode) && !prunedLinks.contains(link)) {
+                neighbours.computeIfAbsent(link.getToNode(), k -> new ArrayList<>()).add(link);
+            }
+        }
+        for (Link link : node.getInLinks().values()) {
+            if (link.getFromNode() != node && link.getAllowedModes().contains(mode) && !prunedLinks.contains(link)) {
+                neighbours.computeIfAbsent(link.getFromNode(), k -> new ArrayList<>()).add(link);
+            }
+        }
+        return neighbours;
+    }
+
+    public int getAdaptedLinks() {
+        return this.adaptedLinks;
+    }
+
+    public int getRemovedLinks() {
+        return this.removedLinks;
+    }
+
+    public int getRemovedNodes() {
+        return this.removedNodes;
+    }
+
+}
@@ -0,0 +1,289 @@
+package network.tools;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * A linear-time replacement of MATSim's {@link org.matsim.core.network.algorithms.NetworkSimplifier} for merging short links:
+ * 1. The degree-2 chains (i.e., the links through the nodes with exactly two neighbours, one-way or two-way) are found
+ * in one pass over a compact adjacency of the network;
+ * 2. Each chain is cut into groups of consecutive links, where a link is added to the current group as long as the
+ * group or the link is not longer than the min threshold, and the merged link would not be longer than the max threshold;
+ * 3. Each group is replaced by one merged link, which is built once from the whole group, so that the attributes are
+ * combined once per group instead of once per merged pair.
+ * <p>
+ * Two consecutive links are only in the same chain if they are compatible, by default if they have the same allowed
+ * modes, freespeed, capacity and number of lanes (as the NetworkSimplifier without merging the link stats).
+ *
+ * @author Xander
+ */
+public final class LinkChainMerger {
+    private static final Logger LOG = LogManager.getLogger(LinkChainMerger.class);
+
+    private final Network network;
+    private final double minThreshold;
+    private final double maxThreshold;
+    private final BiPredicate<Link, Link> linkCompatiblePredicate;
+    private final BiConsumer<List<Link>, Link> chainAttrConsumer;
+
+    private int mergedLinks = 0;
+    private int removedLinks = 0;
+    private int removedNodes = 0;
+
+    public LinkChainMerger(Network network, double minThreshold, double maxThreshold) {
+        this(network, minThreshold, maxThreshold, sameLinkStatsPredicate(), defaultChainAttrConsumer());
+    }
+
+    /**
+     * @param linkCompatiblePredicate whether the first link can be merged with the second (following) link
+     * @param chainAttrConsumer sets the attributes of the merged link (the second argument) from the merged links in order
+     */
+    public LinkChainMerger(Network network, double minThreshold, double maxThreshold, BiPredicate<Link, Link> linkCompatiblePredicate,
+                           BiConsumer<List<Link>, Link> chainAttrConsumer) {
+        if (minThreshold > maxThreshold) {
+            throw new IllegalArgumentException("The min threshold: " + minThreshold + " should not be larger than the max threshold: " + maxThreshold);
+        }
+        this.network = network;
+        this.minThreshold = minThreshold;
+        this.maxThreshold = maxThreshold;
+        this.linkCompatiblePredicate = linkCompatiblePredicate;
+        this.chainAttrConsumer = chainAttrConsumer;
+    }
+
+    // Two links are compatible if they have the same allowed modes and link stats
+    public static BiPredicate<Link, Link> sameLinkStatsPredicate() {
+        return (link1, link2) -> link1.getAllowedModes().equals(link2.getAllowedModes())
+                && link1.getFreespeed() == link2.getFreespeed()
+                && link1.getCapacity() == link2.getCapacity()
+                && link1.getNumberOfLanes() == link2.getNumberOfLanes();
+    }
+
+    // Keep the value of an attribute if it is the same on all the merged links, otherwise join the distinct values with "_"
+    public static BiConsumer<List<Link>, Link> defaultChainAttrConsumer() {
+        return (links, mergedLink) -> {
+            Map<String, Set<Object>> values = new LinkedHashMap<>();
+            for (Link link : links) {
+                link.getAttributes().getAsMap().forEach((key, value) -> values.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(value));
+            }
+            values.forEach((key, distinctValues) -> {
+                if (distinctValues.size() == 1) {
+                    mergedLink.getAttributes().putAttribute(key, distinctValues.iterator().next());
+                } else {
+                    StringJoiner joiner = new StringJoiner("_");
+                    distinctValues.forEach(value -> joiner.add(value.toString()));
+                    mergedLink.getAttributes().putAttribute(key, joiner.toString());
+                }
+            });
+        };
+    }
+
+    public void run() {
+        long startTime = System.currentTimeMillis();
+        // Index the nodes and links
+        Node[] nodes = this.network.getNodes().values().toArray(new Node[0]);
+        Map<Id<Node>, Integer> nodeIndices = new HashMap<>((int) (nodes.length / 0.75) + 1);
+        for (int i = 0; i < nodes.length; i++) {
+            nodeIndices.put(nodes[i].getId(), i);
+        }
+        Link[] links = this.network.getLinks().values().toArray(new Link[0]);
+        int[] linkFromNode = new int[links.length];
+        int[] linkToNode = new int[links.length];
+        // Up to two incoming and outgoing links per node; the counts go beyond 2 for the other nodes
+        int[] inLinks = new int[nodes.length * 2];
+        int[] outLinks = new int[nodes.length * 2];
+        int[] inCounts = new int[nodes.length];
+        int[] outCounts = new int[nodes.length];
+        for (int l = 0; l < links.length; l++) {
+            int from = nodeIndices.get(links[l].getFromNode().getId());
+            int to = nodeIndices.get(links[l].getToNode().getId());
+            linkFromNode[l] = from;
+            linkToNode[l] = to;
+            if (outCounts[from] < 2) {
+                outLinks[from * 2 + outCounts[from]] = l;
+            }
+            outCounts[from]++;
+            if (inCounts[to] < 2) {
+                inLinks[to * 2 + inCounts[to]] = l;
+            }
+            inCounts[to]++;
+        }
+
+        // Link each incoming link of a pass-through node to its (compatible) continuation
+        int[] nextLinks = new int[links.length];
+        Arrays.fill(nextLinks, -1);
+        BitSet hasPrevious = new BitSet(links.length);
+        for (int i = 0; i < nodes.length; i++) {
+            if (!isPassThrough(i, inLinks, outLinks, inCounts, outCounts, linkFromNode, linkToNode)) {
+                continue;
+            }
+            for (int k = 0; k < inCounts[i]; k++) {
+                int inLink = inLinks[i * 2 + k];
+                for (int m = 0; m < outCounts[i]; m++) {
+                    int outLink = outLinks[i * 2 + m];
+                    // No U-turn
+                    if (linkToNode[outLink] != linkFromNode[inLink] && this.linkCompatiblePredicate.test(links[inLink], links[outLink])) {
+                        nextLinks[inLink] = outLink;
+                        hasPrevious.set(outLink);
+                    }
+                }
+            }
+        }
+
+        // Walk each chain from its first link, and then the remaining (circular) chains from any of their links
+        List<Link[]> groups = new ArrayList<>();
+        BitSet visited = new BitSet(links.length);
+        int[] chain = new int[16];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int l = 0; l < links.length; l++) {
+                if (visited.get(l) || nextLinks[l] < 0 || (pass == 0 && hasPrevious.get(l))) {
+                    continue;
+                }
+                int size = 0;
+                for (int current = l; current >= 0 && !visited.get(current); current = nextLinks[current]) {
+                    if (size == chain.length) {
+                        chain = Arrays.copyOf(chain, size * 2);
+                    }
+                    chain[size++] = current;
+                    visited.set(current);
+                }
+                if (pass == 1) {
+                    // Start a circular chain from its longest link, which is the most likely end of a group
+                    rotateToLongestLink(chain, size, links);
+                }
+                collectGroups(chain, size, links, linkFromNode, linkToNode, groups);
+            }
+        }
+
+        // Apply all the merges in one mutation pass
+        groups.forEach(this::merge);
+        LOG.info("Merged {} chains of short links in {} ms: {} links and {} nodes are removed.", this.mergedLinks,
+                System.currentTimeMillis() - startTime, this.removedLinks, this.removedNodes);
+    }
+
+    // A node with exactly two neighbours: one incoming and one outgoing link, or two incoming and two outgoing links
+    private static boolean isPassThrough(int node, int[] inLinks, int[] outLinks, int[] inCounts, int[] outCounts,
+                                         int[] linkFromNode, int[] linkToNode) {
+        if (inCounts[node] == 1 && outCounts[node] == 1) {
+            int neighbour1 = linkFromNode[inLinks[node * 2]];
+            int neighbour2 = linkToNode[outLinks[node * 2]];
+            return neighbour1 != neighbour2 && neighbour1 != node && neighbour2 != node;
+        }
+        if (inCounts[node] == 2 && outCounts[node] == 2) {
+            int in1 = linkFromNode[inLinks[node * 2]];
+            int in2 = linkFromNode[inLinks[node * 2 + 1]];
+            int out1 = linkToNode[outLinks[node * 2]];
+            int out2 = linkToNode[outLinks[node * 2 + 1]];
+            return in1 != in2 && in1 != node && in2 != node
+                    && ((in1 == out1 && in2 == out2) || (in1 == out2 && in2 == out1));
+        }
+        return false;
+    }
+
+    private static void rotateToLongestLink(int[] chain, int size, Link[] links) {
+        int longest = 0;
+        for (int k = 1; k < size; k++) {
+            if (links[chain[k]].getLength() > links[chain[longest]].getLength()) {
+                longest = k;
+            }
+        }
+        int[] rotated = new int[size];
+        System.arraycopy(chain, longest, rotated, 0, size - longest);
+        System.arraycopy(chain, 0, rotated, size - longest, longest);
+        System.arraycopy(rotated, 0, chain, 0, size);
+    }
+
+    // Cut the chain into the groups of links to be merged
+    private void collectGroups(int[] chain, int size, Link[] links, int[] linkFromNode, int[] linkToNode, List<Link[]> groups) {
+        int start = 0;
+        double groupLength = links[chain[0]].getLength();
+        for (int k = 1; k <= size; k++) {
+            if (k < size) {
+                double length = links[chain[k]].getLength();
+                if ((groupLength <= this.minThreshold || length <= this.minThreshold) && groupLength + length <= this.maxThreshold
+                        && linkToNode[chain[k]] != linkFromNode[chain[start]]) {
+                    groupLength += length;
+                    continue;
+                }
+            }
+            if (k - start > 1) {
+                Link[] group = new Link[k - start];
+                for (int m = start; m < k; m++) {
+                    group[m - start] = links[chain[m]];
+                }
+                groups.add(group);
+            }
+            if (k < size) {
+                start = k;
+                groupLength = links[chain[k]].getLength();
+            }
+        }
+    }
+
+    // Replace the group of consecutive links by one merged link
+    private void merge(Link[] group) {
+        StringBuilder id = new StringBuilder();
+        double length = 0;
+        double travelTime = 0;
+        double capacity = Double.POSITIVE_INFINITY;
+        double laneLength = 0;
+        Set<String> allowedModes = new HashSet<>(group[0].getAllowedModes());
+        for (Link link : group) {
+            if (!id.isEmpty()) {
+                id.append('-');
+            }
+            id.append(link.getId());
+            length += link.getLength();
+            travelTime += link.getLength() / link.getFreespeed();
+            capacity = Math.min(capacity, link.getCapacity());
+            laneLength += link.getNumberOfLanes() * link.getLength();
+            // A mode is only allowed on the merged link if it is allowed on all the links
+            allowedModes.retainAll(link.getAllowedModes());
+        }
+
+        Link mergedLink = this.network.getFactory().createLink(Id.createLinkId(id.toString()),
+                group[0].getFromNode(), group[group.length - 1].getToNode());
+        mergedLink.setLength(length);
+        mergedLink.setFreespeed(length > 0 && travelTime > 0 ? length / travelTime : group[0].getFreespeed());
+        mergedLink.setCapacity(capacity);
+        mergedLink.setNumberOfLanes(length > 0 ? laneLength / length : group[0].getNumberOfLanes());
+        mergedLink.setAllowedModes(allowedModes);
+        this.chainAttrConsumer.accept(Arrays.asList(group), mergedLink);
+
+        for (Link link : group) {
+            this.network.removeLink(link.getId());
+        }
+        this.network.addLink(mergedLink);
+        this.mergedLinks++;
+        this.removedLinks += group.length;
+
+        // Remove the intermediate nodes which are not used by the opposite direction
+        for (int k = 1; k < group.length; k++) {
+            Node node = group[k].getFromNode();
+            if (node.getInLinks().isEmpty() && node.getOutLinks().isEmpty()) {
+                this.network.removeNode(node.getId());
+                this.removedNodes++;
+            }
+        }
+    }
+
+    public int getMergedLinks() {
+        return this.mergedLinks;
+    }
+
+    public int getRemovedLinks() {
+        return this.removedLinks;
+    }
+
+    public int getRemovedNodes() {
+        return this.removedNodes;
+    }
+
+}
@@ -0,0 +1,230 @@
+package network.tools;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+import java.util.*;
+
+/**
+ * A compact adjacency (CSR) view of a MATSim network, shared by all modes. Nodes and links are indexed by int,
+ * and each link carries a bitmask of the (considered) modes it allows, so that the connectivity of each mode can be
+ * computed on the same structure without deriving a sub-network per mode.
+ * <p>
+ * The strongly connected components are computed by an iterative Tarjan algorithm (no recursion), so that long
+ * chains of links in large networks do not overflow the stack.
+ *
+ * @author Xander
+ */
+public final class ModeConnectivityGraph {
+
+    private final List<String> modes;
+    private final Map<String, Integer> modeIndices = new HashMap<>();
+    private final Node[] nodes;
+    private final Link[] links;
+    private final int[] linkFromNode;
+    private final int[] linkToNode;
+    private final long[] linkModeMasks;
+    // CSR adjacency: the outgoing links of node i are outLinks[outOffsets[i]] ... outLinks[outOffsets[i+1]-1]
+    private final int[] outOffsets;
+    private final int[] outLinks;
+
+    public ModeConnectivityGraph(Network network, Collection<String> modes) {
+        if (modes.size() > Long.SIZE) {
+            throw new IllegalArgumentException("At most " + Long.SIZE + " modes are supported, but got " + modes.size());
+        }
+        this.modes = List.copyOf(modes);
+        for (int i = 0; i < this.modes.size(); i++) {
+            this.modeIndices.put(this.modes.get(i), i);
+        }
+
+        // Index the nodes
+        this.nodes = network.getNodes().values().toArray(new Node[0]);
+        Map<Id<Node>, Integer> nodeIndices = new HashMap<>((int) (this.nodes.length / 0.75) + 1);
+        for (int i = 0; i < this.nodes.length; i++) {
+            nodeIndices.put(this.nodes[i].getId(), i);
+        }
+
+        // Index the links, and count the outgoing links of each node
+        this.links = network.getLinks().values().toArray(new Link[0]);
+        this.linkFromNode = new int[this.links.length];
+        this.linkToNode = new int[this.links.length];
+        this.linkModeMasks = new long[this.links.length];
+        this.outOffsets = new int[this.nodes.length + 1];
+        for (int l = 0; l < this.links.length; l++) {
+            Link link = this.links[l];
+            this.linkFromNode[l] = nodeIndices.get(link.getFromNode().getId());
+            this.linkToNode[l] = nodeIndices.get(link.getToNode().getId());
+            long mask = 0L;
+            for (String mode : link.getAllowedModes()) {
+                Integer modeIdx = this.modeIndices.get(mode);
+                if (modeIdx != null) {
+                    mask |= 1L << modeIdx;
+                }
+            }
+            this.linkModeMasks[l] = mask;
+            this.outOffsets[this.linkFromNode[l] + 1]++;
+        }
+
+        // Build the CSR adjacency from the counts
+        for (int i = 0; i < this.nodes.length; i++) {
+            this.outOffsets[i + 1] += this.outOffsets[i];
+        }
+        this.outLinks = new int[this.links.length];
+        int[] fillPos = Arrays.copyOf(this.outOffsets, this.nodes.length);
+        for (int l = 0; l < this.links.length; l++) {
+            this.outLinks[fillPos[this.linkFromNode[l]]++] = l;
+        }
+    }
+
+    public List<String> getModes() {
+        return this.modes;
+    }
+
+    public int getModeIndex(String mode) {
+        Integer modeIdx = this.modeIndices.get(mode);
+        if (modeIdx == null) {
+            throw new IllegalArgumentException("The mode: " + mode + " is not considered in this graph.");
+        }
+        return modeIdx;
+    }
+
+    public int getNodeCount() {
+        return this.nodes.length;
+    }
+
+    public int getLinkCount() {
+        return this.links.length;
+    }
+
+    public Node getNode(int nodeIdx) {
+        return this.nodes[nodeIdx];
+    }
+
+    public Link getLink(int linkIdx) {
+        return this.links[linkIdx];
+    }
+
+    public int getFromNode(int linkIdx) {
+        return this.linkFromNode[linkIdx];
+    }
+
+    public int getToNode(int linkIdx) {
+        return this.linkToNode[linkIdx];
+    }
+
+    public long getModeMask(int linkIdx) {
+        return this.linkModeMasks[linkIdx];
+    }
+
+    public boolean allowsMode(int linkIdx, int modeIdx) {
+        return (this.linkModeMasks[linkIdx] & (1L << modeIdx)) != 0;
+    }
+
+    /**
+     * Get the nodes of the largest (by the number of nodes) strongly connected component of the given mode,
+     * only traversing the links that allow this mode.
+     */
+    public BitSet getLargestComponentNodes(int modeIdx) {
+        final long modeBit = 1L << modeIdx;
+        final int n = this.nodes.length;
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[n];
+        // The Tarjan stack, and the explicit call stack (node + position of the next outgoing link to visit)
+        int[] stack = new int[n];
+        int stackSize = 0;
+        int[] callNodes = new int[n];
+        int[] callEdgePos = new int[n];
+        int callSize;
+
+        int[] component = new int[n];
+        int componentCount = 0;
+        int largestComponent = -1;
+        int largestSize = 0;
+        int counter = 0;
+
+        for (int start = 0; start < n; start++) {
+            if (index[start] != -1) {
+                continue;
+            }
+            index[start] = lowLink[start] = counter++;
+            stack[stackSize++] = start;
+            onStack[start] = true;
+            callNodes[0] = start;
+            callEdgePos[0] = this.outOffsets[start];
+            callSize = 1;
+
+            while (callSize > 0) {
+                int v = callNodes[callSize - 1];
+                if (callEdgePos[callSize - 1] < this.outOffsets[v + 1]) {
+                    int l = this.outLinks[callEdgePos[callSize - 1]++];
+                    if ((this.linkModeMasks[l] & modeBit) == 0) {
+                        continue;
+                    }
+                    int w = this.linkToNode[l];
+                    if (index[w] == -1) {
+                        // "Recurse" into w
+                        index[w] = lowLink[w] = counter++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        callNodes[callSize] = w;
+                        callEdgePos[callSize] = this.outOffsets[w];
+                        callSize++;
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                } else {
+                    // All outgoing links of v are visited; v is the root of a component if its lowLink equals its index
+                    if (lowLink[v] == index[v]) {
+                        int size = 0;
+                        int w;
+                        do {
+                            w = stack[--stackSize];
+                            onStack[w] = false;
+                            component[w] = componentCount;
+                            size++;
+                        } while (w != v);
+                        if (size > largestSize) {
+                            largestSize = size;
+                            largestComponent = componentCount;
+                        }
+                        componentCount++;
+                    }
+                    callSize--;
+                    if (callSize > 0) {
+                        int u = callNodes[callSize - 1];
+                        lowLink[u] = Math.min(lowLink[u], lowLink[v]);
+                    }
+                }
+            }
+        }
+
+        BitSet largest = new BitSet(n);
+        for (int i = 0; i < n; i++) {
+            if (component[i] == largestComponent) {
+                largest.set(i);
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Get the links that allow the given mode but are not (completely) inside the largest strongly connected
+     * component of this mode, i.e., the links from which this mode should be removed to make it strongly connected.
+     */
+    public BitSet getLinksOutsideLargestComponent(int modeIdx) {
+        BitSet componentNodes = getLargestComponentNodes(modeIdx);
+        BitSet outside = new BitSet(this.links.length);
+        for (int l = 0; l < this.links.length; l++) {
+            if (allowsMode(l, modeIdx)
+                    && !(componentNodes.get(this.linkFromNode[l]) && componentNodes.get(this.linkToNode[l]))) {
+                outside.set(l);
+            }
+        }
+        return outside;
+    }
+
+}
@@ -0,0 +1,477 @@
+package network.tools;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A read-only view of a network with only the links allowing a given mode (and the nodes of these links), created by
+ * {@link ModeNetworkIndex#getView}. No node or link is copied: the nodes and links of the view are thin wrappers
+ * (created on demand, once per node/link) around those of the parent network, whose in/out links are filtered by the
+ * mode, so that a router only follows the links of the mode. As with the TransportModeNetworkFilter, the allowed modes
+ * of each link of the view are only the mode of the view. The attributes are those of the parent network.
+ * <p>
+ * Any modification of the view (adding/removing a node or link, or changing a link) throws an UnsupportedOperationException.
+ * <p>
+ * The view is not a {@code SearchableNetwork}, so it cannot be used where the nearest node or link is searched (e.g.,
+ * NetworkUtils.getNearestNode/getNearestLink, or the carrier and jsprit code); a TransportModeNetworkFilter copy is
+ * needed there.
+ *
+ * @author Xander
+ */
+public final class ModeFilteredNetwork implements Network {
+    private static final String READ_ONLY_MESSAGE = "The mode-filtered view of the network is read-only.";
+
+    private final ModeNetworkIndex index;
+    private final Network network;
+    private final String mode;
+    // The allowed modes of all the links of the view
+    private final Set<String> allowedModes;
+    private final long modeMask;
+    private final int numberOfLinks;
+    private final int numberOfNodes;
+    // The wrappers by the index of the link/node id, created on demand
+    private final AtomicReferenceArray<ViewLink> links;
+    private final AtomicReferenceArray<ViewNode> nodes;
+    private final Map<Id<Link>, Link> linkMap;
+    private final Map<Id<Node>, Node> nodeMap;
+
+    ModeFilteredNetwork(ModeNetworkIndex index, String mode, long modeMask) {
+        this.index = index;
+        this.network = index.getNetwork();
+        this.mode = mode;
+        this.allowedModes = Set.of(mode);
+        this.modeMask = modeMask;
+        this.numberOfLinks = index.countLinks(modeMask);
+        this.numberOfNodes = index.countNodes(modeMask);
+        this.links = new AtomicReferenceArray<>(index.getLinkIdCapacity());
+        this.nodes = new AtomicReferenceArray<>(index.getNodeIdCapacity());
+        this.linkMap = new FilteredMap<>(this.network.getLinks(), this.numberOfLinks) {
+            @Override
+            Link filter(Link link) {
+                return getViewLink(link);
+            }
+        };
+        this.nodeMap = new FilteredMap<>(this.network.getNodes(), this.numberOfNodes) {
+            @Override
+            Node filter(Node node) {
+                return getViewNode(node);
+            }
+        };
+    }
+
+    public String getMode() {
+        return this.mode;
+    }
+
+    // Get the wrapper of the parent link, or null if the link does not allow the mode
+    private ViewLink getViewLink(Link link) {
+        if ((this.index.getLinkModeMask(link.getId()) & this.modeMask) == 0L) {
+            return null;
+        }
+        int idx = link.getId().index();
+        ViewLink viewLink = this.links.get(idx);
+        if (viewLink == null) {
+            this.links.compareAndSet(idx, null, new ViewLink(link));
+            viewLink = this.links.get(idx);
+        }
+        return viewLink;
+    }
+
+    // Get the wrapper of the parent node, or null if the node has no link allowing the mode
+    private ViewNode getViewNode(Node node) {
+        if ((this.index.getNodeModeMask(node.getId()) & this.modeMask) == 0L) {
+            return null;
+        }
+        int idx = node.getId().index();
+        ViewNode viewNode = this.nodes.get(idx);
+        if (viewNode == null) {
+            this.nodes.compareAndSet(idx, null, new ViewNode(node));
+            viewNode = this.nodes.get(idx);
+        }
+        return viewNode;
+    }
+
+    @Override
+    public NetworkFactory getFactory() {
+        return this.network.getFactory();
+    }
+
+    @Override
+    public Map<Id<Node>, ? extends Node> getNodes() {
+        return this.nodeMap;
+    }
+
+    @Override
+    public Map<Id<Link>, ? extends Link> getLinks() {
+        return this.linkMap;
+    }
+
+    @Override
+    public double getCapacityPeriod() {
+        return this.network.getCapacityPeriod();
+    }
+
+    @Override
+    public double getEffectiveLaneWidth() {
+        return this.network.getEffectiveLaneWidth();
+    }
+
+    @Override
+    public double getEffectiveCellSize() {
+        return this.network.getEffectiveCellSize();
+    }
+
+    @Override
+    public String getName() {
+        return this.network.getName();
+    }
+
+    @Override
+    public Attributes getAttributes() {
+        return this.network.getAttributes();
+    }
+
+    @Override
+    public void addNode(Node node) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public void addLink(Link link) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public Node removeNode(Id<Node> nodeId) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public Link removeLink(Id<Link> linkId) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public void setCapacityPeriod(double capPeriod) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public void setEffectiveCellSize(double effectiveCellSize) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public void setEffectiveLaneWidth(double effectiveLaneWidth) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public void setName(String name) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    /**
+     * A read-only map of the wrapped values of a parent map, skipping the values which are filtered out (null).
+     */
+    private abstract static class FilteredMap<K, V> extends AbstractMap<K, V> {
+        private final Map<K, ? extends V> parent;
+        // The size if it is known in advance, or -1 to count it
+        private final int size;
+
+        FilteredMap(Map<K, ? extends V> parent, int size) {
+            this.parent = parent;
+            this.size = size;
+        }
+
+        // Get the wrapped value, or null if the value is filtered out
+        abstract V filter(V value);
+
+        @Override
+        public V get(Object key) {
+            V value = this.parent.get(key);
+            return value == null ? null : filter(value);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            if (this.size >= 0) {
+                return this.size;
+            }
+            int count = 0;
+            for (V value : this.parent.values()) {
+                if (filter(value) != null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !entrySet().iterator().hasNext();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    Iterator<? extends Entry<K, ? extends V>> parentIterator = FilteredMap.this.parent.entrySet().iterator();
+                    return new Iterator<>() {
+                        private Entry<K, V> next = advance();
+
+                        private Entry<K, V> advance() {
+                            while (parentIterator.hasNext()) {
+                                Entry<K, ? extends V> entry = parentIterator.next();
+                                V value = filter(entry.getValue());
+                                if (value != null) {
+                                    return new SimpleImmutableEntry<>(entry.getKey(), value);
+                                }
+                            }
+                            return null;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return this.next != null;
+                        }
+
+                        @Override
+                        public Entry<K, V> next() {
+                            if (this.next == null) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<K, V> entry = this.next;
+                            this.next = advance();
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return FilteredMap.this.size();
+                }
+            };
+        }
+    }
+
+    private final class ViewNode implements Node {
+        private final Node node;
+        private final Map<Id<Link>, Link> inLinks;
+        private final Map<Id<Link>, Link> outLinks;
+
+        ViewNode(Node node) {
+            this.node = node;
+            this.inLinks = new FilteredMap<>(node.getInLinks(), -1) {
+                @Override
+                Link filter(Link link) {
+                    return getViewLink(link);
+                }
+            };
+            this.outLinks = new FilteredMap<>(node.getOutLinks(), -1) {
+                @Override
+                Link filter(Link link) {
+                    return getViewLink(link);
+                }
+            };
+        }
+
+        @Override
+        public Id<Node> getId() {
+            return this.node.getId();
+        }
+
+        @Override
+        public Coord getCoord() {
+            return this.node.getCoord();
+        }
+
+        @Override
+        public Map<Id<Link>, ? extends Link> getInLinks() {
+            return this.inLinks;
+        }
+
+        @Override
+        public Map<Id<Link>, ? extends Link> getOutLinks() {
+            return this.outLinks;
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return this.node.getAttributes();
+        }
+
+        @Override
+        public void setCoord(Coord coord) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public boolean addInLink(Link link) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public boolean addOutLink(Link link) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public Link removeInLink(Id<Link> linkId) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public Link removeOutLink(Id<Link> linkId) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public String toString() {
+            return this.node.toString();
+        }
+    }
+
+    private final class ViewLink implements Link {
+        private final Link link;
+
+        ViewLink(Link link) {
+            this.link = link;
+        }
+
+        @Override
+        public Id<Link> getId() {
+            return this.link.getId();
+        }
+
+        @Override
+        public Node getFromNode() {
+            return getViewNode(this.link.getFromNode());
+        }
+
+        @Override
+        public Node getToNode() {
+            return getViewNode(this.link.getToNode());
+        }
+
+        @Override
+        public Coord getCoord() {
+            return this.link.getCoord();
+        }
+
+        @Override
+        public double getLength() {
+            return this.link.getLength();
+        }
+
+        @Override
+        public double getNumberOfLanes() {
+            return this.link.getNumberOfLanes();
+        }
+
+        @Override
+        public double getNumberOfLanes(double time) {
+            return this.link.getNumberOfLanes(time);
+        }
+
+        @Override
+        public double getFreespeed() {
+            return this.link.getFreespeed();
+        }
+
+        @Override
+        public double getFreespeed(double time) {
+            return this.link.getFreespeed(time);
+        }
+
+        @Override
+        public double getCapacity() {
+            return this.link.getCapacity();
+        }
+
+        @Override
+        public double getCapacity(double time) {
+            return this.link.getCapacity(time);
+        }
+
+        @Override
+        public double getFlowCapacityPerSec() {
+            return this.link.getFlowCapacityPerSec();
+        }
+
+        @Override
+        public double getFlowCapacityPerSec(double time) {
+            return this.link.getFlowCapacityPerSec(time);
+        }
+
+        @Override
+        public double getCapacityPeriod() {
+            return this.link.getCapacityPeriod();
+        }
+
+        @Override
+        public Set<String> getAllowedModes() {
+            return ModeFilteredNetwork.this.allowedModes;
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return this.link.getAttributes();
+        }
+
+        @Override
+        public boolean setFromNode(Node node) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public boolean setToNode(Node node) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public void setLength(double length) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public void setNumberOfLanes(double lanes) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public void setFreespeed(double freespeed) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public void setCapacity(double capacity) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public void setAllowedModes(Set<String> modes) {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public String toString() {
+            return this.link.toString();
+        }
+    }
+}
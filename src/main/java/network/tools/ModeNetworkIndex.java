@@ -0,0 +1,119 @@
+package network.tools;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+import java.util.*;
+
+/**
+ * A mode bitmask index over a MATSim network, from which the read-only per-mode views ({@link ModeFilteredNetwork})
+ * are created without copying any node or link, instead of a
+ * {@link org.matsim.core.network.algorithms.TransportModeNetworkFilter} copy where only reading is needed.
+ * <p>
+ * The bitmask of each link (of its allowed modes) and of each node (of the allowed modes of its links) is stored by
+ * the index of its id. The index is built once in one pass over the links, and a view is created in one pass over
+ * the bitmasks.
+ * <p>
+ * The index is a snapshot of the network when it is built: once the parent network is modified (a node or link is
+ * added/removed, or the allowed modes of a link are changed), the index and its views are stale, and the index must be
+ * built again.
+ *
+ * @author Xander
+ */
+public final class ModeNetworkIndex {
+    private static final Logger LOG = LogManager.getLogger(ModeNetworkIndex.class);
+
+    private final Network network;
+    private final List<String> modes = new ArrayList<>();
+    private final Map<String, Integer> modeIndices = new HashMap<>();
+    // The mode bitmasks by the index of the link/node id
+    private final long[] linkModeMasks;
+    private final long[] nodeModeMasks;
+    private final Map<String, ModeFilteredNetwork> views = new HashMap<>();
+
+    public ModeNetworkIndex(Network network) {
+        long startTime = System.currentTimeMillis();
+        this.network = network;
+        this.linkModeMasks = new long[Id.getNumberOfIds(Link.class)];
+        this.nodeModeMasks = new long[Id.getNumberOfIds(Node.class)];
+        for (Link link : network.getLinks().values()) {
+            long mask = 0L;
+            for (String mode : link.getAllowedModes()) {
+                Integer modeIdx = this.modeIndices.get(mode);
+                if (modeIdx == null) {
+                    if (this.modes.size() == Long.SIZE) {
+                        throw new IllegalArgumentException("At most " + Long.SIZE + " modes are supported in the network.");
+                    }
+                    modeIdx = this.modes.size();
+                    this.modes.add(mode);
+                    this.modeIndices.put(mode, modeIdx);
+                }
+                mask |= 1L << modeIdx;
+            }
+            this.linkModeMasks[link.getId().index()] = mask;
+            this.nodeModeMasks[link.getFromNode().getId().index()] |= mask;
+            this.nodeModeMasks[link.getToNode().getId().index()] |= mask;
+        }
+        LOG.info("Indexed the modes {} of {} links in {} ms.", this.modes, network.getLinks().size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    public List<String> getModes() {
+        return Collections.unmodifiableList(this.modes);
+    }
+
+    /**
+     * Get the read-only view of the network with only the links allowing the mode (and their nodes). The views are
+     * cached per mode; a view of a mode not in the network is empty.
+     */
+    public synchronized ModeFilteredNetwork getView(String mode) {
+        return this.views.computeIfAbsent(mode, m -> {
+            Integer modeIdx = this.modeIndices.get(m);
+            return new ModeFilteredNetwork(this, m, modeIdx == null ? 0L : 1L << modeIdx);
+        });
+    }
+
+    Network getNetwork() {
+        return this.network;
+    }
+
+    long getLinkModeMask(Id<Link> linkId) {
+        int index = linkId.index();
+        return index < this.linkModeMasks.length ? this.linkModeMasks[index] : 0L;
+    }
+
+    long getNodeModeMask(Id<Node> nodeId) {
+        int index = nodeId.index();
+        return index < this.nodeModeMasks.length ? this.nodeModeMasks[index] : 0L;
+    }
+
+    int countLinks(long modeMask) {
+        return count(this.linkModeMasks, modeMask);
+    }
+
+    int countNodes(long modeMask) {
+        return count(this.nodeModeMasks, modeMask);
+    }
+
+    int getLinkIdCapacity() {
+        return this.linkModeMasks.length;
+    }
+
+    int getNodeIdCapacity() {
+        return this.nodeModeMasks.length;
+    }
+
+    private static int count(long[] masks, long modeMask) {
+        int count = 0;
+        for (long mask : masks) {
+            if ((mask & modeMask) != 0L) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -7,6 +7,7 @@ import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.algorithms.MultimodalNetworkCleaner;
@@ -23,6 +24,14 @@ import java.util.stream.Collectors;
  * 1. Split the links whose length is longer than a certain threshold (for the sake of drt mode)
  * 2. Merge the links whose length is shorter than a certain threshold (to ensure no link is too short to accommodate even one vehicle)
  * 3. Ensure the consistency of the allowed modes of the links after splitting/merging.
+ * 4. Optionally, consolidate the complex intersections (see {@link IntersectionConsolidator}) and prune the short
+ * dead ends per mode (see {@link LeafChainPruner}) before splitting/merging.
+ * <p>
+ * By default, the short links are merged by MATSim's NetworkSimplifier, where two links are merged if the allowed modes
+ * of one contain those of the other, and the merged link keeps the larger set of modes. The {@link LinkChainMerger}
+ * (one merged link per chain of links, in linear time) is used instead if it is enabled on the {@link Builder} (see
+ * {@link Builder#setChainMerging}); note that its default predicate only merges the links with the same allowed modes,
+ * freespeed, capacity and number of lanes, so that it may keep more links than the NetworkSimplifier.
  */
 
 public class MultiModalNetworkOptimizer {
@@ -33,6 +42,15 @@ public class MultiModalNetworkOptimizer {
     private final BiPredicate<Link, Link> customizedLinkMergeablePredicate;
     private final BiConsumer<Tuple<Link, Link>, Link> customizedLinkAttrConsumer;
     private final MultimodalNetworkCleaner cleaner;
+    // Null if the short links are merged by the NetworkSimplifier
+    private final LinkChainMerger linkChainMerger;
+    // Split the long links in a batch (see splitLinks)
+    private boolean batchSplitting = false;
+    // The radius to consolidate the intersections, or 0 to keep them
+    private double consolidationRadius = 0;
+    // The max length of the leaf chains to be pruned per mode, and the links which should not be pruned
+    private Map<String, Double> pruningLengths = Map.of();
+    private Set<Id<Link>> protectedLinkIds = Set.of();
 
     private final Logger logger = LogManager.getLogger(MultiModalNetworkOptimizer.class);
 
@@ -45,6 +63,18 @@ public class MultiModalNetworkOptimizer {
         this.customizedLinkMergeablePredicate = customizedLinkMergeablePredicate;
         this.customizedLinkAttrConsumer = customizedLinkAttrConsumer;
         this.cleaner = new MultimodalNetworkCleaner(this.network);
+        this.linkChainMerger = null;
+    }
+
+    public MultiModalNetworkOptimizer(Network network, double minThreshold, double maxThreshold, LinkChainMerger linkChainMerger) {
+        this.network = network;
+        this.minThreshold = minThreshold;
+        this.maxThreshold = maxThreshold;
+        this.networkSimplifier = null;
+        this.customizedLinkMergeablePredicate = null;
+        this.customizedLinkAttrConsumer = null;
+        this.cleaner = new MultimodalNetworkCleaner(this.network);
+        this.linkChainMerger = linkChainMerger;
     }
 
     // Split a long link into multiple links
@@ -84,6 +114,64 @@ public class MultiModalNetworkOptimizer {
         network.removeLink(link.getId());
     }
 
+    // The new nodes and links of a long link to be split
+    private record SplitPlan(Link link, double segmentLength, List<Coord> coords, String[] nodeIds, String[] linkIds,
+                             String[] attrKeys, Object[] attrValues) {
+    }
+
+    /**
+     * Split the long links in one pass over the collected links, which saves reading (copying) the attributes of a link
+     * for each of its segments: they are read once and shared (the values are not copied) by all its segments. The
+     * network grows by a put per node and link either way.
+     */
+    void splitLinks(Collection<Link> links) {
+        NetworkFactory factory = this.network.getFactory();
+        int numberOfNewLinks = 0;
+        for (Link link : links) {
+            SplitPlan plan = planSplit(link);
+            Node startNode = link.getFromNode();
+            for (int i = 0; i < plan.linkIds().length; i++) {
+                Node endNode;
+                if (i < plan.nodeIds().length) {
+                    endNode = factory.createNode(Id.createNodeId(plan.nodeIds()[i]), plan.coords().get(i));
+                    this.network.addNode(endNode);
+                } else {
+                    endNode = link.getToNode();
+                }
+                Link newLink = factory.createLink(Id.createLinkId(plan.linkIds()[i]), startNode, endNode);
+                newLink.setLength(plan.segmentLength());
+                newLink.setFreespeed(link.getFreespeed());
+                newLink.setCapacity(link.getCapacity());
+                newLink.setNumberOfLanes(link.getNumberOfLanes());
+                newLink.setAllowedModes(link.getAllowedModes());
+                for (int k = 0; k < plan.attrKeys().length; k++) {
+                    newLink.getAttributes().putAttribute(plan.attrKeys()[k], plan.attrValues()[k]);
+                }
+                this.network.addLink(newLink);
+                startNode = endNode;
+            }
+            this.network.removeLink(link.getId());
+            numberOfNewLinks += plan.linkIds().length;
+        }
+        logger.info("Split {} long links into {} links.", links.size(), numberOfNewLinks);
+    }
+
+    private SplitPlan planSplit(Link link) {
+        int numberOfSplits = (int) Math.ceil(link.getLength() / this.maxThreshold);
+        String linkId = link.getId().toString();
+        String[] nodeIds = new String[numberOfSplits - 1];
+        String[] linkIds = new String[numberOfSplits];
+        for (int i = 1; i <= numberOfSplits; i++) {
+            if (i < numberOfSplits) {
+                nodeIds[i - 1] = "splitNode_" + linkId + "_" + i;
+            }
+            linkIds[i - 1] = "splitLink_" + linkId + "_" + i;
+        }
+        Map<String, Object> attributes = link.getAttributes().getAsMap();
+        return new SplitPlan(link, link.getLength() / numberOfSplits, getSplitLinkCoordinates(link, numberOfSplits),
+                nodeIds, linkIds, attributes.keySet().toArray(new String[0]), attributes.values().toArray());
+    }
+
     // Split a long link into multiple links and return the coordinates of the intermediate nodes
     List<Coord> getSplitLinkCoordinates(Link link, int numberOfSplits) {
         List <Coord> coords = new ArrayList<>();
@@ -112,20 +200,22 @@ public class MultiModalNetworkOptimizer {
         cleaner.run(Set.of(mode.name), retainModes.stream().map(Enum::name).collect(Collectors.toSet()));
     }
 
+    // Make each mode strongly connected; all modes are processed in a single pass instead of one cleaner run per mode
     public void clean(Set<TransMode.Mode> allModes){
-        final MultimodalNetworkCleaner cleaner = new MultimodalNetworkCleaner(this.network);
         Set<String> allModesString = allModes.stream().map(mode-> mode.name).collect(Collectors.toSet());
-        Iterator<String> iterator = allModesString.iterator();
-        while (iterator.hasNext()) {
-            String mode = iterator.next();
-            iterator.remove();
-            cleaner.run(Set.of(mode));
-//            cleaner.run(Set.of(mode), allModesString);
-        }
+        new SinglePassMultiModalNetworkCleaner(this.network).run(allModesString);
     }
 
     public void optimize(){
         logger.info("Optimizing the multimodal network...");
+        // Consolidate the complex intersections
+        if (this.consolidationRadius > 0) {
+            new IntersectionConsolidator(this.network, this.consolidationRadius).run();
+        }
+        // Prune the short dead ends, before the protected links are split/merged
+        if (!this.pruningLengths.isEmpty()) {
+            new LeafChainPruner(this.network, this.pruningLengths, this.protectedLinkIds).run();
+        }
         // Get the links whose length is longer than the threshold
         List<Link> linksToBeSplit = new ArrayList<>();
         for (Link link : network.getLinks().values()) {
@@ -134,9 +224,17 @@ public class MultiModalNetworkOptimizer {
             }
         }
         // Split the long links
-        linksToBeSplit.forEach(this::splitLink);
-        // Merge the short links using NetworkSimplifier
-        networkSimplifier.run(this.network, this.customizedLinkMergeablePredicate, this.customizedLinkAttrConsumer);
+        if (this.batchSplitting) {
+            splitLinks(linksToBeSplit);
+        } else {
+            linksToBeSplit.forEach(this::splitLink);
+        }
+        // Merge the short links
+        if (this.linkChainMerger != null) {
+            this.linkChainMerger.run();
+        } else {
+            networkSimplifier.run(this.network, this.customizedLinkMergeablePredicate, this.customizedLinkAttrConsumer);
+        }
     }
 
     public void optimize(Set<TransMode.Mode> modes){
@@ -148,6 +246,19 @@ public class MultiModalNetworkOptimizer {
         return this.network;
     }
 
+    public void setBatchSplitting(boolean batchSplitting) {
+        this.batchSplitting = batchSplitting;
+    }
+
+    public void setConsolidationRadius(double consolidationRadius) {
+        this.consolidationRadius = consolidationRadius;
+    }
+
+    public void setPruning(Map<String, Double> pruningLengths, Set<Id<Link>> protectedLinkIds) {
+        this.pruningLengths = pruningLengths;
+        this.protectedLinkIds = protectedLinkIds;
+    }
+
     public static class Builder {
         private Network network;
         private double minThreshold;
@@ -155,6 +266,13 @@ public class MultiModalNetworkOptimizer {
         private NetworkSimplifier networkSimplifier;
         private BiPredicate<Link, Link> customizedLinkMergeablePredicate;
         private BiConsumer<Tuple<Link, Link>, Link> customizedLinkAttrConsumer;
+        private BiPredicate<Link, Link> chainLinkCompatiblePredicate;
+        private BiConsumer<List<Link>, Link> chainLinkAttrConsumer;
+        private boolean chainMerging = false;
+        private boolean batchSplitting = false;
+        private double consolidationRadius = 0;
+        private Map<String, Double> pruningLengths = Map.of();
+        private Set<Id<Link>> protectedLinkIds = Set.of();
 
         // A default predicate to check if two links are mergeable, based on the allowed modes
         private BiPredicate<Link, Link> defaultLinkMergeablePredicate() {
@@ -234,6 +352,53 @@ public class MultiModalNetworkOptimizer {
             return this;
         }
 
+        // Merge the short links by the LinkChainMerger instead of the NetworkSimplifier
+        public Builder setChainMerging(boolean chainMerging) {
+            this.chainMerging = chainMerging;
+            return this;
+        }
+
+        // The predicate whether two consecutive links can be merged by the LinkChainMerger (which enables the chain merging)
+        public Builder setChainLinkCompatiblePredicate(BiPredicate<Link, Link> chainLinkCompatiblePredicate) {
+            this.chainLinkCompatiblePredicate = chainLinkCompatiblePredicate;
+            return this;
+        }
+
+        // The consumer to set the attributes of a link merged from a chain of links by the LinkChainMerger (which enables the chain merging)
+        public Builder setChainLinkAttrConsumer(BiConsumer<List<Link>, Link> chainLinkAttrConsumer) {
+            this.chainLinkAttrConsumer = chainLinkAttrConsumer;
+            return this;
+        }
+
+        // Split the long links in a batch, which reads the attributes of each link once for all its segments
+        public Builder setBatchSplitting(boolean batchSplitting) {
+            this.batchSplitting = batchSplitting;
+            return this;
+        }
+
+        // Consolidate the nodes of each complex intersection within the radius (in metres, the network must be in a projected CRS) into one node (0 to keep them)
+        public Builder setConsolidationRadius(double consolidationRadius) {
+            this.consolidationRadius = consolidationRadius;
+            return this;
+        }
+
+        // Prune the dead ends shorter than the length of each mode (e.g., Map.of("car", 50.0)); no pruning by default
+        public Builder setPruningLengths(Map<String, Double> pruningLengths) {
+            this.pruningLengths = pruningLengths;
+            return this;
+        }
+
+        // The links which should not be pruned, e.g., the links of the depots, receivers and shipment locations
+        public Builder setProtectedLinkIds(Set<Id<Link>> protectedLinkIds) {
+            this.protectedLinkIds = protectedLinkIds;
+            return this;
+        }
+
+        // The LinkChainMerger is only used if the chain merging, or a chain predicate/consumer, is explicitly given
+        private boolean useLinkChainMerger() {
+            return this.chainMerging || this.chainLinkCompatiblePredicate != null || this.chainLinkAttrConsumer != null;
+        }
+
         private void setDefaultValues() {
             if (this.minThreshold == 0) {
                 this.minThreshold = 5;
@@ -254,8 +419,20 @@ public class MultiModalNetworkOptimizer {
 
         public MultiModalNetworkOptimizer build() {
             this.setDefaultValues();
-            return new MultiModalNetworkOptimizer(this.network, this.minThreshold, this.maxThreshold, this.networkSimplifier,
-                    this.customizedLinkMergeablePredicate, this.customizedLinkAttrConsumer);
+            MultiModalNetworkOptimizer optimizer;
+            if (!this.useLinkChainMerger()) {
+                optimizer = new MultiModalNetworkOptimizer(this.network, this.minThreshold, this.maxThreshold, this.networkSimplifier,
+                        this.customizedLinkMergeablePredicate, this.customizedLinkAttrConsumer);
+            } else {
+                LinkChainMerger linkChainMerger = new LinkChainMerger(this.network, this.minThreshold, this.maxThreshold,
+                        this.chainLinkCompatiblePredicate != null ? this.chainLinkCompatiblePredicate : LinkChainMerger.sameLinkStatsPredicate(),
+                        this.chainLinkAttrConsumer != null ? this.chainLinkAttrConsumer : LinkChainMerger.defaultChainAttrConsumer());
+                optimizer = new MultiModalNetworkOptimizer(this.network, this.minThreshold, this.maxThreshold, linkChainMerger);
+            }
+            optimizer.setBatchSplitting(this.batchSplitting);
+            optimizer.setConsolidationRadius(this.consolidationRadius);
+            optimizer.setPruning(this.pruningLengths, this.protectedLinkIds);
+            return optimizer;
         }
 
     }
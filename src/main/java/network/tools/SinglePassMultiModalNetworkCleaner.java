@@ -0,0 +1,127 @@
+package network.tools;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A multimodal network cleaner which makes each of the given modes strongly connected in a single pass,
+ * as a replacement for running MATSim's {@link org.matsim.core.network.algorithms.MultimodalNetworkCleaner} once per mode:
+ * 1. One compact adjacency ({@link ModeConnectivityGraph}) with per-link mode bitmasks is built for all modes;
+ * 2. The largest strongly connected component of each mode is computed in parallel (one task per mode);
+ * 3. All the removals are applied to the network in one final mutation pass, i.e., a mode is removed from the links
+ * outside its largest component, and the links without any allowed mode (and the isolated nodes) are removed.
+ */
+public final class SinglePassMultiModalNetworkCleaner {
+    private static final Logger LOG = LogManager.getLogger(SinglePassMultiModalNetworkCleaner.class);
+
+    private final Network network;
+    private final int numberOfThreads;
+
+    private int adaptedLinks = 0;
+    private int removedLinks = 0;
+    private int removedNodes = 0;
+
+    public SinglePassMultiModalNetworkCleaner(Network network) {
+        this(network, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SinglePassMultiModalNetworkCleaner(Network network, int numberOfThreads) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads should be at least 1, but got " + numberOfThreads);
+        }
+        this.network = network;
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    public void run(Set<String> modes) {
+        if (modes.isEmpty()) {
+            return;
+        }
+        ModeConnectivityGraph graph = new ModeConnectivityGraph(this.network, modes);
+
+        // Compute the links outside the largest component of each mode in parallel; the graph is read-only here
+        long[] removedModeMasks = new long[graph.getLinkCount()];
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.numberOfThreads, graph.getModes().size()));
+        try {
+            List<Future<BitSet>> futures = new ArrayList<>();
+            for (String mode : graph.getModes()) {
+                int modeIdx = graph.getModeIndex(mode);
+                futures.add(executor.submit(() -> graph.getLinksOutsideLargestComponent(modeIdx)));
+            }
+            for (int modeIdx = 0; modeIdx < futures.size(); modeIdx++) {
+                BitSet outside = futures.get(modeIdx).get();
+                for (int l = outside.nextSetBit(0); l >= 0; l = outside.nextSetBit(l + 1)) {
+                    removedModeMasks[l] |= 1L << modeIdx;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while computing the connected components", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to compute the connected components", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        // Apply all the removals in one mutation pass
+        applyRemovals(graph, removedModeMasks);
+        LOG.info("Cleaned the network for modes {}: {} links are adapted, {} links and {} nodes are removed.",
+                graph.getModes(), this.adaptedLinks, this.removedLinks, this.removedNodes);
+    }
+
+    private void applyRemovals(ModeConnectivityGraph graph, long[] removedModeMasks) {
+        List<String> modes = graph.getModes();
+        for (int l = 0; l < removedModeMasks.length; l++) {
+            if (removedModeMasks[l] == 0L) {
+                continue;
+            }
+            Link link = graph.getLink(l);
+            Set<String> allowedModes = new HashSet<>(link.getAllowedModes());
+            for (int modeIdx = 0; modeIdx < modes.size(); modeIdx++) {
+                if ((removedModeMasks[l] & (1L << modeIdx)) != 0) {
+                    allowedModes.remove(modes.get(modeIdx));
+                }
+            }
+            if (allowedModes.isEmpty()) {
+                this.network.removeLink(link.getId());
+                this.removedLinks++;
+            } else {
+                link.setAllowedModes(allowedModes);
+                this.adaptedLinks++;
+            }
+        }
+
+        // Remove the nodes that are not connected to any link anymore
+        List<Id<Node>> isolatedNodes = new ArrayList<>();
+        this.network.getNodes().values().forEach(node -> {
+            if (node.getInLinks().isEmpty() && node.getOutLinks().isEmpty()) {
+                isolatedNodes.add(node.getId());
+            }
+        });
+        isolatedNodes.forEach(this.network::removeNode);
+        this.removedNodes += isolatedNodes.size();
+    }
+
+    public int getAdaptedLinks() {
+        return this.adaptedLinks;
+    }
+
+    public int getRemovedLinks() {
+        return this.removedLinks;
+    }
+
+    public int getRemovedNodes() {
+        return this.removedNodes;
+    }
+
+}
@@ -5,8 +5,6 @@ import org.matsim.api.core.v01.Coord;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 
-import java.util.*;
-
 public class Utils {
     // Set the path to the input OSM.pbf file
     public final static String FILE_TEST_NETWORK_PBF = "../../data/raw/test/GemeenteLeuvenOnly.pbf";
@@ -34,18 +32,6 @@ public class Utils {
         }
     }
 
-    public static <K, V> LinkedHashMap<K, V> reverseLinkedHashMap(LinkedHashMap<K, V> originalMap) {
-        List<Map.Entry<K, V>> entryList = new ArrayList<>(originalMap.entrySet());
-        Collections.reverse(entryList);
-
-        LinkedHashMap<K, V> reversedMap = new LinkedHashMap<>();
-        for (Map.Entry<K, V> entry : entryList) {
-            reversedMap.put(entry.getKey(), entry.getValue());
-        }
-
-        return reversedMap;
-    }
-
     // Calculate the haversine distance between two coordinates using GeoTools (unit: meter)
     public static double calculateHaversineDist(Coord coord1, Coord coord2){
         GeodeticCalculator calculator = new GeodeticCalculator();
@@ -16,24 +16,21 @@ import com.graphhopper.jsprit.core.util.Coordinate;
 import com.graphhopper.jsprit.core.util.Solutions;
 import com.graphhopper.jsprit.core.util.VehicleRoutingTransportCostsMatrix;
 import network.core.TransMode;
+import network.io.BinaryNetworkReader;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
-import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.router.DijkstraFactory;
 import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
-import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.vehicles.Vehicle;
 
 import java.io.FileWriter;
@@ -50,9 +47,7 @@ public class RunVrp {
     public static void main(String[] args) {
 
         // Load MATSim network
-        Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-        new MatsimNetworkReader(scenario.getNetwork()).readFile("../../data/intermediate/test/GemeenteLeuvenCleanedAllModesV1.xml.gz");
-        Network network = scenario.getNetwork();
+        Network network = BinaryNetworkReader.readNetwork("../../data/intermediate/test/GemeenteLeuvenCleanedAllModesV1.xml.gz");
 
         // Extract the bike network
         TransportModeNetworkFilter filter = new TransportModeNetworkFilter(network);
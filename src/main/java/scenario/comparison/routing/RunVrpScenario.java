@@ -8,17 +8,14 @@ import com.graphhopper.jsprit.core.problem.vehicle.VehicleType;
 import com.graphhopper.jsprit.core.problem.vehicle.VehicleTypeImpl;
 import com.graphhopper.jsprit.core.util.Coordinate;
 import network.core.TransMode;
+import network.io.BinaryNetworkReader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
-import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
-import org.matsim.core.network.io.MatsimNetworkReader;
-import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.collections.Tuple;
 
 import java.util.ArrayList;
@@ -66,9 +63,7 @@ public class RunVrpScenario {
 
     static Network readNetwork(String fileName, TransMode.Mode mode) {
         // Read the whole network
-        Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
-        new MatsimNetworkReader(scenario.getNetwork()).readFile(fileName);
-        Network network = scenario.getNetwork();
+        Network network = BinaryNetworkReader.readNetwork(fileName);
         if(mode != null) {
             LOG.info("Reading the subnetwork for mode: " + mode.name);
             TransportModeNetworkFilter filter = new TransportModeNetworkFilter(network);
@@ -0,0 +1,89 @@
+package freight_emission;
+
+import network.tools.LinkChainMerger;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiModalNetwork2HbefaMappingTest {
+
+    private static Link addLink(Network network, Node fromNode, Node toNode, double length, String highway) {
+        Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(fromNode.getId() + "-" + toNode.getId()),
+                fromNode, toNode, length, 13.89, 1000, 1);
+        link.setAllowedModes(Set.of(TransportMode.car));
+        if (highway != null) {
+            link.getAttributes().putAttribute("highway", highway);
+        }
+        return link;
+    }
+
+    @Test
+    void testMergeChainWithHbefaRoadTypes() {
+        Network network = NetworkUtils.createNetwork();
+        Node[] nodes = new Node[6];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = NetworkUtils.createAndAddNode(network, Id.createNodeId(i), new Coord(i * 10, 0));
+        }
+        // A one-way chain 0 -> 1 -> ... -> 5 of short links
+        addLink(network, nodes[0], nodes[1], 2, "primary");
+        addLink(network, nodes[1], nodes[2], 4, "primary_link");
+        addLink(network, nodes[2], nodes[3], 3, "secondary");
+        addLink(network, nodes[3], nodes[4], 4, null);
+        addLink(network, nodes[4], nodes[5], 2, "residential");
+
+        MultiModalNetwork2HbefaMapping mapping = new MultiModalNetwork2HbefaMapping();
+        new LinkChainMerger(network, 5, 100, mapping.sameHbefaRoadTypePredicate(), mapping.hbefaChainAttrConsumer()).run();
+
+        // The links of the same HBEFA road type are merged, and the merged link has the highway type of its longest link
+        Link primary = network.getLinks().get(Id.createLinkId("0-1-1-2"));
+        assertNotNull(primary);
+        assertEquals(6, primary.getLength(), 1e-9);
+        assertEquals("primary_link", primary.getAttributes().getAttribute("highway"));
+        assertEquals("URB/Trunk-City/70", mapping.determineHebfaType(primary));
+
+        // The links of different HBEFA road types are not merged
+        Link secondary = network.getLinks().get(Id.createLinkId("2-3"));
+        assertNotNull(secondary);
+        assertEquals(nodes[2], secondary.getFromNode());
+        assertEquals(nodes[3], secondary.getToNode());
+
+        // A link without a highway type is mapped to the access road type, and keeps the highway type of the other links
+        Link access = network.getLinks().get(Id.createLinkId("3-4-4-5"));
+        assertNotNull(access);
+        assertEquals(6, access.getLength(), 1e-9);
+        assertEquals("residential", access.getAttributes().getAttribute("highway"));
+        assertEquals("URB/Access/30", mapping.determineHebfaType(access));
+        assertEquals(3, network.getLinks().size());
+    }
+
+    @Test
+    void testSameHbefaRoadTypePredicate() {
+        Network network = NetworkUtils.createNetwork();
+        Node node0 = NetworkUtils.createAndAddNode(network, Id.createNodeId(0), new Coord(0, 0));
+        Node node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId(1), new Coord(10, 0));
+        Node node2 = NetworkUtils.createAndAddNode(network, Id.createNodeId(2), new Coord(20, 0));
+        Link link = addLink(network, node0, node1, 10, "tertiary");
+        Link sameType = addLink(network, node1, node2, 10, "tertiary_link");
+        Link otherType = addLink(network, node2, node1, 10, "secondary");
+        Link noHighway = addLink(network, node1, node0, 10, null);
+
+        MultiModalNetwork2HbefaMapping mapping = new MultiModalNetwork2HbefaMapping();
+        assertTrue(mapping.sameHbefaRoadTypePredicate().test(link, sameType));
+        assertFalse(mapping.sameHbefaRoadTypePredicate().test(link, otherType));
+        assertFalse(mapping.sameHbefaRoadTypePredicate().test(link, noHighway));
+        assertEquals("URB/Access/30", mapping.determineHebfaType(noHighway));
+
+        // The same HBEFA road type, but different link stats
+        sameType.setFreespeed(8.33);
+        assertFalse(mapping.sameHbefaRoadTypePredicate().test(link, sameType));
+    }
+}
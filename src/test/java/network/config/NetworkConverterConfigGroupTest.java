@@ -42,6 +42,17 @@ class NetworkConverterConfigGroupTest {
         checkIfAllParametersSetsAreSet(config);
     }
 
+    @Test
+    void testNumericDefaultsWithoutDefaultConfig() {
+        // A config loaded from a file without these parameters keeps their defaults, not 0
+        NetworkConverterConfigGroup config = new NetworkConverterConfigGroup();
+        NetworkConverterConfigGroup defaultConfig = NetworkConverterConfigGroup.createDefaultConfig();
+        assertEquals(defaultConfig.ELEVATION_TILE_CACHE_SIZE, config.ELEVATION_TILE_CACHE_SIZE);
+        assertEquals(defaultConfig.OUTPUT_GEOJSON_PRECISION, config.OUTPUT_GEOJSON_PRECISION);
+        assertEquals(defaultConfig.OUTPUT_MBTILES_MIN_ZOOM, config.OUTPUT_MBTILES_MIN_ZOOM);
+        assertEquals(defaultConfig.OUTPUT_MBTILES_MAX_ZOOM, config.OUTPUT_MBTILES_MAX_ZOOM);
+    }
+
     @Test
     void testWriteAndReadConfig(){
         // Test if the config file can be written
@@ -0,0 +1,115 @@
+package network.core;
+
+import network.config.NetworkConverterConfigGroup;
+import network.core.ConversionCheckpoints.Stage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversionCheckpointsTest {
+
+    private static SortedMap<String, String> createParams() {
+        SortedMap<String, String> params = new TreeMap<>();
+        params.put("FILE_TYPE", "osm");
+        params.put("INPUT_CRS", "EPSG:4326");
+        params.put("OUTPUT_CRS", "EPSG:31370");
+        params.put("KEEP_DETAILED_LINK", "false");
+        params.put("ONEWAY", "true");
+        params.put("modeParamSet[car].KEY_VALUE_MAPPING", "{highway:primary}");
+        params.put("modeParamSet[pt].KEY_VALUE_MAPPING", "{route:bus}");
+        params.put("linkAttrParamSet.MAX_SPEED_FIELD", "maxspeed");
+        params.put("connectedNetworkParamSet.METHOD", "reduce");
+        return params;
+    }
+
+    @Test
+    void testModeMappingChangeOnlyInvalidatesLaterStages() {
+        Map<Stage, String> keys = ConversionCheckpoints.computeStageKeys("input", createParams());
+        SortedMap<String, String> params = createParams();
+        params.put("modeParamSet[car].KEY_VALUE_MAPPING", "{highway:secondary}");
+        Map<Stage, String> changedKeys = ConversionCheckpoints.computeStageKeys("input", params);
+
+        assertEquals(keys.get(Stage.READ), changedKeys.get(Stage.READ));
+        assertEquals(keys.get(Stage.SPLIT), changedKeys.get(Stage.SPLIT));
+        assertNotEquals(keys.get(Stage.BUILD), changedKeys.get(Stage.BUILD));
+        assertNotEquals(keys.get(Stage.CLEAN), changedKeys.get(Stage.CLEAN));
+    }
+
+    @Test
+    void testReaderRelatedChangesInvalidateAllStages() {
+        Map<Stage, String> keys = ConversionCheckpoints.computeStageKeys("input", createParams());
+        // The pt mapping is used by the OsmReader
+        SortedMap<String, String> params = createParams();
+        params.put("modeParamSet[pt].KEY_VALUE_MAPPING", "{route:tram}");
+        Map<Stage, String> changedKeys = ConversionCheckpoints.computeStageKeys("input", params);
+        for (Stage stage : Stage.values()) {
+            assertNotEquals(keys.get(stage), changedKeys.get(stage));
+        }
+        // A changed input file
+        Map<Stage, String> changedInputKeys = ConversionCheckpoints.computeStageKeys("changedInput", createParams());
+        assertNotEquals(keys.get(Stage.READ), changedInputKeys.get(Stage.READ));
+        // An unknown parameter is assigned to the first stage
+        params = createParams();
+        params.put("SOME_NEW_PARAM", "value");
+        assertNotEquals(keys.get(Stage.READ), ConversionCheckpoints.computeStageKeys("input", params).get(Stage.READ));
+    }
+
+    @Test
+    void testOutputCrsChangeOnlyInvalidatesCleanStage() {
+        Map<Stage, String> keys = ConversionCheckpoints.computeStageKeys("input", createParams());
+        SortedMap<String, String> params = createParams();
+        params.put("OUTPUT_CRS", "EPSG:4326");
+        Map<Stage, String> changedKeys = ConversionCheckpoints.computeStageKeys("input", params);
+
+        assertEquals(keys.get(Stage.BUILD), changedKeys.get(Stage.BUILD));
+        assertNotEquals(keys.get(Stage.CLEAN), changedKeys.get(Stage.CLEAN));
+    }
+
+    @Test
+    void testInputIsOnlyHashedWhenNeeded() throws IOException {
+        NetworkConverterConfigGroup config = NetworkConverterConfigGroup.createDefaultConfig();
+        config.CHECKPOINT_DIRECTORY = Files.createTempDirectory("checkpoints").toString();
+        // The input file does not exist, so that hashing it would fail
+        config.INPUT_NETWORK_FILE = Path.of(config.CHECKPOINT_DIRECTORY, "missing.pbf").toString();
+
+        // Without any checkpoint on the disk, there is nothing to compare the keys with
+        ConversionCheckpoints checkpoints = new ConversionCheckpoints(config);
+        assertNull(checkpoints.getLastCompletedStage());
+    }
+
+    @Test
+    void testReplacedDemFileChangesTheParams() throws IOException {
+        NetworkConverterConfigGroup config = NetworkConverterConfigGroup.createDefaultConfig();
+        Path demFile = Files.createTempFile("dem", ".tif");
+        Files.write(demFile, new byte[]{1, 2, 3});
+        config.ELEVATION_DEM_FILE = demFile.toString();
+        String param = ConversionCheckpoints.collectParams(config).get("ELEVATION_DEM_FILE");
+
+        // The DEM file is replaced at the same path (with another size and modification time)
+        Files.write(demFile, new byte[]{1, 2, 3, 4});
+        Files.setLastModifiedTime(demFile, FileTime.fromMillis(Files.getLastModifiedTime(demFile).toMillis() + 60_000));
+        String changedParam = ConversionCheckpoints.collectParams(config).get("ELEVATION_DEM_FILE");
+        assertNotEquals(param, changedParam);
+        assertTrue(changedParam.startsWith(demFile.toString()));
+
+        // Only the BUILD stage (and the later ones) depend on the DEM
+        SortedMap<String, String> params = createParams();
+        params.put("ELEVATION_DEM_FILE", param);
+        Map<Stage, String> keys = ConversionCheckpoints.computeStageKeys("input", params);
+        params.put("ELEVATION_DEM_FILE", changedParam);
+        Map<Stage, String> changedKeys = ConversionCheckpoints.computeStageKeys("input", params);
+        assertEquals(keys.get(Stage.SPLIT), changedKeys.get(Stage.SPLIT));
+        assertNotEquals(keys.get(Stage.BUILD), changedKeys.get(Stage.BUILD));
+
+        // An unset DEM is described by its value only
+        assertEquals("NA", ConversionCheckpoints.describeFile("NA"));
+    }
+}
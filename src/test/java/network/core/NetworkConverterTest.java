@@ -0,0 +1,118 @@
+package network.core;
+
+import network.config.NetworkConverterConfigGroup;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkConverterTest {
+
+    private static final String CONFIG_FILE = "../data/testRunNetworkConversionFromOsmFile/testConfig.xml";
+    private static final String INPUT_FILE = "../data/testOsmReader/test_equil.pbf";
+
+    private static NetworkConverterConfigGroup createConfig() {
+        NetworkConverterConfigGroup config = NetworkConverterConfigGroup.loadConfigFile(CONFIG_FILE);
+        config.INPUT_NETWORK_FILE = INPUT_FILE;
+        config.CHECKPOINT_DIRECTORY = "NA";
+        config.RESUME_FROM_CHECKPOINT = false;
+        return config;
+    }
+
+    private static Network convert(NetworkConverterConfigGroup config) {
+        NetworkConverter converter = new NetworkConverter(config);
+        converter.convert();
+        return converter.getNetwork();
+    }
+
+    // Check that the networks have the same nodes and links, with the same attributes
+    static void assertSameNetwork(Network expected, Network actual) {
+        assertEquals(expected.getNodes().keySet(), actual.getNodes().keySet());
+        for (Node node : expected.getNodes().values()) {
+            assertEquals(node.getCoord(), actual.getNodes().get(node.getId()).getCoord(), "Node " + node.getId());
+        }
+        assertEquals(expected.getLinks().keySet(), actual.getLinks().keySet());
+        for (Link link : expected.getLinks().values()) {
+            Link actualLink = actual.getLinks().get(link.getId());
+            String message = "Link " + link.getId();
+            assertEquals(link.getFromNode().getId(), actualLink.getFromNode().getId(), message);
+            assertEquals(link.getToNode().getId(), actualLink.getToNode().getId(), message);
+            assertEquals(link.getLength(), actualLink.getLength(), 0.0, message);
+            assertEquals(link.getFreespeed(), actualLink.getFreespeed(), 0.0, message);
+            assertEquals(link.getCapacity(), actualLink.getCapacity(), 0.0, message);
+            assertEquals(link.getNumberOfLanes(), actualLink.getNumberOfLanes(), 0.0, message);
+            assertEquals(link.getAllowedModes(), actualLink.getAllowedModes(), message);
+            assertEquals(link.getAttributes().getAsMap(), actualLink.getAttributes().getAsMap(), message);
+        }
+    }
+
+    @Test
+    void testConvertFromColumnarGraphStore() {
+        Network expected = convert(createConfig());
+
+        NetworkConverterConfigGroup config = createConfig();
+        config.COLUMNAR_GRAPH_STORE = true;
+        Network actual = convert(config);
+
+        assertEquals(23, actual.getLinks().size());
+        assertTrue(actual.getLinks().get(Id.createLinkId("1_0")).getAllowedModes().contains("pt"));
+        assertSameNetwork(expected, actual);
+
+        // With the fixed-point coordinates as well
+        config = createConfig();
+        config.FIXED_POINT_COORDINATES = true;
+        expected = convert(config);
+        config = createConfig();
+        config.FIXED_POINT_COORDINATES = true;
+        config.COLUMNAR_GRAPH_STORE = true;
+        assertSameNetwork(expected, convert(config));
+    }
+
+    @Test
+    void testStreamingConversion() {
+        Network expected = convert(createConfig());
+
+        // The streamed network is the same as the batch-converted one, whatever the number of workers, which is why
+        // the streaming options are not part of the checkpoint keys
+        for (int workers : new int[]{1, 4}) {
+            NetworkConverterConfigGroup config = createConfig();
+            config.STREAMING_CONVERSION = true;
+            config.STREAMING_WORKERS = workers;
+            Network actual = convert(config);
+            assertEquals(expected.getLinks().size(), actual.getLinks().size());
+            assertSameNetwork(expected, actual);
+        }
+    }
+
+    @Test
+    void testResumeFromCheckpoints() throws IOException {
+        Network expected = convert(createConfig());
+
+        NetworkConverterConfigGroup config = createConfig();
+        Path directory = Files.createTempDirectory("checkpoints");
+        config.CHECKPOINT_DIRECTORY = directory.toString();
+        assertSameNetwork(expected, convert(config));
+
+        // Resume from each stage in turn, by removing the checkpoints of the later stages
+        config.RESUME_FROM_CHECKPOINT = true;
+        for (String[] laterCheckpoints : new String[][]{{}, {"clean.bin"}, {"clean.bin", "build.bin"}}) {
+            for (String laterCheckpoint : laterCheckpoints) {
+                Files.deleteIfExists(directory.resolve(laterCheckpoint));
+            }
+            assertSameNetwork(expected, convert(config));
+        }
+
+        // A changed config (of the BUILD stage) is not resumed from the stale checkpoints, but from the read stage
+        config.KEEP_UNDEFINED_LINK = !config.KEEP_UNDEFINED_LINK;
+        NetworkConverterConfigGroup changedConfig = createConfig();
+        changedConfig.KEEP_UNDEFINED_LINK = config.KEEP_UNDEFINED_LINK;
+        assertSameNetwork(convert(changedConfig), convert(config));
+    }
+}
@@ -93,9 +93,9 @@ class NetworkElementTest {
 
         // Check if the composed nodes are set correctly
         assertEquals(3, link04To00.getComposedNodes().size());
-        assertEquals(link04To00.getComposedNodes().get("(0,1)"), node01);
-        assertEquals(link04To00.getComposedNodes().get("(0,2)"), node02);
-        assertEquals(link04To00.getComposedNodes().get("(0,3)"), node03);
+        assertEquals(link04To00.getComposedNodes().get(0), node01);
+        assertEquals(link04To00.getComposedNodes().get(1), node02);
+        assertEquals(link04To00.getComposedNodes().get(2), node03);
 
         // clear the composed nodes
         link04To00.getComposedNodes().clear();
@@ -103,7 +103,7 @@ class NetworkElementTest {
 
         // check the sequence of the composed nodes
         int i = 0;
-        for (NetworkElement.Node node : link04To00.getComposedNodes().values()) {
+        for (NetworkElement.Node node : link04To00.getComposedNodes()) {
             switch (i) {
                 case 0:
                     assertEquals(node01, node);
@@ -122,6 +122,67 @@ class NetworkElementTest {
 
     }
 
+    @Test
+    void reversedAndRepeatedComposedNodes(){
+        NetworkElement.Node node0 = new NetworkElement.Node(0, 0.0, 0.0);
+        NetworkElement.Node node1 = new NetworkElement.Node(1, 1.0, 0.0);
+        NetworkElement.Node node2 = new NetworkElement.Node(2, 1.0, 1.0);
+        NetworkElement.Node node3 = new NetworkElement.Node(3, 0.0, 1.0);
+        // A closed way visits the node 1 twice
+        NetworkElement.Link link = new NetworkElement.Link("loop", node0, node3);
+        link.addComposedNodes(List.of(node1, node2, node1));
+        assertEquals(List.of(node1, node2, node1), link.getComposedNodes());
+
+        // The reversed link shares the composed nodes in reverse order
+        NetworkElement.Link reversedLink = new NetworkElement.Link("loop_reversed", node3, node0);
+        NetworkElement.Link otherLink = new NetworkElement.Link("other", node0, node3);
+        otherLink.addComposedNodes(List.of(node1, node2));
+        reversedLink.setReversedComposedNodes(otherLink);
+        assertEquals(List.of(node2, node1), reversedLink.getComposedNodes());
+
+        // Modifying either link does not affect the other one (copy-on-write)
+        reversedLink.addComposedNode(node3);
+        assertEquals(List.of(node2, node1, node3), reversedLink.getComposedNodes());
+        assertEquals(List.of(node1, node2), otherLink.getComposedNodes());
+        otherLink.addComposedNode(node0);
+        assertEquals(List.of(node1, node2, node0), otherLink.getComposedNodes());
+        assertEquals(List.of(node2, node1, node3), reversedLink.getComposedNodes());
+        assertEquals(List.of(node1, node2, node1), link.getComposedNodes());
+    }
+
+    @Test
+    void fixedPointNodeCoordinates(){
+        NetworkElement.Node node = new NetworkElement.FixedPointNode(1L, 4.7005123, 50.8798765);
+        assertEquals(4.7005123, node.getX(), 1e-9);
+        assertEquals(50.8798765, node.getCoord().getY(), 1e-9);
+        assertFalse(node.hasZ());
+        assertFalse(node.getCoord().hasZ());
+        // A fixed-point node is equal to a node with the same id
+        assertEquals(new NetworkElement.Node(1L, 4.7005123, 50.8798765), node);
+
+        NetworkElement.Node nodeWithElevation = new NetworkElement.FixedPointNode(2L, -179.9999999, -89.9999999, 25.125);
+        assertEquals(-179.9999999, nodeWithElevation.getX(), 1e-9);
+        assertEquals(25.125, nodeWithElevation.getCoord().getZ(), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> new NetworkElement.FixedPointNode(3L, 150000.0, 170000.0));
+    }
+
+    @Test
+    void sharedKeyValuePairs(){
+        NetworkElement.Node node0 = new NetworkElement.Node(0, 0.0, 0.0);
+        NetworkElement.Node node1 = new NetworkElement.Node(1, 1.0, 0.0);
+        NetworkElement.Link link = new NetworkElement.Link("a", node0, node1);
+        link.addKeyValuePair("highway", "primary");
+        NetworkElement.Link splitLink = new NetworkElement.Link("a_0", node0, node1);
+        splitLink.shareKeyValuePairs(link);
+        assertSame(link.getKeyValuePairs(), splitLink.getKeyValuePairs());
+
+        // Modifying either link does not affect the other one (copy-on-write)
+        splitLink.addKeyValuePair("lanes", "2");
+        link.addKeyValuePair("oneway", "yes");
+        assertEquals(Map.of("highway", "primary", "lanes", "2"), splitLink.getKeyValuePairs());
+        assertEquals(Map.of("highway", "primary", "oneway", "yes"), link.getKeyValuePairs());
+    }
+
     @Test
     void setAndGetAllowedModesForLink(){
         // create a sample network
@@ -0,0 +1,110 @@
+package network.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkGraphStoreTest {
+
+    private static NetworkGraphStore createStore() {
+        NetworkGraphStore store = new NetworkGraphStore();
+        for (int i = 0; i < 5; i++) {
+            store.addNode(10 + i, i * 10.0, 0.0);
+        }
+        // 10 -> (11, 12) -> 13 and 13 -> (12) -> 14, which share the composed node 12
+        store.addLink(100, 0, 3, new int[]{1, 2}, 2, 0L, Map.of("highway", "primary"));
+        store.addLink(101, 3, 4, new int[]{2, 99}, 1, 0L, Map.of("highway", "primary"));
+        return store;
+    }
+
+    @Test
+    void testColumnsAndViews() {
+        NetworkGraphStore store = createStore();
+
+        assertEquals(5, store.getNodeCount());
+        assertEquals(2, store.getLinkCount());
+        // The identical tags are stored once
+        assertEquals(1, store.getTagSetCount());
+        assertEquals(1, store.getComposedNodeCount(1));
+
+        NetworkGraphStore.LinkView linkView = store.getLink(store.getLinkIndex(100));
+        assertEquals("Link", linkView.getType());
+        assertEquals("100", linkView.getId());
+        assertEquals("10", linkView.getFromNode().getId());
+        assertEquals("13", linkView.getToNode().getId());
+        assertEquals(List.of("11", "12"), linkView.getComposedNodes().stream().map(NetworkGraphStore.NodeView::getId).toList());
+        assertEquals("primary", linkView.getKeyValuePairs().get("highway"));
+
+        NetworkGraphStore.NodeView nodeView = store.getNode(store.getNodeIndex(13));
+        assertEquals(30.0, nodeView.getCoord().getX(), 0.0);
+        assertEquals(Set.of("100", "101"), new HashSet<>(nodeView.getRelatedLinks().stream().map(NetworkGraphStore.LinkView::getId).toList()));
+        assertEquals(store.getNode(3), nodeView);
+        assertEquals(NetworkGraphStore.NO_NODE, store.getNodeIndex(42));
+        assertEquals(NetworkGraphStore.NO_LINK, store.getLinkIndex(42));
+    }
+
+    @Test
+    void testModesAndTags() {
+        NetworkGraphStore store = createStore();
+        store.addAllowedModes(0, Set.of(TransMode.Mode.PT));
+        store.addTags(0, Map.of("type", "route"));
+
+        assertEquals(Set.of(TransMode.Mode.PT), store.getLink(0).getAllowedModes());
+        assertEquals(NetworkGraphStore.toModeMask(Set.of(TransMode.Mode.PT)), store.getModeMask(0));
+        assertEquals(Map.of("highway", "primary", "type", "route"), store.getTags(0));
+        // The tag set that is shared with the other link is not modified
+        assertEquals(Map.of("highway", "primary"), store.getTags(1));
+        assertEquals(2, store.getTagSetCount());
+    }
+
+    @Test
+    void testIntersectionsAndRawLinks() {
+        NetworkGraphStore store = createStore();
+        int[] counts = store.countComposedNodeRefs();
+        assertEquals(2, counts[2]);
+        assertArrayEquals(new int[]{1}, store.getIntersectionPositions(0, counts));
+        assertArrayEquals(new int[]{0}, store.getIntersectionPositions(1, counts));
+
+        NetworkElement.Node[] nodeCache = new NetworkElement.Node[store.getNodeCount()];
+        NetworkElement.Link link = store.getRawLink(0, nodeCache, false);
+        NetworkElement.Link otherLink = store.getRawLink(1, nodeCache, true);
+        assertEquals("100", link.getId());
+        assertEquals("10", link.getFromNode().getId());
+        assertEquals(List.of("11", "12"), link.getComposedNodes().stream().map(NetworkElement.Node::getId).toList());
+        assertEquals("primary", link.getKeyValuePairs().get("highway"));
+        assertTrue(link.getAllowedModes().isEmpty());
+        // The raw links share their nodes through the cache
+        assertSame(link.getToNode(), otherLink.getFromNode());
+        assertSame(link.getComposedNodes().get(1), otherLink.getComposedNodes().get(0));
+        assertInstanceOf(NetworkElement.FixedPointNode.class, otherLink.getToNode());
+        // The shared tags are copied before they are modified
+        link.addKeyValuePair("name", "a");
+        assertFalse(store.getTags(0).containsKey("name"));
+    }
+
+    @Test
+    void testGrowAndUnsortedIds() {
+        NetworkGraphStore store = new NetworkGraphStore();
+        int n = 5000;
+        for (int i = 0; i < n; i++) {
+            // The ids are not in ascending order
+            store.addNode((i * 7919L) % n, i, i);
+        }
+        for (int i = 0; i < n - 1; i++) {
+            store.addLink(i, i, i + 1, new int[]{i, i + 1, i}, 3, 0L, Map.of());
+        }
+        assertEquals(n - 1, store.getLinkCount());
+        assertEquals(3, store.getComposedNodeCount(n - 2));
+        assertEquals(n - 2, store.getComposedNode(n - 2, 0));
+        assertEquals(2, store.getRelatedLinkCount(1));
+        for (int i = 0; i < n; i += 97) {
+            assertEquals(i, store.getNodeIndex((i * 7919L) % n));
+        }
+        // A node that is added after the first lookup
+        int node = store.addNode(-1, 0, 0);
+        assertEquals(node, store.getNodeIndex(-1));
+        assertEquals(n - 2, store.getLinkIndex(n - 2));
+    }
+}
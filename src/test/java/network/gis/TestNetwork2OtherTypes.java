@@ -1,11 +1,53 @@
 package network.gis;
 
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFinder;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.LocalInputFile;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.schema.MessageType;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -45,6 +87,311 @@ public class TestNetwork2OtherTypes {
         assertDoesNotThrow(() -> network2GeoJson.write("../data/testNetwork2Others/test_equil.geojson"));
     }
 
+    @Test
+    void testStreamGeoJson() throws IOException {
+        // Load a test network
+        Network network = loadTestNetwork();
+        // Stream the links as newline-delimited GeoJSON, with 2 decimals
+        Network2GeoJson network2GeoJson = new Network2GeoJson("", network).setPrecision(2).setNewlineDelimited(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        network2GeoJson.write(out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(25, lines.length);
+        for (String line : lines) {
+            assertTrue(line.startsWith("{\"type\":\"Feature\""));
+            assertTrue(line.contains("\"linkId\""));
+        }
+        assertDoesNotThrow(() -> new Network2GeoJson("", network).write("../data/testNetwork2Others/test_equil.geojson.gz"));
+    }
+
+    @Test
+    void testFormatCoordinate() {
+        StringBuilder sb = new StringBuilder();
+        assertTrue(Network2GeoJson.formatCoordinate(1.2300004, 6, sb));
+        assertEquals("1.23", sb.toString());
+        sb.setLength(0);
+        assertTrue(Network2GeoJson.formatCoordinate(-0.000012, 6, sb));
+        assertEquals("-0.000012", sb.toString());
+        sb.setLength(0);
+        assertTrue(Network2GeoJson.formatCoordinate(-0.0000001, 6, sb));
+        assertEquals("0", sb.toString());
+    }
+
+    @Test
+    void testConvertToFlatGeobuf() throws IOException {
+        // Load a test network
+        Network network = loadTestNetwork();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Network2FlatGeobuf("EPSG:25832", network).write(out);
+        byte[] bytes = out.toByteArray();
+
+        // The magic bytes, then the header (prefixed by its size) and the index of 25 leaves and 2 internal nodes
+        assertArrayEquals(new byte[]{0x66, 0x67, 0x62, 0x03, 0x66, 0x67, 0x62, 0x00}, Arrays.copyOf(bytes, 8));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int indexStart = 12 + buffer.getInt(8);
+        int featuresStart = indexStart + (25 + 2 + 1) * 40;
+        // The root covers the whole network, and the first leaf points to the first feature
+        assertEquals(1, buffer.getLong(indexStart + 32));
+        assertEquals(0, buffer.getLong(indexStart + 3 * 40 + 32));
+        assertTrue(featuresStart < bytes.length);
+    }
+
+    @Test
+    void testReadFlatGeobuf() throws IOException {
+        // Load a test network
+        Network network = loadTestNetwork();
+        File file = File.createTempFile("network", ".fgb");
+        file.deleteOnExit();
+        new Network2FlatGeobuf("EPSG:25832", network).write(file.getPath());
+
+        // Read the features back with the FlatGeobuf reader of GeoTools
+        Map<String, Object> params = new HashMap<>();
+        params.put("url", file.toURI().toURL());
+        DataStore dataStore = DataStoreFinder.getDataStore(params);
+        assertNotNull(dataStore);
+        Map<String, Coordinate[]> geometries = new HashMap<>();
+        try (SimpleFeatureIterator features = dataStore.getFeatureSource(dataStore.getTypeNames()[0]).getFeatures().features()) {
+            while (features.hasNext()) {
+                SimpleFeature feature = features.next();
+                Link link = network.getLinks().get(Id.createLinkId((String) feature.getAttribute("linkId")));
+                assertNotNull(link);
+                assertEquals(link.getLength(), ((Number) feature.getAttribute("length")).doubleValue(), 0);
+                assertEquals(link.getCapacity(), ((Number) feature.getAttribute("capacity")).doubleValue(), 0);
+                geometries.put(link.getId().toString(), ((Geometry) feature.getDefaultGeometry()).getCoordinates());
+            }
+        } finally {
+            dataStore.dispose();
+        }
+
+        // Each link is read back once, with the coordinates of its nodes
+        assertEquals(network.getLinks().size(), geometries.size());
+        for (Link link : network.getLinks().values()) {
+            Coordinate[] coordinates = geometries.get(link.getId().toString());
+            assertEquals(2, coordinates.length);
+            assertCoordEquals(link.getFromNode().getCoord(), coordinates[0].getX(), coordinates[0].getY());
+            assertCoordEquals(link.getToNode().getCoord(), coordinates[1].getX(), coordinates[1].getY());
+        }
+    }
+
+    @Test
+    void testConvertToGeoParquet() throws IOException {
+        // Load a test network
+        Network network = loadTestNetwork();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Network2GeoParquet("EPSG:25832", network).setRowGroupSize(10).write(out);
+        byte[] bytes = out.toByteArray();
+
+        // The magic bytes at both ends, with the length of the footer before the last ones
+        assertEquals("PAR1", new String(bytes, 0, 4, StandardCharsets.US_ASCII));
+        assertEquals("PAR1", new String(bytes, bytes.length - 4, 4, StandardCharsets.US_ASCII));
+        int footerLength = ByteBuffer.wrap(bytes, bytes.length - 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        assertTrue(footerLength > 0 && footerLength < bytes.length - 12);
+        String footer = new String(bytes, bytes.length - 8 - footerLength, footerLength, StandardCharsets.UTF_8);
+        assertTrue(footer.contains("\"primary_column\":\"geometry\""));
+        assertDoesNotThrow(() -> new Network2GeoParquet("EPSG:25832", network).write("../data/testNetwork2Others/test_equil.parquet"));
+    }
+
+    @Test
+    void testReadGeoParquet() throws IOException {
+        // Load a test network
+        Network network = loadTestNetwork();
+        for (boolean compressed : new boolean[]{true, false}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new Network2GeoParquet("EPSG:25832", network).setRowGroupSize(10).setCompressed(compressed).write(out);
+            byte[] bytes = out.toByteArray();
+
+            // FileMetaData: version (1), schema (2), num_rows (3), row_groups (4)
+            int footerLength = ByteBuffer.wrap(bytes, bytes.length - 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+            Map<Integer, Object> metaData = new ThriftCompactReader(bytes, bytes.length - 8 - footerLength).readStruct();
+            assertEquals(1L, metaData.get(1));
+            assertEquals(25L, metaData.get(3));
+            // SchemaElement: name (4)
+            List<String> names = new ArrayList<>();
+            for (Object element : (List<?>) metaData.get(2)) {
+                names.add(new String((byte[]) ((Map<?, ?>) element).get(4), StandardCharsets.UTF_8));
+            }
+            assertEquals(List.of("schema", "geometry", "bbox", "xmin", "ymin", "xmax", "ymax", "linkId"), names.subList(0, 8));
+            List<?> rowGroups = (List<?>) metaData.get(4);
+            assertEquals(3, rowGroups.size());
+
+            // Read the ids and the WKB geometries back from the column chunks of each row group
+            Map<String, double[]> geometries = new HashMap<>();
+            for (Object rowGroup : rowGroups) {
+                // RowGroup: columns (1), num_rows (3)
+                Map<?, ?> columns = (Map<?, ?>) rowGroup;
+                List<byte[]> ids = readBinaryColumn(bytes, columns, "linkId");
+                List<byte[]> wkbs = readBinaryColumn(bytes, columns, "geometry");
+                assertEquals(columns.get(3), (long) ids.size());
+                assertEquals(ids.size(), wkbs.size());
+                for (int i = 0; i < ids.size(); i++) {
+                    // A little-endian LineString with 2 points
+                    ByteBuffer wkb = ByteBuffer.wrap(wkbs.get(i)).order(ByteOrder.LITTLE_ENDIAN);
+                    assertEquals(1, wkb.get());
+                    assertEquals(2, wkb.getInt());
+                    assertEquals(2, wkb.getInt());
+                    double[] coordinates = {wkb.getDouble(), wkb.getDouble(), wkb.getDouble(), wkb.getDouble()};
+                    assertFalse(wkb.hasRemaining());
+                    geometries.put(new String(ids.get(i), StandardCharsets.UTF_8), coordinates);
+                }
+            }
+
+            // Each link is read back once, with the coordinates of its nodes
+            assertEquals(network.getLinks().size(), geometries.size());
+            for (Link link : network.getLinks().values()) {
+                double[] coordinates = geometries.get(link.getId().toString());
+                assertNotNull(coordinates);
+                assertCoordEquals(link.getFromNode().getCoord(), coordinates[0], coordinates[1]);
+                assertCoordEquals(link.getToNode().getCoord(), coordinates[2], coordinates[3]);
+            }
+        }
+    }
+
+    @Test
+    void testReadGeoParquetWithParquetHadoop() throws IOException, ParseException {
+        // Read the file with parquet-hadoop, independently of the writer and of the ThriftCompactReader
+        Network network = loadTestNetwork();
+        for (boolean compressed : new boolean[]{true, false}) {
+            File file = File.createTempFile("network", ".parquet");
+            file.deleteOnExit();
+            new Network2GeoParquet("EPSG:25832", network).setRowGroupSize(10).setCompressed(compressed).write(file.getPath());
+
+            Map<String, Group> rows = new HashMap<>();
+            try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(file.toPath()))) {
+                FileMetaData metaData = reader.getFooter().getFileMetaData();
+                assertTrue(metaData.getKeyValueMetaData().get("geo").contains("\"primary_column\":\"geometry\""));
+                assertEquals(3, reader.getRowGroups().size());
+                MessageType schema = metaData.getSchema();
+                MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(schema);
+                PageReadStore rowGroup;
+                while ((rowGroup = reader.readNextRowGroup()) != null) {
+                    RecordReader<Group> records = columnIO.getRecordReader(rowGroup, new GroupRecordConverter(schema));
+                    for (long i = 0; i < rowGroup.getRowCount(); i++) {
+                        Group row = records.read();
+                        rows.put(row.getString("linkId", 0), row);
+                    }
+                }
+            }
+
+            // Each link is read back once, with its geometry, bbox, stats and modes
+            assertEquals(network.getLinks().size(), rows.size());
+            WKBReader wkbReader = new WKBReader();
+            for (Link link : network.getLinks().values()) {
+                Group row = rows.get(link.getId().toString());
+                assertNotNull(row);
+                Coordinate[] coordinates = wkbReader.read(row.getBinary("geometry", 0).getBytes()).getCoordinates();
+                assertEquals(2, coordinates.length);
+                Coord from = link.getFromNode().getCoord();
+                Coord to = link.getToNode().getCoord();
+                assertCoordEquals(from, coordinates[0].x, coordinates[0].y);
+                assertCoordEquals(to, coordinates[1].x, coordinates[1].y);
+                Group bbox = row.getGroup("bbox", 0);
+                assertEquals(Math.min(from.getX(), to.getX()), bbox.getDouble("xmin", 0), 0);
+                assertEquals(Math.max(from.getY(), to.getY()), bbox.getDouble("ymax", 0), 0);
+                assertEquals(link.getLength(), row.getDouble("length", 0), 0);
+                assertEquals(link.getFreespeed(), row.getDouble("freespeed", 0), 0);
+                assertEquals(link.getCapacity(), row.getDouble("capacity", 0), 0);
+                assertEquals(link.getNumberOfLanes(), row.getDouble("lanes", 0), 0);
+                Group modes = row.getGroup("modes", 0);
+                Set<String> readModes = new HashSet<>();
+                for (int i = 0; i < modes.getFieldRepetitionCount("list"); i++) {
+                    readModes.add(modes.getGroup("list", i).getString("element", 0));
+                }
+                assertEquals(link.getAllowedModes(), readModes);
+            }
+        }
+    }
+
+    // Decode the PLAIN-encoded values of a required binary column (without levels) in a row group
+    private static List<byte[]> readBinaryColumn(byte[] bytes, Map<?, ?> rowGroup, String name) throws IOException {
+        for (Object column : (List<?>) rowGroup.get(1)) {
+            // ColumnChunk: meta_data (3); ColumnMetaData: path_in_schema (3), codec (4), data_page_offset (9)
+            Map<?, ?> metaData = (Map<?, ?>) ((Map<?, ?>) column).get(3);
+            List<?> path = (List<?>) metaData.get(3);
+            if (path.size() != 1 || !name.equals(new String((byte[]) path.get(0), StandardCharsets.UTF_8))) {
+                continue;
+            }
+            // PageHeader: uncompressed_page_size (2), compressed_page_size (3), data_page_header (5); DataPageHeader: num_values (1)
+            ThriftCompactReader reader = new ThriftCompactReader(bytes, ((Long) metaData.get(9)).intValue());
+            Map<Integer, Object> pageHeader = reader.readStruct();
+            byte[] page = Arrays.copyOfRange(bytes, reader.getPosition(), reader.getPosition() + ((Long) pageHeader.get(3)).intValue());
+            if ((Long) metaData.get(4) == 2) {
+                // GZIP
+                try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(page))) {
+                    page = in.readAllBytes();
+                }
+            }
+            assertEquals(pageHeader.get(2), (long) page.length);
+
+            // Each value is its length (int32) followed by its bytes
+            ByteBuffer buffer = ByteBuffer.wrap(page).order(ByteOrder.LITTLE_ENDIAN);
+            long numValues = (Long) ((Map<?, ?>) pageHeader.get(5)).get(1);
+            List<byte[]> values = new ArrayList<>();
+            for (int i = 0; i < numValues; i++) {
+                byte[] value = new byte[buffer.getInt()];
+                buffer.get(value);
+                values.add(value);
+            }
+            assertFalse(buffer.hasRemaining());
+            return values;
+        }
+        return fail("No column chunk of " + name);
+    }
+
+    private static void assertCoordEquals(Coord expected, double x, double y) {
+        assertEquals(expected.getX(), x, 0);
+        assertEquals(expected.getY(), y, 0);
+    }
+
+    @Test
+    void testHilbertOrder() {
+        // The curve starts at the origin, and the neighbouring cells are next to each other
+        assertEquals(0, SpatialLinkTable.hilbert(0, 0));
+        assertEquals(1, SpatialLinkTable.hilbert(1, 0));
+        assertEquals(2, SpatialLinkTable.hilbert(1, 1));
+        assertEquals(3, SpatialLinkTable.hilbert(0, 1));
+        // ... and ends at the other bottom corner
+        assertEquals((1L << 32) - 1, SpatialLinkTable.hilbert(65535, 0));
+    }
+
+    @Test
+    void testConvertToMBTiles() throws SQLException {
+        // Load a test network
+        Network network = loadTestNetwork();
+        Network2MBTiles network2MBTiles = new Network2MBTiles("EPSG:25832", network).setZoomRange(8, 12);
+        Map<Integer, Integer> tilesPerZoom = new HashMap<>();
+        network2MBTiles.generateTiles((zoom, x, y, tile) -> {
+            // Each tile is gzip-compressed
+            assertEquals(0x1f, tile[0] & 0xFF);
+            assertEquals(0x8b, tile[1] & 0xFF);
+            tilesPerZoom.merge(zoom, 1, Integer::sum);
+        });
+        // The network is drawn at every zoom, with more tiles at the higher zooms
+        assertEquals(5, tilesPerZoom.size());
+        assertTrue(tilesPerZoom.get(8) <= tilesPerZoom.get(12));
+
+        String file = "../data/testNetwork2Others/test_equil.mbtiles";
+        network2MBTiles.write(file);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file);
+             Statement statement = connection.createStatement()) {
+            ResultSet count = statement.executeQuery("SELECT COUNT(*) FROM tiles");
+            assertTrue(count.next());
+            assertEquals(tilesPerZoom.values().stream().mapToInt(Integer::intValue).sum(), count.getInt(1));
+            ResultSet format = statement.executeQuery("SELECT value FROM metadata WHERE name = 'format'");
+            assertTrue(format.next());
+            assertEquals("pbf", format.getString(1));
+        }
+    }
+
+    @Test
+    void testClipSegment() {
+        // A segment across the square is cut at its borders, and a segment outside the square is dropped
+        double[] segment = {-10, 50, 110, 50};
+        assertTrue(Network2MBTiles.clip(segment, 0, 100));
+        assertArrayEquals(new double[]{0, 50, 100, 50}, segment, 1e-9);
+        assertFalse(Network2MBTiles.clip(new double[]{-10, -10, -5, 200}, 0, 100));
+    }
+
     @Test
     void testConvertToShapefile() {
         // Load a test network
@@ -55,6 +402,20 @@ public class TestNetwork2OtherTypes {
         network2Shp.write("../data/testNetwork2Others/test_equil.shp");
     }
 
+    @Test
+    void testSplitShapefile() {
+        // Load a test network
+        Network network = loadTestNetwork();
+        // Split the 25 links into shapefiles of at most 10 features
+        Network2Shp network2Shp = new Network2Shp("", network);
+        network2Shp.setMaxFeaturesPerFile(10);
+
+        network2Shp.write("../data/testNetwork2Others/test_equil_split.shp");
+        assertTrue(new File("../data/testNetwork2Others/test_equil_split.shp").exists());
+        assertTrue(new File(Network2Shp.getPartPath("../data/testNetwork2Others/test_equil_split.shp", 2)).exists());
+        assertTrue(new File("../data/testNetwork2Others/test_equil_split_3.shp").exists());
+    }
+
     public static Network loadTestNetwork() {
         // Read the matsim "equil" network from a test file
         String testNetworkFile = "../data/testNetwork2Others/test_equil_raw.xml";
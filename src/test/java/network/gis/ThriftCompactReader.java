@@ -0,0 +1,86 @@
+package network.gis;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal reader of the Thrift compact protocol, to decode the metadata of the Parquet files in the tests
+ * independently of the {@link ThriftCompactWriter}. A struct is read as a map from the field ids to the values: a
+ * struct is a map, a list is a list, a binary is a byte array, and the integers are longs.
+ *
+ * @author Xander
+ */
+final class ThriftCompactReader {
+
+    private final ByteBuffer buffer;
+
+    ThriftCompactReader(byte[] bytes, int offset) {
+        this.buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.position(offset);
+    }
+
+    int getPosition() {
+        return this.buffer.position();
+    }
+
+    Map<Integer, Object> readStruct() {
+        Map<Integer, Object> fields = new HashMap<>();
+        int fieldId = 0;
+        while (true) {
+            int header = this.buffer.get() & 0xFF;
+            if (header == 0) {
+                return fields;
+            }
+            int delta = header >>> 4;
+            int type = header & 0x0F;
+            fieldId = delta != 0 ? fieldId + delta : (int) readZigzag();
+            fields.put(fieldId, type == 1 || type == 2 ? Boolean.valueOf(type == 1) : readValue(type));
+        }
+    }
+
+    private Object readValue(int type) {
+        return switch (type) {
+            case 1, 2 -> this.buffer.get() == 1;
+            case 3 -> (long) this.buffer.get();
+            case 4, 5, 6 -> readZigzag();
+            case 7 -> this.buffer.getDouble();
+            case 8 -> {
+                byte[] bytes = new byte[(int) readVarint()];
+                this.buffer.get(bytes);
+                yield bytes;
+            }
+            case 9, 10 -> {
+                int header = this.buffer.get() & 0xFF;
+                int size = header >>> 4 == 15 ? (int) readVarint() : header >>> 4;
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(header & 0x0F));
+                }
+                yield list;
+            }
+            case 12 -> readStruct();
+            default -> throw new IllegalStateException("Unsupported Thrift compact type: " + type);
+        };
+    }
+
+    private long readVarint() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = this.buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private long readZigzag() {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
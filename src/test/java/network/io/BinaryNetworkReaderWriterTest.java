@@ -0,0 +1,146 @@
+package network.io;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.NetworkWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryNetworkReaderWriterTest {
+
+    @Test
+    void testWriteAndReadNetwork() throws IOException {
+        Network network = NetworkUtils.createNetwork();
+        network.setCapacityPeriod(1800);
+        network.getAttributes().putAttribute("coordinateReferenceSystem", "EPSG:25832");
+        Node node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId("n1"), new Coord(1.5, 2.5));
+        Node node2 = NetworkUtils.createAndAddNode(network, Id.createNodeId("n2"), new Coord(100.25, 200.75, 12.0));
+        node2.getAttributes().putAttribute("signal", true);
+        Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId("l1"), node1, node2, 123.4, 13.9, 1800, 2);
+        link.setAllowedModes(Set.of(TransportMode.car, TransportMode.bike));
+        link.getAttributes().putAttribute("highway", "residential");
+        link.getAttributes().putAttribute("hbefa_slope", 0.02);
+        link.getAttributes().putAttribute("osm_id", 42L);
+        Link reversedLink = NetworkUtils.createAndAddLink(network, Id.createLinkId("l1_r"), node2, node1, 123.4, 8.3, 600, 1);
+        reversedLink.setAllowedModes(Set.of(TransportMode.bike));
+
+        File file = File.createTempFile("network", BinaryNetworkReader.BINARY_NETWORK_SUFFIX);
+        file.deleteOnExit();
+        new BinaryNetworkWriter(network).write(file.getPath());
+
+        Network readNetwork = NetworkUtils.createNetwork();
+        new BinaryNetworkReader(readNetwork).read(file.getPath());
+
+        assertEquals(1800, readNetwork.getCapacityPeriod(), 0);
+        assertEquals("EPSG:25832", readNetwork.getAttributes().getAttribute("coordinateReferenceSystem"));
+        assertEquals(2, readNetwork.getNodes().size());
+        assertEquals(2, readNetwork.getLinks().size());
+        Node readNode2 = readNetwork.getNodes().get(Id.createNodeId("n2"));
+        assertEquals(200.75, readNode2.getCoord().getY(), 0);
+        assertEquals(12.0, readNode2.getCoord().getZ(), 0);
+        assertFalse(readNetwork.getNodes().get(Id.createNodeId("n1")).getCoord().hasZ());
+        assertEquals(true, readNode2.getAttributes().getAttribute("signal"));
+
+        Link readLink = readNetwork.getLinks().get(Id.createLinkId("l1"));
+        assertEquals(Id.createNodeId("n1"), readLink.getFromNode().getId());
+        assertEquals(Id.createNodeId("n2"), readLink.getToNode().getId());
+        assertEquals(123.4, readLink.getLength(), 0);
+        assertEquals(13.9, readLink.getFreespeed(), 0);
+        assertEquals(1800, readLink.getCapacity(), 0);
+        assertEquals(2, readLink.getNumberOfLanes(), 0);
+        assertEquals(Set.of(TransportMode.car, TransportMode.bike), readLink.getAllowedModes());
+        assertEquals("residential", readLink.getAttributes().getAttribute("highway"));
+        assertEquals(0.02, readLink.getAttributes().getAttribute("hbefa_slope"));
+        assertEquals(42L, readLink.getAttributes().getAttribute("osm_id"));
+        assertEquals(Set.of(TransportMode.bike), readNetwork.getLinks().get(Id.createLinkId("l1_r")).getAllowedModes());
+    }
+
+    @Test
+    void testReadNetworkWithCache() throws IOException {
+        Network network = NetworkUtils.createNetwork();
+        network.getAttributes().putAttribute("coordinateReferenceSystem", "EPSG:25832");
+        Node node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId("n1"), new Coord(0, 0));
+        Node node2 = NetworkUtils.createAndAddNode(network, Id.createNodeId("n2"), new Coord(100, 0));
+        NetworkUtils.createAndAddLink(network, Id.createLinkId("l1"), node1, node2, 100, 13.9, 1800, 1);
+
+        Path directory = Files.createTempDirectory("network");
+        String networkFile = directory.resolve("network.xml").toString();
+        new NetworkWriter(network).write(networkFile);
+
+        // The first read writes the cache, without leaving a temporary file behind
+        Network readNetwork = BinaryNetworkReader.readNetwork(networkFile);
+        Path cacheFile = Path.of(BinaryNetworkReader.getBinaryCachePath(networkFile));
+        assertTrue(Files.exists(cacheFile));
+        try (var files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+        assertEquals("EPSG:25832", readNetwork.getAttributes().getAttribute("coordinateReferenceSystem"));
+
+        // A truncated cache is not trusted, even if it is newer than the network file, and it is replaced
+        Files.write(cacheFile, Arrays.copyOf(Files.readAllBytes(cacheFile), 16));
+        readNetwork = BinaryNetworkReader.readNetwork(networkFile);
+        assertEquals(1, readNetwork.getLinks().size());
+        assertEquals("EPSG:25832", readNetwork.getAttributes().getAttribute("coordinateReferenceSystem"));
+        Network cachedNetwork = NetworkUtils.createNetwork();
+        new BinaryNetworkReader(cachedNetwork).read(cacheFile.toString());
+        assertEquals(1, cachedNetwork.getLinks().size());
+    }
+
+    @Test
+    void testCacheIsInvalidatedByTheSource() throws IOException {
+        Network network = NetworkUtils.createNetwork();
+        Node node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId("n1"), new Coord(0, 0));
+        Node node2 = NetworkUtils.createAndAddNode(network, Id.createNodeId("n2"), new Coord(100, 0));
+        NetworkUtils.createAndAddLink(network, Id.createLinkId("l1"), node1, node2, 100, 13.9, 1800, 1);
+
+        // The xml and xml.gz files in the same directory have their own caches
+        Path directory = Files.createTempDirectory("network");
+        String networkFile = directory.resolve("network.xml").toString();
+        String compressedNetworkFile = directory.resolve("network.xml.gz").toString();
+        new NetworkWriter(network).write(networkFile);
+        NetworkUtils.createAndAddLink(network, Id.createLinkId("l2"), node2, node1, 100, 13.9, 1800, 1);
+        new NetworkWriter(network).write(compressedNetworkFile);
+        assertEquals(1, BinaryNetworkReader.readNetwork(networkFile).getLinks().size());
+        assertEquals(2, BinaryNetworkReader.readNetwork(compressedNetworkFile).getLinks().size());
+        assertEquals(1, BinaryNetworkReader.readNetwork(networkFile).getLinks().size());
+
+        // The network file is replaced by an older one (e.g., restored from a backup): the cache is not used, even
+        // though it is newer than the network file
+        Path cacheFile = Path.of(BinaryNetworkReader.getBinaryCachePath(networkFile));
+        FileTime lastModified = Files.getLastModifiedTime(Path.of(networkFile));
+        new NetworkWriter(network).write(networkFile);
+        Files.setLastModifiedTime(Path.of(networkFile), FileTime.fromMillis(lastModified.toMillis() - 60_000));
+        assertTrue(Files.getLastModifiedTime(cacheFile).compareTo(Files.getLastModifiedTime(Path.of(networkFile))) > 0);
+        assertEquals(2, BinaryNetworkReader.readNetwork(networkFile).getLinks().size());
+
+        // The network file is changed within the same modification time: the size does not match
+        FileTime sameLastModified = Files.getLastModifiedTime(Path.of(networkFile));
+        network.removeLink(Id.createLinkId("l2"));
+        new NetworkWriter(network).write(networkFile);
+        Files.setLastModifiedTime(Path.of(networkFile), sameLastModified);
+        assertEquals(1, BinaryNetworkReader.readNetwork(networkFile).getLinks().size());
+        // The cache has been replaced, and it is used as long as the network file is unchanged
+        assertTrue(BinaryNetworkReader.isCacheOf(cacheFile, Files.size(Path.of(networkFile)), sameLastModified.toMillis()));
+        assertFalse(BinaryNetworkReader.isCacheOf(cacheFile, Files.size(Path.of(networkFile)) + 1, sameLastModified.toMillis()));
+    }
+
+    @Test
+    void testGetBinaryCachePath() {
+        assertEquals("network.xml.gz.bin", BinaryNetworkReader.getBinaryCachePath("network.xml.gz"));
+        assertEquals("dir/network.xml.bin", BinaryNetworkReader.getBinaryCachePath("dir/network.xml"));
+    }
+}
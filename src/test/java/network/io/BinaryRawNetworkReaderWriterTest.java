@@ -0,0 +1,65 @@
+package network.io;
+
+import network.core.NetworkElement;
+import network.core.TransMode;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryRawNetworkReaderWriterTest {
+
+    @Test
+    void testWriteAndReadRawNetwork() throws IOException {
+        Map<String, NetworkElement.Node> rawNodes = new HashMap<>();
+        Map<String, NetworkElement.Link> rawLinks = new HashMap<>();
+        NetworkElement.Node node1 = new NetworkElement.Node(1L, 4.70, 50.88);
+        NetworkElement.Node node2 = new NetworkElement.Node(2L, 4.71, 50.89);
+        NetworkElement.Node node3 = new NetworkElement.Node(3L, new Coord(4.72, 50.90, 25.0));
+        rawNodes.put(node1.getId(), node1);
+        rawNodes.put(node2.getId(), node2);
+        rawNodes.put(node3.getId(), node3);
+
+        NetworkElement.Link link = new NetworkElement.Link(10L, node1, node3);
+        link.addComposedNode(node2);
+        link.addAllowedMode(TransMode.Mode.PT);
+        link.addKeyValuePair("highway", "primary");
+        link.addKeyValuePair("oneway", "yes");
+        rawLinks.put(link.getId(), link);
+        // A way referring to a node outside the extract
+        NetworkElement.Link danglingLink = new NetworkElement.Link(11L, node3, null);
+        danglingLink.addKeyValuePair("highway", "primary");
+        rawLinks.put(danglingLink.getId(), danglingLink);
+
+        File file = File.createTempFile("raw", ".raw");
+        file.deleteOnExit();
+        new BinaryRawNetworkWriter(rawNodes, rawLinks).write(file.getPath());
+
+        Map<String, NetworkElement.Node> readNodes = new HashMap<>();
+        Map<String, NetworkElement.Link> readLinks = new HashMap<>();
+        new BinaryRawNetworkReader(readNodes, readLinks).read(file.getPath());
+
+        assertEquals(3, readNodes.size());
+        assertEquals(2, readLinks.size());
+        assertEquals(4.71, readNodes.get("2").getCoord().getX(), 0.0);
+        assertEquals(25.0, readNodes.get("3").getCoord().getZ(), 0.0);
+        assertFalse(readNodes.get("1").getCoord().hasZ());
+
+        NetworkElement.Link readLink = readLinks.get("10");
+        assertSame(readNodes.get("1"), readLink.getFromNode());
+        assertSame(readNodes.get("3"), readLink.getToNode());
+        assertEquals(List.of("2"), readLink.getComposedNodes().stream().map(NetworkElement.Node::getId).toList());
+        assertEquals(link.getAllowedModes(), readLink.getAllowedModes());
+        assertEquals(link.getKeyValuePairs(), readLink.getKeyValuePairs());
+
+        NetworkElement.Link readDanglingLink = readLinks.get("11");
+        assertNull(readDanglingLink.getToNode());
+        assertEquals("primary", readDanglingLink.getKeyValuePairs().get("highway"));
+    }
+}
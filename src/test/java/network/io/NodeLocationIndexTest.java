@@ -0,0 +1,54 @@
+package network.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeLocationIndexTest {
+
+    @Test
+    void testPutAndReuseIndex() throws IOException {
+        Path source = File.createTempFile("source", ".pbf").toPath();
+        Files.writeString(source, "source");
+        Path file = File.createTempFile("nodes", ".idx").toPath();
+        source.toFile().deleteOnExit();
+        file.toFile().deleteOnExit();
+
+        // The ids are in different segments, and 0/0 is a valid location
+        long farId = 3L << 27;
+        try (NodeLocationIndex index = new NodeLocationIndex(file, source)) {
+            assertFalse(index.isComplete());
+            index.put(1L, 4.7005123, 50.8798765);
+            index.put(2L, 0.0, 0.0);
+            index.put(farId, -179.9999999, -89.9999999);
+            index.markComplete();
+        }
+
+        try (NodeLocationIndex index = new NodeLocationIndex(file, source)) {
+            assertTrue(index.isComplete());
+            assertTrue(index.contains(1L));
+            assertEquals(4.7005123, index.getLon(1L), 1e-9);
+            assertEquals(50.8798765, index.getLat(1L), 1e-9);
+            assertTrue(index.contains(2L));
+            assertEquals(0.0, index.getLat(2L), 0.0);
+            assertEquals(-89.9999999, index.getLat(farId), 1e-9);
+            assertFalse(index.contains(3L));
+            assertFalse(index.contains(100L << 27));
+        }
+
+        // A changed source file invalidates the index
+        Files.writeString(source, "changed source");
+        try (NodeLocationIndex index = new NodeLocationIndex(file, source)) {
+            assertFalse(index.isComplete());
+            assertFalse(index.contains(1L));
+        }
+
+        // The segments are unmapped on closing, so the file can be deleted right away
+        Files.delete(file);
+    }
+}
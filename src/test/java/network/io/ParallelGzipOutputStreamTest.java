@@ -0,0 +1,101 @@
+package network.io;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.NetworkWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelGzipOutputStreamTest {
+
+    @Test
+    void testMultiMemberOutputIsValidGzip() throws IOException {
+        // Compressible data spanning many (small) blocks, with a partial last block
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            builder.append("<link id=\"").append(i).append("\" length=\"").append(random.nextInt(1000)).append("\"/>\n");
+        }
+        byte[] data = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 4, 4096)) {
+            out.write(data, 0, 1000);
+            out.write(data[1000]);
+            out.write(data, 1001, data.length - 1001);
+        }
+
+        assertTrue(compressed.size() < data.length);
+        assertArrayEquals(data, decompress(compressed.toByteArray()));
+    }
+
+    @Test
+    void testEmptyOutputIsValidGzip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed, 2).close();
+
+        assertTrue(compressed.size() > 0);
+        assertEquals(0, decompress(compressed.toByteArray()).length);
+    }
+
+    @Test
+    void testWriteNetworkRoundTrip() throws IOException {
+        Network network = NetworkUtils.createNetwork();
+        network.getAttributes().putAttribute("coordinateReferenceSystem", "EPSG:31370");
+        Node[] nodes = new Node[2000];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = NetworkUtils.createAndAddNode(network, Id.createNodeId(i), new Coord(i * 10.5, i % 7));
+        }
+        for (int i = 1; i < nodes.length; i++) {
+            Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(i), nodes[i - 1], nodes[i], 10.5, 13.89, 1000, 1);
+            link.setAllowedModes(Set.of(TransportMode.car, TransportMode.bike));
+            link.getAttributes().putAttribute("highway", "residential");
+        }
+
+        // The xml of the real NetworkWriter is streamed into the compressed file, without a temporary file
+        Path directory = Files.createTempDirectory("gzip");
+        String file = directory.resolve("network.xml.gz").toString();
+        ParallelGzip.writeNetwork(file, new NetworkWriter(network));
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+
+        // The compressed file (of multiple gzip members) is read back by MATSim
+        Network readNetwork = NetworkUtils.readNetwork(file);
+        assertEquals("EPSG:31370", readNetwork.getAttributes().getAttribute("coordinateReferenceSystem"));
+        assertEquals(network.getNodes().size(), readNetwork.getNodes().size());
+        assertEquals(network.getLinks().size(), readNetwork.getLinks().size());
+        for (Link link : network.getLinks().values()) {
+            Link readLink = readNetwork.getLinks().get(link.getId());
+            assertEquals(link.getFromNode().getId(), readLink.getFromNode().getId());
+            assertEquals(link.getToNode().getId(), readLink.getToNode().getId());
+            assertEquals(link.getLength(), readLink.getLength(), 0);
+            assertEquals(link.getAllowedModes(), readLink.getAllowedModes());
+            assertEquals("residential", readLink.getAttributes().getAttribute("highway"));
+        }
+        assertEquals(nodes[1999].getCoord(), readNetwork.getNodes().get(nodes[1999].getId()).getCoord());
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+}
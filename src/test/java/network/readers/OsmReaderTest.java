@@ -1,9 +1,20 @@
 package network.readers;
 
+import de.topobyte.osm4j.core.model.impl.Node;
+import de.topobyte.osm4j.core.model.impl.Way;
+import gnu.trove.list.array.TLongArrayList;
 import network.config.NetworkConverterConfigGroup;
 import network.core.NetworkElement;
+import network.core.NetworkGraphStore;
 import network.core.TransMode;
 import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -74,4 +85,128 @@ class OsmReaderTest {
         assertEquals("100", link16.getKeyValuePairs().get("maxspeed"));
         assertEquals("500", link16.getKeyValuePairs().get("capacity"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testStreamPbfNetworkWithPT(){
+        Set<Map<String, String>> ptModeKeyValuePairs = Set.of(Map.of("route", "bus"));
+        Set<String> ptReservedKeyValues = Set.of("type");
+        OsmReader reader = new OsmReader(ptModeKeyValuePairs, ptReservedKeyValues);
+        Map<String, Integer> nodeRefCount = reader.prepareStreaming("../data/testOsmReader/test_equil.pbf");
+        assertNotNull(nodeRefCount);
+
+        Map<String, NetworkElement.Link> streamedLinks = new HashMap<>();
+        reader.stream("../data/testOsmReader/test_equil.pbf", link -> streamedLinks.put(link.getId(), link));
+
+        // The ways are passed to the consumer instead of being stored
+        assertTrue(reader.getRawLinks().isEmpty());
+        assertEquals(22, streamedLinks.size());
+        assertEquals(15, reader.getRawNodes().size());
+
+        // The pt relations (after the ways in the file) are applied from the pre-pass
+        NetworkElement.Link link16 = streamedLinks.get("16");
+        assertNotNull(link16);
+        assertEquals("8", link16.getFromNode().getId());
+        assertEquals("12", link16.getToNode().getId());
+        assertTrue(link16.getAllowedModes().contains(TransMode.Mode.PT));
+        assertEquals("route", link16.getKeyValuePairs().get("type"));
+    }
+
+    @Test
+    void testReadPbfNetworkWithNodeLocationIndex() throws IOException {
+        NetworkConverterConfigGroup config = NetworkConverterConfigGroup.loadConfigFile("../data/testOsmReader/testConfig.xml");
+        OsmReader expected = new OsmReader(config);
+        expected.read(config.INPUT_NETWORK_FILE);
+
+        Path indexFile = File.createTempFile("nodes", ".idx").toPath();
+        indexFile.toFile().deleteOnExit();
+        config.NODE_LOCATION_INDEX_FILE = indexFile.toString();
+        // The first read creates the index, and the second one reuses it
+        for (int i = 0; i < 2; i++) {
+            OsmReader reader = new OsmReader(config);
+            reader.read(config.INPUT_NETWORK_FILE);
+
+            assertEquals(expected.getRawLinks().size(), reader.getRawLinks().size());
+            // Only the nodes that are referenced by the ways are taken from the index
+            assertTrue(reader.getRawNodes().size() <= expected.getRawNodes().size());
+            expected.getRawLinks().forEach((id, link) -> {
+                NetworkElement.Link indexedLink = reader.getRawLinks().get(id);
+                assertNotNull(indexedLink, id);
+                assertEquals(link.getFromNode().getId(), indexedLink.getFromNode().getId());
+                assertEquals(link.getToNode().getId(), indexedLink.getToNode().getId());
+                assertEquals(link.getFromNode().getCoord().getX(), indexedLink.getFromNode().getCoord().getX(), 1e-7);
+                assertEquals(link.getFromNode().getCoord().getY(), indexedLink.getFromNode().getCoord().getY(), 1e-7);
+                assertEquals(link.getToNode().getCoord().getX(), indexedLink.getToNode().getCoord().getX(), 1e-7);
+                assertEquals(link.getToNode().getCoord().getY(), indexedLink.getToNode().getCoord().getY(), 1e-7);
+                assertEquals(link.getAllowedModes(), indexedLink.getAllowedModes());
+                assertEquals(link.getKeyValuePairs(), indexedLink.getKeyValuePairs());
+            });
+        }
+
+        // The index is unmapped once it has been read, so that it can be deleted (or overwritten) right away
+        Files.delete(indexFile);
+    }
+
+    @Test
+    void testReadPbfNetworkIntoGraphStore(){
+        Set<Map<String, String>> ptModeKeyValuePairs = Set.of(Map.of("route", "bus"));
+        Set<String> ptReservedKeyValues = Set.of("type");
+        OsmReader reader = new OsmReader(ptModeKeyValuePairs, ptReservedKeyValues);
+        reader.setColumnarGraphStore(true);
+        reader.read("../data/testOsmReader/test_equil.pbf");
+
+        // The nodes and ways are stored in the graph store instead of the raw nodes and links
+        NetworkGraphStore store = reader.getGraphStore();
+        assertTrue(reader.getRawLinks().isEmpty());
+        assertTrue(reader.getRawNodes().isEmpty());
+        assertEquals(22, store.getLinkCount());
+        assertEquals(15, store.getNodeCount());
+
+        // The pt relations are applied to the stored ways
+        NetworkGraphStore.LinkView link16 = store.getLink(store.getLinkIndex(16));
+        assertEquals("8", link16.getFromNode().getId());
+        assertEquals("12", link16.getToNode().getId());
+        assertTrue(link16.getAllowedModes().contains(TransMode.Mode.PT));
+        assertEquals("route", link16.getKeyValuePairs().get("type"));
+        assertEquals("100", link16.getKeyValuePairs().get("maxspeed"));
+    }
+
+    @Test
+    void testStoreRepeatedNodeRefs(){
+        OsmReader reader = new OsmReader();
+        reader.setColumnarGraphStore(true);
+        for (long id = 1; id <= 4; id++) {
+            reader.handle(new Node(id, 4 + 0.001 * id, 50));
+        }
+        reader.handle(new Way(100, new TLongArrayList(new long[]{1, 2, 2, 3, 4, 4})));
+        reader.handle(new Way(101, new TLongArrayList(new long[]{1, 2, 3, 2, 5})));
+
+        // The same composed nodes as the raw links of testSkipRepeatedNodeRefs, and a missing node (5) has no index
+        NetworkGraphStore store = reader.getGraphStore();
+        NetworkGraphStore.LinkView link = store.getLink(store.getLinkIndex(100));
+        assertEquals("1", link.getFromNode().getId());
+        assertEquals("4", link.getToNode().getId());
+        assertEquals(List.of("2", "3"), link.getComposedNodes().stream().map(NetworkGraphStore.NodeView::getId).toList());
+        NetworkGraphStore.LinkView otherLink = store.getLink(store.getLinkIndex(101));
+        assertEquals(List.of("2", "3", "2"), otherLink.getComposedNodes().stream().map(NetworkGraphStore.NodeView::getId).toList());
+        assertNull(otherLink.getToNode());
+    }
+
+    @Test
+    void testSkipRepeatedNodeRefs(){
+        OsmReader reader = new OsmReader();
+        for (long id = 1; id <= 4; id++) {
+            reader.handle(new Node(id, 4 + 0.001 * id, 50));
+        }
+        // A-B-B-C-D-D: the repeated B and D are not composed nodes (nor split points)
+        reader.handle(new Way(100, new TLongArrayList(new long[]{1, 2, 2, 3, 4, 4})));
+        // A-B-C-B-A: a node that is visited twice, but not consecutively, is kept at each position
+        reader.handle(new Way(101, new TLongArrayList(new long[]{1, 2, 3, 2, 1})));
+
+        NetworkElement.Link link = reader.getRawLinks().get("100");
+        assertEquals("1", link.getFromNode().getId());
+        assertEquals("4", link.getToNode().getId());
+        assertEquals(List.of("2", "3"), link.getComposedNodes().stream().map(NetworkElement.Node::getId).toList());
+        NetworkElement.Link closedLink = reader.getRawLinks().get("101");
+        assertEquals(List.of("2", "3", "2"), closedLink.getComposedNodes().stream().map(NetworkElement.Node::getId).toList());
+    }
+}
@@ -0,0 +1,112 @@
+package network.readers;
+
+import network.core.NetworkElement;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleFeatureConverterTest {
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    private static SimpleFeatureType createFeatureType() {
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName("links");
+        builder.add("the_geom", LineString.class);
+        builder.add("highway", String.class);
+        builder.add("lanes", Integer.class);
+        return builder.buildFeatureType();
+    }
+
+    private static SimpleFeature createFeature(SimpleFeatureType type, String id, String highway, Integer lanes, Coordinate... coordinates) {
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        builder.add(GEOMETRY_FACTORY.createLineString(coordinates));
+        builder.add(highway);
+        builder.add(lanes);
+        return builder.buildFeature("links." + id);
+    }
+
+    @Test
+    void testConvertFeatureWithMergedSegments() {
+        SimpleFeatureType type = createFeatureType();
+        // The feature "b" meets the feature "a" at the second vertex of "a" (a T-junction)
+        SimpleFeature featureA = createFeature(type, "a", "primary", 2,
+                new Coordinate(0, 0), new Coordinate(10, 0), new Coordinate(20, 0), new Coordinate(30, 0));
+        SimpleFeature featureB = createFeature(type, "b", "residential", 1,
+                new Coordinate(10, 0), new Coordinate(10, 10));
+
+        // A link per segment
+        Map<String, NetworkElement.Node> rawNodes = new HashMap<>();
+        Map<String, NetworkElement.Link> rawLinks = new HashMap<>();
+        SimpleFeatureConverter.convert(featureA, rawNodes, rawLinks, "EPSG:31370");
+        SimpleFeatureConverter.convert(featureB, rawNodes, rawLinks, "EPSG:31370");
+        assertEquals(4, rawLinks.size());
+        assertEquals(5, rawNodes.size());
+
+        // A link per feature, with the composed nodes
+        rawNodes = new HashMap<>();
+        rawLinks = new HashMap<>();
+        SimpleFeatureConverter.convert(featureA, rawNodes, rawLinks, "EPSG:31370", true);
+        SimpleFeatureConverter.convert(featureB, rawNodes, rawLinks, "EPSG:31370", true);
+        assertEquals(2, rawLinks.size());
+        assertEquals(5, rawNodes.size());
+        NetworkElement.Link linkA = rawLinks.get("a");
+        assertNotNull(linkA);
+        assertEquals(List.of(10.0, 20.0), linkA.getComposedNodes().stream().map(NetworkElement.Node::getX).toList());
+        assertEquals(30.0, linkA.getToNode().getX(), 0.0);
+        // The T-junction is the same node
+        assertSame(linkA.getComposedNodes().get(0), rawLinks.get("b").getFromNode());
+        assertEquals("primary", linkA.getKeyValuePairs().get("highway"));
+    }
+
+    @Test
+    void testLazyFeatureAttributes() {
+        SimpleFeatureType type = createFeatureType();
+        // A null attribute value is treated as missing
+        SimpleFeature feature = createFeature(type, "c", "primary", null, new Coordinate(0, 0), new Coordinate(10, 0));
+        Map<String, NetworkElement.Node> rawNodes = new HashMap<>();
+        Map<String, NetworkElement.Link> rawLinks = new HashMap<>();
+        assertDoesNotThrow(() -> SimpleFeatureConverter.convert(feature, rawNodes, rawLinks, "EPSG:31370"));
+
+        NetworkElement.Link link = rawLinks.get("c_1");
+        assertNotNull(link);
+        Map<String, String> keyValuePairs = link.getKeyValuePairs();
+        assertInstanceOf(FeatureAttributes.class, keyValuePairs);
+        assertEquals("primary", keyValuePairs.get("highway"));
+        assertFalse(keyValuePairs.containsKey("lanes"));
+        assertFalse(keyValuePairs.containsKey("the_geom"));
+        assertEquals(Map.of("highway", "primary"), new HashMap<>(keyValuePairs));
+
+        // A numeric attribute is read without the string conversion
+        FeatureAttributes attributes = new FeatureAttributes(createFeature(type, "d", "primary", 2,
+                new Coordinate(0, 0), new Coordinate(10, 0)));
+        assertEquals(2, attributes.getNumber("lanes"));
+        assertNull(attributes.getNumber("highway"));
+        assertEquals("2", attributes.get("lanes"));
+        // An empty (NaN) numeric attribute is treated as missing, like an empty string
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName("links");
+        typeBuilder.add("the_geom", LineString.class);
+        typeBuilder.add("width", Double.class);
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(typeBuilder.buildFeatureType());
+        builder.add(GEOMETRY_FACTORY.createLineString(new Coordinate[]{new Coordinate(0, 0), new Coordinate(10, 0)}));
+        builder.add(Double.NaN);
+        assertNull(new FeatureAttributes(builder.buildFeature("links.e")).getNumber("width"));
+
+        // The view is copied before the link modifies it
+        link.addKeyValuePair("lanes", "3");
+        assertEquals("3", link.getKeyValuePairs().get("lanes"));
+        assertEquals("primary", link.getKeyValuePairs().get("highway"));
+        assertFalse(keyValuePairs.containsKey("lanes"));
+    }
+}
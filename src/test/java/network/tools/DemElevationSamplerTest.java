@@ -0,0 +1,66 @@
+package network.tools;
+
+import network.core.NetworkElement;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
+import org.geotools.gce.geotiff.GeoTiffFormat;
+import org.geotools.gce.geotiff.GeoTiffWriteParams;
+import org.geotools.gce.geotiff.GeoTiffWriter;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.jupiter.api.Test;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+
+import javax.imageio.ImageWriteParam;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DemElevationSamplerTest {
+
+    // Write a tiled DEM of 100 x 100 pixels (0.01 degree) over [4, 5] x [50, 51], where the value is col + 100 * row
+    private static File createDem() throws IOException {
+        float[][] matrix = new float[100][100];
+        for (int row = 0; row < 100; row++) {
+            for (int col = 0; col < 100; col++) {
+                matrix[row][col] = col + 100 * row;
+            }
+        }
+        GridCoverage2D coverage = new GridCoverageFactory().create("dem", matrix,
+                new ReferencedEnvelope(4, 5, 50, 51, DefaultGeographicCRS.WGS84));
+
+        File file = File.createTempFile("dem", ".tif");
+        file.deleteOnExit();
+        GeoTiffWriteParams writeParams = new GeoTiffWriteParams();
+        writeParams.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+        writeParams.setTiling(16, 16);
+        ParameterValue<GeoToolsWriteParams> value = GeoTiffFormat.GEOTOOLS_WRITE_PARAMS.createValue();
+        value.setValue(writeParams);
+        GeoTiffWriter writer = new GeoTiffWriter(file);
+        writer.write(coverage, new GeneralParameterValue[]{value});
+        writer.dispose();
+        return file;
+    }
+
+    @Test
+    void testSetElevation() throws IOException {
+        File dem = createDem();
+        // At the center of the pixel (col 10, row 20)
+        NetworkElement.Node node1 = new NetworkElement.Node(1, 4.105, 50.795);
+        // Between the centers of the pixels (col 10, row 20) and (col 11, row 20)
+        NetworkElement.Node node2 = new NetworkElement.FixedPointNode(2, 4.11, 50.795);
+        // Outside the DEM
+        NetworkElement.Node node3 = new NetworkElement.Node(3, 6.0, 50.5);
+
+        try (DemElevationSampler sampler = new DemElevationSampler(dem.getPath(), "EPSG:4326", 4)) {
+            assertEquals(2, sampler.setElevation(List.of(node1, node2, node3)));
+        }
+        assertEquals(2010.0, node1.getZ(), 1e-3);
+        assertEquals(2010.5, node2.getCoord().getZ(), 1e-3);
+        assertFalse(node3.hasZ());
+    }
+}
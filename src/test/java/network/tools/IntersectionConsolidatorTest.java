@@ -0,0 +1,165 @@
+package network.tools;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntersectionConsolidatorTest {
+
+    private static Node addNode(Network network, String id, double x, double y) {
+        return NetworkUtils.createAndAddNode(network, Id.createNodeId(id), new Coord(x, y));
+    }
+
+    private static void addLinks(Network network, Node node1, Node node2, Set<String> modes) {
+        for (Node[] pair : new Node[][]{{node1, node2}, {node2, node1}}) {
+            String id = pair[0].getId() + "-" + pair[1].getId();
+            Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(id), pair[0], pair[1],
+                    NetworkUtils.getEuclideanDistance(pair[0].getCoord(), pair[1].getCoord()), 13.89, 1000, 1);
+            link.setAllowedModes(modes);
+        }
+    }
+
+    @Test
+    void testConsolidateIntersections() {
+        Network network = NetworkUtils.createNetwork();
+        Set<String> car = Set.of(TransportMode.car);
+        // A junction of a dual carriageway: the nodes j1 and j2 are 8 m apart and joined by two tiny links
+        Node j1 = addNode(network, "j1", 0, 0);
+        Node j2 = addNode(network, "j2", 0, 8);
+        addLinks(network, j1, j2, car);
+        addLinks(network, addNode(network, "a", -100, 0), j1, car);
+        addLinks(network, addNode(network, "b", 100, 0), j1, car);
+        addLinks(network, addNode(network, "c", -100, 8), j2, car);
+        addLinks(network, addNode(network, "d", 100, 8), j2, car);
+        // A bridge over the junction, which is not joined to it by a link
+        Node x = addNode(network, "x", 3, 3);
+        addLinks(network, addNode(network, "e", 3, 100), x, car);
+        addLinks(network, addNode(network, "f", 3, -100), x, car);
+        addLinks(network, addNode(network, "g", 100, 3), x, car);
+        // Two nodes joined by a car link, where m1 is also used by bike
+        Node m1 = addNode(network, "m1", 500, 0);
+        Node m2 = addNode(network, "m2", 500, 5);
+        addLinks(network, m1, m2, car);
+        addLinks(network, m1, addNode(network, "n", 600, 0), Set.of(TransportMode.car, TransportMode.bike));
+        addLinks(network, m1, addNode(network, "o", 400, 0), car);
+        addLinks(network, m2, addNode(network, "q", 500, 100), car);
+        addLinks(network, m2, addNode(network, "r", 400, 5), car);
+
+        IntersectionConsolidator consolidator = new IntersectionConsolidator(network, 10);
+        consolidator.run();
+
+        // j2 is collapsed into j1 at their centroid, and its links are reconnected to j1
+        assertNull(network.getNodes().get(Id.createNodeId("j2")));
+        assertEquals(4, j1.getCoord().getY(), 1e-9);
+        assertNull(network.getLinks().get(Id.createLinkId("j1-j2")));
+        assertNull(network.getLinks().get(Id.createLinkId("j2-j1")));
+        assertEquals(j1, network.getLinks().get(Id.createLinkId("c-j2")).getToNode());
+        assertEquals(j1, network.getLinks().get(Id.createLinkId("j2-d")).getFromNode());
+        assertEquals(4, j1.getInLinks().size());
+        assertEquals(4, j1.getOutLinks().size());
+        // The links to the moved nodes are as long as the distance to the centroid
+        assertEquals(Math.hypot(100, 4), network.getLinks().get(Id.createLinkId("c-j2")).getLength(), 1e-9);
+        assertEquals(Math.hypot(100, 4), network.getLinks().get(Id.createLinkId("j1-b")).getLength(), 1e-9);
+
+        // The bridge and the nodes with a bike link are kept
+        assertNotNull(network.getNodes().get(Id.createNodeId("x")));
+        assertNotNull(network.getNodes().get(Id.createNodeId("m2")));
+        assertNotNull(network.getLinks().get(Id.createLinkId("m1-m2")));
+
+        assertEquals(1, consolidator.getConsolidatedIntersections());
+        assertEquals(2, consolidator.getRemovedLinks());
+        assertEquals(1, consolidator.getRemovedNodes());
+    }
+
+    @Test
+    void testConsolidateChainOfShortLinks() {
+        Network network = NetworkUtils.createNetwork();
+        Set<String> car = Set.of(TransportMode.car);
+        // A run of junctions 6 m apart, which would be chained into one intersection 18 m wide by single linkage
+        Node[] junctions = new Node[4];
+        for (int i = 0; i < junctions.length; i++) {
+            junctions[i] = addNode(network, "p" + i, 6 * i, 0);
+            addLinks(network, junctions[i], addNode(network, "n" + i, 6 * i, 100), car);
+            addLinks(network, junctions[i], addNode(network, "s" + i, 6 * i, -100), car);
+        }
+        for (int i = 1; i < junctions.length; i++) {
+            addLinks(network, junctions[i - 1], junctions[i], car);
+        }
+        // A curved link, which is longer than the straight distance between its nodes
+        network.getLinks().get(Id.createLinkId("n1-p1")).setLength(150);
+
+        IntersectionConsolidator consolidator = new IntersectionConsolidator(network, 10);
+        consolidator.run();
+
+        // All the nodes of an intersection are within the radius of each other
+        assertEquals(2, consolidator.getConsolidatedIntersections());
+        assertEquals(2, consolidator.getRemovedNodes());
+        assertNull(network.getNodes().get(Id.createNodeId("p1")));
+        assertNull(network.getNodes().get(Id.createNodeId("p3")));
+        assertEquals(3, junctions[0].getCoord().getX(), 1e-9);
+        assertEquals(15, junctions[2].getCoord().getX(), 1e-9);
+        assertNotNull(network.getLinks().get(Id.createLinkId("p1-p2")));
+        assertEquals(12, network.getLinks().get(Id.createLinkId("p1-p2")).getLength(), 1e-9);
+        // The detour of the curved link is kept
+        assertEquals(150 + Math.hypot(3, 100) - 100, network.getLinks().get(Id.createLinkId("n1-p1")).getLength(), 1e-9);
+    }
+
+    @Test
+    void testKeepOneWayPair() {
+        Network network = NetworkUtils.createNetwork();
+        Set<String> car = Set.of(TransportMode.car);
+        // A junction of two one-way carriageways: u1 and u2 are 8 m apart and only joined by the one-way link u1 -> u2,
+        // so a vehicle arriving at u2 cannot turn back to the carriageway of u1
+        Node u1 = addNode(network, "u1", 0, 0);
+        Node u2 = addNode(network, "u2", 0, 8);
+        Link oneWay = NetworkUtils.createAndAddLink(network, Id.createLinkId("u1-u2"), u1, u2, 8, 13.89, 1000, 1);
+        oneWay.setAllowedModes(car);
+        addLinks(network, addNode(network, "a", -100, 0), u1, car);
+        addLinks(network, addNode(network, "b", 100, 0), u1, car);
+        addLinks(network, addNode(network, "c", -100, 8), u2, car);
+        addLinks(network, addNode(network, "d", 100, 8), u2, car);
+        // The same pair joined both ways, but the reverse link does not allow all the modes of the two nodes
+        Node v1 = addNode(network, "v1", 500, 0);
+        Node v2 = addNode(network, "v2", 500, 8);
+        addLinks(network, v1, v2, Set.of(TransportMode.car, TransportMode.bike));
+        network.getLinks().get(Id.createLinkId("v2-v1")).setAllowedModes(car);
+        addLinks(network, v1, addNode(network, "e", 400, 0), Set.of(TransportMode.car, TransportMode.bike));
+        addLinks(network, v1, addNode(network, "f", 600, 0), car);
+        addLinks(network, v2, addNode(network, "g", 400, 8), Set.of(TransportMode.car, TransportMode.bike));
+        addLinks(network, v2, addNode(network, "h", 600, 8), car);
+
+        IntersectionConsolidator consolidator = new IntersectionConsolidator(network, 10);
+        consolidator.run();
+
+        assertEquals(0, consolidator.getConsolidatedIntersections());
+        assertNotNull(network.getNodes().get(Id.createNodeId("u2")));
+        assertNotNull(network.getLinks().get(Id.createLinkId("u1-u2")));
+        assertNotNull(network.getNodes().get(Id.createNodeId("v2")));
+    }
+
+    @Test
+    void testRejectGeographicCrs() {
+        Network network = NetworkUtils.createNetwork();
+        network.getAttributes().putAttribute("coordinateReferenceSystem", "EPSG:4326");
+        // The radius would be in degrees
+        assertThrows(IllegalArgumentException.class, () -> new IntersectionConsolidator(network, 10));
+        assertDoesNotThrow(() -> new IntersectionConsolidator(network, 10, "EPSG:31370"));
+    }
+
+    @Test
+    void testGetMovedLength() {
+        Coord other = new Coord(0, 0);
+        assertEquals(12, IntersectionConsolidator.getMovedLength(10, new Coord(10, 0), new Coord(12, 0), other), 1e-9);
+        // Never shorter than the straight distance
+        assertEquals(5, IntersectionConsolidator.getMovedLength(1, new Coord(10, 0), new Coord(5, 0), other), 1e-9);
+    }
+}
@@ -0,0 +1,70 @@
+package network.tools;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeafChainPrunerTest {
+
+    private static Node addNode(Network network, String id) {
+        return NetworkUtils.createAndAddNode(network, Id.createNodeId(id), new Coord(0, 0));
+    }
+
+    private static void addLinks(Network network, Node node1, Node node2, double length, Set<String> modes) {
+        for (Node[] pair : new Node[][]{{node1, node2}, {node2, node1}}) {
+            String id = pair[0].getId() + "-" + pair[1].getId();
+            Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(id), pair[0], pair[1], length, 13.89, 1000, 1);
+            link.setAllowedModes(modes);
+        }
+    }
+
+    @Test
+    void testPruneLeafChains() {
+        Network network = NetworkUtils.createNetwork();
+        Set<String> car = Set.of(TransportMode.car);
+        Set<String> carWalk = Set.of(TransportMode.car, TransportMode.walk);
+        Node a = addNode(network, "a");
+        Node b = addNode(network, "b");
+        Node c = addNode(network, "c");
+        addLinks(network, a, b, 1000, carWalk);
+        addLinks(network, b, c, 100, carWalk);
+        // A stub b - s1 - s2 of 40 m
+        Node s1 = addNode(network, "s1");
+        addLinks(network, b, s1, 20, carWalk);
+        addLinks(network, s1, addNode(network, "s2"), 20, carWalk);
+        // A protected stub c - d
+        addLinks(network, c, addNode(network, "d"), 10, car);
+        // A small tree c - e - (f, g), which is pruned iteratively
+        Node e = addNode(network, "e");
+        addLinks(network, c, e, 10, car);
+        addLinks(network, e, addNode(network, "f"), 10, car);
+        addLinks(network, e, addNode(network, "g"), 10, car);
+
+        LeafChainPruner pruner = new LeafChainPruner(network, Map.of(TransportMode.car, 50.0, TransportMode.walk, 30.0),
+                Set.of(Id.createLinkId("c-d")));
+        pruner.run();
+
+        // The stub is only pruned for car, as it is longer than 30 m for walk
+        assertEquals(Set.of(TransportMode.walk), network.getLinks().get(Id.createLinkId("b-s1")).getAllowedModes());
+        assertEquals(Set.of(TransportMode.walk), network.getLinks().get(Id.createLinkId("s2-s1")).getAllowedModes());
+        // The tree is removed, and the protected stub is kept
+        assertNull(network.getNodes().get(Id.createNodeId("e")));
+        assertNull(network.getLinks().get(Id.createLinkId("c-e")));
+        assertNotNull(network.getLinks().get(Id.createLinkId("c-d")));
+        assertNotNull(network.getLinks().get(Id.createLinkId("a-b")));
+
+        assertEquals(4, pruner.getAdaptedLinks());
+        assertEquals(6, pruner.getRemovedLinks());
+        assertEquals(3, pruner.getRemovedNodes());
+    }
+}
@@ -0,0 +1,87 @@
+package network.tools;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkChainMergerTest {
+
+    private static Link addLink(Network network, String id, Node fromNode, Node toNode, double length, Set<String> modes, String highway) {
+        Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(id), fromNode, toNode, length, 13.89, 1000, 1);
+        link.setAllowedModes(modes);
+        link.getAttributes().putAttribute("highway", highway);
+        return link;
+    }
+
+    @Test
+    void testMergeChains() {
+        Network network = NetworkUtils.createNetwork();
+        Node[] nodes = new Node[6];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = NetworkUtils.createAndAddNode(network, Id.createNodeId(i), new Coord(i * 10, 0));
+        }
+        Set<String> car = Set.of(TransportMode.car);
+        // A two-way chain of short links 0 <-> 1 <-> 2 <-> 3
+        addLink(network, "0-1", nodes[0], nodes[1], 3, car, "residential");
+        addLink(network, "1-2", nodes[1], nodes[2], 3, car, "residential");
+        addLink(network, "2-3", nodes[2], nodes[3], 3, car, "tertiary");
+        addLink(network, "3-2", nodes[3], nodes[2], 3, car, "tertiary");
+        addLink(network, "2-1", nodes[2], nodes[1], 3, car, "residential");
+        addLink(network, "1-0", nodes[1], nodes[0], 3, car, "residential");
+        // Node 3 is a junction, and node 4 is a pass-through node with the links of different modes
+        addLink(network, "3-4", nodes[3], nodes[4], 3, car, "tertiary");
+        addLink(network, "4-5", nodes[4], nodes[5], 3, Set.of(TransportMode.bike), "tertiary");
+        addLink(network, "3-5", nodes[3], nodes[5], 50, car, "tertiary");
+
+        LinkChainMerger merger = new LinkChainMerger(network, 5, 100);
+        merger.run();
+
+        Link forward = network.getLinks().get(Id.createLinkId("0-1-1-2-2-3"));
+        assertNotNull(forward);
+        assertEquals(9, forward.getLength(), 1e-9);
+        assertEquals(nodes[0], forward.getFromNode());
+        assertEquals(nodes[3], forward.getToNode());
+        assertEquals("residential_tertiary", forward.getAttributes().getAttribute("highway"));
+        assertNotNull(network.getLinks().get(Id.createLinkId("3-2-2-1-1-0")));
+        assertNull(network.getNodes().get(Id.createNodeId(1)));
+        assertNull(network.getNodes().get(Id.createNodeId(2)));
+
+        // The links of different modes are not merged
+        assertNotNull(network.getLinks().get(Id.createLinkId("3-4")));
+        assertNotNull(network.getLinks().get(Id.createLinkId("4-5")));
+        assertEquals(2, merger.getMergedLinks());
+        assertEquals(6, merger.getRemovedLinks());
+        assertEquals(2, merger.getRemovedNodes());
+        assertEquals(5, network.getLinks().size());
+    }
+
+    @Test
+    void testMaxThresholdAndCircularChain() {
+        Network network = NetworkUtils.createNetwork();
+        Node node0 = NetworkUtils.createAndAddNode(network, Id.createNodeId(0), new Coord(0, 0));
+        Node node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId(1), new Coord(10, 0));
+        Node node2 = NetworkUtils.createAndAddNode(network, Id.createNodeId(2), new Coord(10, 10));
+        Set<String> car = Set.of(TransportMode.car);
+        // A one-way ring 0 -> 1 -> 2 -> 0, where every node is a pass-through node
+        addLink(network, "0-1", node0, node1, 4, car, "residential");
+        addLink(network, "1-2", node1, node2, 98, car, "residential");
+        addLink(network, "2-0", node2, node0, 4, car, "residential");
+
+        new LinkChainMerger(network, 5, 100).run();
+
+        // Merging the link 1-2 would exceed the max threshold, and the ring is not merged into a loop
+        assertEquals(3 - 1, network.getLinks().size());
+        assertNotNull(network.getLinks().get(Id.createLinkId("1-2")));
+        Link merged = network.getLinks().values().stream().filter(link -> link.getLength() == 8).findFirst().orElseThrow();
+        assertNotEquals(merged.getFromNode(), merged.getToNode());
+    }
+}
@@ -0,0 +1,78 @@
+package network.tools;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModeConnectivityGraphTest {
+
+    @Test
+    void testLargestComponentPerMode() {
+        Network network = createTestNetwork();
+        ModeConnectivityGraph graph = new ModeConnectivityGraph(network, List.of(TransportMode.car, TransportMode.bike));
+
+        // car: 1 <-> 2 <-> 3 -> 4, so that node 4 is not in the largest component
+        BitSet carNodes = graph.getLargestComponentNodes(graph.getModeIndex(TransportMode.car));
+        assertEquals(3, carNodes.cardinality());
+        BitSet carLinks = graph.getLinksOutsideLargestComponent(graph.getModeIndex(TransportMode.car));
+        assertEquals(1, carLinks.cardinality());
+        assertEquals(Id.createLinkId("3-4"), graph.getLink(carLinks.nextSetBit(0)).getId());
+
+        // bike: 1 <-> 2 -> 3, so that only the nodes 1 and 2 are in the largest component
+        BitSet bikeNodes = graph.getLargestComponentNodes(graph.getModeIndex(TransportMode.bike));
+        assertEquals(2, bikeNodes.cardinality());
+        BitSet bikeLinks = graph.getLinksOutsideLargestComponent(graph.getModeIndex(TransportMode.bike));
+        assertEquals(1, bikeLinks.cardinality());
+        assertEquals(Id.createLinkId("2-3"), graph.getLink(bikeLinks.nextSetBit(0)).getId());
+    }
+
+    @Test
+    void testLongChainDoesNotOverflowTheStack() {
+        // A ring of 200000 nodes would overflow the stack in a recursive implementation
+        Network network = NetworkUtils.createNetwork();
+        int numberOfNodes = 200000;
+        Node firstNode = NetworkUtils.createAndAddNode(network, Id.createNodeId(0), new Coord(0, 0));
+        Node previousNode = firstNode;
+        for (int i = 1; i < numberOfNodes; i++) {
+            Node node = NetworkUtils.createAndAddNode(network, Id.createNodeId(i), new Coord(i, 0));
+            addLink(network, previousNode, node, Set.of(TransportMode.car));
+            previousNode = node;
+        }
+        addLink(network, previousNode, firstNode, Set.of(TransportMode.car));
+
+        ModeConnectivityGraph graph = new ModeConnectivityGraph(network, List.of(TransportMode.car));
+        assertEquals(numberOfNodes, graph.getLargestComponentNodes(0).cardinality());
+        assertTrue(graph.getLinksOutsideLargestComponent(0).isEmpty());
+    }
+
+    static Network createTestNetwork() {
+        Network network = NetworkUtils.createNetwork();
+        Node node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId(1), new Coord(0, 0));
+        Node node2 = NetworkUtils.createAndAddNode(network, Id.createNodeId(2), new Coord(100, 0));
+        Node node3 = NetworkUtils.createAndAddNode(network, Id.createNodeId(3), new Coord(200, 0));
+        Node node4 = NetworkUtils.createAndAddNode(network, Id.createNodeId(4), new Coord(300, 0));
+        addLink(network, node1, node2, Set.of(TransportMode.car, TransportMode.bike));
+        addLink(network, node2, node1, Set.of(TransportMode.car, TransportMode.bike));
+        addLink(network, node2, node3, Set.of(TransportMode.car, TransportMode.bike));
+        addLink(network, node3, node2, Set.of(TransportMode.car));
+        addLink(network, node3, node4, Set.of(TransportMode.car));
+        return network;
+    }
+
+    static void addLink(Network network, Node fromNode, Node toNode, Set<String> modes) {
+        Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(fromNode.getId() + "-" + toNode.getId()),
+                fromNode, toNode, 100, 10, 1000, 1);
+        link.setAllowedModes(modes);
+    }
+}
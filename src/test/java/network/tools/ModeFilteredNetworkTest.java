@@ -0,0 +1,136 @@
+package network.tools;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModeFilteredNetworkTest {
+
+    @Test
+    void testModeFilteredView() {
+        Network network = ModeConnectivityGraphTest.createTestNetwork();
+        ModeNetworkIndex index = new ModeNetworkIndex(network);
+        Network bikeNetwork = index.getView(TransportMode.bike);
+        assertSame(bikeNetwork, index.getView(TransportMode.bike));
+
+        // bike: 1 <-> 2 -> 3, without the node 4
+        assertEquals(3, bikeNetwork.getLinks().size());
+        assertEquals(3, bikeNetwork.getNodes().size());
+        assertEquals(Set.of(Id.createLinkId("1-2"), Id.createLinkId("2-1"), Id.createLinkId("2-3")),
+                new HashSet<>(bikeNetwork.getLinks().keySet()));
+        assertNull(bikeNetwork.getLinks().get(Id.createLinkId("3-2")));
+        assertFalse(bikeNetwork.getNodes().containsKey(Id.createNodeId(4)));
+
+        // The nodes and links are not copied, and only the bike links can be followed from a node
+        Node node3 = bikeNetwork.getNodes().get(Id.createNodeId(3));
+        assertTrue(node3.getOutLinks().isEmpty());
+        assertEquals(1, node3.getInLinks().size());
+        Link link23 = node3.getInLinks().get(Id.createLinkId("2-3"));
+        assertSame(link23, bikeNetwork.getLinks().get(Id.createLinkId("2-3")));
+        assertSame(node3, link23.getToNode());
+        assertSame(network.getLinks().get(Id.createLinkId("2-3")).getAttributes(), link23.getAttributes());
+        assertEquals(2, network.getNodes().get(Id.createNodeId(3)).getOutLinks().size());
+        // As with the TransportModeNetworkFilter, the links of the view only allow the mode of the view
+        assertEquals(Set.of(TransportMode.bike), link23.getAllowedModes());
+        assertTrue(network.getLinks().get(Id.createLinkId("2-3")).getAllowedModes().size() > 1);
+
+        // The car view has all the links, and an unknown mode has an empty view
+        assertEquals(5, index.getView(TransportMode.car).getLinks().size());
+        assertTrue(index.getView(TransportMode.walk).getLinks().isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> bikeNetwork.removeLink(Id.createLinkId("1-2")));
+        assertThrows(UnsupportedOperationException.class, () -> link23.setLength(10));
+    }
+
+    @Test
+    void testRouteOnViewAsOnFilteredCopy() {
+        // A 5x5 grid of 100 m links in both directions, where car is allowed everywhere and bike only on the rows and
+        // the outer columns, so that the bike routes make detours
+        Network network = NetworkUtils.createNetwork();
+        int size = 5;
+        Node[][] nodes = new Node[size][size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 100, y * 100));
+            }
+        }
+        Set<String> carAndBike = Set.of(TransportMode.car, TransportMode.bike);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if (x + 1 < size) {
+                    addLinks(network, nodes[x][y], nodes[x + 1][y], carAndBike);
+                }
+                if (y + 1 < size) {
+                    addLinks(network, nodes[x][y], nodes[x][y + 1],
+                            x == 0 || x == size - 1 ? carAndBike : Set.of(TransportMode.car));
+                }
+            }
+        }
+        Network bikeCopy = NetworkUtils.createNetwork();
+        new TransportModeNetworkFilter(network).filter(bikeCopy, Set.of(TransportMode.bike));
+        Network bikeView = new ModeNetworkIndex(network).getView(TransportMode.bike);
+
+        TravelTime travelTime = (link, time, person, vehicle) -> link.getLength() / link.getFreespeed();
+        TravelDisutility travelDisutility = new TravelDisutility() {
+            @Override
+            public double getLinkTravelDisutility(Link link, double time, Person person, Vehicle vehicle) {
+                return link.getLength();
+            }
+
+            @Override
+            public double getLinkMinimumTravelDisutility(Link link) {
+                return link.getLength();
+            }
+        };
+        LeastCostPathCalculator copyRouter = new DijkstraFactory(false).createPathCalculator(bikeCopy, travelDisutility, travelTime);
+        LeastCostPathCalculator viewRouter = new DijkstraFactory(false).createPathCalculator(bikeView, travelDisutility, travelTime);
+
+        // The routes between all the pairs of nodes are as short on the view as on the copy (the grid has ties, so the
+        // links may differ), and only follow the bike links from the origin to the destination
+        for (Node from : bikeCopy.getNodes().values()) {
+            for (Node to : bikeCopy.getNodes().values()) {
+                LeastCostPathCalculator.Path expected = copyRouter.calcLeastCostPath(from, to, 0, null, null);
+                LeastCostPathCalculator.Path actual = viewRouter.calcLeastCostPath(
+                        bikeView.getNodes().get(from.getId()), bikeView.getNodes().get(to.getId()), 0, null, null);
+                assertEquals(expected.links.size(), actual.links.size());
+                Id<Node> nodeId = from.getId();
+                for (Link link : actual.links) {
+                    assertEquals(nodeId, link.getFromNode().getId());
+                    assertNotNull(bikeCopy.getLinks().get(link.getId()));
+                    nodeId = link.getToNode().getId();
+                }
+                assertEquals(to.getId(), nodeId);
+                assertEquals(expected.travelCost, actual.travelCost, 1e-9);
+                assertEquals(expected.travelTime, actual.travelTime, 1e-9);
+            }
+        }
+        // The bike route across the middle column takes the detour over the outer column
+        LeastCostPathCalculator.Path detour = viewRouter.calcLeastCostPath(bikeView.getNodes().get(Id.createNodeId("2_0")),
+                bikeView.getNodes().get(Id.createNodeId("2_4")), 0, null, null);
+        assertEquals(800, detour.travelCost, 1e-9);
+    }
+
+    private static void addLinks(Network network, Node node1, Node node2, Set<String> modes) {
+        for (Node[] pair : new Node[][]{{node1, node2}, {node2, node1}}) {
+            Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(pair[0].getId() + "-" + pair[1].getId()),
+                    pair[0], pair[1], 100, 10, 1000, 1);
+            link.setAllowedModes(modes);
+        }
+    }
+}
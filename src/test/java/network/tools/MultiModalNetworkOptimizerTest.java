@@ -3,8 +3,13 @@ package network.tools;
 import network.core.TransMode;
 import org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
@@ -13,8 +18,7 @@ import org.matsim.core.scenario.ScenarioUtils;
 
 import java.util.Set;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 class MultiModalNetworkOptimizerTest {
 
@@ -53,4 +57,91 @@ class MultiModalNetworkOptimizerTest {
 
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBatchSplitting() {
+        Network network = NetworkUtils.createNetwork();
+        Node node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+        Node node2 = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(500, 0));
+        Link link1 = NetworkUtils.createAndAddLink(network, Id.createLinkId("ab"), node1, node2, 500, 13.89, 1000, 1);
+        link1.setAllowedModes(Set.of(TransportMode.car, TransportMode.bike));
+        link1.getAttributes().putAttribute("highway", "primary");
+        NetworkUtils.createAndAddLink(network, Id.createLinkId("ba"), node2, node1, 150, 13.89, 1000, 1);
+
+        MultiModalNetworkOptimizer networkOptimizer = new MultiModalNetworkOptimizer.Builder()
+                .setNetwork(network)
+                .setMinThreshold(5)
+                .setMaxThreshold(200)
+                .setBatchSplitting(true)
+                .build();
+        networkOptimizer.optimize();
+
+        // The link ab is split into 3 links of 500/3, and the link ba is kept
+        assertEquals(4, network.getNodes().size());
+        assertEquals(4, network.getLinks().size());
+        assertNull(network.getLinks().get(Id.createLinkId("ab")));
+        assertNotNull(network.getLinks().get(Id.createLinkId("ba")));
+        Node splitNode = network.getNodes().get(Id.createNodeId("splitNode_ab_1"));
+        assertEquals(500.0 / 3, splitNode.getCoord().getX(), 1e-9);
+        for (int i = 1; i <= 3; i++) {
+            Link link = network.getLinks().get(Id.createLinkId("splitLink_ab_" + i));
+            assertEquals(500.0 / 3, link.getLength(), 1e-9);
+            assertEquals(link1.getAllowedModes(), link.getAllowedModes());
+            assertEquals("primary", link.getAttributes().getAttribute("highway"));
+        }
+        assertEquals(node1, network.getLinks().get(Id.createLinkId("splitLink_ab_1")).getFromNode());
+        assertEquals(node2, network.getLinks().get(Id.createLinkId("splitLink_ab_3")).getToNode());
+    }
+
+    @Test
+    void testChainMerging() {
+        // A one-way chain of short links 0 -> 1 -> 2 -> 3 -> 4 with the same stats, followed by 4 -> 5 with other modes
+        Network network = createChainNetwork();
+        MultiModalNetworkOptimizer networkOptimizer = new MultiModalNetworkOptimizer.Builder()
+                .setNetwork(network)
+                .setMinThreshold(5)
+                .setMaxThreshold(200)
+                .setChainMerging(true)
+                .build();
+        networkOptimizer.optimize();
+
+        // The links with the same stats are merged into one link, and the link with other modes is kept
+        Link merged = network.getLinks().get(Id.createLinkId("0-1-1-2-2-3-3-4"));
+        assertNotNull(merged);
+        assertEquals(12, merged.getLength(), 1e-9);
+        assertEquals("residential", merged.getAttributes().getAttribute("highway"));
+        assertNotNull(network.getLinks().get(Id.createLinkId("4-5")));
+        assertEquals(2, network.getLinks().size());
+    }
+
+    @Test
+    void testDefaultMergingKeepsNetworkSimplifier() {
+        Network network = createChainNetwork();
+        MultiModalNetworkOptimizer networkOptimizer = new MultiModalNetworkOptimizer.Builder()
+                .setNetwork(network)
+                .setMinThreshold(5)
+                .setMaxThreshold(200)
+                .build();
+        networkOptimizer.optimize();
+
+        // The short links are still merged by the NetworkSimplifier, without changing the total length
+        assertNull(network.getLinks().get(Id.createLinkId("0-1")));
+        assertTrue(network.getLinks().size() < 5);
+        assertEquals(15, network.getLinks().values().stream().mapToDouble(Link::getLength).sum(), 1e-9);
+        assertTrue(network.getLinks().values().stream().allMatch(link -> link.getAllowedModes().contains(TransportMode.car)));
+    }
+
+    private static Network createChainNetwork() {
+        Network network = NetworkUtils.createNetwork();
+        Node[] nodes = new Node[6];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = NetworkUtils.createAndAddNode(network, Id.createNodeId(i), new Coord(i * 3, 0));
+        }
+        for (int i = 0; i < nodes.length - 1; i++) {
+            Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(i + "-" + (i + 1)), nodes[i], nodes[i + 1], 3, 13.89, 1000, 1);
+            link.setAllowedModes(i < 4 ? Set.of(TransportMode.car) : Set.of(TransportMode.car, TransportMode.bike));
+            link.getAttributes().putAttribute("highway", "residential");
+        }
+        return network;
+    }
+}
@@ -0,0 +1,33 @@
+package network.tools;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Network;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SinglePassMultiModalNetworkCleanerTest {
+
+    @Test
+    void testCleanAllModesInOnePass() {
+        Network network = ModeConnectivityGraphTest.createTestNetwork();
+        SinglePassMultiModalNetworkCleaner cleaner = new SinglePassMultiModalNetworkCleaner(network, 2);
+        cleaner.run(Set.of(TransportMode.car, TransportMode.bike));
+
+        // Link 3-4 only allows car, which is outside the largest car component, so that it is removed with node 4
+        assertNull(network.getLinks().get(Id.createLinkId("3-4")));
+        assertNull(network.getNodes().get(Id.createNodeId(4)));
+        // Link 2-3 is outside the largest bike component, so that only the bike mode is removed
+        assertEquals(Set.of(TransportMode.car), network.getLinks().get(Id.createLinkId("2-3")).getAllowedModes());
+        assertEquals(Set.of(TransportMode.car, TransportMode.bike), network.getLinks().get(Id.createLinkId("1-2")).getAllowedModes());
+
+        assertEquals(4, network.getLinks().size());
+        assertEquals(3, network.getNodes().size());
+        assertEquals(1, cleaner.getAdaptedLinks());
+        assertEquals(1, cleaner.getRemovedLinks());
+        assertEquals(1, cleaner.getRemovedNodes());
+    }
+}